@@ -1,5 +1,7 @@
 package hr.fer.zemris.java.custom.scripting.lexer;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.Objects;
 
 /**
@@ -7,17 +9,43 @@ import java.util.Objects;
  * If the current state is set to {@code SmartScriptLexerState.INSIDE_TAG} it tokenizes
  * numbers, strings, symbols and functions. If the current state is set to {@code SmartScriptLexerState.DOCUMENT_TEXT} it can only
  * tokenize text. SmartScriptLexerState can be set using the proper method.
+ * <p>
+ * Lexer either tokenizes the whole text given as {@code String} or pulls characters
+ * from a {@code Reader} through a buffer of fixed size, so documents of any size can be
+ * tokenized without being loaded into memory. Text tokens produced from a {@code Reader}
+ * are at most as long as the buffer, longer text is split into consecutive text tokens.
  * 
  * @author Filip Husnjak
  */
 public class SmartScriptLexer {
 
+	/**
+	 * Size of the buffer recommended for lexers reading from a {@code Reader}.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
 
 	/**
-	 * Given expression as char array.
+	 * Buffer holding characters that are being tokenized. Valid characters are the ones
+	 * at indexes lower than {@link #limit}.
 	 */
 	private char[] data;
 	
+	/**
+	 * Number of valid characters in {@link #data}.
+	 */
+	private int limit;
+	
+	/**
+	 * Reader from which characters are pulled when the buffer runs out of them, 
+	 * {@code null} if there are no characters left to read.
+	 */
+	private Reader reader;
+	
+	/**
+	 * Maximum length of a text token.
+	 */
+	private int maxTextLength = Integer.MAX_VALUE;
+	
 	/**
 	 * Current token retrieved by {@code getToken} method
 	 */
@@ -45,6 +73,29 @@ public class SmartScriptLexer {
 	public SmartScriptLexer(String text) {
 		Objects.requireNonNull(text, "Given text cannot be null!");
 		data = text.toCharArray();
+		limit = data.length;
+	}
+	
+	/**
+	 * Constructs a {@code Lexer} which tokenizes characters read from the given
+	 * {@code Reader}. Characters are read lazily, only as many of them as the buffer of
+	 * the given size can hold are kept in memory. Given reader is not closed by
+	 * {@code this} object.
+	 * 
+	 * @param reader
+	 *        reader from which characters are read
+	 * @param bufferSize
+	 *        number of characters kept in memory, at least 2
+	 * @throws NullPointerException if the given {@code Reader} is {@code null}
+	 * @throws IllegalArgumentException if the given buffer size is less than 2
+	 */
+	public SmartScriptLexer(Reader reader, int bufferSize) {
+		this.reader = Objects.requireNonNull(reader, "Given reader cannot be null!");
+		if (bufferSize < 2) {
+			throw new IllegalArgumentException("Buffer size has to be at least 2!");
+		}
+		data = new char[bufferSize];
+		maxTextLength = bufferSize;
 	}
 	
 	/**
@@ -59,7 +110,7 @@ public class SmartScriptLexer {
 		if (token == SmartScriptToken.EOF_TOKEN) {
 			throw new SmartScriptLexerException("This lexer has no more elements to tokenize!");
 		}
-		if (currentIndex == data.length) {
+		if (!available(0)) {
 			return token = SmartScriptToken.EOF_TOKEN;
 		}
 		if (currentState == SmartScriptLexerState.DOCUMENT_TEXT) {
@@ -85,7 +136,7 @@ public class SmartScriptLexer {
 			return getOpenTag();
 		}
 		StringBuilder text = new StringBuilder();
-		while (currentIndex < data.length && !checkForOpenTag()) {
+		while (available(0) && !checkForOpenTag() && text.length() < maxTextLength) {
 			if (data[currentIndex] == '\\') {
 				escapeBracketOrBackslash();
 			}
@@ -104,7 +155,7 @@ public class SmartScriptLexer {
 	private SmartScriptToken getOpenTag() {
 		currentIndex += 2;
 		ignoreIrrelevantCharacters();
-		if (currentIndex >= data.length || (!Character.isLetter(data[currentIndex]) && data[currentIndex] != '=')) {
+		if (!available(0) || (!Character.isLetter(data[currentIndex]) && data[currentIndex] != '=')) {
 			throw new SmartScriptLexerException("Tag name is invalid!");
 		}
 		if (data[currentIndex] == '=') {
@@ -126,6 +177,9 @@ public class SmartScriptLexer {
 	 */
 	private SmartScriptToken insideTagLexerState() {
 		ignoreIrrelevantCharacters();
+		if (!available(0)) {
+			throw new SmartScriptLexerException("Tag was not closed!");
+		}
 		if (checkForClosingTag()) {
 			currentIndex += 2;
 			return new SmartScriptToken(SmartScriptTokenType.CLOSE_TAG, null);
@@ -137,7 +191,7 @@ public class SmartScriptLexer {
 			return new SmartScriptToken(SmartScriptTokenType.VARIABLE, extractVariableName());
 		}
 		if (data[currentIndex] == '@') {
-			if (!Character.isLetter(data[++currentIndex])) {
+			if (!available(1) || !Character.isLetter(data[++currentIndex])) {
 				throw new SmartScriptLexerException("Invalid function name! Function names should start with a letter!");
 			}
 			return new SmartScriptToken(SmartScriptTokenType.FUNCTION, extractVariableName());
@@ -160,7 +214,7 @@ public class SmartScriptLexer {
 	 */
 	private SmartScriptToken extractString() {
 		StringBuilder string = new StringBuilder();
-		while (currentIndex < data.length && data[currentIndex] != '"') {
+		while (available(0) && data[currentIndex] != '"') {
 			if (data[currentIndex] == '\\') {
 				escapeQuotationsOrBackslash();
 				switch (data[currentIndex]) {
@@ -181,9 +235,10 @@ public class SmartScriptLexer {
 				string.append(data[currentIndex++]);
 			}
 		}
-		if (currentIndex++ == data.length) {
+		if (!available(0)) {
 			throw new SmartScriptLexerException("String constants have to end with \"!");
 		}
+		currentIndex++;
 		return new SmartScriptToken(SmartScriptTokenType.STRING, string.toString());
 	}
 	
@@ -193,7 +248,7 @@ public class SmartScriptLexer {
 	 * @return {@code true} if currently read curly bracket is used for opening a tag
 	 */
 	private boolean checkForOpenTag() {
-		if (currentIndex == data.length - 1) return false;
+		if (!available(1)) return false;
 		return data[currentIndex] == '{' && data[currentIndex + 1] == '$';
 	}
 	
@@ -203,7 +258,7 @@ public class SmartScriptLexer {
 	 * @return {@code true} if currently read curly bracket is used for closing a tag
 	 */
 	private boolean checkForClosingTag() {
-		if (currentIndex == data.length - 1) return false;
+		if (!available(1)) return false;
 		return data[currentIndex] == '$' && data[currentIndex + 1] == '}';
 	}
 	
@@ -216,7 +271,10 @@ public class SmartScriptLexer {
 	 */
 	private void escapeBracketOrBackslash() {
 		currentIndex++;
-		if (currentIndex >= data.length || (data[currentIndex] != '{' && data[currentIndex] != '\\')) {
+		if (!available(0)) {
+			throw new SmartScriptLexerException("Document cannot end with backslash!");
+		}
+		if (data[currentIndex] != '{' && data[currentIndex] != '\\') {
 			throw new SmartScriptLexerException("Escaping this character in document text is prohibited! Char: " + data[currentIndex]);
 		}
 	}
@@ -230,17 +288,52 @@ public class SmartScriptLexer {
 	 */
 	private void escapeQuotationsOrBackslash() {
 		currentIndex++;
-		if (currentIndex >= data.length || (data[currentIndex] != '"' && data[currentIndex] != '\\' && data[currentIndex] != 'n' && data[currentIndex] != 'r' && data[currentIndex] != 't')) {
+		if (!available(0)) {
+			throw new SmartScriptLexerException("String constants have to end with \"!");
+		}
+		if (data[currentIndex] != '"' && data[currentIndex] != '\\' && data[currentIndex] != 'n' && data[currentIndex] != 'r' && data[currentIndex] != 't') {
 			throw new SmartScriptLexerException("Escaping this character in string is prohibited! Char: " + data[currentIndex]);
 		}
 	}
 	
 	/**
 	 * Increments {@link #currentIndex} until {@code data[currentIndex]} points to relevant
-	 * character or {@link #currentIndex} goes out of range [0, data.length - 1].
+	 * character or {@link #currentIndex} reaches {@link #limit}.
 	 */
 	private void ignoreIrrelevantCharacters() {
-		for ( ; currentIndex < data.length && isIrrelevant(data[currentIndex]); currentIndex++);
+		for ( ; available(0) && isIrrelevant(data[currentIndex]); currentIndex++);
+	}
+	
+	/**
+	 * Returns {@code true} if the character at the given offset from {@link #currentIndex}
+	 * is available in the buffer. If it is not, remaining characters are moved to the
+	 * beginning of the buffer and the rest of the buffer is filled from {@link #reader}.
+	 * Offset cannot be greater than 1, so the buffer never has to grow.
+	 * 
+	 * @param offset
+	 *        offset of the character from {@link #currentIndex}
+	 * @return {@code true} if the character is available
+	 * @throws SmartScriptLexerException if characters cannot be read from {@link #reader}
+	 */
+	private boolean available(int offset) {
+		if (currentIndex + offset < limit) return true;
+		if (reader == null) return false;
+		System.arraycopy(data, currentIndex, data, 0, limit - currentIndex);
+		limit -= currentIndex;
+		currentIndex = 0;
+		try {
+			while (offset >= limit) {
+				int read = reader.read(data, limit, data.length - limit);
+				if (read < 0) {
+					reader = null;
+					return false;
+				}
+				limit += read;
+			}
+		} catch (IOException ex) {
+			throw new SmartScriptLexerException("Document cannot be read! " + ex.getMessage());
+		}
+		return true;
 	}
 	
 	/**
@@ -276,7 +369,7 @@ public class SmartScriptLexer {
 	 */
 	private String extractVariableName() {
 		StringBuilder name = new StringBuilder();
-		while (currentIndex < data.length && isValidName(data[currentIndex])) {
+		while (available(0) && isValidName(data[currentIndex])) {
 			name.append(data[currentIndex++]);
 		}
 		return name.toString();
@@ -295,10 +388,10 @@ public class SmartScriptLexer {
 			number.append(data[currentIndex++]);
 		}
 		boolean dot = false;
-		while (currentIndex < data.length && (Character.isDigit(data[currentIndex]) || (!dot && data[currentIndex] == '.'))) {
+		while (available(0) && (Character.isDigit(data[currentIndex]) || (!dot && data[currentIndex] == '.'))) {
 			if (data[currentIndex] == '.') {
 				dot = true;
-				if (currentIndex == data.length - 1 || !Character.isDigit(data[currentIndex + 1])) break;
+				if (!available(1) || !Character.isDigit(data[currentIndex + 1])) break;
 			}
 			number.append(data[currentIndex++]);
 		}
@@ -320,7 +413,7 @@ public class SmartScriptLexer {
 	 * @return {@code true} if minus sign is used to form a negative number
 	 */
 	private boolean checkNegativeNumber() {
-		return currentIndex < data.length - 1 && data[currentIndex] == '-' && Character.isDigit(data[currentIndex + 1]);
+		return available(1) && data[currentIndex] == '-' && Character.isDigit(data[currentIndex + 1]);
 	}
 	
 	/**
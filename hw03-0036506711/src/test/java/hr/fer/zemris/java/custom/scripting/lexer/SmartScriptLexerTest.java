@@ -5,7 +5,10 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
@@ -290,6 +293,82 @@ public class SmartScriptLexerTest {
 		assertNull(lexer.getToken().getValue());
 	}
 	
+	@Test
+	public void testReaderNullArgument() {
+		assertThrows(NullPointerException.class, () -> new SmartScriptLexer(null, 16));
+	}
+	
+	@Test
+	public void testReaderInvalidBufferSize() {
+		assertThrows(IllegalArgumentException.class, () -> new SmartScriptLexer(new StringReader(""), 1));
+	}
+	
+	@Test
+	public void testReaderEmpty() {
+		assertEquals(SmartScriptTokenType.EOF, new SmartScriptLexer(new StringReader(""), 2).nextToken().getType());
+	}
+	
+	@Test
+	public void testReaderSplitsLongText() {
+		SmartScriptLexer lexer = new SmartScriptLexer(new StringReader("abcd\\\\efg{$END"), 3);
+		assertEquals("abc", lexer.nextToken().getValue());
+		assertEquals("d\\e", lexer.nextToken().getValue());
+		assertEquals("fg", lexer.nextToken().getValue());
+		assertEquals(SmartScriptTokenType.TAG, lexer.nextToken().getType());
+	}
+	
+	@Test
+	public void testReaderEscapingAtEnd() {
+		assertThrows(SmartScriptLexerException.class, () -> new SmartScriptLexer(new StringReader("ab\\"), 16).nextToken());
+		
+		SmartScriptLexer lexer = new SmartScriptLexer(new StringReader("\"a\\"), 16);
+		lexer.setState(SmartScriptLexerState.INSIDE_TAG);
+		assertThrows(SmartScriptLexerException.class, () -> lexer.nextToken());
+	}
+	
+	@Test
+	public void testReaderProducesSameTokens() {
+		String tags = "{$ FOR i -1 10.5 \"2\" $}{$= i -3.25 * \"a\\\"\\n\" @sin @dup_2 $}{$END$}";
+		for (String document : new String[] {tags, loader("doc1.txt"), loader("doc3.txt"), loader("doc6.txt")}) {
+			List<SmartScriptToken> expected = tokenize(new SmartScriptLexer(document));
+			assertEquals(expected, tokenize(new SmartScriptLexer(new StringReader(document), SmartScriptLexer.DEFAULT_BUFFER_SIZE)));
+			for (int bufferSize = 2; bufferSize < 8; ++bufferSize) {
+				List<SmartScriptToken> tokens = tokenize(new SmartScriptLexer(new StringReader(document), bufferSize));
+				assertEquals(withoutText(expected), withoutText(tokens));
+				assertEquals(text(expected), text(tokens));
+			}
+		}
+	}
+	
+	private List<SmartScriptToken> tokenize(SmartScriptLexer lexer) {
+		List<SmartScriptToken> tokens = new ArrayList<>();
+		for (SmartScriptToken token = lexer.nextToken(); token.getType() != SmartScriptTokenType.EOF; token = lexer.nextToken()) {
+			tokens.add(token);
+			if (token.getType() == SmartScriptTokenType.TAG) {
+				lexer.setState(SmartScriptLexerState.INSIDE_TAG);
+			} else if (token.getType() == SmartScriptTokenType.CLOSE_TAG) {
+				lexer.setState(SmartScriptLexerState.DOCUMENT_TEXT);
+			}
+		}
+		return tokens;
+	}
+	
+	private List<SmartScriptToken> withoutText(List<SmartScriptToken> tokens) {
+		List<SmartScriptToken> result = new ArrayList<>(tokens);
+		result.removeIf(token -> token.getType() == SmartScriptTokenType.TEXT);
+		return result;
+	}
+	
+	private String text(List<SmartScriptToken> tokens) {
+		StringBuilder text = new StringBuilder();
+		for (SmartScriptToken token : tokens) {
+			if (token.getType() == SmartScriptTokenType.TEXT) {
+				text.append(token.getValue());
+			}
+		}
+		return text.toString();
+	}
+	
 	private String loader(String filename) {
 		ByteArrayOutputStream bos = new ByteArrayOutputStream();
 		try (InputStream is = this.getClass().getClassLoader().getResourceAsStream(filename)) {
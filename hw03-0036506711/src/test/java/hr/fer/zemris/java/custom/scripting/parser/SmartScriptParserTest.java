@@ -3,12 +3,18 @@ package hr.fer.zemris.java.custom.scripting.parser;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
 
+import hr.fer.zemris.java.custom.scripting.lexer.SmartScriptLexer;
 import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
 import hr.fer.zemris.java.hw03.SmartScriptTester;
 
 /**
@@ -112,6 +118,82 @@ public class SmartScriptParserTest {
 		checkFile("doc6.txt");
 	}
 
+	@Test
+	public void testReaderNullArgument() {
+		assertThrows(NullPointerException.class, () -> new SmartScriptParser(null, 16));
+	}
+	
+	@Test
+	public void testReaderEmpty() {
+		SmartScriptParser parser = new SmartScriptParser(new StringReader(""), 16);
+		assertNull(parser.nextNode());
+		assertNull(parser.nextNode());
+	}
+	
+	@Test
+	public void testReaderReturnsTopLevelNodes() {
+		SmartScriptParser parser = new SmartScriptParser(new StringReader("a{$FOR i 1 2$}b{$=i$}{$END$}c"), 16);
+		assertEquals(new TextNode("a"), parser.nextNode());
+		Node forNode = parser.nextNode();
+		assertTrue(forNode instanceof ForLoopNode);
+		assertEquals(2, forNode.numberOfChildren());
+		assertEquals(new TextNode("c"), parser.nextNode());
+		assertNull(parser.nextNode());
+	}
+	
+	@Test
+	public void testReaderErrors() {
+		for (String filename : new String[] {"wrongTagName1.txt", "unclosedTag1.txt", "unclosedTag2.txt", "unclosedTag3.txt", 
+				"missingEndTags1.txt", "missingEndTags2.txt", "tooManyEndTags1.txt", "tooManyEndTags2.txt",
+				"forTagNotWrittenProperly1.txt"}) {
+			SmartScriptParser parser = new SmartScriptParser(new StringReader(loader(filename)), 4);
+			assertThrows(SmartScriptParserException.class, () -> {
+				while (parser.nextNode() != null);
+			}, filename);
+		}
+	}
+	
+	@Test
+	public void testReaderDocs() {
+		for (int i = 1; i <= 6; ++i) {
+			String document = loader("doc" + i + ".txt");
+			DocumentNode expected = new SmartScriptParser(document).getDocumentNode();
+			assertEquals(expected, parseIncrementally(new StringReader(document), SmartScriptLexer.DEFAULT_BUFFER_SIZE));
+			assertEquals(SmartScriptTester.createOriginalDocumentBody(expected),
+					SmartScriptTester.createOriginalDocumentBody(parseIncrementally(new StringReader(document), 2)));
+		}
+	}
+	
+	@Test
+	public void testReaderLargeDocument() {
+		String chunk = "Row {$= i \"-\" $}: {$ FOR j 1 3 1 $}{$= j @sin \"0.00\" @decfmt $} {$END$}\r\n";
+		int repetitions = 8 * 1024 * 1024 / chunk.length();
+		RepeatingReader reader = new RepeatingReader(chunk, repetitions);
+		SmartScriptParser parser = new SmartScriptParser(reader, SmartScriptLexer.DEFAULT_BUFFER_SIZE);
+		
+		Node first = parser.nextNode();
+		long readBeforeFirstNode = reader.read;
+		int nodes = 1;
+		while (parser.nextNode() != null) {
+			nodes++;
+		}
+		
+		assertEquals(new TextNode("Row "), first);
+		assertTrue(readBeforeFirstNode <= SmartScriptLexer.DEFAULT_BUFFER_SIZE, "Read " + readBeforeFirstNode);
+		assertEquals((long) chunk.length() * repetitions, reader.read);
+		// Line break and the text starting the next row form a single text node
+		assertEquals(4 * repetitions + 1, nodes);
+	}
+
+	private DocumentNode parseIncrementally(Reader reader, int bufferSize) {
+		SmartScriptParser parser = new SmartScriptParser(reader, bufferSize);
+		DocumentNode document = new DocumentNode();
+		for (Node node = parser.nextNode(); node != null; node = parser.nextNode()) {
+			document.addChildNode(node);
+		}
+		return document;
+	}
+	
 	private void checkFile(String filename) {
 		String document = loader(filename);
 		SmartScriptParser parser1 = new SmartScriptParser(document);
@@ -141,4 +223,48 @@ public class SmartScriptParserTest {
 		}
 	}
 	
+	/**
+	 * Reader which returns the given chunk of text repeated the given number of times
+	 * and counts how many characters were read, so documents of any size can be read
+	 * without being kept in memory.
+	 */
+	private static class RepeatingReader extends Reader {
+		
+		private final String chunk;
+		
+		private int repetitions;
+		
+		private int position;
+		
+		private long read;
+		
+		public RepeatingReader(String chunk, int repetitions) {
+			this.chunk = chunk;
+			this.repetitions = repetitions;
+		}
+		
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			if (repetitions == 0) return -1;
+			int n = 0;
+			while (n < len && repetitions > 0) {
+				int count = Math.min(len - n, chunk.length() - position);
+				chunk.getChars(position, position + count, cbuf, off + n);
+				n += count;
+				position += count;
+				if (position == chunk.length()) {
+					position = 0;
+					repetitions--;
+				}
+			}
+			read += n;
+			return n;
+		}
+		
+		@Override
+		public void close() {
+		}
+		
+	}
+	
 }
@@ -608,6 +608,58 @@ public class ValueWrapperTest {
 		assertTrue(testHelper("2.0", "2.0", "compare").equals(0));
 	}
 	
+	@Test
+	public void testWrapperArgument() {
+		ValueWrapper argument = new ValueWrapper("2.5");
+		ValueWrapper v = new ValueWrapper("2");
+		v.add(argument);
+		assertEquals(4.5, v.getValue());
+		assertEquals("2.5", argument.getValue());
+		
+		v = new ValueWrapper(7);
+		v.divide(new ValueWrapper("2"));
+		assertEquals(3, v.getValue());
+		assertTrue(v.getValue() instanceof Integer);
+		
+		v.multiply(new ValueWrapper(null));
+		assertEquals(0, v.getValue());
+		
+		assertEquals(-1, new ValueWrapper(1).numCompare(new ValueWrapper(1.5)));
+		assertThrows(RuntimeException.class, () -> new ValueWrapper(1).subtract(new ValueWrapper("aa")));
+		assertThrows(RuntimeException.class, () -> new ValueWrapper(1).subtract(new ValueWrapper(true)));
+	}
+	
+	@Test
+	public void testStringArgumentReused() {
+		ValueWrapper step = new ValueWrapper("3");
+		ValueWrapper v = new ValueWrapper(0);
+		for (int i = 0; i < 10; ++i) {
+			v.add(step);
+		}
+		assertEquals(30, v.getValue());
+		assertEquals("3", step.getValue());
+		assertEquals("3", step.toString());
+		
+		step.setValue("0.5");
+		v.add(step);
+		assertEquals(30.5, v.getValue());
+	}
+	
+	@Test
+	public void testCopy() {
+		ValueWrapper v = new ValueWrapper("5");
+		ValueWrapper copy = v.copy();
+		copy.add(1);
+		assertEquals("5", v.getValue());
+		assertEquals(6, copy.getValue());
+	}
+	
+	@Test
+	public void testDivisionByZero() {
+		assertThrows(ArithmeticException.class, () -> testHelper(1, 0, "divide"));
+		assertEquals(Double.POSITIVE_INFINITY, testHelper(1.0, 0, "divide"));
+	}
+	
 	private Object testHelper(Object v1, Object v2, String action) {
 		return map.get(action).apply(new ValueWrapper(v1), v2);
 	}
@@ -8,13 +8,16 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 import hr.fer.zemris.java.fractals.viewer.FractalViewer;
 import hr.fer.zemris.java.fractals.viewer.IFractalProducer;
 import hr.fer.zemris.java.fractals.viewer.IFractalResultObserver;
 import hr.fer.zemris.math.Complex;
-import hr.fer.zemris.math.ComplexPolynomial;
 import hr.fer.zemris.math.ComplexRootedPolynomial;
 
 /**
@@ -65,53 +68,187 @@ public class Newton {
 	
 	/**
 	 * Implementation of {@link #IFractalProducer} with proper implementation of
-	 * produce method. Produce method has parallel implementation and it splits
-	 * the job into {@code 8 * availableProcessors()} parts that are then added
-	 * to the ThreadPool which is created using ExecutorService class.
+	 * produce method. Produce method has parallel implementation, one worker
+	 * per thread of the ThreadPool which is created using ExecutorService
+	 * class is started and each worker repeatedly takes the next row which is
+	 * not taken yet, so workers which got cheaper rows simply take more of
+	 * them and all of them finish at about the same time. Pixels
+	 * are calculated by {@link NewtonKernel}, vectorized one is used if
+	 * {@code jdk.incubator.vector} module is available.
+	 * <p>
+	 * Before the parts are calculated, coarse version of the fractal, whose
+	 * size and number of iterations are limited, is sent to the observer, so
+	 * something is shown quickly regardless of the size of the image. While
+	 * the rows are calculated, observer is sent the current state of the
+	 * image every {@link #refreshInterval} milliseconds. Every worker checks
+	 * cancellation flag before each row it takes, once the flag is set
+	 * workers stop and nothing more is sent to the observer.
+	 * <p>
+	 * If producer is given a {@link NewtonTileCache}, viewport is snapped to
+	 * the grid of its zoom level and split into tiles instead of rows. Cached
+	 * tiles are copied into the image and only the missing ones are taken by
+	 * workers and calculated, so a panned image requires only the newly
+	 * exposed tiles and a previously shown image is sent immediately.
+	 * <p>
+	 * Time each worker spent calculating is measured, {@link Utilisation} of
+	 * the workers during the last finished request is returned by
+	 * {@link #getLastUtilisation()}.
 	 * 
 	 * @author Filip Husnjak
 	 */
-	private static class FractalProducer implements IFractalProducer {
+	static class FractalProducer implements IFractalProducer {
 		
 		/**
 		 * Minimum distance between old and newly created complex number using Newtons formula
 		 */
-		private static final double convergenceTreshold = 0.001;
+		static final double convergenceTreshold = 0.001;
 		
 		/**
 		 * Minimum distance between closes root and given complex number
 		 */
-		private static final double rootTreshold = 0.002;
+		static final double rootTreshold = 0.002;
 		
 		/**
 		 * Maximum number of iterations when trying to converge
 		 */
-		private static final int maxIter = 16 * 16 * 16;
+		static final int maxIter = 16 * 16 * 16;
 		
 		/**
-		 * Rooted polynomial given through constructor
+		 * Maximum number of pixels in a row or column of the coarse version of the fractal
 		 */
-		private final ComplexRootedPolynomial rootedPolynomial;
+		static final int coarseSize = 128;
+		
+		/**
+		 * Maximum number of iterations when calculating coarse version of the fractal
+		 */
+		static final int coarseMaxIter = 64;
+		
+		/**
+		 * Minimum number of milliseconds between two partial results sent to the observer
+		 */
+		static final long refreshInterval = 100;
+		
+		/**
+		 * Maximum number of tiles in the cache shared by producers created for a
+		 * polynomial, each tile takes 8 kB
+		 */
+		static final int tileCacheCapacity = 2048;
+		
+		/**
+		 * Cache of tiles shared by producers created for a polynomial
+		 */
+		private static final NewtonTileCache sharedTileCache = new NewtonTileCache(tileCacheCapacity);
+		
+		/**
+		 * Kernel calculating pixels for the polynomial given through constructor
+		 */
+		private final NewtonKernel kernel;
+		
+		/**
+		 * Kernel calculating coarse version of the fractal
+		 */
+		private final NewtonKernel coarseKernel;
+		
+		/**
+		 * Cache of calculated tiles, {@code null} if image is calculated row by row
+		 */
+		private final NewtonTileCache tileCache;
+		
+		/**
+		 * Number of workers calculating each request
+		 */
+		private final int workers;
 		
 		/**
 		 * Thread pool whose threads are daemon
 		 */
-		private ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), 
-				(r) -> {
-					Thread t = new Thread(r);
-					t.setDaemon(true);
-					return t;
-				});
+		private final ExecutorService pool;
+		
+		/**
+		 * Utilisation of the workers during the last finished request
+		 */
+		private volatile Utilisation lastUtilisation;
 		
 		/**
 		 * Constructs new {@code FractalProducer} with specified rootedPolynomial.
+		 * Calculated tiles are kept in the cache shared by all such producers.
 		 * 
 		 * @param rootedPolynomial
 		 *        rooted version of a polynomial whose closest roots are to be calculated
 		 * @throws NullPointerException if the given polynomial is {@code null}
 		 */
 		public FractalProducer(ComplexRootedPolynomial rootedPolynomial) {
-			this.rootedPolynomial = Objects.requireNonNull(rootedPolynomial, "Given polynomial cannot be null!");
+			this(NewtonKernel.create(Objects.requireNonNull(rootedPolynomial, "Given polynomial cannot be null!"),
+					maxIter, convergenceTreshold, rootTreshold), sharedTileCache);
+		}
+
+		/**
+		 * Constructs new {@code FractalProducer} which calculates pixels row by
+		 * row using the given kernel.
+		 * 
+		 * @param kernel
+		 *        kernel calculating pixels
+		 * @throws NullPointerException if the given kernel is {@code null}
+		 */
+		FractalProducer(NewtonKernel kernel) {
+			this(kernel, null);
+		}
+
+		/**
+		 * Constructs new {@code FractalProducer} which calculates pixels using
+		 * the given kernel and keeps calculated tiles in the given cache.
+		 * 
+		 * @param kernel
+		 *        kernel calculating pixels
+		 * @param tileCache
+		 *        cache of calculated tiles, {@code null} if image is to be
+		 *        calculated row by row
+		 * @throws NullPointerException if the given kernel is {@code null}
+		 */
+		FractalProducer(NewtonKernel kernel, NewtonTileCache tileCache) {
+			this(kernel, tileCache, Runtime.getRuntime().availableProcessors());
+		}
+
+		/**
+		 * Constructs new {@code FractalProducer} which calculates pixels using
+		 * the given kernel and number of workers and keeps calculated tiles in
+		 * the given cache.
+		 * 
+		 * @param kernel
+		 *        kernel calculating pixels
+		 * @param tileCache
+		 *        cache of calculated tiles, {@code null} if image is to be
+		 *        calculated row by row
+		 * @param workers
+		 *        number of workers, each one has its own thread
+		 * @throws NullPointerException if the given kernel is {@code null}
+		 * @throws IllegalArgumentException if the given number of workers is not
+		 *         positive
+		 */
+		FractalProducer(NewtonKernel kernel, NewtonTileCache tileCache, int workers) {
+			this.kernel = Objects.requireNonNull(kernel, "Given kernel cannot be null!");
+			this.coarseKernel = kernel.withMaxIter(coarseMaxIter);
+			this.tileCache = tileCache;
+			if (workers < 1) {
+				throw new IllegalArgumentException("Number of workers must be positive!");
+			}
+			this.workers = workers;
+			this.pool = Executors.newFixedThreadPool(workers, (r) -> {
+				Thread t = new Thread(r);
+				t.setDaemon(true);
+				return t;
+			});
+		}
+
+		/**
+		 * Returns utilisation of the workers during the last request which was
+		 * not cancelled and required some calculation, or {@code null} if there
+		 * was no such request.
+		 * 
+		 * @return utilisation of the workers during the last finished request
+		 */
+		Utilisation getLastUtilisation() {
+			return lastUtilisation;
 		}
 
 		/**
@@ -120,172 +257,373 @@ public class Newton {
 		@Override
 		public void produce(double reMin, double reMax, double imMin, double imMax, int width, int height,
 				long requestNo, IFractalResultObserver observer, AtomicBoolean cancel) {
-			ComplexPolynomial normalPolynomial = rootedPolynomial.toComplexPolynom();
-			ComplexPolynomial derivedPolynomial = normalPolynomial.derive();
 			short[] data = new short[width * height];
-			int yStart = 0, n = 8 * Runtime.getRuntime().availableProcessors();
-			int howMany = height / n;
-			int left = height % n;
+			short colors = (short)(kernel.order() + 1);
+			if (cancel.get()) return;
+			NewtonTileCache.Viewport view = tileCache == null ? null
+					: tileCache.viewport(kernel, reMin, reMax, imMin, imMax, width, height);
+			if (view != null) {
+				produceTiles(view, reMin, reMax, imMin, imMax, width, height, requestNo, observer, cancel, data,
+						colors);
+				return;
+			}
+			if (produceCoarse(reMin, reMax, imMin, imMax, width, height, data)) {
+				if (cancel.get()) return;
+				observer.acceptResult(data.clone(), colors, requestNo);
+			}
+			schedule(height, y -> kernel.fill(data, width, height, y, y + 1, reMin, reMax, imMin, imMax),
+					requestNo, observer, cancel, data, colors);
+		}
+		
+		/**
+		 * Produces the image tile by tile. Coarse version is calculated only if
+		 * some of the tiles are not cached, cached tiles are copied over it
+		 * before it is sent to the observer. Missing tiles are calculated by the
+		 * workers.
+		 * 
+		 * @param view
+		 *        viewport mapped onto the grid of tiles
+		 * @param reMin
+		 *        minimum real part of complex number in observed complex plane
+		 * @param reMax
+		 *        maximum real part of complex number in observed complex plane
+		 * @param imMin
+		 *        minimum imaginary part of complex number in observed complex plane
+		 * @param imMax
+		 *        maximum imaginary part of complex number in observed complex plane
+		 * @param width
+		 *        number of pixels in a row
+		 * @param height
+		 *        number of pixels in each column
+		 * @param requestNo
+		 *        number of the request sent to the observer
+		 * @param observer
+		 *        observer which is sent the results
+		 * @param cancel
+		 *        flag which is set once the result is no longer needed
+		 * @param data
+		 *        array to be filled
+		 * @param colors
+		 *        number of colors sent to the observer
+		 */
+		private void produceTiles(NewtonTileCache.Viewport view, double reMin, double reMax, double imMin,
+				double imMax, int width, int height, long requestNo, IFractalResultObserver observer,
+				AtomicBoolean cancel, short[] data, short colors) {
+			int tileCount = view.getTileCount();
+			boolean complete = true;
+			for (int i = 0; i < tileCount && complete; ++i) {
+				complete = view.isCached(i);
+			}
+			boolean coarse = !complete && produceCoarse(reMin, reMax, imMin, imMax, width, height, data);
+			List<Integer> missing = new ArrayList<>();
+			for (int i = 0; i < tileCount; ++i) {
+				if (!view.copyCached(i, data)) {
+					missing.add(i);
+				}
+			}
+			if (cancel.get()) return;
+			if (missing.isEmpty()) {
+				observer.acceptResult(data, colors, requestNo);
+				return;
+			}
+			if (coarse) {
+				observer.acceptResult(data.clone(), colors, requestNo);
+			}
+			schedule(missing.size(), i -> view.calculate(missing.get(i), data), requestNo, observer, cancel,
+					data, colors);
+		}
+		
+		/**
+		 * Starts the workers which perform the given task for units from
+		 * {@code 0} to {@code units - 1}, each unit is taken by the first worker
+		 * which asks for it. Results are sent to the observer as the units are
+		 * finished and once all of them are finished, utilisation of the
+		 * workers is remembered unless the request was cancelled.
+		 * 
+		 * @param units
+		 *        number of units
+		 * @param task
+		 *        task calculating the unit with the given index
+		 * @param requestNo
+		 *        number of the request sent to the observer
+		 * @param observer
+		 *        observer which is sent the results
+		 * @param cancel
+		 *        flag which is set once the result is no longer needed
+		 * @param data
+		 *        array filled by the task
+		 * @param colors
+		 *        number of colors sent to the observer
+		 */
+		private void schedule(int units, IntConsumer task, long requestNo, IFractalResultObserver observer,
+				AtomicBoolean cancel, short[] data, short colors) {
+			long start = System.nanoTime();
+			AtomicInteger next = new AtomicInteger();
+			List<Worker> started = new ArrayList<>();
 			List<Future<?>> results = new ArrayList<Future<?>>();
-			for (int i = 0; i < n - 1; ++i) {
-				results.add(pool.submit(new Job(yStart, yStart + howMany, width, height, reMin, reMax, imMin,
-						imMax, normalPolynomial, derivedPolynomial, data)));
-				yStart += howMany;
+			for (int i = 0; i < Math.min(workers, units); ++i) {
+				Worker worker = new Worker(next, units, task, cancel);
+				started.add(worker);
+				results.add(pool.submit(worker));
 			}
-			results.add(pool.submit(new Job(yStart, yStart + howMany + left, width, height, reMin, reMax, imMin,
-					imMax, normalPolynomial, derivedPolynomial, data)));
-			for (Future<?> result: results) {
-				while (true) {
+			if (deliver(results, requestNo, observer, cancel, data, colors)) {
+				lastUtilisation = new Utilisation(System.nanoTime() - start, started);
+				observer.acceptResult(data, colors, requestNo);
+			}
+		}
+		
+		/**
+		 * Waits for the given workers and sends the current state of the image to
+		 * the observer every {@link #refreshInterval} milliseconds until all of
+		 * them are finished. If cancellation flag is set, remaining workers are
+		 * cancelled and nothing more is sent.
+		 * 
+		 * @param results
+		 *        workers calculating the image
+		 * @param requestNo
+		 *        number of the request sent to the observer
+		 * @param observer
+		 *        observer which is sent the results
+		 * @param cancel
+		 *        flag which is set once the result is no longer needed
+		 * @param data
+		 *        array filled by the workers
+		 * @param colors
+		 *        number of colors sent to the observer
+		 * @return {@code true} if all workers finished, {@code false} if the
+		 *         request was cancelled
+		 */
+		private boolean deliver(List<Future<?>> results, long requestNo, IFractalResultObserver observer,
+				AtomicBoolean cancel, short[] data, short colors) {
+			long refreshed = System.nanoTime();
+			for (Future<?> result : results) {
+				while (!cancel.get()) {
 					try {
-						result.get();
+						long remaining = refreshInterval * 1_000_000 - (System.nanoTime() - refreshed);
+						result.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
 						break;
+					} catch (TimeoutException e) {
+						observer.acceptResult(data.clone(), colors, requestNo);
+						refreshed = System.nanoTime();
 					} catch (InterruptedException | ExecutionException e) {
 					}
 				}
+				if (cancel.get()) {
+					results.forEach(r -> r.cancel(false));
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		/**
+		 * Calculates coarse version of the fractal and fills the given array with
+		 * it, each pixel of the coarse version covers square of pixels of the
+		 * given array. Nothing is calculated if the image is not larger than
+		 * {@link #coarseSize} pixels in either direction.
+		 * 
+		 * @param reMin
+		 *        minimum real part of complex number in observed complex plane
+		 * @param reMax
+		 *        maximum real part of complex number in observed complex plane
+		 * @param imMin
+		 *        minimum imaginary part of complex number in observed complex plane
+		 * @param imMax
+		 *        maximum imaginary part of complex number in observed complex plane
+		 * @param width
+		 *        number of pixels in a row
+		 * @param height
+		 *        number of pixels in each column
+		 * @param data
+		 *        array to be filled
+		 * @return {@code true} if coarse version was calculated
+		 */
+		private boolean produceCoarse(double reMin, double reMax, double imMin, double imMax, int width,
+				int height, short[] data) {
+			int step = (Math.max(width, height) + coarseSize - 1) / coarseSize;
+			if (step < 2) return false;
+			int coarseWidth = Math.max(2, (width + step - 1) / step);
+			int coarseHeight = Math.max(2, (height + step - 1) / step);
+			short[] coarse = new short[coarseWidth * coarseHeight];
+			coarseKernel.fill(coarse, coarseWidth, coarseHeight, 0, coarseHeight, reMin, reMax, imMin, imMax);
+			for (int y = 0; y < height; ++y) {
+				int offset = y / step * coarseWidth;
+				for (int x = 0; x < width; ++x) {
+					data[y * width + x] = coarse[offset + x / step];
+				}
 			}
-			observer.acceptResult(data, (short)(normalPolynomial.order() + 1), requestNo);
+			return true;
 		}
 		
 		/**
-		 * Represents a Job that is executed by workers in created Thread pool.
-		 * It fills the {@link #data} array on proper indexes with proper values.
-		 * It has defined yFrom and yTo that represent which part of window height
-		 * this Job needs to process. So in total this job processes 
-		 * {@code (yTo - yFrom) * width} pixels.
+		 * Worker executed in created Thread pool. It repeatedly takes the next
+		 * unit which is not taken yet and performs the task for it, until all
+		 * units are taken. Before each unit worker checks cancellation flag and
+		 * stops once it is set. Time spent performing the task and number of
+		 * performed units are counted.
 		 * 
 		 * @author Filip Husnjak
 		 */
-		private class Job implements Runnable {
-
+		private static class Worker implements Runnable {
+			
 			/**
-			 * Start y value
+			 * Index of the next unit which is not taken yet, shared by all workers
 			 */
-			private int yFrom;
+			private AtomicInteger next;
 			
 			/**
-			 * Last y value to be processed is yTo - 1
+			 * Number of units
 			 */
-			private int yTo;
+			private int units;
 			
 			/**
-			 * Number of pixels in a row
+			 * Task calculating the unit with the given index
 			 */
-			private int width;
+			private IntConsumer task;
 			
 			/**
-			 * Number of pixels in each column
+			 * Flag which is set once the result is no longer needed
 			 */
-			private int height;
+			private AtomicBoolean cancel;
 			
 			/**
-			 * Minimum real part of complex number in observed complex plane
+			 * Number of nanoseconds spent performing the task
 			 */
-			private double reMin;
+			private long busyTime;
 			
 			/**
-			 * Maximum real part of complex number in observed complex plane
+			 * Number of performed units
 			 */
-			private double reMax;
+			private int performed;
 			
 			/**
-			 * Minimum imaginary part of complex number in observed complex plane
+			 * Constructs new Worker with specified parameters.
+			 * 
+			 * @param next
+			 *        index of the next unit which is not taken yet, shared by all workers
+			 * @param units
+			 *        number of units
+			 * @param task
+			 *        task calculating the unit with the given index
+			 * @param cancel
+			 *        flag which is set once the result is no longer needed
 			 */
-			private double imMin;
+			public Worker(AtomicInteger next, int units, IntConsumer task, AtomicBoolean cancel) {
+				this.next = next;
+				this.units = units;
+				this.task = task;
+				this.cancel = cancel;
+			}
 			
 			/**
-			 * Maximum imaginary part of complex number in observed complex plane
+			 * {@inheritDoc}
 			 */
-			private double imMax;
+			@Override
+			public void run() {
+				while (!cancel.get()) {
+					int unit = next.getAndIncrement();
+					if (unit >= units) break;
+					long start = System.nanoTime();
+					task.accept(unit);
+					busyTime += System.nanoTime() - start;
+					performed++;
+				}
+			}
+			
+		}
+		
+		/**
+		 * Utilisation of the workers during a request: duration of the request
+		 * and, for each worker, time spent calculating and number of calculated
+		 * units, which are rows or tiles. Utilisation of a worker is the part of
+		 * the request during which it was calculating, if it is low the worker
+		 * was waiting for its thread or had nothing left to take while the
+		 * others were still calculating.
+		 * 
+		 * @author Filip Husnjak
+		 */
+		static class Utilisation {
 			
 			/**
-			 * Polynomial used for calculations in its normal form
+			 * Number of nanoseconds from starting the workers until all of them finished
 			 */
-			private ComplexPolynomial normalPolynomial;
+			private final long wallTime;
 			
 			/**
-			 * Derivation of a polynomial used for calculations
+			 * Number of nanoseconds each worker spent calculating
 			 */
-			private ComplexPolynomial derivedPolynomial;
+			private final long[] busyTimes;
 			
 			/**
-			 * Array to be filled with proper values
+			 * Number of units each worker calculated
 			 */
-			private short[] data;
+			private final int[] units;
 			
 			/**
-			 * Constructs new Job with specified parameters.
+			 * Constructs new {@code Utilisation} of the given finished workers.
 			 * 
-			 * @param yFrom
-			 *        start y value
-			 * @param yTo
-			 *        last y value to be processed is yTo - 1
-			 * @param width
-			 *        number of pixels in a row
-			 * @param height
-			 *        number of pixels in each column
-			 * @param reMin
-			 *        minimum real part of complex number in observed complex plane
-			 * @param reMax
-			 *        maximum real part of complex number in observed complex plane
-			 * @param imMin
-			 *        minimum imaginary part of complex number in observed complex plane
-			 * @param imMax
-			 *        maximum imaginary part of complex number in observed complex plane
-			 * @param normalPolynomial
-			 *        polynomial used for calculations in its normal form
-			 * @param derivedPolynomial
-			 *        derivation of a polynomial used for calculations
-			 * @param data
-			 *        array to be filled with proper values
+			 * @param wallTime
+			 *        number of nanoseconds from starting the workers until all of them finished
+			 * @param workers
+			 *        finished workers
 			 */
-			public Job(int yFrom, int yTo, int width, int height, double reMin, double reMax, double imMin,
-					double imMax, ComplexPolynomial normalPolynomial, ComplexPolynomial derivedPolynomial, short[] data) {
-				super();
-				this.yFrom = yFrom;
-				this.yTo = yTo;
-				this.width = width;
-				this.height = height;
-				this.reMin = reMin;
-				this.reMax = reMax;
-				this.imMin = imMin;
-				this.imMax = imMax;
-				this.normalPolynomial = normalPolynomial;
-				this.derivedPolynomial = derivedPolynomial;
-				this.data = data;
+			private Utilisation(long wallTime, List<Worker> workers) {
+				this.wallTime = wallTime;
+				this.busyTimes = workers.stream().mapToLong(w -> w.busyTime).toArray();
+				this.units = workers.stream().mapToInt(w -> w.performed).toArray();
 			}
 			
 			/**
-			 * Calculates and returns complex number in complex plane based on 
-			 * x, y, reMax, reMin, imMax, imMin, width and height values.
+			 * Returns number of nanoseconds from starting the workers until all of
+			 * them finished.
 			 * 
-			 * @param x
-			 *        x position of a pixel
-			 * @param y
-			 *        y position of a pixel
-			 * @return complex number based on x, y, reMax, reMin,
-			 *         imMax, imMin, width and height values
+			 * @return duration of the request in nanoseconds
 			 */
-			private Complex calculateComplex(int x, int y) {
-				return new Complex((double) x / (width - 1) * (reMax - reMin) + reMin,
-						(double) (height - 1 - y) / (height - 1) * (imMax - imMin) + imMin);
+			long getWallTime() {
+				return wallTime;
 			}
-
+			
 			/**
-			 * {@inheritDoc}
+			 * Returns number of workers which calculated the request.
+			 * 
+			 * @return number of workers
 			 */
-			@Override
-			public void run() {
-				for (int y = yFrom; y < yTo; ++y) {
-					for (int x = 0; x < width; ++x) {
-						Complex zn = calculateComplex(x, y), znold;
-						int iter = 0;
-						do {
-							znold = zn;
-							zn = zn.sub(normalPolynomial.apply(zn).div(derivedPolynomial.apply(zn)));
-						} while (++iter < maxIter && zn.sub(znold).getMagnitude() > convergenceTreshold);
-						data[y * width + x] = (short) (rootedPolynomial.indexOfClosestRootFor(zn, rootTreshold) + 1);
-					}
-				}
+			int getWorkers() {
+				return busyTimes.length;
+			}
+			
+			/**
+			 * Returns number of nanoseconds the given worker spent calculating.
+			 * 
+			 * @param worker
+			 *        index of the worker
+			 * @return busy time of the worker in nanoseconds
+			 */
+			long getBusyTime(int worker) {
+				return busyTimes[worker];
+			}
+			
+			/**
+			 * Returns number of units the given worker calculated.
+			 * 
+			 * @param worker
+			 *        index of the worker
+			 * @return number of calculated units
+			 */
+			int getUnits(int worker) {
+				return units[worker];
+			}
+			
+			/**
+			 * Returns part of the request during which the given worker was
+			 * calculating.
+			 * 
+			 * @param worker
+			 *        index of the worker
+			 * @return utilisation of the worker between {@code 0} and {@code 1}
+			 */
+			double getUtilisation(int worker) {
+				return wallTime == 0 ? 0 : (double) busyTimes[worker] / wallTime;
 			}
 			
 		}
@@ -0,0 +1,464 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexPolynomial;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * Calculates values of Newton fractal pixels without creating any objects.
+ * Factors of the polynomial, its derivation and its roots are kept in arrays
+ * of real and imaginary parts, polynomial and its derivation are calculated
+ * together by Horner's scheme on primitive values. Every operation, including
+ * the handling of infinite and {@code NaN} values, is performed exactly the way
+ * {@link Complex} performs it, so calculated values are identical to the values
+ * calculated using {@link ComplexPolynomial} and {@link ComplexRootedPolynomial}.
+ * <p>
+ * Kernels should be created using {@link #create(ComplexRootedPolynomial, int, double, double)},
+ * which returns {@link NewtonVectorKernel} if {@code jdk.incubator.vector} module
+ * is available and this kernel otherwise.
+ *
+ * @author Filip Husnjak
+ */
+public class NewtonKernel {
+
+	/**
+	 * Name of the module required by {@link NewtonVectorKernel}
+	 */
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+	/**
+	 * Real parts of the polynomial factors, index represents potency
+	 */
+	protected final double[] factorsRe;
+
+	/**
+	 * Imaginary parts of the polynomial factors, index represents potency
+	 */
+	protected final double[] factorsIm;
+
+	/**
+	 * Real parts of the derivation factors, index represents potency
+	 */
+	protected final double[] derivedRe;
+
+	/**
+	 * Imaginary parts of the derivation factors, index represents potency
+	 */
+	protected final double[] derivedIm;
+
+	/**
+	 * Real parts of the polynomial roots
+	 */
+	private final double[] rootsRe;
+
+	/**
+	 * Imaginary parts of the polynomial roots
+	 */
+	private final double[] rootsIm;
+
+	/**
+	 * Tells whether all factors of the polynomial and its derivation are finite
+	 */
+	protected final boolean finiteFactors;
+
+	/**
+	 * Maximum number of iterations when trying to converge
+	 */
+	protected final int maxIter;
+
+	/**
+	 * Minimum distance between old and newly created complex number using Newtons formula
+	 */
+	protected final double convergenceTreshold;
+
+	/**
+	 * Minimum distance between closest root and calculated complex number
+	 */
+	private final double rootTreshold;
+
+	/**
+	 * Constructs new {@code NewtonKernel} for the given polynomial with specified
+	 * parameters.
+	 *
+	 * @param rootedPolynomial
+	 *        rooted version of a polynomial whose closest roots are to be calculated
+	 * @param maxIter
+	 *        maximum number of iterations when trying to converge
+	 * @param convergenceTreshold
+	 *        minimum distance between old and newly created complex number
+	 * @param rootTreshold
+	 *        minimum distance between closest root and calculated complex number
+	 * @throws NullPointerException if the given polynomial is {@code null}
+	 * @throws IllegalArgumentException if the given polynomial has no roots or
+	 *         maximum number of iterations is not positive
+	 */
+	public NewtonKernel(ComplexRootedPolynomial rootedPolynomial, int maxIter, double convergenceTreshold,
+			double rootTreshold) {
+		Objects.requireNonNull(rootedPolynomial, "Given polynomial cannot be null!");
+		Complex[] roots = rootedPolynomial.getRoots();
+		if (roots.length == 0) {
+			throw new IllegalArgumentException("Polynomial has to have at least one root!");
+		}
+		if (maxIter < 1) {
+			throw new IllegalArgumentException("Maximum number of iterations has to be positive!");
+		}
+		ComplexPolynomial normalPolynomial = rootedPolynomial.toComplexPolynom();
+		Complex[] factors = normalPolynomial.getFactors();
+		Complex[] derived = normalPolynomial.derive().getFactors();
+		factorsRe = new double[factors.length];
+		factorsIm = new double[factors.length];
+		for (int i = 0; i < factors.length; ++i) {
+			factorsRe[i] = factors[i].getReal();
+			factorsIm[i] = factors[i].getImaginary();
+		}
+		derivedRe = new double[derived.length];
+		derivedIm = new double[derived.length];
+		for (int i = 0; i < derived.length; ++i) {
+			derivedRe[i] = derived[i].getReal();
+			derivedIm[i] = derived[i].getImaginary();
+		}
+		boolean finite = true;
+		for (int i = 0; i < factorsRe.length; ++i) {
+			finite &= isFinite(factorsRe[i], factorsIm[i]);
+		}
+		for (int i = 0; i < derivedRe.length; ++i) {
+			finite &= isFinite(derivedRe[i], derivedIm[i]);
+		}
+		finiteFactors = finite;
+		rootsRe = new double[roots.length];
+		rootsIm = new double[roots.length];
+		for (int i = 0; i < roots.length; ++i) {
+			rootsRe[i] = roots[i].getReal();
+			rootsIm[i] = roots[i].getImaginary();
+		}
+		this.maxIter = maxIter;
+		this.convergenceTreshold = convergenceTreshold;
+		this.rootTreshold = rootTreshold;
+	}
+
+	/**
+	 * Constructs new {@code NewtonKernel} which shares the polynomial and
+	 * tresholds with the given kernel, but performs at most specified number
+	 * of iterations.
+	 *
+	 * @param other
+	 *        kernel whose polynomial and tresholds are used
+	 * @param maxIter
+	 *        maximum number of iterations when trying to converge
+	 * @throws NullPointerException if the given kernel is {@code null}
+	 * @throws IllegalArgumentException if maximum number of iterations is not
+	 *         positive
+	 */
+	protected NewtonKernel(NewtonKernel other, int maxIter) {
+		Objects.requireNonNull(other, "Given kernel cannot be null!");
+		if (maxIter < 1) {
+			throw new IllegalArgumentException("Maximum number of iterations has to be positive!");
+		}
+		factorsRe = other.factorsRe;
+		factorsIm = other.factorsIm;
+		derivedRe = other.derivedRe;
+		derivedIm = other.derivedIm;
+		finiteFactors = other.finiteFactors;
+		rootsRe = other.rootsRe;
+		rootsIm = other.rootsIm;
+		this.maxIter = maxIter;
+		convergenceTreshold = other.convergenceTreshold;
+		rootTreshold = other.rootTreshold;
+	}
+
+	/**
+	 * Creates new kernel for the given polynomial with specified parameters. If
+	 * {@code jdk.incubator.vector} module is available, i.e. program was started
+	 * with {@code --add-modules jdk.incubator.vector}, {@link NewtonVectorKernel}
+	 * is returned, otherwise new {@code NewtonKernel} is returned.
+	 *
+	 * @param rootedPolynomial
+	 *        rooted version of a polynomial whose closest roots are to be calculated
+	 * @param maxIter
+	 *        maximum number of iterations when trying to converge
+	 * @param convergenceTreshold
+	 *        minimum distance between old and newly created complex number
+	 * @param rootTreshold
+	 *        minimum distance between closest root and calculated complex number
+	 * @return new kernel for the given polynomial
+	 * @throws NullPointerException if the given polynomial is {@code null}
+	 * @throws IllegalArgumentException if the given polynomial has no roots or
+	 *         maximum number of iterations is not positive
+	 */
+	public static NewtonKernel create(ComplexRootedPolynomial rootedPolynomial, int maxIter,
+			double convergenceTreshold, double rootTreshold) {
+		NewtonKernel kernel = new NewtonKernel(rootedPolynomial, maxIter, convergenceTreshold, rootTreshold);
+		if (!kernel.finiteFactors || ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+			return kernel;
+		}
+		try {
+			return (NewtonKernel) Class.forName(NewtonKernel.class.getPackageName() + ".NewtonVectorKernel")
+					.getConstructor(ComplexRootedPolynomial.class, int.class, double.class, double.class)
+					.newInstance(rootedPolynomial, maxIter, convergenceTreshold, rootTreshold);
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// Vector kernel was not compiled or cannot be used, scalar kernel is used instead
+			return kernel;
+		}
+	}
+
+	/**
+	 * Returns scalar kernel for the same polynomial and tresholds which performs
+	 * at most specified number of iterations. Such kernel calculates approximate
+	 * pixels in time which does not depend on maximum number of iterations of
+	 * this kernel.
+	 *
+	 * @param maxIter
+	 *        maximum number of iterations when trying to converge
+	 * @return kernel which performs at most specified number of iterations
+	 * @throws IllegalArgumentException if maximum number of iterations is not
+	 *         positive
+	 */
+	public NewtonKernel withMaxIter(int maxIter) {
+		return new NewtonKernel(this, maxIter);
+	}
+
+	/**
+	 * Returns an order of the polynomial.
+	 *
+	 * @return an order of the polynomial
+	 */
+	public short order() {
+		return (short) (factorsRe.length - 1);
+	}
+
+	/**
+	 * Fills rows from {@code yFrom} to {@code yTo - 1} of the given array with values of
+	 * the pixels. Pixel is mapped to the complex plane the same way
+	 * {@link Newton} maps it.
+	 *
+	 * @param data
+	 *        array to be filled, its length is {@code width * height}
+	 * @param width
+	 *        number of pixels in a row
+	 * @param height
+	 *        number of pixels in each column
+	 * @param yFrom
+	 *        first row to be filled
+	 * @param yTo
+	 *        last row to be filled is yTo - 1
+	 * @param reMin
+	 *        minimum real part of complex number in observed complex plane
+	 * @param reMax
+	 *        maximum real part of complex number in observed complex plane
+	 * @param imMin
+	 *        minimum imaginary part of complex number in observed complex plane
+	 * @param imMax
+	 *        maximum imaginary part of complex number in observed complex plane
+	 */
+	public void fill(short[] data, int width, int height, int yFrom, int yTo, double reMin, double reMax,
+			double imMin, double imMax) {
+		for (int y = yFrom; y < yTo; ++y) {
+			double im = (double) (height - 1 - y) / (height - 1) * (imMax - imMin) + imMin;
+			for (int x = 0; x < width; ++x) {
+				data[y * width + x] = valueAt((double) x / (width - 1) * (reMax - reMin) + reMin, im);
+			}
+		}
+	}
+
+	/**
+	 * Iterates Newtons formula starting from the given complex number and returns
+	 * the value of the pixel: index of the closest root increased by one, or
+	 * {@code 0} if no root is close enough.
+	 *
+	 * @param zRe
+	 *        real part of the starting complex number
+	 * @param zIm
+	 *        imaginary part of the starting complex number
+	 * @return value of the pixel
+	 */
+	public short valueAt(double zRe, double zIm) {
+		return valueAt(zRe, zIm, 0);
+	}
+
+	/**
+	 * Continues iterating Newtons formula from the given complex number as if
+	 * specified number of iterations had already been performed and returns
+	 * the value of the pixel.
+	 *
+	 * @param zRe
+	 *        real part of the current complex number
+	 * @param zIm
+	 *        imaginary part of the current complex number
+	 * @param iter
+	 *        number of already performed iterations, less than {@link #maxIter}
+	 * @return value of the pixel
+	 */
+	protected short valueAt(double zRe, double zIm, int iter) {
+		double[] fRe = factorsRe, fIm = factorsIm, dRe = derivedRe, dIm = derivedIm;
+		int n = fRe.length;
+		boolean converging;
+		do {
+			double oldRe = zRe, oldIm = zIm;
+			boolean zNaN = isNaN(zRe, zIm), zFinite = isFinite(zRe, zIm);
+			double pRe = fRe[n - 1], pIm = fIm[n - 1];
+			double qRe = dRe[n - 2], qIm = dIm[n - 2];
+			if (zFinite && finiteFactors) {
+				// Infinite or NaN part never becomes finite again, so checks
+				// performed by Complex are needed only if the result is not finite
+				for (int i = n - 2; i > 0; --i) {
+					double re = pRe * zRe - pIm * zIm;
+					pIm = pRe * zIm + pIm * zRe + fIm[i];
+					pRe = re + fRe[i];
+					re = qRe * zRe - qIm * zIm;
+					qIm = qRe * zIm + qIm * zRe + dIm[i - 1];
+					qRe = re + dRe[i - 1];
+				}
+				double re = pRe * zRe - pIm * zIm;
+				pIm = pRe * zIm + pIm * zRe + fIm[0];
+				pRe = re + fRe[0];
+			}
+			if (!zFinite || !finiteFactors || !isFinite(pRe, pIm) || !isFinite(qRe, qIm)) {
+				pRe = fRe[n - 1];
+				pIm = fIm[n - 1];
+				qRe = dRe[n - 2];
+				qIm = dIm[n - 2];
+				for (int i = n - 2; i >= 0; --i) {
+					// p = p * z + f[i]
+					if (zNaN || isNaN(pRe, pIm) || isNaN(fRe[i], fIm[i])) {
+						pRe = pIm = Double.NaN;
+					} else if (!zFinite || !isFinite(pRe, pIm)) {
+						pRe = Double.POSITIVE_INFINITY + fRe[i];
+						pIm = Double.POSITIVE_INFINITY + fIm[i];
+					} else {
+						double re = pRe * zRe - pIm * zIm;
+						pIm = pRe * zIm + pIm * zRe + fIm[i];
+						pRe = re + fRe[i];
+					}
+					if (i == 0) break;
+					// q = q * z + d[i - 1]
+					if (zNaN || isNaN(qRe, qIm) || isNaN(dRe[i - 1], dIm[i - 1])) {
+						qRe = qIm = Double.NaN;
+					} else if (!zFinite || !isFinite(qRe, qIm)) {
+						qRe = Double.POSITIVE_INFINITY + dRe[i - 1];
+						qIm = Double.POSITIVE_INFINITY + dIm[i - 1];
+					} else {
+						double re = qRe * zRe - qIm * zIm;
+						qIm = qRe * zIm + qIm * zRe + dIm[i - 1];
+						qRe = re + dRe[i - 1];
+					}
+				}
+			}
+			// z = z - p / q
+			double divRe, divIm;
+			boolean pFinite = isFinite(pRe, pIm), qFinite = isFinite(qRe, qIm);
+			if (isNaN(pRe, pIm) || isNaN(qRe, qIm)) {
+				divRe = divIm = Double.NaN;
+			} else if (pFinite && !qFinite) {
+				divRe = divIm = 0;
+			} else if (!pFinite || !qFinite || (qRe == 0 && qIm == 0)) {
+				divRe = divIm = Double.NaN;
+			} else {
+				double magnitude = Math.sqrt(qRe * qRe + qIm * qIm);
+				double squared = magnitude * magnitude;
+				double rRe = qRe / squared, rIm = -qIm / squared;
+				if (isNaN(rRe, rIm)) {
+					divRe = divIm = Double.NaN;
+				} else if (!isFinite(rRe, rIm)) {
+					divRe = divIm = Double.POSITIVE_INFINITY;
+				} else {
+					divRe = pRe * rRe - pIm * rIm;
+					divIm = pRe * rIm + pIm * rRe;
+				}
+			}
+			if (zNaN || isNaN(divRe, divIm)) {
+				zRe = zIm = Double.NaN;
+				converging = false;
+			} else {
+				zRe -= divRe;
+				zIm -= divIm;
+				double difRe = zRe - oldRe, difIm = zIm - oldIm;
+				converging = Math.sqrt(difRe * difRe + difIm * difIm) > convergenceTreshold;
+			}
+		} while (++iter < maxIter && converging);
+		return (short) (indexOfClosestRoot(zRe, zIm) + 1);
+	}
+
+	/**
+	 * Finds and returns index of the closest root to the given complex number. If there
+	 * are no roots whose distance from the given complex number is less than
+	 * {@link #rootTreshold}, {@code -1} is returned.
+	 *
+	 * @param zRe
+	 *        real part of the complex number
+	 * @param zIm
+	 *        imaginary part of the complex number
+	 * @return index of the closest root or {@code -1}
+	 */
+	protected int indexOfClosestRoot(double zRe, double zIm) {
+		if (isNaN(zRe, zIm)) return -1;
+		int index = -1;
+		double minTreshold = rootTreshold;
+		for (int i = 0; i < rootsRe.length; ++i) {
+			double difRe = zRe - rootsRe[i], difIm = zIm - rootsIm[i];
+			double dif = Math.sqrt(difRe * difRe + difIm * difIm);
+			if (dif < minTreshold) {
+				index = i;
+				minTreshold = dif;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return Objects.hash(Arrays.hashCode(factorsRe), Arrays.hashCode(factorsIm), Arrays.hashCode(rootsRe),
+				Arrays.hashCode(rootsIm), maxIter, convergenceTreshold, rootTreshold);
+	}
+
+	/**
+	 * Kernels are equal if they calculate identical pixels, i.e. if they have
+	 * the same polynomial, roots in the same order, maximum number of iterations
+	 * and tresholds, regardless of whether they are vectorized.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof NewtonKernel))
+			return false;
+		NewtonKernel other = (NewtonKernel) obj;
+		return Arrays.equals(factorsRe, other.factorsRe) && Arrays.equals(factorsIm, other.factorsIm)
+				&& Arrays.equals(rootsRe, other.rootsRe) && Arrays.equals(rootsIm, other.rootsIm)
+				&& maxIter == other.maxIter
+				&& Double.compare(convergenceTreshold, other.convergenceTreshold) == 0
+				&& Double.compare(rootTreshold, other.rootTreshold) == 0;
+	}
+
+	/**
+	 * Returns {@code true} if either part of the complex number is {@code NaN}.
+	 *
+	 * @param re
+	 *        real part of the complex number
+	 * @param im
+	 *        imaginary part of the complex number
+	 * @return {@code true} if either part is {@code NaN}
+	 */
+	private static boolean isNaN(double re, double im) {
+		return re != re || im != im;
+	}
+
+	/**
+	 * Returns {@code true} if both parts of the complex number are finite.
+	 *
+	 * @param re
+	 *        real part of the complex number
+	 * @param im
+	 *        imaginary part of the complex number
+	 * @return {@code true} if both parts are finite
+	 */
+	protected static boolean isFinite(double re, double im) {
+		return Double.isFinite(re) && Double.isFinite(im);
+	}
+
+}
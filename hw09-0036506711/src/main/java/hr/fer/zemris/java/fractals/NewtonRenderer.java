@@ -0,0 +1,271 @@
+package hr.fer.zemris.java.fractals;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.ImageIO;
+
+import hr.fer.zemris.java.fractals.Newton.FractalProducer;
+import hr.fer.zemris.java.fractals.Newton.FractalProducer.Utilisation;
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * Program that calculates Newton fractal without showing it and writes it into
+ * a file. Fractal is calculated by the same {@link FractalProducer} which is
+ * used by {@link Newton}, but without the tile cache since every image is
+ * calculated only once. Program accepts following arguments, all of which
+ * except roots are optional:
+ * <ul>
+ * <li>{@code --output file} - file the fractal is written into,
+ * {@code newton.png} by default
+ * <li>{@code --format png|raw} - format of the file, {@code raw} if the file
+ * name ends with {@code .raw} and {@code png} otherwise
+ * <li>{@code --size WIDTHxHEIGHT} - resolution of the image, {@code 1920x1080}
+ * by default
+ * <li>{@code --viewport reMin,reMax,imMin,imMax} - observed part of complex
+ * plane, {@code -2,2,-2,2} by default
+ * <li>{@code --max-iter n} - maximum number of iterations, 4096 by default
+ * <li>at least 2 roots of the polynomial in the format accepted by
+ * {@link Complex#parse(String)}
+ * </ul>
+ * Raw file contains values of the pixels row by row from the top one, each
+ * value is written as big-endian {@code short}. Value {@code 0} means that the
+ * iteration did not converge to a root, otherwise it is index of the root
+ * increased by one. In PNG file pixels which did not converge are black and
+ * each root has its own color.
+ * <p>
+ * Once the fractal is written program prints duration of each phase and number
+ * of pixels calculated per second. Program exits with status 2 if the arguments
+ * are not valid and with status 1 if the file could not be written.
+ *
+ * @author Filip Husnjak
+ */
+public class NewtonRenderer {
+
+	/**
+	 * Program starts here.
+	 *
+	 * @param args
+	 *        program arguments
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		Path output = Paths.get("newton.png");
+		String format = null;
+		int width = 1920, height = 1080;
+		double[] viewport = {-2, 2, -2, 2};
+		int maxIter = FractalProducer.maxIter;
+		List<Complex> roots = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; ++i) {
+				switch (args[i]) {
+				case "--output":
+					output = Paths.get(value(args, ++i));
+					break;
+				case "--format":
+					format = value(args, ++i);
+					if (!format.equals("png") && !format.equals("raw")) {
+						throw new IllegalArgumentException("Unknown format: " + format + "!");
+					}
+					break;
+				case "--size":
+					String[] size = value(args, ++i).split("x");
+					if (size.length != 2) {
+						throw new IllegalArgumentException("Size must be given as WIDTHxHEIGHT!");
+					}
+					width = Integer.parseInt(size[0]);
+					height = Integer.parseInt(size[1]);
+					if (width < 2 || height < 2) {
+						throw new IllegalArgumentException("Image must have at least 2 rows and columns!");
+					}
+					break;
+				case "--viewport":
+					String[] bounds = value(args, ++i).split(",");
+					if (bounds.length != 4) {
+						throw new IllegalArgumentException("Viewport must be given as reMin,reMax,imMin,imMax!");
+					}
+					for (int j = 0; j < 4; ++j) {
+						viewport[j] = Double.parseDouble(bounds[j]);
+					}
+					break;
+				case "--max-iter":
+					maxIter = Integer.parseInt(value(args, ++i));
+					break;
+				default:
+					roots.add(Complex.parse(args[i]));
+				}
+			}
+			if (roots.size() < 2) {
+				throw new IllegalArgumentException("You have to provide at least 2 roots!");
+			}
+			if (format == null) {
+				format = output.toString().endsWith(".raw") ? "raw" : "png";
+			}
+			render(output, format, width, height, viewport, maxIter, roots);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		} catch (IOException e) {
+			System.err.println("Fractal could not be written into " + output + ": " + e);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Calculates the fractal, writes it into the given file and prints
+	 * duration of each phase.
+	 *
+	 * @param output
+	 *        file the fractal is written into
+	 * @param format
+	 *        format of the file, {@code png} or {@code raw}
+	 * @param width
+	 *        number of pixels in a row
+	 * @param height
+	 *        number of pixels in each column
+	 * @param viewport
+	 *        minimum and maximum real part and minimum and maximum imaginary
+	 *        part of observed complex plane
+	 * @param maxIter
+	 *        maximum number of iterations
+	 * @param roots
+	 *        roots of the polynomial
+	 * @throws IOException if the file could not be written
+	 * @throws IllegalArgumentException if maximum number of iterations is not
+	 *         positive
+	 */
+	private static void render(Path output, String format, int width, int height, double[] viewport,
+			int maxIter, List<Complex> roots) throws IOException {
+		long start = System.nanoTime();
+		NewtonKernel kernel = NewtonKernel.create(new ComplexRootedPolynomial(Complex.ONE,
+				roots.toArray(new Complex[0])), maxIter, FractalProducer.convergenceTreshold,
+				FractalProducer.rootTreshold);
+		FractalProducer producer = new FractalProducer(kernel);
+		long created = System.nanoTime();
+
+		long[] received = new long[2];
+		short[][] result = new short[1][];
+		short[] colors = new short[1];
+		producer.produce(viewport[0], viewport[1], viewport[2], viewport[3], width, height, 0,
+				(data, numberOfColors, requestNo) -> {
+					received[1] = System.nanoTime();
+					if (received[0] == 0) {
+						received[0] = received[1];
+					}
+					result[0] = data;
+					colors[0] = numberOfColors;
+				}, new AtomicBoolean());
+		long calculated = System.nanoTime();
+
+		if (format.equals("png")) {
+			writePng(output, result[0], colors[0], width, height);
+		} else {
+			writeRaw(output, result[0]);
+		}
+		long written = System.nanoTime();
+
+		long pixels = (long) width * height;
+		System.out.printf("Rendered %dx%d, %d roots, maxIter=%d using %s into %s (%s)%n", width, height,
+				roots.size(), maxIter, kernel.getClass().getSimpleName(), output, format);
+		System.out.printf("setup:        %9.1f ms%n", (created - start) / 1e6);
+		System.out.printf("first result: %9.1f ms%n", (received[0] - created) / 1e6);
+		System.out.printf("calculation:  %9.1f ms  %8.2f Mpx/s%n", (calculated - created) / 1e6,
+				pixels * 1e3 / (calculated - created));
+		System.out.printf("write:        %9.1f ms%n", (written - calculated) / 1e6);
+		System.out.printf("total:        %9.1f ms  %8.2f Mpx/s%n", (written - start) / 1e6,
+				pixels * 1e3 / (written - start));
+		Utilisation utilisation = producer.getLastUtilisation();
+		if (utilisation != null) {
+			double min = 1, sum = 0;
+			for (int i = 0; i < utilisation.getWorkers(); ++i) {
+				min = Math.min(min, utilisation.getUtilisation(i));
+				sum += utilisation.getUtilisation(i);
+			}
+			System.out.printf("workers:      %9d    utilisation min=%.1f%% avg=%.1f%%%n", utilisation.getWorkers(),
+					min * 100, sum / utilisation.getWorkers() * 100);
+		}
+	}
+
+	/**
+	 * Writes the given pixels into the given file as PNG image. Pixels which did
+	 * not converge are black, colors of the roots are evenly spread around the
+	 * color wheel.
+	 *
+	 * @param output
+	 *        file the image is written into
+	 * @param data
+	 *        values of the pixels
+	 * @param colors
+	 *        number of different values
+	 * @param width
+	 *        number of pixels in a row
+	 * @param height
+	 *        number of pixels in each column
+	 * @throws IOException if the file could not be written
+	 */
+	private static void writePng(Path output, short[] data, short colors, int width, int height)
+			throws IOException {
+		int[] palette = new int[colors];
+		for (int i = 1; i < colors; ++i) {
+			palette[i] = Color.HSBtoRGB((float) (i - 1) / (colors - 1), 0.8f, 0.9f);
+		}
+		int[] rgb = new int[data.length];
+		for (int i = 0; i < data.length; ++i) {
+			rgb[i] = palette[data[i]];
+		}
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, width, height, rgb, 0, width);
+		try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(output))) {
+			if (!ImageIO.write(image, "png", os)) {
+				throw new IOException("PNG writer is not available");
+			}
+		}
+	}
+
+	/**
+	 * Writes the given pixels into the given file as big-endian {@code short}
+	 * values.
+	 *
+	 * @param output
+	 *        file the pixels are written into
+	 * @param data
+	 *        values of the pixels
+	 * @throws IOException if the file could not be written
+	 */
+	private static void writeRaw(Path output, short[] data) throws IOException {
+		try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+			for (short value : data) {
+				os.writeShort(value);
+			}
+		}
+	}
+
+	/**
+	 * Returns value of the option at the given index.
+	 *
+	 * @param args
+	 *        program arguments
+	 * @param index
+	 *        index of the value
+	 * @return value of the option
+	 * @throws IllegalArgumentException if the value is missing
+	 */
+	private static String value(String[] args, int index) {
+		if (index >= args.length) {
+			throw new IllegalArgumentException("Option " + args[index - 1] + " requires a value!");
+		}
+		return args[index];
+	}
+
+}
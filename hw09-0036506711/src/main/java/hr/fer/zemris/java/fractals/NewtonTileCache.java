@@ -0,0 +1,470 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cache of calculated parts of Newton fractals. Complex plane is covered by a
+ * grid of pixels whose size depends only on the zoom level, grid is split into
+ * square tiles of {@link #TILE_SIZE} pixels. Tiles are cached by the kernel
+ * which calculated them, which identifies the polynomial, maximum number of
+ * iterations and tresholds, by the zoom level and by their position in the
+ * grid. Once the capacity is reached, least recently used tile is removed.
+ * <p>
+ * Viewport is mapped to the grid by {@link #viewport}, so panning the image
+ * by whole pixels requires only newly exposed tiles to be calculated and
+ * returning to a previous view requires no calculation at all. Since pixels
+ * are snapped to the grid, image can be moved by less than half of a pixel
+ * compared to calculating the viewport directly.
+ * <p>
+ * Cache can be used by multiple threads at once.
+ *
+ * @author Filip Husnjak
+ */
+public class NewtonTileCache {
+
+	/**
+	 * Number of pixels in a row and column of a tile
+	 */
+	public static final int TILE_SIZE = 64;
+
+	/**
+	 * Largest absolute value of a position in the grid, positions are
+	 * represented exactly by doubles up to it
+	 */
+	private static final double MAX_POSITION = 1L << 52;
+
+	/**
+	 * Cached tiles, least recently used one is removed when there are too many
+	 * of them
+	 */
+	private final Map<Key, short[]> tiles;
+
+	/**
+	 * Number of tiles found in the cache
+	 */
+	private long hits;
+
+	/**
+	 * Number of tiles which were not found in the cache
+	 */
+	private long misses;
+
+	/**
+	 * Constructs new {@code NewtonTileCache} which holds at most specified
+	 * number of tiles.
+	 *
+	 * @param capacity
+	 *        maximum number of cached tiles
+	 * @throws IllegalArgumentException if the given capacity is negative
+	 */
+	public NewtonTileCache(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative!");
+		}
+		tiles = new LinkedHashMap<>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, short[]> eldest) {
+				return size() > capacity;
+			}
+
+		};
+	}
+
+	/**
+	 * Maps the given viewport onto the grid of the zoom level it belongs to.
+	 * Returns {@code null} if the viewport cannot be mapped, i.e. if it is
+	 * empty, not finite or too far from the origin for its zoom level.
+	 *
+	 * @param kernel
+	 *        kernel calculating the pixels
+	 * @param reMin
+	 *        minimum real part of complex number in observed complex plane
+	 * @param reMax
+	 *        maximum real part of complex number in observed complex plane
+	 * @param imMin
+	 *        minimum imaginary part of complex number in observed complex plane
+	 * @param imMax
+	 *        maximum imaginary part of complex number in observed complex plane
+	 * @param width
+	 *        number of pixels in a row
+	 * @param height
+	 *        number of pixels in each column
+	 * @return viewport mapped onto the grid or {@code null}
+	 * @throws NullPointerException if the given kernel is {@code null}
+	 */
+	public Viewport viewport(NewtonKernel kernel, double reMin, double reMax, double imMin, double imMax,
+			int width, int height) {
+		Objects.requireNonNull(kernel, "Given kernel cannot be null!");
+		if (width < 2 || height < 2) return null;
+		double scaleRe = zoomLevel((reMax - reMin) / (width - 1));
+		double scaleIm = zoomLevel((imMax - imMin) / (height - 1));
+		if (!(scaleRe > 0 && scaleIm > 0 && Double.isFinite(scaleRe) && Double.isFinite(scaleIm))) {
+			return null;
+		}
+		double left = Math.rint(reMin / scaleRe), top = Math.rint(imMax / scaleIm);
+		if (!(Math.abs(left) + width < MAX_POSITION && Math.abs(top) + height < MAX_POSITION)) {
+			return null;
+		}
+		return new Viewport(kernel, scaleRe, scaleIm, (long) left, (long) top, width, height);
+	}
+
+	/**
+	 * Returns number of tiles found in the cache.
+	 *
+	 * @return number of cache hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns number of tiles which were not found in the cache.
+	 *
+	 * @return number of cache misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns number of cached tiles.
+	 *
+	 * @return number of cached tiles
+	 */
+	public synchronized int size() {
+		return tiles.size();
+	}
+
+	/**
+	 * Returns cached tile with the given key, or {@code null} if it is not
+	 * cached.
+	 *
+	 * @param key
+	 *        key of the tile
+	 * @return cached tile or {@code null}
+	 */
+	private synchronized short[] get(Key key) {
+		short[] tile = tiles.get(key);
+		if (tile == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return tile;
+	}
+
+	/**
+	 * Returns {@code true} if tile with the given key is cached.
+	 *
+	 * @param key
+	 *        key of the tile
+	 * @return {@code true} if the tile is cached
+	 */
+	private synchronized boolean contains(Key key) {
+		return tiles.containsKey(key);
+	}
+
+	/**
+	 * Caches the given tile.
+	 *
+	 * @param key
+	 *        key of the tile
+	 * @param tile
+	 *        calculated tile
+	 */
+	private synchronized void put(Key key, short[] tile) {
+		tiles.put(key, tile);
+	}
+
+	/**
+	 * Returns zoom level of the given pixel size. Only upper 32 bits of its
+	 * mantissa are kept, so sizes differing only because of rounding errors
+	 * made while panning belong to the same zoom level.
+	 *
+	 * @param size
+	 *        size of a pixel
+	 * @return zoom level
+	 */
+	private static double zoomLevel(double size) {
+		long bits = Double.doubleToRawLongBits(size);
+		return Double.longBitsToDouble((bits + (1L << 19)) & ~((1L << 20) - 1));
+	}
+
+	/**
+	 * Viewport mapped onto the grid of pixels of its zoom level. Tiles covering
+	 * the viewport are indexed from {@code 0} to {@link #getTileCount()} - 1,
+	 * row by row from the top left one.
+	 *
+	 * @author Filip Husnjak
+	 */
+	public class Viewport {
+
+		/**
+		 * Kernel calculating the pixels
+		 */
+		private final NewtonKernel kernel;
+
+		/**
+		 * Width of a pixel in complex plane
+		 */
+		private final double scaleRe;
+
+		/**
+		 * Height of a pixel in complex plane
+		 */
+		private final double scaleIm;
+
+		/**
+		 * Column of the grid of the left column of the viewport
+		 */
+		private final long left;
+
+		/**
+		 * Row of the grid of the top row of the viewport, rows grow upwards
+		 */
+		private final long top;
+
+		/**
+		 * Number of pixels in a row
+		 */
+		private final int width;
+
+		/**
+		 * Number of pixels in each column
+		 */
+		private final int height;
+
+		/**
+		 * Column of tiles of the left tile
+		 */
+		private final long tileLeft;
+
+		/**
+		 * Row of tiles of the top tile
+		 */
+		private final long tileTop;
+
+		/**
+		 * Number of tiles in a row
+		 */
+		private final int tileColumns;
+
+		/**
+		 * Number of tiles in each column
+		 */
+		private final int tileRows;
+
+		/**
+		 * Constructs new {@code Viewport} with specified parameters.
+		 *
+		 * @param kernel
+		 *        kernel calculating the pixels
+		 * @param scaleRe
+		 *        width of a pixel in complex plane
+		 * @param scaleIm
+		 *        height of a pixel in complex plane
+		 * @param left
+		 *        column of the grid of the left column of the viewport
+		 * @param top
+		 *        row of the grid of the top row of the viewport
+		 * @param width
+		 *        number of pixels in a row
+		 * @param height
+		 *        number of pixels in each column
+		 */
+		private Viewport(NewtonKernel kernel, double scaleRe, double scaleIm, long left, long top, int width,
+				int height) {
+			this.kernel = kernel;
+			this.scaleRe = scaleRe;
+			this.scaleIm = scaleIm;
+			this.left = left;
+			this.top = top;
+			this.width = width;
+			this.height = height;
+			tileLeft = Math.floorDiv(left, TILE_SIZE);
+			tileTop = Math.floorDiv(top, TILE_SIZE);
+			tileColumns = (int) (Math.floorDiv(left + width - 1, TILE_SIZE) - tileLeft + 1);
+			tileRows = (int) (tileTop - Math.floorDiv(top - height + 1, TILE_SIZE) + 1);
+		}
+
+		/**
+		 * Returns number of tiles covering the viewport.
+		 *
+		 * @return number of tiles
+		 */
+		public int getTileCount() {
+			return tileColumns * tileRows;
+		}
+
+		/**
+		 * Returns {@code true} if tile with the given index is cached. Neither
+		 * the number of hits and misses nor the order of removal is affected.
+		 *
+		 * @param index
+		 *        index of the tile
+		 * @return {@code true} if the tile is cached
+		 */
+		public boolean isCached(int index) {
+			return contains(key(index));
+		}
+
+		/**
+		 * Copies tile with the given index into the given image if it is cached.
+		 *
+		 * @param index
+		 *        index of the tile
+		 * @param data
+		 *        pixels of the image, its length is {@code width * height}
+		 * @return {@code true} if the tile was cached
+		 */
+		public boolean copyCached(int index, short[] data) {
+			short[] tile = get(key(index));
+			if (tile == null) return false;
+			copy(index, tile, data);
+			return true;
+		}
+
+		/**
+		 * Calculates tile with the given index, caches it and copies it into
+		 * the given image.
+		 *
+		 * @param index
+		 *        index of the tile
+		 * @param data
+		 *        pixels of the image, its length is {@code width * height}
+		 */
+		public void calculate(int index, short[] data) {
+			Key key = key(index);
+			long x = key.x * TILE_SIZE, y = key.y * TILE_SIZE;
+			short[] tile = new short[TILE_SIZE * TILE_SIZE];
+			kernel.fill(tile, TILE_SIZE, TILE_SIZE, 0, TILE_SIZE, x * scaleRe, (x + TILE_SIZE - 1) * scaleRe,
+					y * scaleIm, (y + TILE_SIZE - 1) * scaleIm);
+			put(key, tile);
+			copy(index, tile, data);
+		}
+
+		/**
+		 * Returns key of the tile with the given index.
+		 *
+		 * @param index
+		 *        index of the tile
+		 * @return key of the tile
+		 * @throws IndexOutOfBoundsException if the index is out of bounds
+		 */
+		private Key key(int index) {
+			Objects.checkIndex(index, getTileCount());
+			return new Key(kernel, scaleRe, scaleIm, tileLeft + index % tileColumns,
+					tileTop - index / tileColumns);
+		}
+
+		/**
+		 * Copies part of the given tile which is inside the viewport into the
+		 * given image.
+		 *
+		 * @param index
+		 *        index of the tile
+		 * @param tile
+		 *        pixels of the tile
+		 * @param data
+		 *        pixels of the image
+		 */
+		private void copy(int index, short[] tile, short[] data) {
+			// Columns and rows of the grid covered by the tile
+			long tileX = (tileLeft + index % tileColumns) * TILE_SIZE;
+			long tileY = (tileTop - index / tileColumns) * TILE_SIZE + TILE_SIZE - 1;
+			int xFrom = (int) Math.max(0, tileX - left);
+			int xTo = (int) Math.min(width, tileX + TILE_SIZE - left);
+			int yFrom = (int) Math.max(0, top - tileY);
+			int yTo = (int) Math.min(height, top - tileY + TILE_SIZE);
+			for (int y = yFrom; y < yTo; ++y) {
+				System.arraycopy(tile, (int) (y - (top - tileY)) * TILE_SIZE + (int) (left + xFrom - tileX),
+						data, y * width + xFrom, xTo - xFrom);
+			}
+		}
+
+	}
+
+	/**
+	 * Key of a cached tile.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Key {
+
+		/**
+		 * Kernel which calculated the tile
+		 */
+		private final NewtonKernel kernel;
+
+		/**
+		 * Width of a pixel in complex plane
+		 */
+		private final double scaleRe;
+
+		/**
+		 * Height of a pixel in complex plane
+		 */
+		private final double scaleIm;
+
+		/**
+		 * Column of the tile
+		 */
+		private final long x;
+
+		/**
+		 * Row of the tile
+		 */
+		private final long y;
+
+		/**
+		 * Constructs new {@code Key} with specified parameters.
+		 *
+		 * @param kernel
+		 *        kernel which calculated the tile
+		 * @param scaleRe
+		 *        width of a pixel in complex plane
+		 * @param scaleIm
+		 *        height of a pixel in complex plane
+		 * @param x
+		 *        column of the tile
+		 * @param y
+		 *        row of the tile
+		 */
+		private Key(NewtonKernel kernel, double scaleRe, double scaleIm, long x, long y) {
+			this.kernel = kernel;
+			this.scaleRe = scaleRe;
+			this.scaleIm = scaleIm;
+			this.x = x;
+			this.y = y;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int hashCode() {
+			return Objects.hash(kernel, scaleRe, scaleIm, x, y);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return x == other.x && y == other.y && Double.compare(scaleRe, other.scaleRe) == 0
+					&& Double.compare(scaleIm, other.scaleIm) == 0 && kernel.equals(other.kernel);
+		}
+
+	}
+
+}
@@ -0,0 +1,245 @@
+package hr.fer.zemris.java.fractals;
+
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link NewtonKernel} which calculates a batch of pixels of a row at once
+ * using {@code jdk.incubator.vector} module. All pixels of a batch are iterated
+ * in lockstep, each one in its own lane, and lanes whose pixels converged are
+ * masked out until all pixels of the batch converge or maximum number of
+ * iterations is reached. Operations are performed in the same order as the
+ * scalar kernel performs them, so calculated values are identical. Whenever
+ * iteration of a pixel reaches an infinite or {@code NaN} value, that pixel is
+ * removed from the batch and finished by the scalar kernel.
+ * <p>
+ * This class requires {@code jdk.incubator.vector} module both to be compiled
+ * and to be loaded, it should therefore be created only through
+ * {@link NewtonKernel#create(ComplexRootedPolynomial, int, double, double)}.
+ *
+ * @author Filip Husnjak
+ */
+public class NewtonVectorKernel extends NewtonKernel {
+
+	/**
+	 * Species of vectors used by the kernel
+	 */
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	/**
+	 * Largest squared distance whose square root is not greater than
+	 * convergence treshold, since square root is monotonic and correctly
+	 * rounded, comparing squared distance with it is the same as comparing the
+	 * distance with convergence treshold
+	 */
+	private final double squaredConvergenceTreshold;
+
+	/**
+	 * Constructs new {@code NewtonVectorKernel} for the given polynomial with
+	 * specified parameters.
+	 *
+	 * @param rootedPolynomial
+	 *        rooted version of a polynomial whose closest roots are to be calculated
+	 * @param maxIter
+	 *        maximum number of iterations when trying to converge
+	 * @param convergenceTreshold
+	 *        minimum distance between old and newly created complex number
+	 * @param rootTreshold
+	 *        minimum distance between closest root and calculated complex number
+	 * @throws NullPointerException if the given polynomial is {@code null}
+	 * @throws IllegalArgumentException if the given polynomial has no roots or
+	 *         maximum number of iterations is not positive
+	 */
+	public NewtonVectorKernel(ComplexRootedPolynomial rootedPolynomial, int maxIter, double convergenceTreshold,
+			double rootTreshold) {
+		super(rootedPolynomial, maxIter, convergenceTreshold, rootTreshold);
+		// Every distance is greater than negative treshold
+		double squared = convergenceTreshold < 0 ? -1 : convergenceTreshold * convergenceTreshold;
+		if (Double.isFinite(squared)) {
+			while (Math.sqrt(squared) > convergenceTreshold) {
+				squared = Math.nextDown(squared);
+			}
+			while (Math.sqrt(Math.nextUp(squared)) <= convergenceTreshold) {
+				squared = Math.nextUp(squared);
+			}
+		}
+		squaredConvergenceTreshold = squared;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void fill(short[] data, int width, int height, int yFrom, int yTo, double reMin, double reMax,
+			double imMin, double imMax) {
+		if (!finiteFactors) {
+			super.fill(data, width, height, yFrom, yTo, reMin, reMax, imMin, imMax);
+			return;
+		}
+		Lanes lanes = new Lanes();
+		int length = SPECIES.length();
+		for (int y = yFrom; y < yTo; ++y) {
+			double rowIm = (double) (height - 1 - y) / (height - 1) * (imMax - imMin) + imMin;
+			for (int x = 0; x < width; x += length) {
+				int count = Math.min(length, width - x);
+				for (int i = 0; i < length; ++i) {
+					lanes.zRe[i] = (double) (x + i) / (width - 1) * (reMax - reMin) + reMin;
+					lanes.zIm[i] = rowIm;
+					lanes.active[i] = i < count;
+				}
+				fillBatch(data, y * width + x, count, lanes);
+			}
+		}
+	}
+
+	/**
+	 * Calculates values of the batch of pixels starting at the given index of
+	 * the given array. Vectors are loaded from the arrays of the given lanes and
+	 * stored back into them whenever they would outlive a loop iteration,
+	 * otherwise they would have to be allocated on the heap.
+	 *
+	 * @param data
+	 *        array to be filled
+	 * @param offset
+	 *        index of the first pixel of the batch
+	 * @param count
+	 *        number of pixels in the batch, not greater than number of lanes
+	 * @param lanes
+	 *        starting complex numbers and pixels of the batch
+	 */
+	private void fillBatch(short[] data, int offset, int count, Lanes lanes) {
+		int activeCount = count;
+		// Lanes whose pixels are finished by the scalar kernel
+		long scalar = 0;
+		int iter = 0;
+		do {
+			horner(lanes);
+			DoubleVector zRe = DoubleVector.fromArray(SPECIES, lanes.zRe, 0);
+			DoubleVector zIm = DoubleVector.fromArray(SPECIES, lanes.zIm, 0);
+			DoubleVector pRe = DoubleVector.fromArray(SPECIES, lanes.pRe, 0);
+			DoubleVector pIm = DoubleVector.fromArray(SPECIES, lanes.pIm, 0);
+			DoubleVector qRe = DoubleVector.fromArray(SPECIES, lanes.qRe, 0);
+			DoubleVector qIm = DoubleVector.fromArray(SPECIES, lanes.qIm, 0);
+			DoubleVector magnitude = qRe.mul(qRe).add(qIm.mul(qIm)).lanewise(VectorOperators.SQRT);
+			DoubleVector squared = magnitude.mul(magnitude);
+			// Reciprocal of q is (rRe, -rIm), sign is moved into the multiplication
+			DoubleVector rRe = qRe.div(squared), rIm = qIm.div(squared);
+			DoubleVector divRe = pRe.mul(rRe).add(pIm.mul(rIm));
+			DoubleVector divIm = pIm.mul(rRe).sub(pRe.mul(rIm));
+			DoubleVector newRe = zRe.sub(divRe), newIm = zIm.sub(divIm);
+			// Infinite or NaN p, q or reciprocal of q always makes their quotient infinite or
+			// NaN, multiplied by zero the sum becomes NaN. Lanes where Complex could take any
+			// other branch, or whose next complex number is not finite, are finished by the
+			// scalar kernel from the current complex number
+			VectorMask<Double> finite = newRe.add(newIm).add(divRe).add(divIm).mul(0)
+					.compare(VectorOperators.EQ, 0);
+			VectorMask<Double> active = VectorMask.fromArray(SPECIES, lanes.active, 0).and(finite);
+			if (active.trueCount() != activeCount) {
+				active.intoArray(lanes.finite, 0);
+				for (int i = 0; i < count; ++i) {
+					if (lanes.active[i] && !lanes.finite[i]) {
+						data[offset + i] = valueAt(lanes.zRe[i], lanes.zIm[i], iter);
+						scalar |= 1L << i;
+					}
+				}
+			}
+			DoubleVector difRe = newRe.sub(zRe), difIm = newIm.sub(zIm);
+			VectorMask<Double> converging = difRe.mul(difRe).add(difIm.mul(difIm))
+					.compare(VectorOperators.GT, squaredConvergenceTreshold);
+			zRe.blend(newRe, active).intoArray(lanes.zRe, 0);
+			zIm.blend(newIm, active).intoArray(lanes.zIm, 0);
+			VectorMask<Double> next = active.and(converging);
+			next.intoArray(lanes.active, 0);
+			activeCount = next.trueCount();
+		} while (++iter < maxIter && activeCount > 0);
+		for (int i = 0; i < count; ++i) {
+			if ((scalar & 1L << i) == 0) {
+				data[offset + i] = (short) (indexOfClosestRoot(lanes.zRe[i], lanes.zIm[i]) + 1);
+			}
+		}
+	}
+
+	/**
+	 * Calculates values of the polynomial and its derivation for complex numbers
+	 * of the given lanes by Horner's scheme.
+	 *
+	 * @param lanes
+	 *        lanes whose complex numbers are used, calculated values are
+	 *        written into them
+	 */
+	private void horner(Lanes lanes) {
+		double[] fRe = factorsRe, fIm = factorsIm, dRe = derivedRe, dIm = derivedIm;
+		int n = fRe.length;
+		DoubleVector.broadcast(SPECIES, fRe[n - 1]).intoArray(lanes.pRe, 0);
+		DoubleVector.broadcast(SPECIES, fIm[n - 1]).intoArray(lanes.pIm, 0);
+		DoubleVector.broadcast(SPECIES, dRe[n - 2]).intoArray(lanes.qRe, 0);
+		DoubleVector.broadcast(SPECIES, dIm[n - 2]).intoArray(lanes.qIm, 0);
+		for (int i = n - 2; i >= 0; --i) {
+			DoubleVector zRe = DoubleVector.fromArray(SPECIES, lanes.zRe, 0);
+			DoubleVector zIm = DoubleVector.fromArray(SPECIES, lanes.zIm, 0);
+			DoubleVector pRe = DoubleVector.fromArray(SPECIES, lanes.pRe, 0);
+			DoubleVector pIm = DoubleVector.fromArray(SPECIES, lanes.pIm, 0);
+			pRe.mul(zRe).sub(pIm.mul(zIm)).add(fRe[i]).intoArray(lanes.pRe, 0);
+			pRe.mul(zIm).add(pIm.mul(zRe)).add(fIm[i]).intoArray(lanes.pIm, 0);
+			if (i == 0) break;
+			DoubleVector qRe = DoubleVector.fromArray(SPECIES, lanes.qRe, 0);
+			DoubleVector qIm = DoubleVector.fromArray(SPECIES, lanes.qIm, 0);
+			qRe.mul(zRe).sub(qIm.mul(zIm)).add(dRe[i - 1]).intoArray(lanes.qRe, 0);
+			qRe.mul(zIm).add(qIm.mul(zRe)).add(dIm[i - 1]).intoArray(lanes.qIm, 0);
+		}
+	}
+
+	/**
+	 * Values of all lanes used while calculating a batch of pixels.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Lanes {
+
+		/**
+		 * Real parts of the current complex numbers
+		 */
+		private final double[] zRe = new double[SPECIES.length()];
+
+		/**
+		 * Imaginary parts of the current complex numbers
+		 */
+		private final double[] zIm = new double[SPECIES.length()];
+
+		/**
+		 * Real parts of the values of the polynomial
+		 */
+		private final double[] pRe = new double[SPECIES.length()];
+
+		/**
+		 * Imaginary parts of the values of the polynomial
+		 */
+		private final double[] pIm = new double[SPECIES.length()];
+
+		/**
+		 * Real parts of the values of the derivation
+		 */
+		private final double[] qRe = new double[SPECIES.length()];
+
+		/**
+		 * Imaginary parts of the values of the derivation
+		 */
+		private final double[] qIm = new double[SPECIES.length()];
+
+		/**
+		 * Lanes whose pixels are still iterated
+		 */
+		private final boolean[] active = new boolean[SPECIES.length()];
+
+		/**
+		 * Lanes whose pixels are iterated further after the check for
+		 * infinite and {@code NaN} values
+		 */
+		private final boolean[] finite = new boolean[SPECIES.length()];
+
+	}
+
+}
@@ -3,7 +3,7 @@ package hr.fer.zemris.java.raytracer;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import hr.fer.zemris.java.raytracer.model.GraphicalObject;
+import hr.fer.zemris.java.raytracer.model.BoundingVolumeHierarchy;
 import hr.fer.zemris.java.raytracer.model.IRayTracerProducer;
 import hr.fer.zemris.java.raytracer.model.IRayTracerResultObserver;
 import hr.fer.zemris.java.raytracer.model.LightSource;
@@ -42,6 +42,17 @@ public class RayCaster {
 	 */
 	private static IRayTracerProducer getIRayTracerProducer() {
 		return new IRayTracerProducer() {
+
+			/**
+			 * Scene of the program, the same one is used for every request
+			 */
+			private Scene scene = RayTracerViewer.createPredefinedScene();
+
+			/**
+			 * Hierarchy of the objects of the scene, built only once
+			 */
+			private BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(scene.getObjects());
+
 			/**
 			 * {@inheritDoc}
 			 */
@@ -57,7 +68,6 @@ public class RayCaster {
 				Point3D yAxis = zAxis.vectorProduct(xAxis);
 				Point3D screenCorner = view.sub(xAxis.scalarMultiply(horizontal / 2))
 						.modifyAdd(yAxis.scalarMultiply(vertical / 2));
-				Scene scene = RayTracerViewer.createPredefinedScene();
 				short[] rgb = new short[3];
 				int offset = 0;
 				for (int y = 0; y < height; y++) {
@@ -66,7 +76,7 @@ public class RayCaster {
 						Point3D screenPoint = screenCorner.add(xAxis.scalarMultiply(x * horizontal / (width - 1))
 								.modifySub(yAxis.scalarMultiply(y * vertical / (height - 1))));
 						Ray ray = Ray.fromPoints(eye, screenPoint);
-						tracer(scene, ray, rgb);
+						tracer(scene, hierarchy, ray, rgb);
 						if (check(x) && check(y)) {
 							System.out.println("Informacije za točku x=" + x + ", y=" + y);
 							System.out.println("Screen-point: " + pointToString(screenPoint));
@@ -115,21 +125,24 @@ public class RayCaster {
 	 * Determines the closest intersection of a given ray with sphere.
 	 * Then for each light source in the scene this method determines if that
 	 * light source has any impact on the reflection and if it does rgb array is
-	 * filled with proper values based on Phond reflection model.
+	 * filled with proper values based on Phond reflection model. Intersections
+	 * are found using hierarchy of the objects of the scene.
 	 * 
 	 * @param scene
 	 *        scene of the program
+	 * @param hierarchy
+	 *        hierarchy of the objects of the scene
 	 * @param ray
 	 *        ray from the observer thought the pixel on the screen
 	 * @param rgb
 	 *        array to be filled with proper values that represent intensity
 	 *        of each color
 	 */
-	protected static void tracer(Scene scene, Ray ray, short[] rgb) {
+	protected static void tracer(Scene scene, BoundingVolumeHierarchy hierarchy, Ray ray, short[] rgb) {
 		rgb[0] = 0;
 		rgb[1] = 0;
 		rgb[2] = 0;
-		RayIntersection closest = findClosestIntersection(scene, ray);
+		RayIntersection closest = hierarchy.findClosestRayIntersection(ray);
 		if (closest == null) {
 			return;
 		}
@@ -138,50 +151,23 @@ public class RayCaster {
 		rgb[2] = 15;
 		for (LightSource source : scene.getLights()) {
 			Ray sourceRay = Ray.fromPoints(source.getPoint(), closest.getPoint());
-			RayIntersection intersection = findClosestIntersection(scene, sourceRay);
-			if (intersection != null
-					&& source.getPoint().sub(closest.getPoint()).norm() > PRECISION + intersection.getDistance()) {
-				continue;
-			}
-			if (intersection == null) intersection = closest;
-			Point3D normal = intersection.getNormal();
+			double distance = source.getPoint().sub(closest.getPoint()).norm();
+			if (hierarchy.hasRayIntersectionCloserThan(sourceRay, distance - PRECISION)) continue;
+			Point3D normal = closest.getNormal();
 			double scalarProductDiffuse = -sourceRay.direction.scalarProduct(normal);
-			rgb[0] += source.getR() * intersection.getKdr() * scalarProductDiffuse;
-			rgb[1] += source.getG() * intersection.getKdg() * scalarProductDiffuse;
-			rgb[2] += source.getB() * intersection.getKdb() * scalarProductDiffuse;
+			rgb[0] += source.getR() * closest.getKdr() * scalarProductDiffuse;
+			rgb[1] += source.getG() * closest.getKdg() * scalarProductDiffuse;
+			rgb[2] += source.getB() * closest.getKdb() * scalarProductDiffuse;
 
 			Point3D rm = normal.scalarMultiply(-2 * sourceRay.direction.scalarProduct(normal))
 					.modifyAdd(sourceRay.direction).modifyNormalize();
-			double cos = rm.scalarProduct(ray.start.sub(intersection.getPoint()).modifyNormalize());
+			double cos = rm.scalarProduct(ray.start.sub(closest.getPoint()).modifyNormalize());
 			if (cos <= 0) continue;
-			double scalarProductReflect = Math.pow(cos, intersection.getKrn());
-			rgb[0] += source.getR() * intersection.getKrr() * scalarProductReflect;
-			rgb[1] += source.getG() * intersection.getKrg() * scalarProductReflect;
-			rgb[2] += source.getB() * intersection.getKrb() * scalarProductReflect;
-		}
-	}
-
-	/**
-	 * Finds and returns the closest intersection of a ray with any object in the scene.
-	 * If there are no intersections {@code null} is returned.
-	 * 
-	 * @param scene
-	 *        scene of the program
-	 * @param ray
-	 *        ray whose intersections are to be found
-	 * @return returns the closest intersection of a ray with any object in the scene
-	 */
-	private static RayIntersection findClosestIntersection(Scene scene, Ray ray) {
-		RayIntersection intersection = null;
-		for (GraphicalObject object : scene.getObjects()) {
-			if (intersection == null) {
-				intersection = object.findClosestRayIntersection(ray);
-			} else {
-				RayIntersection tmp = object.findClosestRayIntersection(ray);
-				intersection = tmp != null && tmp.getDistance() < intersection.getDistance() ? tmp : intersection;
-			}
+			double scalarProductReflect = Math.pow(cos, closest.getKrn());
+			rgb[0] += source.getR() * closest.getKrr() * scalarProductReflect;
+			rgb[1] += source.getG() * closest.getKrg() * scalarProductReflect;
+			rgb[2] += source.getB() * closest.getKrb() * scalarProductReflect;
 		}
-		return intersection;
 	}
 
 }
@@ -4,7 +4,7 @@ import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import hr.fer.zemris.java.raytracer.model.GraphicalObject;
+import hr.fer.zemris.java.raytracer.model.BoundingVolumeHierarchy;
 import hr.fer.zemris.java.raytracer.model.IRayTracerProducer;
 import hr.fer.zemris.java.raytracer.model.IRayTracerResultObserver;
 import hr.fer.zemris.java.raytracer.model.LightSource;
@@ -46,6 +46,16 @@ public class RayCasterParallel {
 		return new IRayTracerProducer() {
 			
 			private ForkJoinPool pool = new ForkJoinPool();
+
+			/**
+			 * Scene of the program, the same one is used for every request
+			 */
+			private Scene scene = RayTracerViewer.createPredefinedScene();
+
+			/**
+			 * Hierarchy of the objects of the scene, built only once
+			 */
+			private BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(scene.getObjects());
 			
 			/**
 			 * {@inheritDoc}
@@ -62,7 +72,6 @@ public class RayCasterParallel {
 				Point3D yAxis = zAxis.vectorProduct(xAxis);
 				Point3D screenCorner = view.sub(xAxis.scalarMultiply(horizontal / 2))
 						.modifyAdd(yAxis.scalarMultiply(vertical / 2));
-				Scene scene = RayTracerViewer.createPredefinedScene();
 
 				class Job extends RecursiveAction {
 
@@ -100,7 +109,7 @@ public class RayCasterParallel {
 										.add(xAxis.scalarMultiply(x * horizontal / (width - 1))
 												.modifySub(yAxis.scalarMultiply(y * vertical / (height - 1))));
 								Ray ray = Ray.fromPoints(eye, screenPoint);
-								tracer(scene, ray, rgb);
+								tracer(scene, hierarchy, ray, rgb);
 								red[offset] = rgb[0] > 255 ? 255 : rgb[0];
 								green[offset] = rgb[1] > 255 ? 255 : rgb[1];
 								blue[offset] = rgb[2] > 255 ? 255 : rgb[2];
@@ -124,21 +133,24 @@ public class RayCasterParallel {
 	 * Determines the closest intersection of a given ray with sphere.
 	 * Then for each light source in the scene this method determines if that
 	 * light source has any impact on the reflection and if it does rgb array is
-	 * filled with proper values based on Phond reflection model.
+	 * filled with proper values based on Phond reflection model. Intersections
+	 * are found using hierarchy of the objects of the scene.
 	 * 
 	 * @param scene
 	 *        scene of the program
+	 * @param hierarchy
+	 *        hierarchy of the objects of the scene
 	 * @param ray
 	 *        ray from the observer thought the pixel on the screen
 	 * @param rgb
 	 *        array to be filled with proper values that represent intensity
 	 *        of each color
 	 */
-	protected static void tracer(Scene scene, Ray ray, short[] rgb) {
+	protected static void tracer(Scene scene, BoundingVolumeHierarchy hierarchy, Ray ray, short[] rgb) {
 		rgb[0] = 0;
 		rgb[1] = 0;
 		rgb[2] = 0;
-		RayIntersection closest = findClosestIntersection(scene, ray);
+		RayIntersection closest = hierarchy.findClosestRayIntersection(ray);
 		if (closest == null) {
 			return;
 		}
@@ -147,50 +159,23 @@ public class RayCasterParallel {
 		rgb[2] = 15;
 		for (LightSource source : scene.getLights()) {
 			Ray sourceRay = Ray.fromPoints(source.getPoint(), closest.getPoint());
-			RayIntersection intersection = findClosestIntersection(scene, sourceRay);
-			if (intersection != null
-					&& source.getPoint().sub(closest.getPoint()).norm() > PRECISION + intersection.getDistance()) {
-				continue;
-			}
-			if (intersection == null) intersection = closest;
-			Point3D normal = intersection.getNormal();
+			double distance = source.getPoint().sub(closest.getPoint()).norm();
+			if (hierarchy.hasRayIntersectionCloserThan(sourceRay, distance - PRECISION)) continue;
+			Point3D normal = closest.getNormal();
 			double scalarProductDiffuse = -sourceRay.direction.scalarProduct(normal);
-			rgb[0] += source.getR() * intersection.getKdr() * scalarProductDiffuse;
-			rgb[1] += source.getG() * intersection.getKdg() * scalarProductDiffuse;
-			rgb[2] += source.getB() * intersection.getKdb() * scalarProductDiffuse;
+			rgb[0] += source.getR() * closest.getKdr() * scalarProductDiffuse;
+			rgb[1] += source.getG() * closest.getKdg() * scalarProductDiffuse;
+			rgb[2] += source.getB() * closest.getKdb() * scalarProductDiffuse;
 
 			Point3D rm = normal.scalarMultiply(-2 * sourceRay.direction.scalarProduct(normal))
 					.modifyAdd(sourceRay.direction).modifyNormalize();
-			double cos = rm.scalarProduct(ray.start.sub(intersection.getPoint()).modifyNormalize());
+			double cos = rm.scalarProduct(ray.start.sub(closest.getPoint()).modifyNormalize());
 			if (cos <= 0) continue;
-			double scalarProductReflect = Math.pow(cos, intersection.getKrn());
-			rgb[0] += source.getR() * intersection.getKrr() * scalarProductReflect;
-			rgb[1] += source.getG() * intersection.getKrg() * scalarProductReflect;
-			rgb[2] += source.getB() * intersection.getKrb() * scalarProductReflect;
-		}
-	}
-
-	/**
-	 * Finds and returns the closest intersection of a ray with any object in the scene.
-	 * If there are no intersections {@code null} is returned.
-	 * 
-	 * @param scene
-	 *        scene of the program
-	 * @param ray
-	 *        ray whose intersections are to be found
-	 * @return returns the closest intersection of a ray with any object in the scene
-	 */
-	private static RayIntersection findClosestIntersection(Scene scene, Ray ray) {
-		RayIntersection intersection = null;
-		for (GraphicalObject object : scene.getObjects()) {
-			if (intersection == null) {
-				intersection = object.findClosestRayIntersection(ray);
-			} else {
-				RayIntersection tmp = object.findClosestRayIntersection(ray);
-				intersection = tmp != null && tmp.getDistance() < intersection.getDistance() ? tmp : intersection;
-			}
+			double scalarProductReflect = Math.pow(cos, closest.getKrn());
+			rgb[0] += source.getR() * closest.getKrr() * scalarProductReflect;
+			rgb[1] += source.getG() * closest.getKrg() * scalarProductReflect;
+			rgb[2] += source.getB() * closest.getKrb() * scalarProductReflect;
 		}
-		return intersection;
 	}
 
 }
@@ -0,0 +1,98 @@
+package hr.fer.zemris.java.raytracer.model;
+
+import java.util.Objects;
+
+/**
+ * Axis aligned box in 3D coordinate system defined by its minimum and maximum
+ * coordinates. Box contains every point whose coordinates are between those
+ * of the minimum and maximum corner.
+ *
+ * @author Filip Husnjak
+ */
+public class BoundingBox {
+
+	/**
+	 * Minimum x coordinate
+	 */
+	private final double minX;
+
+	/**
+	 * Minimum y coordinate
+	 */
+	private final double minY;
+
+	/**
+	 * Minimum z coordinate
+	 */
+	private final double minZ;
+
+	/**
+	 * Maximum x coordinate
+	 */
+	private final double maxX;
+
+	/**
+	 * Maximum y coordinate
+	 */
+	private final double maxY;
+
+	/**
+	 * Maximum z coordinate
+	 */
+	private final double maxZ;
+
+	/**
+	 * Constructs new {@code BoundingBox} with specified corners.
+	 *
+	 * @param min
+	 *        corner with minimum coordinates
+	 * @param max
+	 *        corner with maximum coordinates
+	 * @throws NullPointerException if either corner is {@code null}
+	 * @throws IllegalArgumentException if any coordinate of the minimum corner
+	 *         is greater than the same coordinate of the maximum corner
+	 */
+	public BoundingBox(Point3D min, Point3D max) {
+		Objects.requireNonNull(min, "Given minimum corner cannot be null!");
+		Objects.requireNonNull(max, "Given maximum corner cannot be null!");
+		if (min.x > max.x || min.y > max.y || min.z > max.z) {
+			throw new IllegalArgumentException("Minimum corner cannot be greater than maximum corner!");
+		}
+		this.minX = min.x;
+		this.minY = min.y;
+		this.minZ = min.z;
+		this.maxX = max.x;
+		this.maxY = max.y;
+		this.maxZ = max.z;
+	}
+
+	/**
+	 * Returns corner of this box with minimum coordinates.
+	 *
+	 * @return corner with minimum coordinates
+	 */
+	public Point3D getMin() {
+		return new Point3D(minX, minY, minZ);
+	}
+
+	/**
+	 * Returns corner of this box with maximum coordinates.
+	 *
+	 * @return corner with maximum coordinates
+	 */
+	public Point3D getMax() {
+		return new Point3D(maxX, maxY, maxZ);
+	}
+
+	/**
+	 * Returns {@code true} if all coordinates of this box are finite, i.e.
+	 * neither infinite nor {@code NaN}.
+	 *
+	 * @return {@code true} if this box is finite
+	 */
+	public boolean isFinite() {
+		return Double.isFinite(minX) && Double.isFinite(minY) && Double.isFinite(minZ) && Double.isFinite(maxX)
+				&& Double.isFinite(maxY) && Double.isFinite(maxZ);
+	}
+
+}
@@ -0,0 +1,517 @@
+package hr.fer.zemris.java.raytracer.model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Bounding volume hierarchy of graphical objects used to find intersections of
+ * a ray with the objects without checking each one of them. Objects which
+ * implement {@link IBoundedObject} are stored in a binary tree whose every node
+ * has a box containing all objects below it, so whole subtrees whose boxes the
+ * ray misses, or which are farther than an already found intersection, are
+ * skipped. Tree is split using surface area heuristic: objects of a node are
+ * sorted by centers of their boxes along each axis and split where expected
+ * cost of checking both halves, which is proportional to their surface areas
+ * and numbers of objects, is the lowest. Other objects are checked for every
+ * ray.
+ * <p>
+ * Intersections are compared by distances reported by the objects, boxes are
+ * intersected with the whole line of the ray, so the same intersection is
+ * found as by checking every object in order of the given list and taking the
+ * first one with the smallest distance. Hierarchy is built once and cannot be
+ * changed, it can be used by multiple threads at once.
+ *
+ * @author Filip Husnjak
+ */
+public class BoundingVolumeHierarchy {
+
+	/**
+	 * Maximum number of objects in a leaf
+	 */
+	private static final int MAX_LEAF_SIZE = 4;
+
+	/**
+	 * Cost of intersecting a box of a node, relative to the cost of
+	 * intersecting an object
+	 */
+	private static final double TRAVERSAL_COST = 0.5;
+
+	/**
+	 * Entry distance of boxes which the ray misses
+	 */
+	private static final double MISS = Double.POSITIVE_INFINITY;
+
+	/**
+	 * Objects stored in the tree, objects of each leaf are consecutive
+	 */
+	private final GraphicalObject[] objects;
+
+	/**
+	 * Indexes of the objects stored in the tree in the given list
+	 */
+	private final int[] indexes;
+
+	/**
+	 * Objects which are checked for every ray
+	 */
+	private final GraphicalObject[] unbounded;
+
+	/**
+	 * Indexes of the objects which are checked for every ray in the given list
+	 */
+	private final int[] unboundedIndexes;
+
+	/**
+	 * Boxes of the nodes, minimum x, y and z coordinates followed by maximum
+	 * ones for each node
+	 */
+	private final double[] bounds;
+
+	/**
+	 * Index of the first object of each leaf or index of the right child of
+	 * each inner node, left child of an inner node directly follows it
+	 */
+	private final int[] first;
+
+	/**
+	 * Number of objects of each leaf, {@code 0} for inner nodes
+	 */
+	private final int[] count;
+
+	/**
+	 * Maximum number of nodes waiting to be visited during traversal
+	 */
+	private final int stackSize;
+
+	/**
+	 * Constructs new {@code BoundingVolumeHierarchy} of the given objects.
+	 *
+	 * @param objects
+	 *        objects whose intersections are to be found
+	 * @throws NullPointerException if the given list or any of its objects is
+	 *         {@code null}
+	 */
+	public BoundingVolumeHierarchy(List<? extends GraphicalObject> objects) {
+		Objects.requireNonNull(objects, "Given objects cannot be null!");
+		int n = objects.size();
+		double[] boxes = new double[6 * n];
+		int[] bounded = new int[n];
+		int[] other = new int[n];
+		int boundedCount = 0, otherCount = 0;
+		for (int i = 0; i < n; ++i) {
+			GraphicalObject object = Objects.requireNonNull(objects.get(i), "Given objects cannot contain null!");
+			BoundingBox box = object instanceof IBoundedObject ? ((IBoundedObject) object).getBoundingBox() : null;
+			if (box == null || !box.isFinite()) {
+				other[otherCount++] = i;
+				continue;
+			}
+			Point3D min = box.getMin(), max = box.getMax();
+			int o = 6 * boundedCount;
+			boxes[o] = min.x;
+			boxes[o + 1] = min.y;
+			boxes[o + 2] = min.z;
+			boxes[o + 3] = max.x;
+			boxes[o + 4] = max.y;
+			boxes[o + 5] = max.z;
+			bounded[boundedCount++] = i;
+		}
+
+		Builder builder = new Builder(boxes, boundedCount);
+		if (boundedCount > 0) {
+			builder.build(0, boundedCount, 1);
+		}
+		this.bounds = Arrays.copyOf(builder.bounds, 6 * builder.nodes);
+		this.first = Arrays.copyOf(builder.first, builder.nodes);
+		this.count = Arrays.copyOf(builder.count, builder.nodes);
+		this.stackSize = builder.depth + 1;
+		this.objects = new GraphicalObject[boundedCount];
+		this.indexes = new int[boundedCount];
+		for (int i = 0; i < boundedCount; ++i) {
+			indexes[i] = bounded[builder.order[i]];
+			this.objects[i] = objects.get(indexes[i]);
+		}
+		this.unboundedIndexes = Arrays.copyOf(other, otherCount);
+		this.unbounded = new GraphicalObject[otherCount];
+		for (int i = 0; i < otherCount; ++i) {
+			unbounded[i] = objects.get(other[i]);
+		}
+	}
+
+	/**
+	 * Returns number of nodes of the tree.
+	 *
+	 * @return number of nodes
+	 */
+	public int getNodeCount() {
+		return count.length;
+	}
+
+	/**
+	 * Finds and returns the closest intersection of the given ray with any
+	 * object. If there are no intersections {@code null} is returned.
+	 *
+	 * @param ray
+	 *        ray whose intersections are to be found
+	 * @return the closest intersection of the ray with any object
+	 */
+	public RayIntersection findClosestRayIntersection(Ray ray) {
+		RayIntersection closest = null;
+		int closestIndex = Integer.MAX_VALUE;
+		for (int i = 0; i < unbounded.length; ++i) {
+			RayIntersection intersection = unbounded[i].findClosestRayIntersection(ray);
+			if (isCloser(intersection, unboundedIndexes[i], closest, closestIndex)) {
+				closest = intersection;
+				closestIndex = unboundedIndexes[i];
+			}
+		}
+		if (count.length == 0) return closest;
+
+		double sx = ray.start.x, sy = ray.start.y, sz = ray.start.z;
+		double ix = 1 / ray.direction.x, iy = 1 / ray.direction.y, iz = 1 / ray.direction.z;
+		int[] nodes = new int[stackSize];
+		double[] entries = new double[stackSize];
+		int size = 0;
+		double entry = enter(0, sx, sy, sz, ix, iy, iz);
+		if (entry != MISS) {
+			entries[size] = entry;
+			nodes[size++] = 0;
+		}
+		while (size > 0) {
+			int node = nodes[--size];
+			// Equal distance is not skipped, object with lower index is preferred
+			if (closest != null && entries[size] > closest.getDistance()) continue;
+			if (count[node] > 0) {
+				for (int i = first[node], end = i + count[node]; i < end; ++i) {
+					RayIntersection intersection = objects[i].findClosestRayIntersection(ray);
+					if (isCloser(intersection, indexes[i], closest, closestIndex)) {
+						closest = intersection;
+						closestIndex = indexes[i];
+					}
+				}
+				continue;
+			}
+			int left = node + 1, right = first[node];
+			double leftEntry = enter(left, sx, sy, sz, ix, iy, iz);
+			double rightEntry = enter(right, sx, sy, sz, ix, iy, iz);
+			// Closer child is pushed last so it is visited first
+			if (leftEntry > rightEntry) {
+				int tmp = left;
+				left = right;
+				right = tmp;
+				double tmpEntry = leftEntry;
+				leftEntry = rightEntry;
+				rightEntry = tmpEntry;
+			}
+			if (rightEntry != MISS) {
+				entries[size] = rightEntry;
+				nodes[size++] = right;
+			}
+			if (leftEntry != MISS) {
+				entries[size] = leftEntry;
+				nodes[size++] = left;
+			}
+		}
+		return closest;
+	}
+
+	/**
+	 * Returns {@code true} if the given ray intersects any object at distance
+	 * smaller than the given one. Search stops at the first such intersection,
+	 * so this is faster than finding the closest intersection when only its
+	 * existence is needed, e.g. when checking whether a light source is
+	 * blocked.
+	 *
+	 * @param ray
+	 *        ray whose intersections are to be found
+	 * @param distance
+	 *        distance from the start of the ray
+	 * @return {@code true} if there is intersection closer than the given
+	 *         distance
+	 */
+	public boolean hasRayIntersectionCloserThan(Ray ray, double distance) {
+		for (GraphicalObject object : unbounded) {
+			RayIntersection intersection = object.findClosestRayIntersection(ray);
+			if (intersection != null && intersection.getDistance() < distance) return true;
+		}
+		if (count.length == 0) return false;
+
+		double sx = ray.start.x, sy = ray.start.y, sz = ray.start.z;
+		double ix = 1 / ray.direction.x, iy = 1 / ray.direction.y, iz = 1 / ray.direction.z;
+		int[] nodes = new int[stackSize];
+		int size = 0;
+		if (enter(0, sx, sy, sz, ix, iy, iz) < distance) {
+			nodes[size++] = 0;
+		}
+		while (size > 0) {
+			int node = nodes[--size];
+			if (count[node] > 0) {
+				for (int i = first[node], end = i + count[node]; i < end; ++i) {
+					RayIntersection intersection = objects[i].findClosestRayIntersection(ray);
+					if (intersection != null && intersection.getDistance() < distance) return true;
+				}
+				continue;
+			}
+			if (enter(first[node], sx, sy, sz, ix, iy, iz) < distance) {
+				nodes[size++] = first[node];
+			}
+			if (enter(node + 1, sx, sy, sz, ix, iy, iz) < distance) {
+				nodes[size++] = node + 1;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns distance from the start of the ray at which the line of the ray
+	 * enters box of the given node, which is negative if the box is behind the
+	 * start, or {@link #MISS} if the line misses the box.
+	 *
+	 * @param node
+	 *        index of the node
+	 * @param sx
+	 *        x coordinate of the start of the ray
+	 * @param sy
+	 *        y coordinate of the start of the ray
+	 * @param sz
+	 *        z coordinate of the start of the ray
+	 * @param ix
+	 *        reciprocal of x coordinate of the direction of the ray
+	 * @param iy
+	 *        reciprocal of y coordinate of the direction of the ray
+	 * @param iz
+	 *        reciprocal of z coordinate of the direction of the ray
+	 * @return entry distance or {@link #MISS}
+	 */
+	private double enter(int node, double sx, double sy, double sz, double ix, double iy, double iz) {
+		int o = 6 * node;
+		double near = Double.NEGATIVE_INFINITY, far = Double.POSITIVE_INFINITY;
+		// Line parallel to a pair of sides is either between them or misses the box
+		if (Double.isInfinite(ix)) {
+			if (sx < bounds[o] || sx > bounds[o + 3]) return MISS;
+		} else {
+			double t0 = (bounds[o] - sx) * ix, t1 = (bounds[o + 3] - sx) * ix;
+			near = Math.min(t0, t1);
+			far = Math.max(t0, t1);
+		}
+		if (Double.isInfinite(iy)) {
+			if (sy < bounds[o + 1] || sy > bounds[o + 4]) return MISS;
+		} else {
+			double t0 = (bounds[o + 1] - sy) * iy, t1 = (bounds[o + 4] - sy) * iy;
+			near = Math.max(near, Math.min(t0, t1));
+			far = Math.min(far, Math.max(t0, t1));
+		}
+		if (Double.isInfinite(iz)) {
+			if (sz < bounds[o + 2] || sz > bounds[o + 5]) return MISS;
+		} else {
+			double t0 = (bounds[o + 2] - sz) * iz, t1 = (bounds[o + 5] - sz) * iz;
+			near = Math.max(near, Math.min(t0, t1));
+			far = Math.min(far, Math.max(t0, t1));
+		}
+		return near <= far ? near : MISS;
+	}
+
+	/**
+	 * Returns {@code true} if the given intersection is closer than the
+	 * current closest one, or equally close and its object comes first in the
+	 * given list.
+	 *
+	 * @param intersection
+	 *        intersection to be checked, can be {@code null}
+	 * @param index
+	 *        index of its object
+	 * @param closest
+	 *        current closest intersection, can be {@code null}
+	 * @param closestIndex
+	 *        index of its object
+	 * @return {@code true} if the given intersection is closer
+	 */
+	private static boolean isCloser(RayIntersection intersection, int index, RayIntersection closest,
+			int closestIndex) {
+		if (intersection == null) return false;
+		if (closest == null) return true;
+		return intersection.getDistance() < closest.getDistance()
+				|| intersection.getDistance() == closest.getDistance() && index < closestIndex;
+	}
+
+	/**
+	 * Builds the tree in arrays large enough for the largest possible tree,
+	 * whose every leaf has a single object.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Builder {
+
+		/**
+		 * Boxes of the objects, minimum coordinates followed by maximum ones
+		 */
+		private final double[] boxes;
+
+		/**
+		 * Indexes of the objects, reordered so objects of each leaf are
+		 * consecutive
+		 */
+		private final int[] order;
+
+		/**
+		 * Boxes of the built nodes
+		 */
+		private double[] bounds;
+
+		/**
+		 * Index of the first object or of the right child of the built nodes
+		 */
+		private int[] first;
+
+		/**
+		 * Number of objects of the built nodes
+		 */
+		private int[] count;
+
+		/**
+		 * Number of built nodes
+		 */
+		private int nodes;
+
+		/**
+		 * Depth of the deepest built node
+		 */
+		private int depth;
+
+		/**
+		 * Constructs new {@code Builder} of the tree of the given objects.
+		 *
+		 * @param boxes
+		 *        boxes of the objects
+		 * @param n
+		 *        number of objects
+		 */
+		private Builder(double[] boxes, int n) {
+			this.boxes = boxes;
+			this.order = new int[n];
+			for (int i = 0; i < n; ++i) {
+				order[i] = i;
+			}
+			// Tree with n leaves has 2n - 1 nodes
+			int capacity = Math.max(1, 2 * n - 1);
+			this.bounds = new double[6 * capacity];
+			this.first = new int[capacity];
+			this.count = new int[capacity];
+		}
+
+		/**
+		 * Builds subtree of the objects between the given indexes of
+		 * {@link #order} and returns index of its root.
+		 *
+		 * @param from
+		 *        index of the first object
+		 * @param to
+		 *        index after the last object
+		 * @param level
+		 *        depth of the root of the subtree
+		 * @return index of the root
+		 */
+		private int build(int from, int to, int level) {
+			int node = nodes++;
+			depth = Math.max(depth, level);
+			int o = 6 * node;
+			Arrays.fill(bounds, o, o + 3, Double.POSITIVE_INFINITY);
+			Arrays.fill(bounds, o + 3, o + 6, Double.NEGATIVE_INFINITY);
+			for (int i = from; i < to; ++i) {
+				include(bounds, o, order[i]);
+			}
+			int n = to - from;
+			double area = area(bounds, o);
+
+			Integer[] best = null;
+			int bestSplit = 0;
+			double bestCost = Double.POSITIVE_INFINITY;
+			double[] box = new double[6];
+			double[] rightAreas = new double[n];
+			for (int axis = 0; axis < 3 && n > 1; ++axis) {
+				Integer[] sorted = new Integer[n];
+				for (int i = 0; i < n; ++i) {
+					sorted[i] = order[from + i];
+				}
+				int a = axis;
+				Arrays.sort(sorted, Comparator.comparingDouble(i -> boxes[6 * i + a] + boxes[6 * i + a + 3]));
+				clear(box);
+				for (int i = n - 1; i > 0; --i) {
+					include(box, 0, sorted[i]);
+					rightAreas[i] = area(box, 0);
+				}
+				clear(box);
+				for (int split = 1; split < n; ++split) {
+					include(box, 0, sorted[split - 1]);
+					double cost = area(box, 0) * split + rightAreas[split] * (n - split);
+					// Among equally good splits the most balanced one is taken
+					if (cost < bestCost || cost == bestCost && Math.abs(n - 2 * split) < Math.abs(n - 2 * bestSplit)) {
+						best = sorted;
+						bestSplit = split;
+						bestCost = cost;
+					}
+				}
+			}
+
+			if (n == 1 || n <= MAX_LEAF_SIZE && area * n <= TRAVERSAL_COST * area + bestCost) {
+				first[node] = from;
+				count[node] = n;
+				return node;
+			}
+			for (int i = 0; i < n; ++i) {
+				order[from + i] = best[i];
+			}
+			build(from, from + bestSplit, level + 1);
+			first[node] = build(from + bestSplit, to, level + 1);
+			count[node] = 0;
+			return node;
+		}
+
+		/**
+		 * Extends the box at the given index of the given array so that it
+		 * contains box of the given object.
+		 *
+		 * @param box
+		 *        array containing the box
+		 * @param o
+		 *        index of the box in the array
+		 * @param object
+		 *        index of the object
+		 */
+		private void include(double[] box, int o, int object) {
+			int b = 6 * object;
+			for (int i = 0; i < 3; ++i) {
+				box[o + i] = Math.min(box[o + i], boxes[b + i]);
+				box[o + 3 + i] = Math.max(box[o + 3 + i], boxes[b + 3 + i]);
+			}
+		}
+
+		/**
+		 * Makes the given box empty.
+		 *
+		 * @param box
+		 *        box to be cleared
+		 */
+		private static void clear(double[] box) {
+			Arrays.fill(box, 0, 3, Double.POSITIVE_INFINITY);
+			Arrays.fill(box, 3, 6, Double.NEGATIVE_INFINITY);
+		}
+
+		/**
+		 * Returns surface area of the box at the given index of the given array.
+		 *
+		 * @param box
+		 *        array containing the box
+		 * @param o
+		 *        index of the box in the array
+		 * @return surface area of the box
+		 */
+		private static double area(double[] box, int o) {
+			double dx = box[o + 3] - box[o], dy = box[o + 4] - box[o + 1], dz = box[o + 5] - box[o + 2];
+			return 2 * (dx * dy + dy * dz + dz * dx);
+		}
+
+	}
+
+}
@@ -0,0 +1,20 @@
+package hr.fer.zemris.java.raytracer.model;
+
+/**
+ * Object in 3D coordinate system which is entirely contained in a box.
+ * {@link BoundingVolumeHierarchy} uses the box to skip objects which a ray
+ * cannot intersect, every intersection which the object reports must
+ * therefore lie on the part of the ray inside the box.
+ *
+ * @author Filip Husnjak
+ */
+public interface IBoundedObject {
+
+	/**
+	 * Returns the box which contains this object.
+	 *
+	 * @return bounding box of this object
+	 */
+	BoundingBox getBoundingBox();
+
+}
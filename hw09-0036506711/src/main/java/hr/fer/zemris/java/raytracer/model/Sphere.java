@@ -3,11 +3,12 @@ package hr.fer.zemris.java.raytracer.model;
 /**
  * Representation of a sphere in 3D coordinate system. It has defined radius,
  * center and proper constants to determine intensity of light reflection and
- * diffusion.
+ * diffusion. Sphere is bounded by a cube, so it can be stored in a
+ * {@link BoundingVolumeHierarchy}.
  * 
  * @author Filip Husnjak
  */
-public class Sphere extends GraphicalObject {
+public class Sphere extends GraphicalObject implements IBoundedObject {
 	
 	/**
 	 * Position of a center
@@ -109,6 +110,20 @@ public class Sphere extends GraphicalObject {
 		return radius;
 	}
 
+	/**
+	 * {@inheritDoc} Cube is enlarged by a small part of the size of the sphere
+	 * and its distance from the origin, so rounding errors of the intersection
+	 * test cannot report an intersection outside of it.
+	 */
+	@Override
+	public BoundingBox getBoundingBox() {
+		double r = Math.abs(radius);
+		double margin = (r + Math.max(Math.abs(center.x), Math.max(Math.abs(center.y), Math.abs(center.z)))) * 1e-9;
+		r += margin;
+		return new BoundingBox(new Point3D(center.x - r, center.y - r, center.z - r),
+				new Point3D(center.x + r, center.y + r, center.z + r));
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
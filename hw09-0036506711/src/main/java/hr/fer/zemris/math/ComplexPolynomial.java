@@ -38,6 +38,16 @@ public class ComplexPolynomial {
 		return (short) (factors.length - 1);
 	}
 	
+	/**
+	 * Returns factors of this polynomial. Factor at index {@code i} belongs
+	 * to the potency {@code i}.
+	 * 
+	 * @return copy of the factors of this polynomial
+	 */
+	public Complex[] getFactors() {
+		return factors.clone();
+	}
+	
 	/**
 	 * Multiplies {@code this} polynomial by the given one and returns new
 	 * {@code ComplexPolynomial} as the result.
@@ -36,6 +36,15 @@ public class ComplexRootedPolynomial {
 		this.constant = Objects.requireNonNull(constant, "Given constant cannot be null!");
 	}
 	
+	/**
+	 * Returns roots of this polynomial.
+	 * 
+	 * @return copy of the roots of this polynomial
+	 */
+	public Complex[] getRoots() {
+		return roots.clone();
+	}
+	
 	/**
 	 * Calculates and returns the polynomial value at the given complex point.
 	 * 
@@ -0,0 +1,184 @@
+package hr.fer.zemris.java.fractals;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexPolynomial;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * Compares calculation of Newton fractal pixels using {@link Complex} objects,
+ * the way {@link Newton} calculated them before, with calculation using
+ * {@link NewtonKernel}. Before measuring, program checks that both produce
+ * identical pixels for several polynomials and viewports, including ones
+ * whose iterations reach infinite and {@code NaN} values. Both are measured
+ * on a single thread, besides time per pixel number of bytes allocated per
+ * pixel is printed. Program accepts optional arguments: width and height of
+ * the image followed by roots of the polynomial, roots 1, -1, i and -i are
+ * used if no root is given.
+ *
+ * @author Filip Husnjak
+ */
+public class NewtonKernelBenchmark {
+
+	/**
+	 * Minimum distance between old and newly created complex number
+	 */
+	private static final double CONVERGENCE_TRESHOLD = 0.001;
+
+	/**
+	 * Minimum distance between closest root and calculated complex number
+	 */
+	private static final double ROOT_TRESHOLD = 0.002;
+
+	/**
+	 * Maximum number of iterations when trying to converge
+	 */
+	private static final int MAX_ITER = 16 * 16 * 16;
+
+	/**
+	 * Number of measured rounds, the first one is used as a warm up
+	 */
+	private static final int ROUNDS = 5;
+
+	/**
+	 * Program starts here.
+	 *
+	 * @param args
+	 *        optional benchmark parameters
+	 */
+	public static void main(String[] args) {
+		int width = args.length > 0 ? Integer.parseInt(args[0]) : 800;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 800;
+		String[] roots = args.length > 2 ? Arrays.copyOfRange(args, 2, args.length)
+				: new String[] {"1", "-1 + i0", "i", "0 - i1"};
+
+		check(new String[] {"1", "-1", "i", "-i"}, -2, 2, -2, 2);
+		check(new String[] {"1", "1", "-1"}, -2, 2, -2, 2);
+		check(new String[] {"2 + i3", "-i0.5", "-3", "i"}, -0.2, 0.3, -0.1, 0.4);
+		check(new String[] {"1", "i1e155"}, -1e160, 1e160, -1e160, 1e160);
+
+		ComplexRootedPolynomial polynomial = parse(roots);
+		NewtonKernel kernel = new NewtonKernel(polynomial, MAX_ITER, CONVERGENCE_TRESHOLD, ROOT_TRESHOLD);
+		short[] expected = new short[width * height];
+		short[] actual = new short[width * height];
+		int pixels = width * height;
+		for (int round = 0; round < ROUNDS; ++round) {
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			complexFill(polynomial, expected, width, height, -2, 2, -2, 2);
+			long complexTime = System.nanoTime() - start;
+			long complexBytes = allocatedBytes() - bytes;
+			bytes = allocatedBytes();
+			start = System.nanoTime();
+			kernel.fill(actual, width, height, 0, height, -2, 2, -2, 2);
+			long kernelTime = System.nanoTime() - start;
+			long kernelBytes = allocatedBytes() - bytes;
+			if (!Arrays.equals(expected, actual)) {
+				throw new IllegalStateException("Pixels differ!");
+			}
+			if (round == 0) continue;
+			System.out.printf("%dx%d complex=%7.1fns/px %6dB/px kernel=%6.1fns/px %3dB/px speedup=%.2fx%n",
+					width, height, complexTime / (double) pixels, complexBytes / pixels,
+					kernelTime / (double) pixels, kernelBytes / pixels, complexTime / (double) kernelTime);
+		}
+	}
+
+	/**
+	 * Checks that both calculations produce identical pixels for the given
+	 * polynomial and viewport.
+	 *
+	 * @param roots
+	 *        roots of the polynomial
+	 * @param reMin
+	 *        minimum real part of complex number in observed complex plane
+	 * @param reMax
+	 *        maximum real part of complex number in observed complex plane
+	 * @param imMin
+	 *        minimum imaginary part of complex number in observed complex plane
+	 * @param imMax
+	 *        maximum imaginary part of complex number in observed complex plane
+	 * @throws IllegalStateException if the pixels differ
+	 */
+	private static void check(String[] roots, double reMin, double reMax, double imMin, double imMax) {
+		ComplexRootedPolynomial polynomial = parse(roots);
+		int width = 160, height = 120;
+		short[] expected = new short[width * height];
+		short[] actual = new short[width * height];
+		complexFill(polynomial, expected, width, height, reMin, reMax, imMin, imMax);
+		new NewtonKernel(polynomial, MAX_ITER, CONVERGENCE_TRESHOLD, ROOT_TRESHOLD)
+				.fill(actual, width, height, 0, height, reMin, reMax, imMin, imMax);
+		if (!Arrays.equals(expected, actual)) {
+			throw new IllegalStateException("Pixels differ for roots " + Arrays.toString(roots));
+		}
+	}
+
+	/**
+	 * Fills the given array the way {@link Newton} filled it before
+	 * {@link NewtonKernel} was used.
+	 *
+	 * @param rootedPolynomial
+	 *        polynomial whose closest roots are calculated
+	 * @param data
+	 *        array to be filled
+	 * @param width
+	 *        number of pixels in a row
+	 * @param height
+	 *        number of pixels in each column
+	 * @param reMin
+	 *        minimum real part of complex number in observed complex plane
+	 * @param reMax
+	 *        maximum real part of complex number in observed complex plane
+	 * @param imMin
+	 *        minimum imaginary part of complex number in observed complex plane
+	 * @param imMax
+	 *        maximum imaginary part of complex number in observed complex plane
+	 */
+	private static void complexFill(ComplexRootedPolynomial rootedPolynomial, short[] data, int width,
+			int height, double reMin, double reMax, double imMin, double imMax) {
+		ComplexPolynomial normalPolynomial = rootedPolynomial.toComplexPolynom();
+		ComplexPolynomial derivedPolynomial = normalPolynomial.derive();
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				Complex zn = new Complex((double) x / (width - 1) * (reMax - reMin) + reMin,
+						(double) (height - 1 - y) / (height - 1) * (imMax - imMin) + imMin), znold;
+				int iter = 0;
+				do {
+					znold = zn;
+					zn = zn.sub(normalPolynomial.apply(zn).div(derivedPolynomial.apply(zn)));
+				} while (++iter < MAX_ITER && zn.sub(znold).getMagnitude() > CONVERGENCE_TRESHOLD);
+				data[y * width + x] = (short) (rootedPolynomial.indexOfClosestRootFor(zn, ROOT_TRESHOLD) + 1);
+			}
+		}
+	}
+
+	/**
+	 * Parses the given roots and returns polynomial with them.
+	 *
+	 * @param roots
+	 *        roots of the polynomial
+	 * @return polynomial with the given roots
+	 */
+	private static ComplexRootedPolynomial parse(String[] roots) {
+		return new ComplexRootedPolynomial(Complex.ONE,
+				Arrays.stream(roots).map(Complex::parse).toArray(Complex[]::new));
+	}
+
+	/**
+	 * Returns number of bytes allocated by the current thread so far, or
+	 * {@code 0} if the virtual machine does not track allocations.
+	 *
+	 * @return number of allocated bytes
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+}
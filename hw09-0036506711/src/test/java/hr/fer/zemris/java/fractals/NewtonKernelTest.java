@@ -0,0 +1,142 @@
+package hr.fer.zemris.java.fractals;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexPolynomial;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+public class NewtonKernelTest {
+
+	private static final double CONVERGENCE_TRESHOLD = 0.001;
+
+	private static final double ROOT_TRESHOLD = 0.002;
+
+	// Odd sizes put the center of the viewport exactly on a pixel
+	private static final int WIDTH = 81;
+
+	private static final int HEIGHT = 61;
+
+	public static Stream<Arguments> viewports() {
+		return Stream.of(
+				Arguments.of(new String[] {"1", "-1", "i", "-i"}, -2, 2, -2, 2),
+				// Derivation is zero in the center pixel
+				Arguments.of(new String[] {"1", "-1"}, -2, 2, -2, 2),
+				Arguments.of(new String[] {"0", "0", "0"}, -1, 1, -1, 1),
+				// Reciprocal of the derivation overflows
+				Arguments.of(new String[] {"1", "-1"}, -1e-170, 1e-170, -1e-170, 1e-170),
+				// Double root
+				Arguments.of(new String[] {"1", "1", "-1"}, -2, 2, -2, 2),
+				Arguments.of(new String[] {"2 + i3", "-i0.5", "-3", "i"}, -0.2, 0.3, -0.1, 0.4),
+				Arguments.of(new String[] {"-0.5 + i0.25", "3", "1 - i2", "0", "-i"}, -4, 4, -3, 3),
+				// Values overflow to infinity and NaN while iterating
+				Arguments.of(new String[] {"1", "i1e155"}, -1e160, 1e160, -1e160, 1e160),
+				Arguments.of(new String[] {"1", "-1", "i"}, -1e300, 1e300, -1e300, 1e300),
+				// Factors of the polynomial are infinite
+				Arguments.of(new String[] {"1e200", "-1e200", "1"}, -2, 2, -2, 2));
+	}
+
+	@ParameterizedTest
+	@MethodSource("viewports")
+	public void testSameAsComplex(String[] roots, double reMin, double reMax, double imMin, double imMax) {
+		for (int maxIter: new int[] {1, 2, 7, 16 * 16 * 16}) {
+			ComplexRootedPolynomial polynomial = parse(roots);
+			short[] expected = complexFill(polynomial, maxIter, reMin, reMax, imMin, imMax);
+			short[] actual = new short[WIDTH * HEIGHT];
+			new NewtonKernel(polynomial, maxIter, CONVERGENCE_TRESHOLD, ROOT_TRESHOLD)
+					.fill(actual, WIDTH, HEIGHT, 0, HEIGHT, reMin, reMax, imMin, imMax);
+			assertPixelsEqual(expected, actual, Arrays.toString(roots) + " maxIter=" + maxIter);
+		}
+	}
+
+	@Test
+	public void testFillRows() {
+		ComplexRootedPolynomial polynomial = parse(new String[] {"1", "-1", "i", "-i"});
+		NewtonKernel kernel = new NewtonKernel(polynomial, 100, CONVERGENCE_TRESHOLD, ROOT_TRESHOLD);
+		short[] expected = complexFill(polynomial, 100, -2, 2, -2, 2);
+		short[] actual = new short[WIDTH * HEIGHT];
+		kernel.fill(actual, WIDTH, HEIGHT, 10, 20, -2, 2, -2, 2);
+		for (int i = 0; i < actual.length; ++i) {
+			int y = i / WIDTH;
+			assertEquals(y >= 10 && y < 20 ? expected[i] : 0, actual[i]);
+		}
+	}
+
+	@Test
+	public void testWithMaxIter() {
+		ComplexRootedPolynomial polynomial = parse(new String[] {"1", "-1", "i", "-i"});
+		NewtonKernel kernel = new NewtonKernel(polynomial, 4096, CONVERGENCE_TRESHOLD, ROOT_TRESHOLD)
+				.withMaxIter(3);
+		assertEquals(new NewtonKernel(polynomial, 3, CONVERGENCE_TRESHOLD, ROOT_TRESHOLD), kernel);
+		short[] actual = new short[WIDTH * HEIGHT];
+		kernel.fill(actual, WIDTH, HEIGHT, 0, HEIGHT, -2, 2, -2, 2);
+		assertPixelsEqual(complexFill(polynomial, 3, -2, 2, -2, 2), actual, "maxIter=3");
+	}
+
+	@Test
+	public void testCreateWithoutVectorModule() {
+		Assumptions.assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty());
+		NewtonKernel kernel = NewtonKernel.create(parse(new String[] {"1", "-1", "i", "-i"}), 16,
+				CONVERGENCE_TRESHOLD, ROOT_TRESHOLD);
+		assertSame(NewtonKernel.class, kernel.getClass());
+	}
+
+	@Test
+	public void testCreateWithInfiniteFactors() {
+		// Vector kernel is never used for such polynomials, even if it is available
+		NewtonKernel kernel = NewtonKernel.create(parse(new String[] {"1e200", "-1e200", "1"}), 16,
+				CONVERGENCE_TRESHOLD, ROOT_TRESHOLD);
+		assertSame(NewtonKernel.class, kernel.getClass());
+	}
+
+	@Test
+	public void testInvalidArguments() {
+		ComplexRootedPolynomial polynomial = parse(new String[] {"1"});
+		assertThrows(NullPointerException.class, () -> new NewtonKernel(null, 1, 0.1, 0.1));
+		assertThrows(IllegalArgumentException.class, () -> new NewtonKernel(polynomial, 0, 0.1, 0.1));
+		assertThrows(IllegalArgumentException.class,
+				() -> new NewtonKernel(new ComplexRootedPolynomial(Complex.ONE), 1, 0.1, 0.1));
+	}
+
+	private static short[] complexFill(ComplexRootedPolynomial rootedPolynomial, int maxIter, double reMin,
+			double reMax, double imMin, double imMax) {
+		short[] data = new short[WIDTH * HEIGHT];
+		ComplexPolynomial normalPolynomial = rootedPolynomial.toComplexPolynom();
+		ComplexPolynomial derivedPolynomial = normalPolynomial.derive();
+		for (int y = 0; y < HEIGHT; ++y) {
+			for (int x = 0; x < WIDTH; ++x) {
+				Complex zn = new Complex((double) x / (WIDTH - 1) * (reMax - reMin) + reMin,
+						(double) (HEIGHT - 1 - y) / (HEIGHT - 1) * (imMax - imMin) + imMin), znold;
+				int iter = 0;
+				do {
+					znold = zn;
+					zn = zn.sub(normalPolynomial.apply(zn).div(derivedPolynomial.apply(zn)));
+				} while (++iter < maxIter && zn.sub(znold).getMagnitude() > CONVERGENCE_TRESHOLD);
+				data[y * WIDTH + x] = (short) (rootedPolynomial.indexOfClosestRootFor(zn, ROOT_TRESHOLD) + 1);
+			}
+		}
+		return data;
+	}
+
+	private static void assertPixelsEqual(short[] expected, short[] actual, String message) {
+		for (int i = 0; i < expected.length; ++i) {
+			int pixel = i;
+			assertEquals(expected[i], actual[i],
+					() -> message + " at x=" + pixel % WIDTH + ", y=" + pixel / WIDTH);
+		}
+	}
+
+	private static ComplexRootedPolynomial parse(String[] roots) {
+		return new ComplexRootedPolynomial(Complex.ONE,
+				Arrays.stream(roots).map(Complex::parse).toArray(Complex[]::new));
+	}
+
+}
@@ -0,0 +1,120 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.fractals.Newton.FractalProducer;
+import hr.fer.zemris.java.fractals.viewer.IFractalResultObserver;
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * Measures latency of {@link FractalProducer} as seen by the viewer: time until
+ * the first result is sent to the observer, number of results sent and time
+ * until the final one is sent. Afterwards the same image is requested again
+ * and cancelled shortly after, time between setting the cancellation flag and
+ * {@code produce} returning is printed. Images of several sizes are measured,
+ * program accepts optional argument: number of milliseconds after which
+ * request is cancelled.
+ *
+ * @author Filip Husnjak
+ */
+public class NewtonProgressBenchmark {
+
+	/**
+	 * Sizes of measured images
+	 */
+	private static final int[][] SIZES = {{640, 480}, {1920, 1080}, {3840, 2160}};
+
+	/**
+	 * Program starts here.
+	 *
+	 * @param args
+	 *        optional benchmark parameters
+	 * @throws InterruptedException if interrupted while waiting for the producer
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		long cancelAfter = args.length > 0 ? Long.parseLong(args[0]) : 50;
+		// Producer without tile cache, otherwise images would be calculated only once
+		FractalProducer producer = new FractalProducer(NewtonKernel.create(new ComplexRootedPolynomial(
+				Complex.ONE, Complex.ONE, Complex.ONE_NEG, Complex.IM, Complex.IM_NEG), FractalProducer.maxIter,
+				FractalProducer.convergenceTreshold, FractalProducer.rootTreshold));
+		// Warm up
+		produce(producer, 1920, 1080, new AtomicBoolean());
+
+		for (int[] size : SIZES) {
+			int width = size[0], height = size[1];
+			Observer observer = produce(producer, width, height, new AtomicBoolean());
+			System.out.printf("%dx%d first=%7.1fms results=%3d final=%7.1fms", width, height,
+					(observer.first - observer.start) / 1e6, observer.results, (observer.last - observer.start) / 1e6);
+
+			AtomicBoolean cancel = new AtomicBoolean();
+			Thread thread = new Thread(() -> produce(producer, width, height, cancel));
+			thread.start();
+			Thread.sleep(cancelAfter);
+			long cancelled = System.nanoTime();
+			cancel.set(true);
+			thread.join();
+			System.out.printf(" cancelled after %dms, stopped in %.1fms%n", cancelAfter,
+					(System.nanoTime() - cancelled) / 1e6);
+		}
+	}
+
+	/**
+	 * Produces the fractal in the square from -2 - 2i to 2 + 2i using the given
+	 * producer.
+	 *
+	 * @param producer
+	 *        producer of the fractal
+	 * @param width
+	 *        number of pixels in a row
+	 * @param height
+	 *        number of pixels in each column
+	 * @param cancel
+	 *        cancellation flag given to the producer
+	 * @return observer which received the results
+	 */
+	private static Observer produce(FractalProducer producer, int width, int height, AtomicBoolean cancel) {
+		Observer observer = new Observer();
+		observer.start = System.nanoTime();
+		producer.produce(-2, 2, -2, 2, width, height, 0, observer, cancel);
+		return observer;
+	}
+
+	/**
+	 * Observer which remembers when results were received.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Observer implements IFractalResultObserver {
+
+		/**
+		 * Value of {@link System#nanoTime()} when the fractal was requested
+		 */
+		private long start;
+
+		/**
+		 * Value of {@link System#nanoTime()} when the first result was received
+		 */
+		private long first;
+
+		/**
+		 * Value of {@link System#nanoTime()} when the last result was received
+		 */
+		private long last;
+
+		/**
+		 * Number of received results
+		 */
+		private int results;
+
+		@Override
+		public void acceptResult(short[] data, short numberOfColors, long requestNo) {
+			last = System.nanoTime();
+			if (results++ == 0) {
+				first = last;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,158 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.fractals.Newton.FractalProducer;
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * Measures {@link FractalProducer} using {@link NewtonTileCache} while the
+ * image is panned. In each round image is produced row by row without the
+ * cache, then with an empty cache, then panned to the right and finally
+ * returned to the first view. Time and number of calculated tiles are printed
+ * for each step, together with the number of pixels of the tiled image which
+ * differ from the image produced row by row since tiled viewport is snapped
+ * to the grid. Program accepts optional arguments: width and height of the
+ * image, Full HD by default, number of pixels the image is panned by and
+ * number of measured rounds.
+ *
+ * @author Filip Husnjak
+ */
+public class NewtonTileBenchmark {
+
+	/**
+	 * Program starts here.
+	 *
+	 * @param args
+	 *        optional benchmark parameters
+	 */
+	public static void main(String[] args) {
+		int width = args.length > 0 ? Integer.parseInt(args[0]) : 1920;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 1080;
+		int pan = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+		NewtonKernel kernel = NewtonKernel.create(new ComplexRootedPolynomial(Complex.ONE, Complex.ONE,
+				Complex.ONE_NEG, Complex.IM, Complex.IM_NEG), FractalProducer.maxIter,
+				FractalProducer.convergenceTreshold, FractalProducer.rootTreshold);
+		FractalProducer untiled = new FractalProducer(kernel);
+		double shift = pan * 4.0 / (width - 1);
+		// First round is a warm up
+		for (int round = 0; round <= rounds; ++round) {
+			NewtonTileCache cache = new NewtonTileCache(FractalProducer.tileCacheCapacity);
+			FractalProducer tiled = new FractalProducer(kernel, cache);
+
+			long start = System.nanoTime();
+			short[] expected = produce(untiled, -2, 2, width, height);
+			long untiledTime = System.nanoTime() - start;
+
+			Step full = new Step(cache);
+			short[] actual = produce(tiled, -2, 2, width, height);
+			full.finish();
+			Step panned = new Step(cache);
+			produce(tiled, -2 + shift, 2 + shift, width, height);
+			panned.finish();
+			Step returned = new Step(cache);
+			short[] again = produce(tiled, -2, 2, width, height);
+			returned.finish();
+			if (!Arrays.equals(actual, again)) {
+				throw new IllegalStateException("Returned view differs!");
+			}
+			if (round == 0) continue;
+
+			int differing = 0;
+			for (int i = 0; i < expected.length; ++i) {
+				if (expected[i] != actual[i]) {
+					differing++;
+				}
+			}
+			System.out.printf("%dx%d untiled=%6.1fms full=%s pan %dpx=%s return=%s differing=%d px cached=%d%n",
+					width, height, untiledTime / 1e6, full, pan, panned, returned, differing, cache.size());
+		}
+	}
+
+	/**
+	 * Produces the fractal from {@code reMin - 2i} to {@code reMax + 2i} using
+	 * the given producer and returns its final pixels.
+	 *
+	 * @param producer
+	 *        producer of the fractal
+	 * @param reMin
+	 *        minimum real part of complex number in observed complex plane
+	 * @param reMax
+	 *        maximum real part of complex number in observed complex plane
+	 * @param width
+	 *        number of pixels in a row
+	 * @param height
+	 *        number of pixels in each column
+	 * @return pixels of the fractal
+	 */
+	private static short[] produce(FractalProducer producer, double reMin, double reMax, int width, int height) {
+		short[][] result = new short[1][];
+		producer.produce(reMin, reMax, -2, 2, width, height, 0, (data, colors, requestNo) -> result[0] = data,
+				new AtomicBoolean());
+		return result[0];
+	}
+
+	/**
+	 * Time and number of calculated tiles of one step of the benchmark.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Step {
+
+		/**
+		 * Cache used by the producer
+		 */
+		private final NewtonTileCache cache;
+
+		/**
+		 * Number of cache misses before the step
+		 */
+		private final long misses;
+
+		/**
+		 * Value of {@link System#nanoTime()} before the step
+		 */
+		private final long start;
+
+		/**
+		 * Duration of the step in nanoseconds
+		 */
+		private long time;
+
+		/**
+		 * Number of tiles calculated during the step
+		 */
+		private long calculated;
+
+		/**
+		 * Starts measuring a step.
+		 *
+		 * @param cache
+		 *        cache used by the producer
+		 */
+		private Step(NewtonTileCache cache) {
+			this.cache = cache;
+			this.misses = cache.getMisses();
+			this.start = System.nanoTime();
+		}
+
+		/**
+		 * Finishes measuring the step.
+		 */
+		private void finish() {
+			time = System.nanoTime() - start;
+			calculated = cache.getMisses() - misses;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%6.1fms (%d tiles)", time / 1e6, calculated);
+		}
+
+	}
+
+}
@@ -0,0 +1,98 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.fractals.Newton.FractalProducer;
+import hr.fer.zemris.java.fractals.Newton.FractalProducer.Utilisation;
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * Measures load balance of the workers of {@link FractalProducer}. Image is
+ * produced row by row and tile by tile with an empty cache, and for each
+ * request minimum, average and maximum utilisation of the workers is printed
+ * together with the number of rows or tiles each worker calculated. If there
+ * are more workers than processors, utilisation includes time during which
+ * workers waited for their threads to be scheduled. Program accepts optional
+ * arguments: number of workers, number of available processors by default,
+ * width and height of the image, 4K by default, and number of measured rounds.
+ *
+ * @author Filip Husnjak
+ */
+public class NewtonUtilisationBenchmark {
+
+	/**
+	 * Program starts here.
+	 *
+	 * @param args
+	 *        optional benchmark parameters
+	 */
+	public static void main(String[] args) {
+		int workers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int width = args.length > 1 ? Integer.parseInt(args[1]) : 3840;
+		int height = args.length > 2 ? Integer.parseInt(args[2]) : 2160;
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+		NewtonKernel kernel = NewtonKernel.create(new ComplexRootedPolynomial(Complex.ONE, Complex.ONE,
+				Complex.ONE_NEG, Complex.IM, Complex.IM_NEG), FractalProducer.maxIter,
+				FractalProducer.convergenceTreshold, FractalProducer.rootTreshold);
+		FractalProducer rows = new FractalProducer(kernel, null, workers);
+		// First round is a warm up
+		for (int round = 0; round <= rounds; ++round) {
+			FractalProducer tiles = new FractalProducer(kernel,
+					new NewtonTileCache(FractalProducer.tileCacheCapacity), workers);
+			Utilisation rowUtilisation = produce(rows, width, height);
+			Utilisation tileUtilisation = produce(tiles, width, height);
+			if (round == 0) continue;
+			print("rows", width, height, rowUtilisation);
+			print("tiles", width, height, tileUtilisation);
+		}
+	}
+
+	/**
+	 * Produces the fractal in the square from -2 - 2i to 2 + 2i using the given
+	 * producer and returns utilisation of its workers.
+	 *
+	 * @param producer
+	 *        producer of the fractal
+	 * @param width
+	 *        number of pixels in a row
+	 * @param height
+	 *        number of pixels in each column
+	 * @return utilisation of the workers
+	 */
+	private static Utilisation produce(FractalProducer producer, int width, int height) {
+		producer.produce(-2, 2, -2, 2, width, height, 0, (data, colors, requestNo) -> {}, new AtomicBoolean());
+		return producer.getLastUtilisation();
+	}
+
+	/**
+	 * Prints summary of the given utilisation followed by utilisation and
+	 * number of calculated units of each worker.
+	 *
+	 * @param name
+	 *        name of the units
+	 * @param width
+	 *        number of pixels in a row
+	 * @param height
+	 *        number of pixels in each column
+	 * @param utilisation
+	 *        utilisation of the workers
+	 */
+	private static void print(String name, int width, int height, Utilisation utilisation) {
+		double min = 1, max = 0, sum = 0;
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < utilisation.getWorkers(); ++i) {
+			double u = utilisation.getUtilisation(i);
+			min = Math.min(min, u);
+			max = Math.max(max, u);
+			sum += u;
+			sb.append(String.format(" %.0f%%/%d", u * 100, utilisation.getUnits(i)));
+		}
+		System.out.printf("%dx%d %-5s workers=%d time=%7.1fms utilisation min=%5.1f%% avg=%5.1f%% max=%5.1f%%%n",
+				width, height, name, utilisation.getWorkers(), utilisation.getWallTime() / 1e6, min * 100,
+				sum / utilisation.getWorkers() * 100, max * 100);
+		System.out.println("  utilisation/" + name + " per worker:" + sb);
+	}
+
+}
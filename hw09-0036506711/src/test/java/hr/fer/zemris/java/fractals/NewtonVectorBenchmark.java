@@ -0,0 +1,154 @@
+package hr.fer.zemris.java.fractals;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hr.fer.zemris.java.fractals.Newton.FractalProducer;
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+/**
+ * Compares {@link NewtonKernel} with the kernel returned by
+ * {@link NewtonKernel#create(ComplexRootedPolynomial, int, double, double)},
+ * which is {@code NewtonVectorKernel} if the program is started with
+ * {@code --add-modules jdk.incubator.vector}. Both kernels are used by
+ * {@link FractalProducer}, so the job is split the same way it is split when
+ * fractal is drawn. Before measuring, program checks that both kernels produce
+ * identical pixels for several polynomials and viewports, including ones
+ * whose iterations reach infinite and {@code NaN} values. Program accepts
+ * optional arguments: width and height of the image, 4K by default, and
+ * number of measured rounds.
+ *
+ * @author Filip Husnjak
+ */
+public class NewtonVectorBenchmark {
+
+	/**
+	 * Program starts here.
+	 *
+	 * @param args
+	 *        optional benchmark parameters
+	 */
+	public static void main(String[] args) {
+		int width = args.length > 0 ? Integer.parseInt(args[0]) : 3840;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 2160;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		check(new String[] {"1", "-1", "i", "-i"}, -2, 2, -2, 2);
+		check(new String[] {"1", "1", "-1"}, -2, 2, -2, 2);
+		check(new String[] {"2 + i3", "-i0.5", "-3", "i"}, -0.2, 0.3, -0.1, 0.4);
+		check(new String[] {"1", "i1e155"}, -1e160, 1e160, -1e160, 1e160);
+
+		ComplexRootedPolynomial polynomial = parse(new String[] {"1", "-1", "i", "-i"});
+		NewtonKernel scalar = scalarKernel(polynomial);
+		NewtonKernel created = createdKernel(polynomial);
+		if (created.getClass() == NewtonKernel.class) {
+			System.out.println("jdk.incubator.vector is not available, scalar kernel is compared with itself");
+		}
+		FractalProducer scalarProducer = new FractalProducer(scalar);
+		FractalProducer createdProducer = new FractalProducer(created);
+		long pixels = (long) width * height;
+		// First round is a warm up
+		for (int round = 0; round <= rounds; ++round) {
+			long start = System.nanoTime();
+			short[] expected = produce(scalarProducer, width, height);
+			long scalarTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			short[] actual = produce(createdProducer, width, height);
+			long createdTime = System.nanoTime() - start;
+			if (!Arrays.equals(expected, actual)) {
+				throw new IllegalStateException("Pixels differ!");
+			}
+			if (round == 0) continue;
+			System.out.printf("%dx%d scalar=%6.0fms %6.1fMpx/s %s=%6.0fms %6.1fMpx/s speedup=%.2fx%n", width,
+					height, scalarTime / 1e6, pixels * 1e3 / scalarTime, created.getClass().getSimpleName(),
+					createdTime / 1e6, pixels * 1e3 / createdTime, scalarTime / (double) createdTime);
+		}
+	}
+
+	/**
+	 * Checks that both kernels produce identical pixels for the given
+	 * polynomial and viewport.
+	 *
+	 * @param roots
+	 *        roots of the polynomial
+	 * @param reMin
+	 *        minimum real part of complex number in observed complex plane
+	 * @param reMax
+	 *        maximum real part of complex number in observed complex plane
+	 * @param imMin
+	 *        minimum imaginary part of complex number in observed complex plane
+	 * @param imMax
+	 *        maximum imaginary part of complex number in observed complex plane
+	 * @throws IllegalStateException if the pixels differ
+	 */
+	private static void check(String[] roots, double reMin, double reMax, double imMin, double imMax) {
+		ComplexRootedPolynomial polynomial = parse(roots);
+		// Width is not a multiple of number of lanes so partial batches are checked too
+		int width = 163, height = 120;
+		short[] expected = new short[width * height];
+		short[] actual = new short[width * height];
+		scalarKernel(polynomial).fill(expected, width, height, 0, height, reMin, reMax, imMin, imMax);
+		createdKernel(polynomial).fill(actual, width, height, 0, height, reMin, reMax, imMin, imMax);
+		if (!Arrays.equals(expected, actual)) {
+			throw new IllegalStateException("Pixels differ for roots " + Arrays.toString(roots));
+		}
+	}
+
+	/**
+	 * Produces the fractal in the square from -2 - 2i to 2 + 2i using the given
+	 * producer and returns its pixels.
+	 *
+	 * @param producer
+	 *        producer of the fractal
+	 * @param width
+	 *        number of pixels in a row
+	 * @param height
+	 *        number of pixels in each column
+	 * @return pixels of the fractal
+	 */
+	private static short[] produce(FractalProducer producer, int width, int height) {
+		short[][] result = new short[1][];
+		producer.produce(-2, 2, -2, 2, width, height, 0, (data, colors, requestNo) -> result[0] = data,
+				new AtomicBoolean());
+		return result[0];
+	}
+
+	/**
+	 * Returns scalar kernel for the given polynomial.
+	 *
+	 * @param polynomial
+	 *        polynomial whose closest roots are calculated
+	 * @return scalar kernel
+	 */
+	private static NewtonKernel scalarKernel(ComplexRootedPolynomial polynomial) {
+		return new NewtonKernel(polynomial, FractalProducer.maxIter, FractalProducer.convergenceTreshold,
+				FractalProducer.rootTreshold);
+	}
+
+	/**
+	 * Returns kernel created by {@link NewtonKernel#create} for the given
+	 * polynomial.
+	 *
+	 * @param polynomial
+	 *        polynomial whose closest roots are calculated
+	 * @return created kernel
+	 */
+	private static NewtonKernel createdKernel(ComplexRootedPolynomial polynomial) {
+		return NewtonKernel.create(polynomial, FractalProducer.maxIter, FractalProducer.convergenceTreshold,
+				FractalProducer.rootTreshold);
+	}
+
+	/**
+	 * Parses the given roots and returns polynomial with them.
+	 *
+	 * @param roots
+	 *        roots of the polynomial
+	 * @return polynomial with the given roots
+	 */
+	private static ComplexRootedPolynomial parse(String[] roots) {
+		return new ComplexRootedPolynomial(Complex.ONE,
+				Arrays.stream(roots).map(Complex::parse).toArray(Complex[]::new));
+	}
+
+}
@@ -0,0 +1,75 @@
+package hr.fer.zemris.java.fractals;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import hr.fer.zemris.math.Complex;
+import hr.fer.zemris.math.ComplexRootedPolynomial;
+
+public class NewtonVectorKernelTest {
+
+	private static final double CONVERGENCE_TRESHOLD = 0.001;
+
+	private static final double ROOT_TRESHOLD = 0.002;
+
+	// Width is not a multiple of any vector length, so rows end with a partial batch
+	private static final int WIDTH = 81;
+
+	private static final int HEIGHT = 61;
+
+	@Test
+	public void testCreateWithVectorModule() {
+		assertTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(),
+				"Tests have to be run with --add-modules jdk.incubator.vector");
+		NewtonKernel kernel = NewtonKernel.create(parse(new String[] {"1", "-1", "i", "-i"}), 16,
+				CONVERGENCE_TRESHOLD, ROOT_TRESHOLD);
+		assertSame(NewtonVectorKernel.class, kernel.getClass());
+		assertEquals(new NewtonKernel(parse(new String[] {"1", "-1", "i", "-i"}), 16, CONVERGENCE_TRESHOLD,
+				ROOT_TRESHOLD), kernel);
+	}
+
+	@ParameterizedTest
+	@MethodSource("hr.fer.zemris.java.fractals.NewtonKernelTest#viewports")
+	public void testSameAsScalar(String[] roots, double reMin, double reMax, double imMin, double imMax) {
+		ComplexRootedPolynomial polynomial = parse(roots);
+		for (int maxIter: new int[] {1, 2, 7, 16 * 16 * 16}) {
+			NewtonKernel scalar = new NewtonKernel(polynomial, maxIter, CONVERGENCE_TRESHOLD, ROOT_TRESHOLD);
+			NewtonKernel vector = new NewtonVectorKernel(polynomial, maxIter, CONVERGENCE_TRESHOLD, ROOT_TRESHOLD);
+			short[] expected = new short[WIDTH * HEIGHT];
+			short[] actual = new short[WIDTH * HEIGHT];
+			scalar.fill(expected, WIDTH, HEIGHT, 0, HEIGHT, reMin, reMax, imMin, imMax);
+			// Each row is filled separately, as jobs of the producer fill them
+			for (int y = 0; y < HEIGHT; ++y) {
+				vector.fill(actual, WIDTH, HEIGHT, y, y + 1, reMin, reMax, imMin, imMax);
+				int from = y * WIDTH, to = from + WIDTH;
+				assertArrayEquals(Arrays.copyOfRange(expected, from, to), Arrays.copyOfRange(actual, from, to),
+						Arrays.toString(roots) + " maxIter=" + maxIter + " y=" + y);
+			}
+		}
+	}
+
+	@Test
+	public void testNarrowImages() {
+		ComplexRootedPolynomial polynomial = parse(new String[] {"1", "-1", "i", "-i"});
+		NewtonKernel scalar = new NewtonKernel(polynomial, 100, CONVERGENCE_TRESHOLD, ROOT_TRESHOLD);
+		NewtonKernel vector = new NewtonVectorKernel(polynomial, 100, CONVERGENCE_TRESHOLD, ROOT_TRESHOLD);
+		for (int width = 2; width <= 17; ++width) {
+			short[] expected = new short[width * 9];
+			short[] actual = new short[width * 9];
+			scalar.fill(expected, width, 9, 0, 9, -2, 2, -2, 2);
+			vector.fill(actual, width, 9, 0, 9, -2, 2, -2, 2);
+			assertArrayEquals(expected, actual, "width=" + width);
+		}
+	}
+
+	private static ComplexRootedPolynomial parse(String[] roots) {
+		return new ComplexRootedPolynomial(Complex.ONE,
+				Arrays.stream(roots).map(Complex::parse).toArray(Complex[]::new));
+	}
+
+}
@@ -0,0 +1,228 @@
+package hr.fer.zemris.java.raytracer;
+
+import java.util.Random;
+
+import hr.fer.zemris.java.raytracer.model.BoundingVolumeHierarchy;
+import hr.fer.zemris.java.raytracer.model.GraphicalObject;
+import hr.fer.zemris.java.raytracer.model.LightSource;
+import hr.fer.zemris.java.raytracer.model.Point3D;
+import hr.fer.zemris.java.raytracer.model.Ray;
+import hr.fer.zemris.java.raytracer.model.RayIntersection;
+import hr.fer.zemris.java.raytracer.model.Scene;
+import hr.fer.zemris.java.raytracer.model.Sphere;
+
+/**
+ * Compares raycasting of a scene with thousands of randomly placed spheres
+ * using {@link BoundingVolumeHierarchy} with checking every sphere for every
+ * primary and shadow ray, as {@link RayCaster} did before. Time of building
+ * the hierarchy and of both renders is printed, together with the number of
+ * pixels which differ. Pixels can differ only where a shadow ray barely
+ * misses or hits a sphere, since shadow rays are no longer used to find the
+ * shaded point. Program accepts optional arguments: number of spheres, width
+ * and height of the image and number of measured rounds.
+ *
+ * @author Filip Husnjak
+ */
+public class RayCasterBenchmark {
+
+	/**
+	 * Precision when comparing two intersection points
+	 */
+	private static final double PRECISION = Math.pow(10, -6);
+
+	/**
+	 * Program starts here.
+	 *
+	 * @param args
+	 *        optional benchmark parameters
+	 */
+	public static void main(String[] args) {
+		int spheres = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		int width = args.length > 1 ? Integer.parseInt(args[1]) : 160;
+		int height = args.length > 2 ? Integer.parseInt(args[2]) : 120;
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+		Scene scene = createScene(spheres);
+		// First round is a warm up
+		for (int round = 0; round <= rounds; ++round) {
+			long start = System.nanoTime();
+			BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(scene.getObjects());
+			long buildTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			short[] actual = render(width, height, (ray, rgb) -> RayCaster.tracer(scene, hierarchy, ray, rgb));
+			long hierarchyTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			short[] expected = render(width, height, (ray, rgb) -> linearTracer(scene, ray, rgb));
+			long linearTime = System.nanoTime() - start;
+			if (round == 0) continue;
+
+			int differing = 0, maxDifference = 0;
+			for (int i = 0; i < expected.length; i += 3) {
+				int difference = Math.max(Math.abs(expected[i] - actual[i]), Math.max(
+						Math.abs(expected[i + 1] - actual[i + 1]), Math.abs(expected[i + 2] - actual[i + 2])));
+				if (difference > 0) {
+					differing++;
+					maxDifference = Math.max(maxDifference, difference);
+				}
+			}
+			System.out.printf("%d spheres %dx%d build=%6.1fms (%d nodes) hierarchy=%8.1fms linear=%8.1fms "
+					+ "speedup=%.1fx differing=%d px (max %d)%n", spheres, width, height, buildTime / 1e6,
+					hierarchy.getNodeCount(), hierarchyTime / 1e6, linearTime / 1e6,
+					linearTime / (double) hierarchyTime, differing, maxDifference);
+		}
+	}
+
+	/**
+	 * Creates scene with the given number of randomly placed spheres of random
+	 * sizes and colors inside a cube around the origin, lit by three light
+	 * sources outside of it. Random generator is seeded, so the scene is
+	 * always the same.
+	 *
+	 * @param spheres
+	 *        number of spheres
+	 * @return created scene
+	 */
+	private static Scene createScene(int spheres) {
+		Random random = new Random(42);
+		Scene scene = new Scene();
+		scene.add(new LightSource(new Point3D(60, 30, 30), 100, 100, 100));
+		scene.add(new LightSource(new Point3D(60, -30, -20), 80, 80, 40));
+		scene.add(new LightSource(new Point3D(20, 50, -40), 40, 60, 100));
+		for (int i = 0; i < spheres; ++i) {
+			Point3D center = new Point3D(random.nextDouble() * 40 - 20, random.nextDouble() * 40 - 20,
+					random.nextDouble() * 40 - 20);
+			scene.add(new Sphere(center, 0.2 + random.nextDouble() * 0.6, random.nextDouble(), random.nextDouble(),
+					random.nextDouble(), 0.5, 0.5, 0.5, 10 + random.nextInt(40)));
+		}
+		return scene;
+	}
+
+	/**
+	 * Renders the scene seen from the x axis using the given tracer and
+	 * returns red, green and blue component of each pixel.
+	 *
+	 * @param width
+	 *        number of pixels in a row
+	 * @param height
+	 *        number of pixels in each column
+	 * @param tracer
+	 *        tracer calculating color of a pixel
+	 * @return components of the pixels
+	 */
+	private static short[] render(int width, int height, Tracer tracer) {
+		Point3D eye = new Point3D(80, 0, 0), view = new Point3D(0, 0, 0), viewUp = new Point3D(0, 0, 10);
+		double horizontal = 50, vertical = 50 * height / (double) width;
+		Point3D zAxis = eye.sub(view).modifyNormalize();
+		Point3D xAxis = viewUp.vectorProduct(zAxis).modifyNormalize();
+		Point3D yAxis = zAxis.vectorProduct(xAxis);
+		Point3D screenCorner = view.sub(xAxis.scalarMultiply(horizontal / 2))
+				.modifyAdd(yAxis.scalarMultiply(vertical / 2));
+		short[] pixels = new short[3 * width * height];
+		short[] rgb = new short[3];
+		int offset = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				Point3D screenPoint = screenCorner.add(xAxis.scalarMultiply(x * horizontal / (width - 1))
+						.modifySub(yAxis.scalarMultiply(y * vertical / (height - 1))));
+				tracer.trace(Ray.fromPoints(eye, screenPoint), rgb);
+				for (int i = 0; i < 3; ++i) {
+					pixels[offset++] = rgb[i] > 255 ? 255 : rgb[i];
+				}
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * Tracer as implemented in {@link RayCaster} before
+	 * {@link BoundingVolumeHierarchy} was used, every sphere is checked for
+	 * every ray.
+	 *
+	 * @param scene
+	 *        scene to be rendered
+	 * @param ray
+	 *        ray from the observer thought the pixel on the screen
+	 * @param rgb
+	 *        array to be filled with intensity of each color
+	 */
+	private static void linearTracer(Scene scene, Ray ray, short[] rgb) {
+		rgb[0] = 0;
+		rgb[1] = 0;
+		rgb[2] = 0;
+		RayIntersection closest = findClosestIntersection(scene, ray);
+		if (closest == null) {
+			return;
+		}
+		rgb[0] = 15;
+		rgb[1] = 15;
+		rgb[2] = 15;
+		for (LightSource source : scene.getLights()) {
+			Ray sourceRay = Ray.fromPoints(source.getPoint(), closest.getPoint());
+			RayIntersection intersection = findClosestIntersection(scene, sourceRay);
+			if (intersection != null
+					&& source.getPoint().sub(closest.getPoint()).norm() > PRECISION + intersection.getDistance()) {
+				continue;
+			}
+			if (intersection == null) intersection = closest;
+			Point3D normal = intersection.getNormal();
+			double scalarProductDiffuse = -sourceRay.direction.scalarProduct(normal);
+			rgb[0] += source.getR() * intersection.getKdr() * scalarProductDiffuse;
+			rgb[1] += source.getG() * intersection.getKdg() * scalarProductDiffuse;
+			rgb[2] += source.getB() * intersection.getKdb() * scalarProductDiffuse;
+
+			Point3D rm = normal.scalarMultiply(-2 * sourceRay.direction.scalarProduct(normal))
+					.modifyAdd(sourceRay.direction).modifyNormalize();
+			double cos = rm.scalarProduct(ray.start.sub(intersection.getPoint()).modifyNormalize());
+			if (cos <= 0) continue;
+			double scalarProductReflect = Math.pow(cos, intersection.getKrn());
+			rgb[0] += source.getR() * intersection.getKrr() * scalarProductReflect;
+			rgb[1] += source.getG() * intersection.getKrg() * scalarProductReflect;
+			rgb[2] += source.getB() * intersection.getKrb() * scalarProductReflect;
+		}
+	}
+
+	/**
+	 * Finds and returns the closest intersection of a ray with any object in
+	 * the scene by checking every object. If there are no intersections
+	 * {@code null} is returned.
+	 *
+	 * @param scene
+	 *        scene whose objects are checked
+	 * @param ray
+	 *        ray whose intersections are to be found
+	 * @return the closest intersection of a ray with any object in the scene
+	 */
+	private static RayIntersection findClosestIntersection(Scene scene, Ray ray) {
+		RayIntersection intersection = null;
+		for (GraphicalObject object : scene.getObjects()) {
+			if (intersection == null) {
+				intersection = object.findClosestRayIntersection(ray);
+			} else {
+				RayIntersection tmp = object.findClosestRayIntersection(ray);
+				intersection = tmp != null && tmp.getDistance() < intersection.getDistance() ? tmp : intersection;
+			}
+		}
+		return intersection;
+	}
+
+	/**
+	 * Calculates color of a pixel.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private interface Tracer {
+
+		/**
+		 * Fills the given array with intensity of each color of the pixel the
+		 * given ray passes through.
+		 *
+		 * @param ray
+		 *        ray from the observer through the pixel
+		 * @param rgb
+		 *        array to be filled
+		 */
+		void trace(Ray ray, short[] rgb);
+
+	}
+
+}
@@ -0,0 +1,156 @@
+package hr.fer.zemris.java.raytracer.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class BoundingVolumeHierarchyTest {
+
+	private static final int RAYS = 2000;
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 2, 5, 17, 100, 500})
+	public void testClosestIntersection(int spheres) {
+		for (long seed = 0; seed < 10; ++seed) {
+			Random random = new Random(seed);
+			Scene scene = createScene(random, spheres);
+			BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(scene.getObjects());
+			for (int i = 0; i < RAYS; ++i) {
+				Ray ray = createRay(random);
+				assertSameIntersection(findClosest(scene.getObjects(), ray), hierarchy.findClosestRayIntersection(ray));
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 2, 5, 17, 100, 500})
+	public void testIntersectionCloserThan(int spheres) {
+		for (long seed = 0; seed < 10; ++seed) {
+			Random random = new Random(seed);
+			Scene scene = createScene(random, spheres);
+			BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(scene.getObjects());
+			for (int i = 0; i < RAYS; ++i) {
+				Ray ray = createRay(random);
+				RayIntersection closest = findClosest(scene.getObjects(), ray);
+				double[] distances = {random.nextDouble() * 60 - 10, 0, Double.POSITIVE_INFINITY,
+						closest == null ? 1 : closest.getDistance(),
+						closest == null ? 1 : Math.nextUp(closest.getDistance())};
+				for (double distance: distances) {
+					assertEquals(hasCloser(scene.getObjects(), ray, distance),
+							hierarchy.hasRayIntersectionCloserThan(ray, distance));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCoincidentSpheresPreferFirst() {
+		Scene scene = new Scene();
+		for (int i = 0; i < 10; ++i) {
+			scene.add(createSphere(new Point3D(0, 0, 0), 1, i));
+		}
+		BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(scene.getObjects());
+		RayIntersection intersection = hierarchy.findClosestRayIntersection(
+				Ray.fromPoints(new Point3D(10, 0, 0), new Point3D(0, 0, 0)));
+		assertEquals(9, intersection.getDistance(), 1e-9);
+		assertEquals(0, intersection.getKdr());
+	}
+
+	@Test
+	public void testEmptyScene() {
+		BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(List.of());
+		Ray ray = Ray.fromPoints(new Point3D(10, 0, 0), new Point3D(0, 0, 0));
+		assertNull(hierarchy.findClosestRayIntersection(ray));
+		assertFalse(hierarchy.hasRayIntersectionCloserThan(ray, Double.POSITIVE_INFINITY));
+		assertEquals(0, hierarchy.getNodeCount());
+	}
+
+	@Test
+	public void testNullObject() {
+		assertThrows(NullPointerException.class, () -> new BoundingVolumeHierarchy(null));
+		assertThrows(NullPointerException.class,
+				() -> new BoundingVolumeHierarchy(Arrays.asList((GraphicalObject) null)));
+	}
+
+	private static Scene createScene(Random random, int spheres) {
+		Scene scene = new Scene();
+		for (int i = 0; i < spheres; ++i) {
+			Sphere previous = i == 0 ? null : (Sphere) scene.getObjects().get(random.nextInt(i));
+			int kind = random.nextInt(10);
+			if (kind == 0 && previous != null) {
+				// Coincident with an earlier sphere, ties are broken by order
+				scene.add(createSphere(previous.getCenter(), previous.getRadius(), i));
+			} else if (kind == 1 && previous != null) {
+				// Overlaps an earlier sphere
+				Point3D center = previous.getCenter().add(randomPoint(random, previous.getRadius()));
+				scene.add(createSphere(center, 0.1 + random.nextDouble() * 2, i));
+			} else {
+				scene.add(createSphere(randomPoint(random, 20), 0.1 + random.nextDouble() * 2, i));
+			}
+		}
+		return scene;
+	}
+
+	private static Ray createRay(Random random) {
+		Point3D start = randomPoint(random, 30);
+		Point3D direction = randomPoint(random, 1);
+		// Some rays are parallel to sides of the boxes
+		switch (random.nextInt(8)) {
+		case 0:
+			direction = new Point3D(direction.x, 0, 0);
+			break;
+		case 1:
+			direction = new Point3D(0, direction.y, direction.z);
+			break;
+		default:
+		}
+		if (direction.norm() == 0) direction = new Point3D(1, 0, 0);
+		return new Ray(start, direction.normalize());
+	}
+
+	private static Point3D randomPoint(Random random, double range) {
+		return new Point3D(random.nextDouble() * 2 * range - range, random.nextDouble() * 2 * range - range,
+				random.nextDouble() * 2 * range - range);
+	}
+
+	private static Sphere createSphere(Point3D center, double radius, int id) {
+		// Diffuse red component identifies the sphere
+		return new Sphere(center, radius, id, 0, 0, 0, 0, 0, 1);
+	}
+
+	private static RayIntersection findClosest(List<GraphicalObject> objects, Ray ray) {
+		RayIntersection closest = null;
+		for (GraphicalObject object: objects) {
+			RayIntersection intersection = object.findClosestRayIntersection(ray);
+			if (intersection != null && (closest == null || intersection.getDistance() < closest.getDistance())) {
+				closest = intersection;
+			}
+		}
+		return closest;
+	}
+
+	private static boolean hasCloser(List<GraphicalObject> objects, Ray ray, double distance) {
+		for (GraphicalObject object: objects) {
+			RayIntersection intersection = object.findClosestRayIntersection(ray);
+			if (intersection != null && intersection.getDistance() < distance) return true;
+		}
+		return false;
+	}
+
+	private static void assertSameIntersection(RayIntersection expected, RayIntersection actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertNotNull(actual);
+		assertEquals(expected.getDistance(), actual.getDistance());
+		assertEquals(expected.getKdr(), actual.getKdr());
+	}
+
+}
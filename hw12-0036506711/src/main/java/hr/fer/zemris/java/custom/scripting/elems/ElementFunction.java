@@ -15,13 +15,34 @@ public class ElementFunction extends Element {
 	private final String name;
 
 	/**
-	 * Constructs {@code this} element with a given name.
+	 * Index of {@code this} function in the function registry, {@code -1} if
+	 * it was not resolved.
+	 */
+	private final int index;
+
+	/**
+	 * Constructs {@code this} element with a given name which is not resolved.
 	 * 
 	 * @param name
 	 *        name of {@code this} function element
 	 */
 	public ElementFunction(String name) {
+		this(name, -1);
+	}
+
+	/**
+	 * Constructs {@code this} element with a given name and index in the
+	 * function registry.
+	 * 
+	 * @param name
+	 *        name of {@code this} function element
+	 * @param index
+	 *        index of {@code this} function in the function registry, {@code -1}
+	 *        if function is not registered
+	 */
+	public ElementFunction(String name, int index) {
 		this.name = name;
+		this.index = index;
 	}
 
 	/**
@@ -48,6 +69,16 @@ public class ElementFunction extends Element {
 		return name;
 	}
 
+	/**
+	 * Returns index of this function in the function registry, resolved when
+	 * the function was parsed.
+	 * 
+	 * @return index of this function, {@code -1} if it was not registered
+	 */
+	public int getIndex() {
+		return index;
+	}
+
 	@Override
 	public int hashCode() {
 		return Objects.hash(name);
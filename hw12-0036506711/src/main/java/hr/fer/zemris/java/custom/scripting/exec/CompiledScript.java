@@ -0,0 +1,799 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.INodeVisitor;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * SmartScript document compiled into a tree of closures. Work which
+ * {@link SmartScriptEngine} repeats on every execution is done once, when the
+ * script is compiled:
+ * <ul>
+ * <li> functions are taken from {@link FunctionRegistry} and operators are
+ * 		resolved by their symbols, so functions registered after the script
+ * 		was compiled are not seen by it
+ * <li> functions and operators whose arguments are constants are applied
+ * 		ahead of time, so only their results are kept
+ * <li> position of every value on the stack of an echo tag is computed, so
+ * 		echo tags read and write slots of a single array instead of pushing
+ * 		and popping values of a stack
+ * <li> text nodes and echo tags whose output is known ahead of time are
+ * 		merged into a single write
+ * </ul>
+ * Script can also be compiled with local variables. In that mode bounds of a
+ * FOR loop are evaluated once, when the loop starts, and every loop variable
+ * is kept in a slot of an array resolved when the script is compiled, so
+ * loops do not look up variables by their names and do not allocate. Loop
+ * variable starts with a copy of its initial value, so modifying it does not
+ * modify variable it was initialized from. Since {@link SmartScriptEngine}
+ * shares the value of a loop initialized from another variable and evaluates
+ * bounds on every iteration, local variables are used only if no loop starts
+ * from a variable and no loop uses its own variable as a bound or a step.
+ * Other documents are compiled with variables kept in a multistack, so both
+ * modes always produce the same output.
+ * <p>
+ * Compiled script does not change after it is compiled, so it can be executed
+ * any number of times, also by multiple threads at once. It writes the same
+ * output and throws the same {@link SmartScriptEngineException}s as
+ * {@link SmartScriptEngine} executing the same document.
+ *
+ * @author Filip Husnjak
+ */
+public class CompiledScript {
+
+	/**
+	 * Operators mapped by their symbols
+	 */
+	private static final Map<String, Builtin> OPERATORS = Map.of(
+			"+", new Builtin(2, 1, true, (context, s, b) -> {
+				ValueWrapper result = s[b].copy();
+				result.add(s[b + 1]);
+				s[b] = result;
+			}),
+			"-", new Builtin(2, 1, true, (context, s, b) -> {
+				ValueWrapper result = s[b].copy();
+				result.subtract(s[b + 1]);
+				s[b] = result;
+			}),
+			"*", new Builtin(2, 1, true, (context, s, b) -> {
+				ValueWrapper result = s[b].copy();
+				result.multiply(s[b + 1]);
+				s[b] = result;
+			}),
+			"/", new Builtin(2, 1, true, (context, s, b) -> {
+				ValueWrapper result = s[b].copy();
+				result.divide(s[b + 1]);
+				s[b] = result;
+			}));
+
+	/**
+	 * Compiled body of the document
+	 */
+	private final Block body;
+
+	/**
+	 * Number of stack slots needed by the largest echo tag
+	 */
+	private final int stackSize;
+
+	/**
+	 * Number of local variable slots, {@code 0} if variables are kept in a
+	 * multistack
+	 */
+	private final int localsSize;
+
+	/**
+	 * Compiles the given document, variables are kept in a multistack as they
+	 * are by {@link SmartScriptEngine}.
+	 *
+	 * @param documentNode
+	 *        document node to be compiled
+	 * @throws NullPointerException if the given document node is {@code null}
+	 */
+	public CompiledScript(DocumentNode documentNode) {
+		this(documentNode, false);
+	}
+
+	/**
+	 * Compiles the given document.
+	 *
+	 * @param documentNode
+	 *        document node to be compiled
+	 * @param localVariables
+	 *        tells whether loop variables are kept in local slots and loop
+	 *        bounds are evaluated once, ignored if a loop of the document
+	 *        depends on the variables being shared
+	 * @throws NullPointerException if the given document node is {@code null}
+	 */
+	public CompiledScript(DocumentNode documentNode, boolean localVariables) {
+		Objects.requireNonNull(documentNode, "Given document node cannot be null!");
+		Compiler compiler = new Compiler(localVariables && !sharesVariables(documentNode));
+		this.body = compiler.compileChildren(documentNode);
+		this.stackSize = compiler.stackSize;
+		this.localsSize = compiler.localsSize;
+	}
+
+	/**
+	 * Executes this script.
+	 *
+	 * @param requestContext
+	 *        {@link RequestContext} to be used in execution
+	 * @throws SmartScriptEngineException if an error occurs upon execution
+	 * @throws NullPointerException if the given {@link RequestContext} is
+	 *         {@code null}
+	 */
+	public void execute(RequestContext requestContext) {
+		Frame frame = new Frame(
+				Objects.requireNonNull(requestContext, "Given request context cannot be null!"),
+				stackSize,
+				localsSize);
+		try {
+			body.execute(frame);
+		} catch (NoSuchElementException e) {
+			throw new SmartScriptEngineException("Not enough arguments provided!");
+		} catch (EmptyStackException e) {
+			throw new SmartScriptEngineException("Variable used but does not exist!");
+		} catch (RuntimeException e) {
+			throw new SmartScriptEngineException("Number expected but not provided!");
+		}
+	}
+
+	/**
+	 * Returns {@code true} if any loop below the given node starts from a
+	 * variable, whose value is then shared with the loop variable, or uses its
+	 * own variable as the end or the step. Output of such loops depends on
+	 * variables being kept in a multistack.
+	 *
+	 * @param node
+	 *        node whose descendants are checked
+	 * @return {@code true} if a loop depends on shared variables
+	 */
+	private static boolean sharesVariables(Node node) {
+		for (int i = 0, n = node.numberOfChildren(); i < n; ++i) {
+			Node child = node.getChild(i);
+			if (child instanceof ForLoopNode) {
+				ForLoopNode loop = (ForLoopNode) child;
+				String variable = loop.getVariable().asText();
+				if (loop.getStartExpression() instanceof ElementVariable
+						|| isVariable(loop.getEndExpression(), variable)
+						|| isVariable(loop.getStepExpression(), variable)) {
+					return true;
+				}
+			}
+			if (sharesVariables(child)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns {@code true} if the given element is the variable with the given
+	 * name.
+	 *
+	 * @param element
+	 *        element to be checked, can be {@code null}
+	 * @param name
+	 *        name of the variable
+	 * @return {@code true} if the given element is the given variable
+	 */
+	private static boolean isVariable(Element element, String name) {
+		return element instanceof ElementVariable && element.asText().equals(name);
+	}
+
+	/**
+	 * Writes the given text to the context of the given frame.
+	 *
+	 * @param frame
+	 *        frame of the execution
+	 * @param text
+	 *        text to be written
+	 */
+	private static void write(Frame frame, String text) {
+		try {
+			frame.context.write(text);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns block which throws the given exception when executed. Used for
+	 * errors which are known ahead of time, they are still thrown only when
+	 * execution reaches them.
+	 *
+	 * @param exception
+	 *        exception to be thrown
+	 * @return block which throws the given exception
+	 */
+	private static Block failure(RuntimeException exception) {
+		return frame -> {
+			throw exception;
+		};
+	}
+
+	/**
+	 * State of a single execution.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Frame {
+
+		/**
+		 * {@link RequestContext} used in execution
+		 */
+		private final RequestContext context;
+
+		/**
+		 * Multistack used to store local variables in script
+		 */
+		private final ObjectMultistack variables = new ObjectMultistack();
+
+		/**
+		 * Stack slots shared by all echo tags
+		 */
+		private final ValueWrapper[] stack;
+
+		/**
+		 * Slots of local variables
+		 */
+		private final ValueWrapper[] locals;
+
+		/**
+		 * Constructs new {@link Frame} with specified parameters.
+		 *
+		 * @param context
+		 *        {@link RequestContext} used in execution
+		 * @param stackSize
+		 *        number of stack slots
+		 * @param localsSize
+		 *        number of local variable slots
+		 */
+		public Frame(RequestContext context, int stackSize, int localsSize) {
+			this.context = context;
+			this.stack = new ValueWrapper[stackSize];
+			this.locals = new ValueWrapper[localsSize];
+		}
+
+	}
+
+	/**
+	 * Compiled part of the script.
+	 *
+	 * @author Filip Husnjak
+	 */
+	@FunctionalInterface
+	private interface Block {
+
+		/**
+		 * Executes this block.
+		 *
+		 * @param frame
+		 *        frame of the execution
+		 */
+		void execute(Frame frame);
+
+	}
+
+	/**
+	 * Compiled expression of a FOR tag.
+	 *
+	 * @author Filip Husnjak
+	 */
+	@FunctionalInterface
+	private interface Value {
+
+		/**
+		 * Returns value of this expression.
+		 *
+		 * @param frame
+		 *        frame of the execution
+		 * @return value of this expression
+		 */
+		ValueWrapper get(Frame frame);
+
+	}
+
+	/**
+	 * Function or operator together with its stack effect.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Builtin {
+
+		/**
+		 * Number of values taken from the stack
+		 */
+		private final int arguments;
+
+		/**
+		 * Number of values put onto the stack
+		 */
+		private final int results;
+
+		/**
+		 * Tells whether results depend only on the arguments, so function can
+		 * be applied ahead of time
+		 */
+		private final boolean pure;
+
+		/**
+		 * Body of the function
+		 */
+		private final ScriptFunction function;
+
+		/**
+		 * Constructs new {@link Builtin} with specified parameters.
+		 *
+		 * @param arguments
+		 *        number of values taken from the stack
+		 * @param results
+		 *        number of values put onto the stack
+		 * @param pure
+		 *        tells whether results depend only on the arguments
+		 * @param function
+		 *        body of the function
+		 */
+		public Builtin(int arguments, int results, boolean pure, ScriptFunction function) {
+			this.arguments = arguments;
+			this.results = results;
+			this.pure = pure;
+			this.function = function;
+		}
+
+		/**
+		 * Constructs new {@link Builtin} from the given registered function.
+		 * Its body and stack effect are copied, so replacing the function in
+		 * the registry does not change this {@link Builtin}.
+		 *
+		 * @param entry
+		 *        registered function
+		 */
+		public Builtin(FunctionRegistry.Entry entry) {
+			this(entry.getArguments(), entry.getResults(), entry.isPure(), entry.getFunction());
+		}
+
+	}
+
+	/**
+	 * Visitor which compiles nodes into blocks.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Compiler implements INodeVisitor {
+
+		/**
+		 * Blocks compiled from the children of the current node
+		 */
+		private List<Block> blocks = new ArrayList<>();
+
+		/**
+		 * Number of stack slots needed by the largest echo tag compiled so far
+		 */
+		private int stackSize;
+
+		/**
+		 * Tells whether loop variables are kept in local slots
+		 */
+		private final boolean localVariables;
+
+		/**
+		 * Names of variables of the enclosing loops, index of a name is its slot
+		 */
+		private final List<String> scope = new ArrayList<>();
+
+		/**
+		 * Number of local variable slots needed by the deepest loop
+		 */
+		private int localsSize;
+
+		/**
+		 * Constructs new {@link Compiler}.
+		 *
+		 * @param localVariables
+		 *        tells whether loop variables are kept in local slots
+		 */
+		public Compiler(boolean localVariables) {
+			this.localVariables = localVariables;
+		}
+
+		/**
+		 * Compiles children of the given node into a single block.
+		 *
+		 * @param node
+		 *        node whose children are to be compiled
+		 * @return block which executes all children in order
+		 */
+		private Block compileChildren(Node node) {
+			List<Block> parent = blocks;
+			blocks = new ArrayList<>();
+			for (int i = 0, n = node.numberOfChildren(); i < n; ++i) {
+				node.getChild(i).accept(this);
+			}
+			Block[] children = blocks.stream()
+					.map(b -> b instanceof Text ? ((Text) b).toBlock() : b)
+					.toArray(Block[]::new);
+			blocks = parent;
+			if (children.length == 1) return children[0];
+			return frame -> {
+				for (Block child: children) {
+					child.execute(frame);
+				}
+			};
+		}
+
+		/**
+		 * Adds text to be written, it is merged with the preceding text if
+		 * there is no other block between them.
+		 *
+		 * @param text
+		 *        text to be written
+		 */
+		private void addText(String text) {
+			if (text.isEmpty()) return;
+			int last = blocks.size() - 1;
+			if (last >= 0 && blocks.get(last) instanceof Text) {
+				((Text) blocks.get(last)).text.append(text);
+			} else {
+				blocks.add(new Text(text));
+			}
+		}
+
+		@Override
+		public void visitTextNode(TextNode node) {
+			addText(node.getText());
+		}
+
+		@Override
+		public void visitForLoopNode(ForLoopNode node) {
+			String variable = node.getVariable().asText();
+			if (localVariables) {
+				compileLocalLoop(node, variable);
+				return;
+			}
+			Value start = compileValue(node.getStartExpression(), true);
+			Value end = compileValue(node.getEndExpression(), false);
+			Value step = compileValue(node.getStepExpression(), false);
+			Block body = compileChildren(node);
+			blocks.add(frame -> {
+				ObjectMultistack variables = frame.variables;
+				variables.push(variable, start.get(frame));
+				while (variables.peek(variable).numCompare(end.get(frame)) <= 0) {
+					body.execute(frame);
+					variables.peek(variable).add(step.get(frame));
+				}
+				variables.pop(variable);
+			});
+		}
+
+		/**
+		 * Compiles FOR loop whose variable is kept in a local slot. Start
+		 * expression is resolved before the variable comes into scope, end and
+		 * step expressions after it, like in a multistack. End is evaluated
+		 * when the loop starts and step when it is first needed, so errors are
+		 * thrown at the same point of execution.
+		 *
+		 * @param node
+		 *        loop to be compiled
+		 * @param variable
+		 *        name of the loop variable
+		 */
+		private void compileLocalLoop(ForLoopNode node, String variable) {
+			Value start = compileValue(node.getStartExpression(), false);
+			int slot = scope.size();
+			scope.add(variable);
+			localsSize = Math.max(localsSize, scope.size());
+			Value end = compileValue(node.getEndExpression(), false);
+			Value step = compileValue(node.getStepExpression(), false);
+			Block body = compileChildren(node);
+			scope.remove(slot);
+			blocks.add(frame -> {
+				ValueWrapper counter = start.get(frame).copy();
+				frame.locals[slot] = counter;
+				ValueWrapper last = end.get(frame).copy();
+				ValueWrapper increment = null;
+				while (counter.numCompare(last) <= 0) {
+					body.execute(frame);
+					if (increment == null) {
+						increment = step.get(frame).copy();
+					}
+					counter.add(increment);
+				}
+				frame.locals[slot] = null;
+			});
+		}
+
+		@Override
+		public void visitEchoNode(EchoNode node) {
+			Element[] elements = node.getElements();
+			ValueWrapper[] constants = new ValueWrapper[capacity(elements)];
+			List<Block> operations = new ArrayList<>();
+			int depth = 0;
+			int maxDepth = 0;
+			for (Element element: elements) {
+				Builtin builtin = null;
+				if (element instanceof ElementFunction) {
+					FunctionRegistry.Entry entry = FunctionRegistry.resolve((ElementFunction) element);
+					builtin = entry == null ? null : new Builtin(entry);
+					if (builtin == null) {
+						operations.add(failure(new IllegalArgumentException(
+								"The given function does not exist!")));
+						break;
+					}
+				} else if (element instanceof ElementOperator) {
+					builtin = OPERATORS.get(element.asText());
+					if (builtin == null) {
+						operations.add(failure(depth < 2 ? new NoSuchElementException()
+								: new IllegalArgumentException("Illegal oprattion: " + element.asText())));
+						break;
+					}
+				} else if (element instanceof ElementVariable) {
+					Value variable = compileValue(element, false);
+					int slot = depth++;
+					constants[slot] = null;
+					operations.add(frame -> frame.stack[slot] = variable.get(frame));
+				} else if (isConstant(element)) {
+					constants[depth++] = new ValueWrapper(element.asText());
+				} else {
+					operations.add(failure(new IllegalArgumentException("Wrong type of element object!")));
+					break;
+				}
+				if (builtin != null) {
+					if (depth < builtin.arguments) {
+						operations.add(failure(new NoSuchElementException()));
+						break;
+					}
+					int base = depth - builtin.arguments;
+					if (!builtin.pure || !applyAheadOfTime(builtin, constants, base, depth)) {
+						materialize(operations, constants, base, depth);
+						ScriptFunction function = builtin.function;
+						operations.add(frame -> function.apply(frame.context, frame.stack, base));
+						Arrays.fill(constants, base, base + builtin.results, null);
+					}
+					depth = base + builtin.results;
+				}
+				maxDepth = Math.max(maxDepth, depth);
+			}
+			stackSize = Math.max(stackSize, maxDepth);
+			if (operations.isEmpty()) {
+				for (int i = 0; i < depth; ++i) {
+					addText(constants[i].toString());
+				}
+				return;
+			}
+			blocks.add(echo(operations, constants, depth));
+		}
+
+		@Override
+		public void visitDocumentNode(DocumentNode node) {
+			blocks.add(compileChildren(node));
+		}
+
+		/**
+		 * Returns the largest number of values the stack of an echo tag with
+		 * the given elements can hold. Each element puts at most one value
+		 * onto the stack, except functions which can put more.
+		 *
+		 * @param elements
+		 *        elements of the echo tag
+		 * @return upper bound of the stack depth
+		 */
+		private static int capacity(Element[] elements) {
+			int capacity = 1;
+			for (Element element: elements) {
+				FunctionRegistry.Entry entry = element instanceof ElementFunction
+						? FunctionRegistry.resolve((ElementFunction) element) : null;
+				capacity += entry == null ? 1 : Math.max(entry.getResults(), 1);
+			}
+			return capacity;
+		}
+
+		/**
+		 * Applies the given function upon constant arguments and puts its
+		 * results in place of the arguments.
+		 *
+		 * @param builtin
+		 *        function to be applied
+		 * @param constants
+		 *        values known ahead of time, {@code null} for values known
+		 *        only during execution
+		 * @param base
+		 *        index of the first argument
+		 * @param depth
+		 *        number of values on the stack
+		 * @return {@code true} if all arguments are known and function was
+		 *         applied without errors
+		 */
+		private static boolean applyAheadOfTime(Builtin builtin, ValueWrapper[] constants,
+				int base, int depth) {
+			for (int i = base; i < depth; ++i) {
+				if (constants[i] == null) return false;
+			}
+			ValueWrapper[] results = Arrays.copyOf(constants, constants.length);
+			try {
+				builtin.function.apply(null, results, base);
+			} catch (RuntimeException e) {
+				// Error is left to be thrown during execution
+				return false;
+			}
+			System.arraycopy(results, base, constants, base, builtin.results);
+			return true;
+		}
+
+		/**
+		 * Adds operations which put constants with indexes in the given range
+		 * into their stack slots. Constants are not copied, functions do not
+		 * modify their arguments and operators copy the first one.
+		 *
+		 * @param operations
+		 *        operations of the echo tag
+		 * @param constants
+		 *        values known ahead of time
+		 * @param from
+		 *        index of the first slot, inclusive
+		 * @param to
+		 *        index of the last slot, exclusive
+		 */
+		private static void materialize(List<Block> operations, ValueWrapper[] constants,
+				int from, int to) {
+			for (int i = from; i < to; ++i) {
+				if (constants[i] == null) continue;
+				int slot = i;
+				ValueWrapper constant = constants[i];
+				operations.add(frame -> frame.stack[slot] = constant);
+				constants[i] = null;
+			}
+		}
+
+		/**
+		 * Returns block which executes operations of an echo tag and writes
+		 * values left on the stack, from the bottom to the top.
+		 *
+		 * @param operations
+		 *        operations of the echo tag
+		 * @param constants
+		 *        values known ahead of time
+		 * @param depth
+		 *        number of values left on the stack
+		 * @return compiled echo tag
+		 */
+		private static Block echo(List<Block> operations, ValueWrapper[] constants, int depth) {
+			Block[] ops = operations.toArray(Block[]::new);
+			// Adjacent constants are written at once, slot -1 marks a constant
+			List<String> texts = new ArrayList<>();
+			List<Integer> slots = new ArrayList<>();
+			for (int i = 0; i < depth; ++i) {
+				if (constants[i] == null) {
+					texts.add(null);
+					slots.add(i);
+				} else if (!slots.isEmpty() && slots.get(slots.size() - 1) == -1) {
+					texts.set(texts.size() - 1, texts.get(texts.size() - 1) + constants[i]);
+				} else {
+					texts.add(constants[i].toString());
+					slots.add(-1);
+				}
+			}
+			String[] output = texts.toArray(String[]::new);
+			int[] outputSlots = slots.stream().mapToInt(Integer::intValue).toArray();
+			return frame -> {
+				for (Block op: ops) {
+					op.execute(frame);
+				}
+				for (int i = 0; i < outputSlots.length; ++i) {
+					int slot = outputSlots[i];
+					write(frame, slot < 0 ? output[i] : frame.stack[slot].toString());
+				}
+			};
+		}
+
+		/**
+		 * Compiles expression of a FOR tag.
+		 *
+		 * @param element
+		 *        expression to be compiled, can be {@code null}
+		 * @param mutable
+		 *        tells whether returned value is modified by the loop, in which
+		 *        case constant is wrapped anew on every evaluation
+		 * @return compiled expression
+		 */
+		private Value compileValue(Element element, boolean mutable) {
+			if (element instanceof ElementVariable) {
+				String variable = element.asText();
+				if (!localVariables) {
+					return frame -> frame.variables.peek(variable);
+				}
+				int slot = scope.lastIndexOf(variable);
+				if (slot < 0) {
+					return frame -> {
+						throw new EmptyStackException("Stack of the specified key is empty!");
+					};
+				}
+				return frame -> frame.locals[slot];
+			}
+			if (!isConstant(element)) {
+				return frame -> {
+					throw new IllegalArgumentException("Wrong type of element object!");
+				};
+			}
+			String text = element.asText();
+			if (mutable) {
+				return frame -> new ValueWrapper(text);
+			}
+			// Only number is used, which the wrapper parses once and caches
+			ValueWrapper constant = new ValueWrapper(text);
+			return frame -> constant;
+		}
+
+		/**
+		 * Returns {@code true} if the given element is a constant.
+		 *
+		 * @param element
+		 *        element to be checked
+		 * @return {@code true} if the given element is a constant
+		 */
+		private static boolean isConstant(Element element) {
+			return element instanceof ElementConstantDouble
+					|| element instanceof ElementConstantInteger
+					|| element instanceof ElementString;
+		}
+
+	}
+
+	/**
+	 * Text which is written as it is. Kept as a builder while compiling so
+	 * that adjacent texts can be merged.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Text implements Block {
+
+		/**
+		 * Text to be written
+		 */
+		private final StringBuilder text;
+
+		/**
+		 * Constructs new {@link Text} with specified initial text.
+		 *
+		 * @param text
+		 *        text to be written
+		 */
+		public Text(String text) {
+			this.text = new StringBuilder(text);
+		}
+
+		/**
+		 * Returns block which writes the merged text.
+		 *
+		 * @return block which writes the text
+		 */
+		public Block toBlock() {
+			String merged = text.toString();
+			return frame -> write(frame, merged);
+		}
+
+		@Override
+		public void execute(Frame frame) {
+			write(frame, text.toString());
+		}
+
+	}
+
+}
@@ -0,0 +1,476 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.text.DecimalFormat;
+import java.text.FieldPosition;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+
+/**
+ * Registry of functions which can be called from SmartScript echo tags. Each
+ * function gets an index when it is registered, {@code SmartScriptParser}
+ * resolves function names to indexes while parsing, so executing a function
+ * only reads an array. Registry holds built-in functions from the start and
+ * users can register their own functions with declared number of arguments
+ * and results. Registering a function with an existing name replaces that
+ * function, but keeps its index.
+ * <p>
+ * {@link CompiledScript} takes functions from the registry when it is
+ * compiled, so already compiled scripts keep calling the functions that were
+ * registered at that time. Registry counts registrations, see
+ * {@link #getVersion()}, so caches of compiled scripts can tell when their
+ * scripts have to be compiled again.
+ * <p>
+ * Registry can be read by multiple threads at once, registering functions is
+ * synchronized and does not block readers.
+ * <p>
+ * Decimal formats used by {@code decfmt} are cached by their patterns and
+ * shared by all threads. Each pattern has a small pool of formats, a thread
+ * takes a format from the pool while formatting and returns it afterwards, so
+ * formatting does not create formats even if every request is executed by a
+ * new thread.
+ *
+ * @author Filip Husnjak
+ */
+public class FunctionRegistry {
+
+	/**
+	 * Maximum number of patterns whose decimal formats are cached
+	 */
+	private static final int MAX_CACHED_FORMATS = 32;
+
+	/**
+	 * Maximum number of idle formats kept for each pattern
+	 */
+	private static final int FORMATS_PER_PATTERN = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Pools of decimal formats mapped by their patterns
+	 */
+	private static final Map<String, FormatPool> formats = new ConcurrentHashMap<>();
+
+	/**
+	 * Counter used to order uses of the format pools
+	 */
+	private static final AtomicLong formatClock = new AtomicLong();
+
+	/**
+	 * Number of registrations, guarded by the class lock
+	 */
+	private static volatile long version;
+
+	/**
+	 * Indexes of functions mapped by their names
+	 */
+	private static final Map<String, Integer> indexes = new ConcurrentHashMap<>();
+
+	/**
+	 * Registered functions, array is replaced whenever function is registered
+	 */
+	private static volatile Entry[] functions = new Entry[0];
+
+	static {
+		register("sin", 1, 1, true, (context, s, b) ->
+				s[b] = new ValueWrapper(Math.sin(Math.toRadians(s[b].doubleValue()))));
+		register("decfmt", 2, 1, true, (context, s, b) ->
+				s[b] = new ValueWrapper(format(s[b + 1].toString(), s[b].doubleValue())));
+		register("dup", 1, 2, true, (context, s, b) -> s[b + 1] = s[b].copy());
+		register("swap", 2, 2, true, (context, s, b) -> {
+			ValueWrapper a = s[b + 1];
+			s[b + 1] = s[b];
+			s[b] = a;
+		});
+		register("setMimeType", 1, 0, false, (context, s, b) -> context.setMimeType(s[b].toString()));
+		register("paramGet", 2, 1, false, (context, s, b) ->
+				s[b] = paramValue(s[b + 1], context.getParameter(s[b].toString())));
+		register("pparamGet", 2, 1, false, (context, s, b) ->
+				s[b] = paramValue(s[b + 1], context.getPersistentParameter(s[b].toString())));
+		register("pparamSet", 2, 0, false, (context, s, b) ->
+				context.setPersistentParameter(s[b + 1].toString(), s[b].toString()));
+		register("pparamDel", 1, 0, false, (context, s, b) ->
+				context.removePersistentParameter(s[b].toString()));
+		register("tparamGet", 2, 1, false, (context, s, b) ->
+				s[b] = paramValue(s[b + 1], context.getTemporaryParameter(s[b].toString())));
+		register("tparamSet", 2, 0, false, (context, s, b) ->
+				context.setTemporaryParameter(s[b + 1].toString(), s[b].toString()));
+		register("tparamDel", 1, 0, false, (context, s, b) ->
+				context.removeTemporaryParameter(s[b].toString()));
+	}
+
+	/**
+	 * Disables creation of instances.
+	 */
+	private FunctionRegistry() {
+	}
+
+	/**
+	 * Registers function with the given name. If function with the given name
+	 * is already registered it is replaced, scripts compiled before that keep
+	 * calling the replaced function. Given function must not modify its
+	 * arguments, see {@link ScriptFunction}.
+	 *
+	 * @param name
+	 *        name of the function, without the {@code @} sign
+	 * @param arguments
+	 *        number of values function takes from the stack
+	 * @param results
+	 *        number of values function puts onto the stack
+	 * @param pure
+	 *        tells whether results depend only on the arguments, in which
+	 *        case function can be applied upon constant arguments before the
+	 *        script is executed
+	 * @param function
+	 *        body of the function
+	 * @return index of the function
+	 * @throws NullPointerException if the given name or function is {@code null}
+	 * @throws IllegalArgumentException if the given name is empty or number of
+	 *         arguments or results is negative
+	 */
+	public static synchronized int register(String name, int arguments, int results, boolean pure,
+			ScriptFunction function) {
+		Objects.requireNonNull(name, "Given name cannot be null!");
+		Objects.requireNonNull(function, "Given function cannot be null!");
+		if (name.isEmpty()) {
+			throw new IllegalArgumentException("Name of the function cannot be empty!");
+		}
+		if (arguments < 0 || results < 0) {
+			throw new IllegalArgumentException("Number of arguments and results cannot be negative!");
+		}
+		Integer index = indexes.get(name);
+		Entry[] updated = Arrays.copyOf(functions, index == null ? functions.length + 1 : functions.length);
+		int i = index == null ? functions.length : index;
+		updated[i] = new Entry(name, arguments, results, pure, function);
+		functions = updated;
+		indexes.put(name, i);
+		version++;
+		return i;
+	}
+
+	/**
+	 * Returns number of registrations performed so far, including
+	 * registrations of the built-in functions. Script compiled when the
+	 * version was different might call functions which were replaced since,
+	 * or fail to call functions which were registered since.
+	 *
+	 * @return current version of the registry
+	 */
+	public static long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns index of the function with the given name.
+	 *
+	 * @param name
+	 *        name of the function
+	 * @return index of the function, {@code -1} if it is not registered
+	 */
+	public static int indexOf(String name) {
+		Integer index = indexes.get(name);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns function with the given index.
+	 *
+	 * @param index
+	 *        index of the function
+	 * @return function with the given index
+	 * @throws IndexOutOfBoundsException if function with the given index is not
+	 *         registered
+	 */
+	public static Entry get(int index) {
+		return functions[index];
+	}
+
+	/**
+	 * Returns function called by the given element. Index resolved by the
+	 * parser is used, name is looked up only if function was not registered
+	 * when the element was parsed.
+	 *
+	 * @param element
+	 *        element calling the function
+	 * @return called function, {@code null} if it is not registered
+	 */
+	public static Entry resolve(ElementFunction element) {
+		int index = element.getIndex();
+		if (index < 0) {
+			index = indexOf(element.getName());
+			if (index < 0) return null;
+		}
+		return functions[index];
+	}
+
+	/**
+	 * Formats the given number using decimal format with the given pattern.
+	 * Format is taken from the pool of the pattern, pool is created if the
+	 * pattern is not cached. When there are too many cached patterns least
+	 * recently used one is removed.
+	 *
+	 * @param pattern
+	 *        pattern of the format
+	 * @param number
+	 *        number to be formatted
+	 * @return formatted number
+	 * @throws IllegalArgumentException if the given pattern is not valid
+	 */
+	static String format(String pattern, double number) {
+		FormatPool pool = formats.get(pattern);
+		if (pool == null) {
+			// Invalid pattern throws before it is cached
+			FormatPool created = new FormatPool(new DecimalFormat(pattern));
+			pool = formats.putIfAbsent(pattern, created);
+			if (pool == null) {
+				pool = created;
+				while (formats.size() > MAX_CACHED_FORMATS) {
+					evictLeastRecentlyUsedFormat();
+				}
+			}
+		}
+		return pool.format(number);
+	}
+
+	/**
+	 * Removes the pool of formats which was not used for the longest time.
+	 */
+	private static void evictLeastRecentlyUsedFormat() {
+		String oldest = null;
+		long oldestAccess = Long.MAX_VALUE;
+		for (Map.Entry<String, FormatPool> e: formats.entrySet()) {
+			if (e.getValue().lastAccess < oldestAccess) {
+				oldestAccess = e.getValue().lastAccess;
+				oldest = e.getKey();
+			}
+		}
+		if (oldest != null) formats.remove(oldest);
+	}
+
+	/**
+	 * Returns wrapped parameter value if it is not {@code null}, otherwise
+	 * default value is returned.
+	 *
+	 * @param defaultValue
+	 *        value which is returned if the parameter does not exist
+	 * @param value
+	 *        value of the parameter
+	 * @return wrapped value of the parameter or default value
+	 */
+	private static ValueWrapper paramValue(ValueWrapper defaultValue, String value) {
+		return value == null ? defaultValue : new ValueWrapper(value);
+	}
+
+	/**
+	 * Registered function together with its declared stack effect.
+	 *
+	 * @author Filip Husnjak
+	 */
+	public static class Entry {
+
+		/**
+		 * Name of the function
+		 */
+		private final String name;
+
+		/**
+		 * Number of values taken from the stack
+		 */
+		private final int arguments;
+
+		/**
+		 * Number of values put onto the stack
+		 */
+		private final int results;
+
+		/**
+		 * Tells whether results depend only on the arguments
+		 */
+		private final boolean pure;
+
+		/**
+		 * Body of the function
+		 */
+		private final ScriptFunction function;
+
+		/**
+		 * Constructs new {@link Entry} with specified parameters.
+		 *
+		 * @param name
+		 *        name of the function
+		 * @param arguments
+		 *        number of values taken from the stack
+		 * @param results
+		 *        number of values put onto the stack
+		 * @param pure
+		 *        tells whether results depend only on the arguments
+		 * @param function
+		 *        body of the function
+		 */
+		private Entry(String name, int arguments, int results, boolean pure, ScriptFunction function) {
+			this.name = name;
+			this.arguments = arguments;
+			this.results = results;
+			this.pure = pure;
+			this.function = function;
+		}
+
+		/**
+		 * Returns name of the function.
+		 *
+		 * @return name of the function
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns number of values function takes from the stack.
+		 *
+		 * @return number of arguments
+		 */
+		public int getArguments() {
+			return arguments;
+		}
+
+		/**
+		 * Returns number of values function puts onto the stack.
+		 *
+		 * @return number of results
+		 */
+		public int getResults() {
+			return results;
+		}
+
+		/**
+		 * Returns {@code true} if results depend only on the arguments.
+		 *
+		 * @return {@code true} if function is pure
+		 */
+		public boolean isPure() {
+			return pure;
+		}
+
+		/**
+		 * Returns body of the function.
+		 *
+		 * @return body of the function
+		 */
+		public ScriptFunction getFunction() {
+			return function;
+		}
+
+	}
+
+	/**
+	 * Pool of decimal formats with the same pattern. Formats are not thread
+	 * safe, so each format is used by one thread at a time. Idle formats are
+	 * kept in slots of an array, thread takes a format by emptying its slot.
+	 * If all slots are empty new format is cloned from the prototype, and if
+	 * all slots are full returned format is dropped.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class FormatPool {
+
+		/**
+		 * Format other formats are cloned from, it is never used directly
+		 */
+		private final DecimalFormat prototype;
+
+		/**
+		 * Idle formats, {@code null} marks an empty slot
+		 */
+		private final AtomicReferenceArray<Formatter> idle = new AtomicReferenceArray<>(FORMATS_PER_PATTERN);
+
+		/**
+		 * Value of the format clock when pool was last used
+		 */
+		private volatile long lastAccess = formatClock.incrementAndGet();
+
+		/**
+		 * Constructs new {@link FormatPool} of formats equal to the given one.
+		 *
+		 * @param prototype
+		 *        format other formats are cloned from
+		 */
+		public FormatPool(DecimalFormat prototype) {
+			this.prototype = prototype;
+		}
+
+		/**
+		 * Formats the given number using an idle format of this pool.
+		 *
+		 * @param number
+		 *        number to be formatted
+		 * @return formatted number
+		 */
+		public String format(double number) {
+			lastAccess = formatClock.incrementAndGet();
+			Formatter formatter = null;
+			for (int i = 0; i < FORMATS_PER_PATTERN && formatter == null; ++i) {
+				formatter = idle.getAndSet(i, null);
+			}
+			if (formatter == null) {
+				formatter = new Formatter((DecimalFormat) prototype.clone());
+			}
+			String result = formatter.format(number);
+			for (int i = 0; i < FORMATS_PER_PATTERN; ++i) {
+				if (idle.compareAndSet(i, null, formatter)) break;
+			}
+			return result;
+		}
+
+	}
+
+	/**
+	 * Decimal format together with the buffer formatted numbers are written
+	 * into.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Formatter {
+
+		/**
+		 * Format used for formatting
+		 */
+		private final DecimalFormat format;
+
+		/**
+		 * Buffer formatted numbers are written into
+		 */
+		private final StringBuffer buffer = new StringBuffer();
+
+		/**
+		 * Field position required by the format, its value is ignored
+		 */
+		private final FieldPosition position = new FieldPosition(0);
+
+		/**
+		 * Constructs new {@link Formatter} which uses the given format.
+		 *
+		 * @param format
+		 *        format used for formatting
+		 */
+		public Formatter(DecimalFormat format) {
+			this.format = format;
+		}
+
+		/**
+		 * Formats the given number.
+		 *
+		 * @param number
+		 *        number to be formatted
+		 * @return formatted number
+		 */
+		public String format(double number) {
+			buffer.setLength(0);
+			return format.format(number, buffer, position).toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,35 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Body of a function which can be called from SmartScript echo tags. Function
+ * takes its arguments from consecutive slots of an array, the first argument
+ * is the deepest one on the stack, and writes its results into slots starting
+ * from the slot of the first argument. Number of arguments and results is
+ * declared when the function is registered in {@link FunctionRegistry}.
+ *
+ * @author Filip Husnjak
+ */
+@FunctionalInterface
+public interface ScriptFunction {
+
+	/**
+	 * Applies this function. Arguments must not be modified, constants of a
+	 * compiled script are passed as the same {@link ValueWrapper} objects to
+	 * every execution, also to executions running at the same time in other
+	 * threads. Result must therefore be a new wrapper, a copy of an argument
+	 * or an unchanged argument, which is how {@code @dup} and {@code @swap}
+	 * work.
+	 *
+	 * @param context
+	 *        context of the executed script, {@code null} when pure function
+	 *        is applied upon constants before the script is executed
+	 * @param stack
+	 *        array holding the arguments, results are written into it
+	 * @param base
+	 *        index of the first argument
+	 */
+	void apply(RequestContext context, ValueWrapper[] stack, int base);
+
+}
@@ -1,13 +1,11 @@
 package hr.fer.zemris.java.custom.scripting.exec;
 
 import java.io.IOException;
-import java.text.DecimalFormat;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.function.Function;
 
 import hr.fer.zemris.java.custom.scripting.elems.Element;
 import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
@@ -20,22 +18,33 @@ import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
 import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
 import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
 import hr.fer.zemris.java.custom.scripting.nodes.INodeVisitor;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
 import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
 import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
  * Class that represents engine which can execute parsed SmarScript document.
- * It uses visitor design pattern.
+ * It uses visitor design pattern. Engine can also execute document that is
+ * being parsed incrementally, each top-level node is executed as soon as the
+ * parser returns it, so output is written before the whole document is read.
  * 
  * @author Filip Husnjak
  */
 public class SmartScriptEngine {
 
 	/**
-	 * Document node to be executed
+	 * Document node to be executed, {@code null} if nodes are taken from
+	 * {@link #parser}
 	 */
 	private DocumentNode documentNode;
 	
+	/**
+	 * Parser returning top-level nodes to be executed
+	 */
+	private SmartScriptParser parser;
+	
 	/**
 	 * {@link RequestContext} used in execution
 	 */
@@ -46,6 +55,11 @@ public class SmartScriptEngine {
 	 */
 	private ObjectMultistack multistack = new ObjectMultistack();
 	
+	/**
+	 * Array holding arguments and results of a function while it is applied
+	 */
+	private ValueWrapper[] arguments = new ValueWrapper[2];
+	
 	/**
 	 * Constructs new {@link SmartScriptEngine} with specified parameters.
 	 * 
@@ -65,12 +79,44 @@ public class SmartScriptEngine {
 				"Given request context cannot be null!");
 	}
 	
+	/**
+	 * Constructs new {@link SmartScriptEngine} which executes top-level nodes
+	 * returned by the given parser.
+	 * 
+	 * @param parser
+	 *        parser returning nodes to be executed, usually one reading the
+	 *        document incrementally
+	 * @param requestContext
+	 *        {@link RequestContext} to be used in execution
+	 * @throws NullPointerException if either given parser or {@link RequestContext}
+	 *         are {@code null}
+	 */
+	public SmartScriptEngine(SmartScriptParser parser, RequestContext requestContext) {
+		this.parser = Objects.requireNonNull(
+				parser, 
+				"Given parser cannot be null!");
+		this.requestContext = Objects.requireNonNull(
+				requestContext, 
+				"Given request context cannot be null!");
+	}
+	
 	/**
 	 * Executes this engine.
+	 * 
+	 * @throws SmartScriptParserException if the document is parsed incrementally
+	 *         and its remaining part cannot be parsed
 	 */
 	public void execute() {
 		try {
-			documentNode.accept(visitor);
+			if (parser == null) {
+				documentNode.accept(visitor);
+				return;
+			}
+			for (Node node = parser.nextNode(); node != null; node = parser.nextNode()) {
+				node.accept(visitor);
+			}
+		} catch (SmartScriptParserException e) {
+			throw e;
 		} catch (NoSuchElementException e) {
 			throw new SmartScriptEngineException("Not enough arguments provided!");
 		} catch (EmptyStackException e) {
@@ -101,11 +147,11 @@ public class SmartScriptEngine {
 			Element stepExpression = node.getStepExpression();
 			Element endExpression = node.getEndExpression();
 			multistack.push(variable, getValue(startExpression));
-			while (multistack.peek(variable).numCompare(getValue(endExpression).getValue()) <= 0) {
+			while (multistack.peek(variable).numCompare(getValue(endExpression)) <= 0) {
 				for (int i = 0, n = node.numberOfChildren(); i < n; ++i) {
 					node.getChild(i).accept(this);
 				}
-				multistack.peek(variable).add(getValue(stepExpression).getValue());
+				multistack.peek(variable).add(getValue(stepExpression));
 			}
 			multistack.pop(variable);
 		}
@@ -153,11 +199,11 @@ public class SmartScriptEngine {
 		 */
 		private void execute(Deque<ValueWrapper> stack, Element element) {
 			if (element instanceof ElementFunction) {
-				applyFunction(stack, element.asText());
+				applyFunction(stack, (ElementFunction) element);
 			} else if (element instanceof ElementOperator) {
 				ValueWrapper second = stack.pop();
 				ValueWrapper first = stack.pop();
-				stack.push(performOperation(first.getValue(), second.getValue(), element.asText()));
+				stack.push(performOperation(first, second, element.asText()));
 			} else {
 				stack.push(getValue(element));
 			}
@@ -165,6 +211,8 @@ public class SmartScriptEngine {
 		
 		/**
 		 * Executes the given function and updates all appropriate values.
+		 * Function is taken from {@link FunctionRegistry} by the index resolved
+		 * when the script was parsed.
 		 * 
 		 * @param stack
 		 *        stack used for values
@@ -172,90 +220,28 @@ public class SmartScriptEngine {
 		 *        function to be applied
 		 * @throws IllegalArgumentException if the given function does not exist
 		 */
-		private void applyFunction(Deque<ValueWrapper> stack, String function) {
-			switch (function) {
-			case "sin":
-				double valueSin = stack.pop().doubleValue();
-				stack.push(new ValueWrapper(Math.sin(Math.toRadians(valueSin))));
-				break;
-			case "decfmt":
-				DecimalFormat format = new DecimalFormat(stack.pop().toString());
-				stack.push(new ValueWrapper(format.format(stack.pop().doubleValue())));
-				break;
-			case "dup":
-				stack.push(new ValueWrapper(stack.peek().getValue()));
-				break;
-			case "swap":
-				ValueWrapper a = stack.pop();
-				ValueWrapper b = stack.pop();
-				stack.push(a);
-				stack.push(b);
-				break;
-			case "setMimeType":
-				requestContext.setMimeType(stack.pop().toString());
-				break;
-			case "paramGet":
-				stack.push(getParamValue(
-						stack.pop(),
-						stack.pop().toString(),
-						requestContext::getParameter));
-				break;
-			case "pparamGet":
-				stack.push(getParamValue(
-						stack.pop(), 
-						stack.pop().toString(),
-						requestContext::getPersistentParameter));
-				break;
-			case "pparamSet":
-				requestContext.setPersistentParameter(
-						stack.pop().toString(), 
-						stack.pop().toString());
-				break;
-			case "pparamDel":
-				requestContext.removePersistentParameter(stack.pop().toString());
-				break;
-			case "tparamGet":
-				stack.push(getParamValue(
-						stack.pop(), 
-						stack.pop().toString(),
-						requestContext::getTemporaryParameter));
-				break;
-			case "tparamSet":
-				requestContext.setTemporaryParameter(
-						stack.pop().toString(),
-						stack.pop().toString());
-				break;
-			case "tparamDel":
-				requestContext.removeTemporaryParameter(stack.pop().toString());
-				break;
-			default:
+		private void applyFunction(Deque<ValueWrapper> stack, ElementFunction function) {
+			FunctionRegistry.Entry entry = FunctionRegistry.resolve(function);
+			if (entry == null) {
 				throw new IllegalArgumentException("The given function does not exist!");
 			}
+			int n = entry.getArguments();
+			if (arguments.length < Math.max(n, entry.getResults())) {
+				arguments = new ValueWrapper[Math.max(n, entry.getResults())];
+			}
+			for (int i = n - 1; i >= 0; --i) {
+				arguments[i] = stack.pop();
+			}
+			entry.getFunction().apply(requestContext, arguments, 0);
+			for (int i = 0, r = entry.getResults(); i < r; ++i) {
+				stack.push(arguments[i]);
+			}
 		}
 		
 		/**
-		 * Returns the value with the given name if it exists and is not {@code null},
-		 * otherwise default value is returned.
-		 * 
-		 * @param defaultValue
-		 *        value which is returned if the requested value is illegal or does
-		 *        not exist
-		 * @param name
-		 *        name of the value to be returned
-		 * @param supplier
-		 *        returns the proper value with the given name
-		 * @return value with the given name or default value
-		 */
-		private ValueWrapper getParamValue(ValueWrapper defaultValue, String name, 
-				Function<String, String> supplier) {
-			ValueWrapper value = new ValueWrapper(supplier.apply(name));
-			return value.getValue() == null ? defaultValue : value;
-		}
-
-		/**
-		 * Performs specified operation upon given Objects which should be
-		 * instances of a {@link Double} or {@link Integer} or parsable to
-		 * number.
+		 * Performs specified operation upon values of given wrappers which
+		 * should be instances of a {@link Double} or {@link Integer} or parsable
+		 * to number. Given wrappers are not changed.
 		 * 
 		 * @param first
 		 *        first value of the operation
@@ -266,8 +252,8 @@ public class SmartScriptEngine {
 		 * @return result of an operation wrapped in {@link ValueWrapper} object
 		 * @throws IllegalArgumentException if the given operator does not exist
 		 */
-		private ValueWrapper performOperation(Object first, Object second, String operation) {
-			ValueWrapper toReturn = new ValueWrapper(first);
+		private ValueWrapper performOperation(ValueWrapper first, ValueWrapper second, String operation) {
+			ValueWrapper toReturn = first.copy();
 			switch (operation) {
 			case "+":
 				toReturn.add(second);
@@ -1,7 +1,5 @@
 package hr.fer.zemris.java.custom.scripting.exec;
 
-import java.util.function.BiFunction;
-
 /**
  * Represents wrapper that keeps value of any type including null references.
  * It also provides useful methods for math operations if the certain conditions
@@ -9,101 +7,209 @@ import java.util.function.BiFunction;
  * perform mathematical operation upon two Object values they both should be instances
  * of String, Integer, Double or null (then its treated as {@code ZERO}). If its
  * instance of String it have to be convertible to Double or Integer.
- * 
+ * <p>
+ * Integer and Double values are kept unboxed, so arithmetic upon two
+ * wrappers, or upon a wrapper and an Integer or Double, does not allocate.
+ * Number parsed from a String value is cached, so a wrapper holding a
+ * literal can be used as an operand any number of times while the String
+ * is parsed only once. Cached number is immutable, so wrapper that is only
+ * used as an operand can be shared by multiple threads.
+ *
  * @author Filip Husnjak
  */
 public class ValueWrapper {
 
 	/**
-	 * Value of this {@code ValueWrapper}, it can be object of any type or null
+	 * Type of value kept in {@link #value}
+	 */
+	private static final int OBJECT = 0;
+
+	/**
+	 * Type of value kept in {@link #intValue}
+	 */
+	private static final int INTEGER = 1;
+
+	/**
+	 * Type of value kept in {@link #doubleValue}
+	 */
+	private static final int DOUBLE = 2;
+
+	/**
+	 * Codes of supported operations
+	 */
+	private static final int ADD = 0, SUBTRACT = 1, MULTIPLY = 2, DIVIDE = 3, COMPARE = 4;
+
+	/**
+	 * Value of {@code null} in arithmetic operations
+	 */
+	private static final Integer ZERO = 0;
+
+	/**
+	 * Value of this {@code ValueWrapper} if it is not Integer or Double, it can be
+	 * object of any type or null
 	 */
 	private Object value;
 
+	/**
+	 * Type of the value of this {@code ValueWrapper}
+	 */
+	private int type;
+
+	/**
+	 * Value of this {@code ValueWrapper} if it is Integer
+	 */
+	private int intValue;
+
+	/**
+	 * Value of this {@code ValueWrapper} if it is Double
+	 */
+	private double doubleValue;
+
+	/**
+	 * Number parsed from the String value, {@code null} if it was not parsed yet
+	 */
+	private Number parsed;
+
 	/**
 	 * Constructs new {@code ValueWrapper} object with specified value which can
 	 * also be {@code null};
-	 * 
+	 *
 	 * @param value
 	 *        value of the new {@code ValueWrapper} object
 	 */
 	public ValueWrapper(Object value) {
-		this.value = value;
+		setValue(value);
 	}
-	
+
 	/**
-	 * If the given value or the value of this {@code ValueWrapper} are not instance of 
+	 * If the given value or the value of this {@code ValueWrapper} are not instance of
 	 * Integer, Double, String or {@code null} this method will throw exception.
 	 * If the given value or the value of this {@code ValueWrapper} are instances
 	 * of String but not convertible to Integer or Double this method will also
 	 * throw exception.
 	 * In all other cases this method will add the given value to the value of
 	 * this {@code ValueWrapper}.
-	 * 
+	 *
 	 * @param incValue
 	 *        value to be added to the value of this {@code ValueWrapper}
 	 * @throws RuntimeException if conditions specified in the description of the method
 	 *         are not met
 	 */
 	public void add(Object incValue) {
-		value = execute(incValue, Double::sum, Integer::sum);
+		execute(ADD, incValue);
 	}
-	
+
+	/**
+	 * Adds value of the given wrapper to the value of this {@code ValueWrapper},
+	 * same as {@link #add(Object)} called with the value of the given wrapper.
+	 *
+	 * @param incValue
+	 *        wrapper whose value is to be added
+	 * @throws RuntimeException if conditions specified in the description of
+	 *         {@link #add(Object)} are not met
+	 */
+	public void add(ValueWrapper incValue) {
+		execute(ADD, incValue);
+	}
+
 	/**
-	 * If the given value or the value of this {@code ValueWrapper} are not instance of 
+	 * If the given value or the value of this {@code ValueWrapper} are not instance of
 	 * Integer, Double, String or {@code null} this method will throw exception.
 	 * If the given value or the value of this {@code ValueWrapper} are instances
 	 * of String but not convertible to Integer or Double this method will also
 	 * throw exception.
 	 * In all other cases this method will subtract the given value from the value of
 	 * this {@code ValueWrapper}.
-	 * 
+	 *
 	 * @param decValue
 	 *        value to be subtracted from the value of this {@code ValueWrapper}
 	 * @throws RuntimeException if conditions specified in the description of the method
 	 *         are not met
 	 */
 	public void subtract(Object decValue) {
-		value = execute(decValue, (d1, d2) -> d1 - d2, (i1, i2) -> i1 - i2);
+		execute(SUBTRACT, decValue);
 	}
-	
+
 	/**
-	 * If the given value or the value of this {@code ValueWrapper} are not instance of 
+	 * Subtracts value of the given wrapper from the value of this
+	 * {@code ValueWrapper}, same as {@link #subtract(Object)} called with the
+	 * value of the given wrapper.
+	 *
+	 * @param decValue
+	 *        wrapper whose value is to be subtracted
+	 * @throws RuntimeException if conditions specified in the description of
+	 *         {@link #subtract(Object)} are not met
+	 */
+	public void subtract(ValueWrapper decValue) {
+		execute(SUBTRACT, decValue);
+	}
+
+	/**
+	 * If the given value or the value of this {@code ValueWrapper} are not instance of
 	 * Integer, Double, String or {@code null} this method will throw exception.
 	 * If the given value or the value of this {@code ValueWrapper} are instances
 	 * of String but not convertible to Integer or Double this method will also
 	 * throw exception.
 	 * In all other cases this method will multiply the value of this {@code ValueWrapper}
 	 * with the given value.
-	 * 
+	 *
 	 * @param mulValue
 	 *        value by which value of this {@code ValueWrapper} will be multiplied
 	 * @throws RuntimeException if conditions specified in the description of the method
 	 *         are not met
 	 */
 	public void multiply(Object mulValue) {
-		value = execute(mulValue, (d1, d2) -> d1 * d2, (i1, i2) -> i1 * i2);
+		execute(MULTIPLY, mulValue);
 	}
-	
+
 	/**
-	 * If the given value or the value of this {@code ValueWrapper} are not instance of 
+	 * Multiplies the value of this {@code ValueWrapper} with the value of the
+	 * given wrapper, same as {@link #multiply(Object)} called with the value of
+	 * the given wrapper.
+	 *
+	 * @param mulValue
+	 *        wrapper by whose value this value will be multiplied
+	 * @throws RuntimeException if conditions specified in the description of
+	 *         {@link #multiply(Object)} are not met
+	 */
+	public void multiply(ValueWrapper mulValue) {
+		execute(MULTIPLY, mulValue);
+	}
+
+	/**
+	 * If the given value or the value of this {@code ValueWrapper} are not instance of
 	 * Integer, Double, String or {@code null} this method will throw exception.
 	 * If the given value or the value of this {@code ValueWrapper} are instances
 	 * of String but not convertible to Integer or Double this method will also
 	 * throw exception.
 	 * In all other cases this method will divide the value of this {@code ValueWrapper}
 	 * with the given value.
-	 * 
+	 *
 	 * @param divValue
 	 *        value by which value of this {@code ValueWrapper} will be divided
 	 * @throws RuntimeException if conditions specified in the description of the method
 	 *         are not met
 	 */
 	public void divide(Object divValue) {
-		value = execute(divValue, (d1, d2) -> d1 / d2, (i1, i2) -> i1 / i2);
+		execute(DIVIDE, divValue);
 	}
-	
+
 	/**
-	 * If the given value or the value of this {@code ValueWrapper} are not instance of 
+	 * Divides the value of this {@code ValueWrapper} with the value of the
+	 * given wrapper, same as {@link #divide(Object)} called with the value of
+	 * the given wrapper.
+	 *
+	 * @param divValue
+	 *        wrapper by whose value this value will be divided
+	 * @throws RuntimeException if conditions specified in the description of
+	 *         {@link #divide(Object)} are not met
+	 */
+	public void divide(ValueWrapper divValue) {
+		execute(DIVIDE, divValue);
+	}
+
+	/**
+	 * If the given value or the value of this {@code ValueWrapper} are not instance of
 	 * Integer, Double, String or {@code null} this method will throw exception.
 	 * If the given value or the value of this {@code ValueWrapper} are instances
 	 * of String but not convertible to Integer or Double this method will also
@@ -115,7 +221,7 @@ public class ValueWrapper {
 	 * <li> {@code  0} - if the value of this {@code ValueWrapper} object is equal to the given value
 	 * <li> {@code  1} - if the value of this {@code ValueWrapper} object is greater than the given value
 	 * </ul>
-	 * 
+	 *
 	 * @param withValue
 	 *        Value to be added to the value of this {@code ValueWrapper}
 	 * @return the result of the comparison specified in method description
@@ -123,49 +229,196 @@ public class ValueWrapper {
 	 *         are not met
 	 */
 	public int numCompare(Object withValue) {
-		return execute(withValue, Double::compare, Integer::compare);
+		return execute(COMPARE, withValue);
 	}
-	
+
 	/**
-	 * Method that determines whether arithmetic operations upon given value and
-	 * value of this {@code ValueWrapper} are legal. In other words this method
-	 * checks the conditions specified by each method for arithmetic operations.
-	 * If the conditions are met this method will use proper {@code BiFunction}
-	 * and return the result.
-	 * 
+	 * Compares the value of this {@code ValueWrapper} with the value of the
+	 * given wrapper, same as {@link #numCompare(Object)} called with the value
+	 * of the given wrapper.
+	 *
+	 * @param withValue
+	 *        wrapper whose value is compared with this value
+	 * @return the result of the comparison specified in the description of
+	 *         {@link #numCompare(Object)}
+	 * @throws RuntimeException if conditions specified in the description of
+	 *         {@link #numCompare(Object)} are not met
+	 */
+	public int numCompare(ValueWrapper withValue) {
+		return execute(COMPARE, withValue);
+	}
+
+	/**
+	 * Converts the value of this {@code ValueWrapper} and the given value to
+	 * numbers and performs the given operation upon them.
+	 *
+	 * @param operation
+	 *        code of the operation
 	 * @param givenValue
 	 *        given value used for arithmetic operation
-	 * @param doubles
-	 *        {@code BiFunction} used for Double values
-	 * @param integers
-	 *        {@code BiFunction} used for Integer values
-	 * @return the result of the {@code BiFunction}, which {@code BiFunction} is
-	 *         used is determined in this method
+	 * @return the result of the comparison, {@code 0} for other operations
+	 * @throws RuntimeException if the conditions specified for arithmetic operations
+	 *         are not met
+	 */
+	private int execute(int operation, Object givenValue) {
+		toNumber();
+		Number number = givenValue instanceof String ? parseNumber((String) givenValue) : number(givenValue);
+		if (number instanceof Integer) {
+			return execute(operation, false, number.intValue(), 0);
+		}
+		return execute(operation, true, 0, number.doubleValue());
+	}
+
+	/**
+	 * Converts the value of this {@code ValueWrapper} and the value of the given
+	 * wrapper to numbers and performs the given operation upon them. Value of
+	 * the given wrapper is not changed.
+	 *
+	 * @param operation
+	 *        code of the operation
+	 * @param givenValue
+	 *        wrapper whose value is used for arithmetic operation
+	 * @return the result of the comparison, {@code 0} for other operations
 	 * @throws RuntimeException if the conditions specified for arithmetic operations
 	 *         are not met
 	 */
-	private <T extends Number> T execute(Object givenValue, BiFunction<Double, Double, T> doubles, 
-			BiFunction<Integer, Integer, T> integers) {
-		value = getValue(value);
-		givenValue = getValue(givenValue);
-		if (value instanceof Double || givenValue instanceof Double) {
-			return doubles.apply(((Number) value).doubleValue(), ((Number) givenValue).doubleValue());
+	private int execute(int operation, ValueWrapper givenValue) {
+		toNumber();
+		switch (givenValue.type) {
+		case INTEGER:
+			return execute(operation, false, givenValue.intValue, 0);
+		case DOUBLE:
+			return execute(operation, true, 0, givenValue.doubleValue);
+		default:
+			Number number = givenValue.cachedNumber();
+			if (number instanceof Integer) {
+				return execute(operation, false, number.intValue(), 0);
+			}
+			return execute(operation, true, 0, number.doubleValue());
+		}
+	}
+
+	/**
+	 * Performs the given operation upon the numeric value of this
+	 * {@code ValueWrapper} and the given number. If either of them is Double
+	 * the operation is performed upon doubles, otherwise upon integers.
+	 *
+	 * @param operation
+	 *        code of the operation
+	 * @param isDouble
+	 *        tells whether the given number is Double
+	 * @param i
+	 *        given number if it is Integer
+	 * @param d
+	 *        given number if it is Double
+	 * @return the result of the comparison, {@code 0} for other operations
+	 */
+	private int execute(int operation, boolean isDouble, int i, double d) {
+		if (type == INTEGER && !isDouble) {
+			switch (operation) {
+			case ADD:
+				intValue += i;
+				return 0;
+			case SUBTRACT:
+				intValue -= i;
+				return 0;
+			case MULTIPLY:
+				intValue *= i;
+				return 0;
+			case DIVIDE:
+				intValue /= i;
+				return 0;
+			default:
+				return Integer.compare(intValue, i);
+			}
+		}
+		double first = type == INTEGER ? intValue : doubleValue;
+		double second = isDouble ? d : i;
+		switch (operation) {
+		case ADD:
+			setDouble(first + second);
+			return 0;
+		case SUBTRACT:
+			setDouble(first - second);
+			return 0;
+		case MULTIPLY:
+			setDouble(first * second);
+			return 0;
+		case DIVIDE:
+			setDouble(first / second);
+			return 0;
+		default:
+			return Double.compare(first, second);
+		}
+	}
+
+	/**
+	 * Sets the value of this {@code ValueWrapper} to the given Double.
+	 *
+	 * @param d
+	 *        new value
+	 */
+	private void setDouble(double d) {
+		type = DOUBLE;
+		doubleValue = d;
+	}
+
+	/**
+	 * Converts the value of this {@code ValueWrapper} to Integer or Double.
+	 *
+	 * @throws RuntimeException if the value is not convertible to Integer or Double
+	 */
+	private void toNumber() {
+		if (type != OBJECT) return;
+		Number number = cachedNumber();
+		if (number instanceof Integer) {
+			type = INTEGER;
+			intValue = number.intValue();
+		} else {
+			type = DOUBLE;
+			doubleValue = number.doubleValue();
+		}
+		value = null;
+		parsed = null;
+	}
+
+	/**
+	 * Returns number represented by the value of this {@code ValueWrapper}
+	 * which is not kept unboxed. String value is parsed only once.
+	 *
+	 * @return Integer or Double represented by the value
+	 * @throws RuntimeException if the value is not convertible to Integer or Double
+	 */
+	private Number cachedNumber() {
+		if (!(value instanceof String)) return number(value);
+		Number number = parsed;
+		if (number == null) {
+			// Boxed numbers are immutable, so racing threads can only parse twice
+			parsed = number = parseNumber((String) value);
 		}
-		return integers.apply((Integer) value, (Integer) givenValue);
+		return number;
 	}
-	
-	private Object getValue(Object value) {
-		if (value == null) value = 0;
-		if (value instanceof String) value = parseNumber((String)value);
+
+	/**
+	 * Returns the given value as Integer or Double, {@code null} is treated as
+	 * {@code ZERO}.
+	 *
+	 * @param value
+	 *        value which is not String
+	 * @return Integer or Double represented by the value
+	 * @throws RuntimeException if the given value is not Integer, Double or {@code null}
+	 */
+	private Number number(Object value) {
+		if (value == null) return ZERO;
 		if (!checkDoubleOrInteger(value)) {
 			throw new RuntimeException("One of the given numbers is not instance of Double or Integer!");
 		}
-		return value;
+		return (Number) value;
 	}
-	
+
 	/**
 	 * Returns {@code true} if the given object is instance of Double or Integer.
-	 * 
+	 *
 	 * @param o
 	 *        object to be checked
 	 * @return {@code true} if the given object is instance of Double or Integer
@@ -173,21 +426,35 @@ public class ValueWrapper {
 	private boolean checkDoubleOrInteger(Object o) {
 		return o instanceof Double || o instanceof Integer;
 	}
-	
+
+	/**
+	 * Returns the value of this {@code ValueWrapper} as double, without changing
+	 * the value.
+	 *
+	 * @return the value of this {@code ValueWrapper} as double
+	 * @throws RuntimeException if the value is not convertible to Integer or Double
+	 */
 	public double doubleValue() {
-		return ((Number) getValue(value)).doubleValue();
+		switch (type) {
+		case INTEGER:
+			return intValue;
+		case DOUBLE:
+			return doubleValue;
+		default:
+			return cachedNumber().doubleValue();
+		}
 	}
 
 	/**
 	 * Converts the given string to Double or Integer, if its not possible it
 	 * throws exception.
-	 * 
+	 *
 	 * @param number
 	 *        String to be converted
 	 * @return Integer or Double representation of the given String
 	 * @throws RuntimeException if the given String is not convertible to Double or Integer
 	 */
-	private Object parseNumber(String number) {
+	private Number parseNumber(String number) {
 		try {
 			if (number.contains(".") || number.contains("E")) {
 				return Double.parseDouble(number);
@@ -197,29 +464,69 @@ public class ValueWrapper {
 			throw new RuntimeException("Given String cannot be interpreted as real number: " + number);
 		}
 	}
-	
+
+	/**
+	 * Returns new {@code ValueWrapper} with the same value as this one.
+	 *
+	 * @return copy of this {@code ValueWrapper}
+	 */
+	public ValueWrapper copy() {
+		ValueWrapper copy = new ValueWrapper(value);
+		copy.type = type;
+		copy.intValue = intValue;
+		copy.doubleValue = doubleValue;
+		copy.parsed = parsed;
+		return copy;
+	}
+
 	/**
 	 * Returns the value of this {@code ValueWrapper}.
-	 * 
+	 *
 	 * @return the value of this {@code ValueWrapper}
 	 */
 	public Object getValue() {
-		return value;
+		switch (type) {
+		case INTEGER:
+			return intValue;
+		case DOUBLE:
+			return doubleValue;
+		default:
+			return value;
+		}
 	}
-	
+
 	/**
 	 * Sets the value of this {@code ValueWrapper} to the specified one.
-	 * 
+	 *
 	 * @param value
 	 *        new value of the {@code ValueWrapper}
 	 */
 	public void setValue(Object value) {
-		this.value = value;
+		this.parsed = null;
+		if (value instanceof Integer) {
+			this.type = INTEGER;
+			this.intValue = (Integer) value;
+			this.value = null;
+		} else if (value instanceof Double) {
+			this.type = DOUBLE;
+			this.doubleValue = (Double) value;
+			this.value = null;
+		} else {
+			this.type = OBJECT;
+			this.value = value;
+		}
 	}
-	
+
 	@Override
 	public String toString() {
-		return value == null ? "0" : value.toString();
+		switch (type) {
+		case INTEGER:
+			return Integer.toString(intValue);
+		case DOUBLE:
+			return Double.toString(doubleValue);
+		default:
+			return value == null ? "0" : value.toString();
+		}
 	}
-	
+
 }
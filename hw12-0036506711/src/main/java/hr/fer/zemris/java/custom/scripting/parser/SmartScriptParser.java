@@ -1,13 +1,15 @@
 package hr.fer.zemris.java.custom.scripting.parser;
 
+import java.io.Reader;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
-import java.util.EmptyStackException;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import hr.fer.zemris.java.custom.scripting.elems.*;
+import hr.fer.zemris.java.custom.scripting.exec.FunctionRegistry;
 import hr.fer.zemris.java.custom.scripting.lexer.SmartScriptLexer;
 import hr.fer.zemris.java.custom.scripting.lexer.SmartScriptLexerException;
 import hr.fer.zemris.java.custom.scripting.lexer.SmartScriptLexerState;
@@ -23,12 +25,13 @@ public class SmartScriptParser {
 	private SmartScriptLexer lexer;
 	
 	/**
-	 * Root node of a document.
+	 * Root node of a document, its children are added only when the whole document
+	 * is parsed at once.
 	 */
 	private DocumentNode document = new DocumentNode();
 	
 	/**
-	 * Stack used for creating document tree.
+	 * Stack of opened {@code FOR} nodes used for creating document tree.
 	 */
 	private Deque<Node> nodes = new ArrayDeque<>();
 	
@@ -49,38 +52,85 @@ public class SmartScriptParser {
 	public SmartScriptParser(String body) {
 		lexer = new SmartScriptLexer(body);
 		try {
-            parse();
+            for (Node node = parse(); node != null; node = parse()) {
+                document.addChildNode(node);
+            }
         } catch (Exception e) {
             throw new SmartScriptParserException(e.getMessage());
         }
 	}
 	
 	/**
-	 * Parses the given expression with the help of {@link #lexer}. If the expression cannot
-	 * be parsed {@code SmartScriptParserException} is thrown.
+	 * Constructs {@code SmartScriptParser} object which parses document read from 
+	 * the given {@code Reader} incrementally. Document tree is not created, top-level
+	 * nodes are returned one by one by {@link #nextNode()} as soon as they are parsed,
+	 * so only the buffer of the lexer and the node being parsed are kept in memory.
 	 * 
+	 * @param reader
+	 *        reader from which the document is read
+	 * @param bufferSize
+	 *        number of characters buffered by the lexer
+	 * @throws NullPointerException if the given {@code Reader} is {@code null}
+	 * @throws IllegalArgumentException if the given buffer size is less than 2
+	 */
+	public SmartScriptParser(Reader reader, int bufferSize) {
+		lexer = new SmartScriptLexer(reader, bufferSize);
+	}
+	
+	/**
+	 * Parses and returns the next top-level node of the document. Document node of
+	 * a parser constructed from {@code String} already contains all top-level nodes,
+	 * so this method returns {@code null} for it.
+	 * 
+	 * @return next top-level node of the document or {@code null} if the whole 
+	 *         document has been parsed
+	 * @throws SmartScriptParserException if the rest of the document cannot be parsed
+	 */
+	public Node nextNode() {
+		try {
+			return parse();
+		} catch (Exception e) {
+			throw new SmartScriptParserException(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Parses the given expression with the help of {@link #lexer} until the next 
+	 * top-level node is completed. If the expression cannot be parsed 
+	 * {@code SmartScriptParserException} is thrown.
+	 * 
+	 * @return completed top-level node or {@code null} if the end of the expression
+	 *         is reached
 	 * @throws SmartScriptParserException if the expression cannot be parsed
 	 */
-	private void parse() {
-		nodes.push(document);
+	private Node parse() {
+		if (lexer.getToken() == SmartScriptToken.EOF_TOKEN) {
+			return null;
+		}
 		try {
 			for (SmartScriptToken token = lexer.nextToken(); 
 					token.getType() != SmartScriptTokenType.EOF; token = lexer.nextToken()) {
+				Node completed = null;
 				if (token.getType() == SmartScriptTokenType.TEXT) {
-					nodes.peek().addChildNode(new TextNode((String)token.getValue()));
+					completed = addNode(new TextNode((String)token.getValue()));
 				} else if (token.getType() == SmartScriptTokenType.TAG) {
 					lexer.setState(SmartScriptLexerState.INSIDE_TAG);
 					if (token.getValue().equals("END")) {
 						if (lexer.nextToken().getType() != SmartScriptTokenType.CLOSE_TAG) {
 							throw new SmartScriptParserException("END tag without closing brackets!");
 						}
-						nodes.pop();
+						Node node = nodes.pop();
+						if (nodes.isEmpty()) {
+							completed = node;
+						}
 					} else if (token.getValue().equals("FOR")) {
 						ForLoopNode forNode = parseFor();
-						nodes.peek().addChildNode(forNode);
+						if (!nodes.isEmpty()) {
+							nodes.peek().addChildNode(forNode);
+						}
 						nodes.push(forNode);
 					} else if (token.getValue().equals("=")) {
-						nodes.peek().addChildNode(parseEquals());
+						completed = addNode(parseEquals());
 					} else {
 						throw new SmartScriptParserException("Unexpected TAG name during parsing!");
 					}
@@ -88,16 +138,37 @@ public class SmartScriptParser {
 				} else {
 					throw new SmartScriptParserException("Unexpected expression during parsing!");
 				}
+				if (completed != null) {
+					return completed;
+				}
 			}
 		} catch (SmartScriptLexerException ex) {
 			throw new SmartScriptParserException(ex.getMessage());
-		} catch (EmptyStackException ex) {
+		} catch (NoSuchElementException ex) {
 			throw new SmartScriptParserException(
 					"Expression contains more END tags than opened non-empty tags!");
 		}
-		if (nodes.size() != 1) {
+		if (!nodes.isEmpty()) {
 			throw new SmartScriptParserException("Missing END tags!");
 		}
+		return null;
+	}
+	
+	/**
+	 * Adds the given node to the innermost opened {@code FOR} node. If there is no
+	 * opened {@code FOR} node, the given node is a completed top-level node and it
+	 * is returned.
+	 * 
+	 * @param node
+	 *        node to be added
+	 * @return the given node if it is a top-level node, {@code null} otherwise
+	 */
+	private Node addNode(Node node) {
+		if (nodes.isEmpty()) {
+			return node;
+		}
+		nodes.peek().addChildNode(node);
+		return null;
 	}
 	
 	/**
@@ -184,7 +255,8 @@ public class SmartScriptParser {
 	private Element getMatchingElementEqualsTag(SmartScriptToken token) {
 		switch (token.getType()) {
 		case FUNCTION:
-			return new ElementFunction(token.getValue().toString());
+			String name = token.getValue().toString();
+			return new ElementFunction(name, FunctionRegistry.indexOf(name));
 		case SYMBOL:
 			if (!operators.contains(token.getValue())) {
 				throw new SmartScriptParserException("Unrecognized symbol: " + token.getValue());
@@ -196,7 +268,9 @@ public class SmartScriptParser {
 	}
 	
 	/**
-	 * Returns the root node of the created document tree.
+	 * Returns the root node of the created document tree. Document node of a parser
+	 * reading from {@code Reader} has no children, its nodes are returned by
+	 * {@link #nextNode()} instead.
 	 * 
 	 * @return the root node of the created document tree
 	 */
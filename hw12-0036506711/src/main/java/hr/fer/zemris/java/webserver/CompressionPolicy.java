@@ -0,0 +1,169 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Decides which responses are compressed and provides compressing streams.
+ * Responses are compressed only if their MIME type is allowed and their
+ * length is unknown or at least the configured minimum size, since short
+ * responses do not get any smaller. Supported encodings are {@code gzip}
+ * and {@code deflate}.
+ *
+ * @author Filip Husnjak
+ */
+public class CompressionPolicy {
+
+	/**
+	 * Size of the buffers used by compressing streams
+	 */
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * Minimum length of the response in bytes that is compressed
+	 */
+	private final long minSize;
+
+	/**
+	 * MIME types that are compressed, type ending with {@code /*} allows all
+	 * of its subtypes
+	 */
+	private final Set<String> mimeTypes;
+
+	/**
+	 * Constructs new {@link CompressionPolicy} with specified minimum size and
+	 * allowed MIME types.
+	 *
+	 * @param minSize
+	 *        minimum length of the response in bytes that is compressed
+	 * @param mimeTypes
+	 *        MIME types that are compressed
+	 * @throws NullPointerException if the given set is {@code null}
+	 */
+	public CompressionPolicy(long minSize, Set<String> mimeTypes) {
+		this.minSize = minSize;
+		this.mimeTypes = Collections.unmodifiableSet(new HashSet<>(
+				Objects.requireNonNull(mimeTypes, "Given mime types cannot be null!")));
+	}
+
+	/**
+	 * Returns {@code true} if responses of the given MIME type can be compressed.
+	 *
+	 * @param mimeType
+	 *        MIME type of the response
+	 * @return {@code true} if responses of the given type can be compressed
+	 */
+	public boolean isCompressibleType(String mimeType) {
+		if (mimeTypes.contains(mimeType)) return true;
+		int slash = mimeType.indexOf('/');
+		return slash > 0 && mimeTypes.contains(mimeType.substring(0, slash) + "/*");
+	}
+
+	/**
+	 * Returns {@code true} if the response with the given MIME type and length
+	 * should be compressed.
+	 *
+	 * @param mimeType
+	 *        MIME type of the response
+	 * @param length
+	 *        length of the response, {@code null} if it is not known
+	 * @return {@code true} if the response should be compressed
+	 */
+	public boolean isCompressible(String mimeType, Long length) {
+		return (length == null || length >= minSize) && isCompressibleType(mimeType);
+	}
+
+	/**
+	 * Chooses encoding of the response based on the value of the
+	 * Accept-Encoding header. Gzip is preferred over deflate, encodings with
+	 * zero quality are never chosen.
+	 *
+	 * @param acceptEncoding
+	 *        value of the Accept-Encoding header, can be {@code null}
+	 * @return chosen encoding or {@code null} if response should not be encoded
+	 */
+	public static String negotiate(String acceptEncoding) {
+		if (acceptEncoding == null) return null;
+		boolean deflate = false;
+		for (String part: acceptEncoding.split(",")) {
+			String[] params = part.split(";");
+			String coding = params[0].trim().toLowerCase();
+			if (params.length > 1 && params[1].trim().matches("q\\s*=\\s*0(\\.0*)?")) continue;
+			if (coding.equals("gzip") || coding.equals("*")) return "gzip";
+			if (coding.equals("deflate")) deflate = true;
+		}
+		return deflate ? "deflate" : null;
+	}
+
+	/**
+	 * Returns stream which compresses everything written to it with the given
+	 * encoding and writes it to the given stream. Calling {@code finish} on the
+	 * returned stream writes the rest of the compressed data and releases the
+	 * compressor without closing the given stream. Flushing the returned stream
+	 * sends everything compressed so far.
+	 *
+	 * @param out
+	 *        stream compressed data is written to
+	 * @param encoding
+	 *        either {@code gzip} or {@code deflate}
+	 * @return compressing stream
+	 * @throws IOException if an I/O error occurs
+	 * @throws IllegalArgumentException if the given encoding is not supported
+	 */
+	public static DeflaterOutputStream compressingStream(OutputStream out, String encoding)
+			throws IOException {
+		switch (encoding) {
+		case "gzip":
+			return new GZIPOutputStream(out, BUFFER_SIZE, true) {
+				@Override
+				public void finish() throws IOException {
+					super.finish();
+					def.end();
+				}
+			};
+		case "deflate":
+			return new DeflaterOutputStream(out, new Deflater(), BUFFER_SIZE, true) {
+				@Override
+				public void finish() throws IOException {
+					super.finish();
+					def.end();
+				}
+			};
+		default:
+			throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+		}
+	}
+
+	/**
+	 * Compresses the given data with the given encoding.
+	 *
+	 * @param data
+	 *        data to be compressed
+	 * @param encoding
+	 *        either {@code gzip} or {@code deflate}
+	 * @return compressed data
+	 * @throws IllegalArgumentException if the given encoding is not supported
+	 */
+	public static byte[] compress(byte[] data, String encoding) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2 + 64);
+		try {
+			DeflaterOutputStream dos = compressingStream(bos, encoding);
+			dos.write(data);
+			dos.finish();
+		} catch (IOException e) {
+			// Writing to memory cannot fail
+			throw new UncheckedIOException(e);
+		}
+		return bos.toByteArray();
+	}
+
+}
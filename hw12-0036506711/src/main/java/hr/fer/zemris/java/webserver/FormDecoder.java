@@ -0,0 +1,169 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Decodes {@code application/x-www-form-urlencoded} content. Content is read
+ * through a small buffer and decoded as it arrives, so only the field that is
+ * currently being decoded is kept in memory. Plus signs are decoded as spaces
+ * and percent-encoded bytes are decoded using the given charset. Malformed
+ * percent-encoded sequences are kept as they are.
+ *
+ * @author Filip Husnjak
+ */
+public class FormDecoder {
+
+	/**
+	 * Size of the buffer used for reading
+	 */
+	private static final int BUFFER_SIZE = 4096;
+
+	/**
+	 * Charset of the decoded bytes
+	 */
+	private final Charset charset;
+
+	/**
+	 * Map decoded parameters are put into
+	 */
+	private final Map<String, String> params;
+
+	/**
+	 * Decoded bytes of the current name or value
+	 */
+	private final ByteArrayOutputStream current = new ByteArrayOutputStream();
+
+	/**
+	 * Decoded name of the current field, {@code null} while name is decoded
+	 */
+	private String name;
+
+	/**
+	 * Number of hex digits read after a percent sign, {@code -1} outside of
+	 * percent-encoded sequence
+	 */
+	private int escapeDigits = -1;
+
+	/**
+	 * Value of the hex digits read after a percent sign
+	 */
+	private int escapeValue;
+
+	/**
+	 * Constructs new {@link FormDecoder} which puts decoded parameters into the
+	 * given map.
+	 *
+	 * @param params
+	 *        map decoded parameters are put into
+	 * @param charset
+	 *        charset of the decoded bytes
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 */
+	public FormDecoder(Map<String, String> params, Charset charset) {
+		this.params = Objects.requireNonNull(params, "Given map cannot be null!");
+		this.charset = Objects.requireNonNull(charset, "Given charset cannot be null!");
+	}
+
+	/**
+	 * Reads the given stream until its end and puts decoded parameters into
+	 * the map. Fields without an equals sign get empty value.
+	 *
+	 * @param in
+	 *        stream holding the encoded content
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void decode(InputStream in) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		for (int r = in.read(buffer); r != -1; r = in.read(buffer)) {
+			for (int i = 0; i < r; ++i) {
+				accept(buffer[i]);
+			}
+		}
+		endField();
+	}
+
+	/**
+	 * Decodes the given byte of the content.
+	 *
+	 * @param b
+	 *        byte of the encoded content
+	 */
+	private void accept(byte b) {
+		if (escapeDigits >= 0) {
+			int digit = Character.digit(b, 16);
+			if (digit >= 0) {
+				escapeValue = escapeValue * 16 + digit;
+				if (++escapeDigits == 2) {
+					current.write(escapeValue);
+					escapeDigits = -1;
+				}
+				return;
+			}
+			// Not a valid sequence, keep what was read
+			endEscape();
+		}
+		switch (b) {
+		case '&':
+			endField();
+			break;
+		case '=':
+			if (name == null) {
+				name = text();
+			} else {
+				current.write(b);
+			}
+			break;
+		case '+':
+			current.write(' ');
+			break;
+		case '%':
+			escapeDigits = 0;
+			escapeValue = 0;
+			break;
+		default:
+			current.write(b);
+		}
+	}
+
+	/**
+	 * Writes unfinished percent-encoded sequence as it was read.
+	 */
+	private void endEscape() {
+		current.write('%');
+		if (escapeDigits == 1) {
+			current.write(Character.forDigit(escapeValue, 16));
+		}
+		escapeDigits = -1;
+	}
+
+	/**
+	 * Puts the current field into the map. Empty fields are ignored.
+	 */
+	private void endField() {
+		if (escapeDigits >= 0) endEscape();
+		String text = text();
+		if (name != null) {
+			params.put(name, text);
+		} else if (!text.isEmpty()) {
+			params.put(text, "");
+		}
+		name = null;
+	}
+
+	/**
+	 * Returns decoded text of the current name or value and clears it.
+	 *
+	 * @return decoded text
+	 */
+	private String text() {
+		String text = new String(current.toByteArray(), charset);
+		current.reset();
+		return text;
+	}
+
+}
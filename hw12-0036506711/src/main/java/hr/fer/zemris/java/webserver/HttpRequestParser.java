@@ -0,0 +1,670 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable parser of HTTP request headers. Bytes are read in bulk into an
+ * internal buffer which is kept between requests, so one parser should be
+ * used by one worker or connection at a time. End of each line is found by
+ * scanning the buffer eight bytes at a time. Parser only remembers where
+ * request line parts, header names and header values are located in the
+ * buffer, {@link String} objects are created only for values that are
+ * actually requested.
+ * <p>
+ * Parsing is incremental, {@link #parse()} can be called whenever new bytes
+ * are added and it continues where it stopped the last time. Bytes after the
+ * header stay in the buffer and are kept for the next request when
+ * {@link #next()} is called, unless they are marked as the body of the
+ * current request with {@link #consumeBody(long)}. Buffer grows to hold a
+ * large request and its body, it shrinks back to its initial size once the
+ * bytes kept for the next request fit into it again.
+ *
+ * @author Filip Husnjak
+ */
+public class HttpRequestParser {
+
+	/**
+	 * Default initial size of the buffer in bytes
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * Default maximum size of the request header in bytes
+	 */
+	public static final int DEFAULT_MAX_HEADER_SIZE = 16 * 1024;
+
+	/**
+	 * View used to read eight bytes of the buffer at once
+	 */
+	private static final VarHandle LONG_VIEW =
+			MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * Line feed repeated in every byte of a long
+	 */
+	private static final long LF_PATTERN = 0x0A0A0A0A0A0A0A0AL;
+
+	/**
+	 * Lowest bit of every byte of a long
+	 */
+	private static final long LOW_BITS = 0x0101010101010101L;
+
+	/**
+	 * Highest bit of every byte of a long
+	 */
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	/**
+	 * Maximum size of the request header in bytes
+	 */
+	private final int maxHeaderSize;
+
+	/**
+	 * Initial size of the buffer in bytes
+	 */
+	private final int initialSize;
+
+	/**
+	 * Buffer holding request bytes
+	 */
+	private byte[] buffer;
+
+	/**
+	 * Number of valid bytes in the buffer
+	 */
+	private int length;
+
+	/**
+	 * Position from which scanning continues
+	 */
+	private int position;
+
+	/**
+	 * Start of the line that is currently being scanned
+	 */
+	private int lineStart;
+
+	/**
+	 * Index right after the end of the header, {@code -1} while header is not
+	 * complete
+	 */
+	private int headerEnd = -1;
+
+	/**
+	 * Index right after the end of the request that is consumed by {@link #next()}
+	 */
+	private int requestEnd = -1;
+
+	/**
+	 * Start and end of the request line
+	 */
+	private int requestLineStart, requestLineEnd = -1;
+
+	/**
+	 * Number of parsed header lines
+	 */
+	private int headerCount;
+
+	/**
+	 * Starts of header names, ends of header names are colon positions
+	 */
+	private int[] nameStarts = new int[32];
+
+	/**
+	 * Positions of colons separating names and values
+	 */
+	private int[] colons = new int[32];
+
+	/**
+	 * Ends of header values
+	 */
+	private int[] valueEnds = new int[32];
+
+	/**
+	 * Tells whether the header value continues in the following lines
+	 */
+	private boolean[] folded = new boolean[32];
+
+	/**
+	 * Method, target and version of the request, created when requested
+	 */
+	private String method, target, version;
+
+	/**
+	 * Tells whether request line was split into method, target and version
+	 */
+	private boolean requestLineSplit;
+
+	/**
+	 * Constructs new {@link HttpRequestParser} with default buffer and maximum
+	 * header sizes.
+	 */
+	public HttpRequestParser() {
+		this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_HEADER_SIZE);
+	}
+
+	/**
+	 * Constructs new {@link HttpRequestParser} with specified initial buffer
+	 * size and maximum header size.
+	 *
+	 * @param bufferSize
+	 *        initial size of the buffer
+	 * @param maxHeaderSize
+	 *        maximum size of the request header
+	 * @throws IllegalArgumentException if any of the given sizes is not positive
+	 */
+	public HttpRequestParser(int bufferSize, int maxHeaderSize) {
+		if (bufferSize < 1 || maxHeaderSize < 1) {
+			throw new IllegalArgumentException("Sizes have to be positive!");
+		}
+		this.buffer = new byte[bufferSize];
+		this.initialSize = bufferSize;
+		this.maxHeaderSize = maxHeaderSize;
+	}
+
+	/**
+	 * Reads available bytes from the given stream into the buffer using a
+	 * single read call.
+	 *
+	 * @param in
+	 *        stream to read from
+	 * @return {@code false} if the end of stream is reached
+	 * @throws IOException if an I/O error occurs
+	 */
+	public boolean read(InputStream in) throws IOException {
+		ensureCapacity(length + 1);
+		int r = in.read(buffer, length, buffer.length - length);
+		if (r == -1) return false;
+		length += r;
+		return true;
+	}
+
+	/**
+	 * Copies remaining bytes of the given buffer into this parser.
+	 *
+	 * @param src
+	 *        bytes to be added
+	 */
+	public void append(ByteBuffer src) {
+		int n = src.remaining();
+		ensureCapacity(length + n);
+		src.get(buffer, length, n);
+		length += n;
+	}
+
+	/**
+	 * Continues parsing from the position it stopped the last time.
+	 *
+	 * @return {@code true} if the whole header is parsed
+	 */
+	public boolean parse() {
+		if (headerEnd >= 0) return true;
+		for (int lf = nextLineFeed(position); lf >= 0; lf = nextLineFeed(position)) {
+			position = lf + 1;
+			int end = lf > lineStart && buffer[lf - 1] == '\r' ? lf - 1 : lf;
+			if (end == lineStart) {
+				// Empty line is the end of the header
+				headerEnd = requestEnd = position;
+				if (requestLineEnd < 0) requestLineEnd = requestLineStart = end;
+				return true;
+			}
+			addLine(lineStart, end);
+			lineStart = position;
+		}
+		// There is no line feed in the scanned bytes
+		position = length;
+		return false;
+	}
+
+	/**
+	 * Returns {@code true} if the header is not complete and it already
+	 * exceeds maximum header size.
+	 *
+	 * @return {@code true} if the header is too large
+	 */
+	public boolean isTooLarge() {
+		return headerEnd < 0 && length >= maxHeaderSize;
+	}
+
+	/**
+	 * Returns {@code true} if the buffer contains bytes that were not parsed
+	 * or consumed yet.
+	 *
+	 * @return {@code true} if there are unprocessed bytes
+	 */
+	public boolean hasRemaining() {
+		return length > (requestEnd >= 0 ? requestEnd : 0);
+	}
+
+	/**
+	 * Forgets the current request and keeps bytes which follow it, so the next
+	 * request can be parsed.
+	 */
+	public void next() {
+		int from = requestEnd >= 0 ? requestEnd : length;
+		length -= from;
+		byte[] kept = buffer.length > initialSize && length <= initialSize ? new byte[initialSize] : buffer;
+		System.arraycopy(buffer, from, kept, 0, length);
+		buffer = kept;
+		clear();
+	}
+
+	/**
+	 * Returns stream which reads bytes following the header, first the ones
+	 * kept in the buffer and then the ones from the given source. Returned
+	 * stream does not consume the buffered bytes, so it can be created again
+	 * to read the same bytes. Bytes added to the buffer after the stream
+	 * reached its end are read by the same stream, other changes of the
+	 * buffer must not be made while the stream is used.
+	 *
+	 * @param source
+	 *        stream read once buffered bytes are exhausted, {@code null} if
+	 *        only buffered bytes should be read
+	 * @return stream which reads bytes following the header
+	 * @throws IllegalStateException if the header is not parsed yet
+	 */
+	public InputStream bodyStream(InputStream source) {
+		if (headerEnd < 0) {
+			throw new IllegalStateException("Header is not parsed yet!");
+		}
+		return new InputStream() {
+
+			/**
+			 * Position of the next buffered byte
+			 */
+			private int pos = headerEnd;
+
+			@Override
+			public int read() throws IOException {
+				if (pos < length) return buffer[pos++] & 0xFF;
+				return source == null ? -1 : source.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (pos < length) {
+					int n = Math.min(len, length - pos);
+					System.arraycopy(buffer, pos, b, off, n);
+					pos += n;
+					return n;
+				}
+				return source == null ? -1 : source.read(b, off, len);
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				if (pos < length) {
+					int s = (int) Math.min(n, length - pos);
+					pos += s;
+					return s;
+				}
+				return source == null ? 0 : source.skip(n);
+			}
+
+			@Override
+			public int available() throws IOException {
+				if (pos < length) return length - pos;
+				return source == null ? 0 : source.available();
+			}
+
+		};
+	}
+
+	/**
+	 * Marks the given number of bytes following the header as the body of the
+	 * current request, so {@link #next()} forgets them together with the
+	 * header.
+	 *
+	 * @param bodyLength
+	 *        number of bytes in the encoded body
+	 * @throws IllegalStateException if the header is not parsed yet or the
+	 *         body is not in the buffer
+	 */
+	public void consumeBody(long bodyLength) {
+		if (headerEnd < 0 || bodyLength > length - headerEnd) {
+			throw new IllegalStateException("Body is not in the buffer!");
+		}
+		requestEnd = headerEnd + (int) bodyLength;
+	}
+
+	/**
+	 * Forgets all bytes and the state of the current request.
+	 */
+	public void reset() {
+		length = 0;
+		if (buffer.length > initialSize) buffer = new byte[initialSize];
+		clear();
+	}
+
+	/**
+	 * Returns current size of the buffer in bytes.
+	 *
+	 * @return size of the buffer
+	 */
+	public int getBufferSize() {
+		return buffer.length;
+	}
+
+	/**
+	 * Clears the state of the parsed request.
+	 */
+	private void clear() {
+		position = lineStart = 0;
+		headerEnd = requestEnd = requestLineEnd = -1;
+		requestLineStart = 0;
+		headerCount = 0;
+		method = target = version = null;
+		requestLineSplit = false;
+	}
+
+	/**
+	 * Returns method of the request or {@code null} if request line is not
+	 * written properly.
+	 *
+	 * @return method of the request
+	 */
+	public String getMethod() {
+		splitRequestLine();
+		return method;
+	}
+
+	/**
+	 * Returns request target or {@code null} if request line is not written
+	 * properly.
+	 *
+	 * @return request target
+	 */
+	public String getTarget() {
+		splitRequestLine();
+		return target;
+	}
+
+	/**
+	 * Returns HTTP version of the request or {@code null} if request line is
+	 * not written properly.
+	 *
+	 * @return HTTP version of the request
+	 */
+	public String getVersion() {
+		splitRequestLine();
+		return version;
+	}
+
+	/**
+	 * Returns number of header lines, request line excluded.
+	 *
+	 * @return number of header lines
+	 */
+	public int getHeaderCount() {
+		return headerCount;
+	}
+
+	/**
+	 * Returns index of the first header with the given name starting from the
+	 * specified index. Names are compared ignoring case.
+	 *
+	 * @param name
+	 *        name of the header
+	 * @param from
+	 *        index search starts from
+	 * @return index of the header or {@code -1} if it does not exist
+	 */
+	public int indexOf(String name, int from) {
+		for (int i = from; i < headerCount; ++i) {
+			if (nameEquals(i, name)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns name of the header at the given index.
+	 *
+	 * @param index
+	 *        index of the header
+	 * @return name of the header
+	 */
+	public String getName(int index) {
+		int start = nameStarts[index], end = trimEnd(start, colons[index]);
+		return new String(buffer, start, end - start, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Returns trimmed value of the header at the given index. Continuation lines
+	 * are joined with the first line of the value.
+	 *
+	 * @param index
+	 *        index of the header
+	 * @return value of the header
+	 */
+	public String getValue(int index) {
+		int start = trimStart(colons[index] + 1, valueEnds[index]);
+		int end = trimEnd(start, valueEnds[index]);
+		if (!folded[index]) {
+			return new String(buffer, start, end - start, StandardCharsets.ISO_8859_1);
+		}
+		byte[] value = new byte[end - start];
+		int n = 0;
+		for (int i = start; i < end; ++i) {
+			if (buffer[i] != '\r' && buffer[i] != '\n') value[n++] = buffer[i];
+		}
+		return new String(value, 0, n, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Returns value of the first header with the given name or {@code null}
+	 * if it does not exist.
+	 *
+	 * @param name
+	 *        name of the header
+	 * @return value of the header
+	 */
+	public String getHeader(String name) {
+		int index = indexOf(name, 0);
+		return index < 0 ? null : getValue(index);
+	}
+
+	/**
+	 * Returns {@code true} if the first header with the given name has the
+	 * given value. Both name and value are compared ignoring case and without
+	 * creating new objects.
+	 *
+	 * @param name
+	 *        name of the header
+	 * @param value
+	 *        expected value of the header
+	 * @return {@code true} if the header has the given value
+	 */
+	public boolean headerEquals(String name, String value) {
+		int index = indexOf(name, 0);
+		if (index < 0) return false;
+		int start = trimStart(colons[index] + 1, valueEnds[index]);
+		return equalsIgnoreCase(start, trimEnd(start, valueEnds[index]), value);
+	}
+
+	/**
+	 * Returns index of the first line feed at or after the given position or
+	 * {@code -1} if there is none. Eight bytes are checked at once while enough
+	 * bytes are available.
+	 *
+	 * @param from
+	 *        position the search starts from
+	 * @return index of the line feed or {@code -1}
+	 */
+	private int nextLineFeed(int from) {
+		int i = from;
+		for (; i + 8 <= length; i += 8) {
+			long word = (long) LONG_VIEW.get(buffer, i) ^ LF_PATTERN;
+			long found = (word - LOW_BITS) & ~word & HIGH_BITS;
+			if (found != 0) {
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+			}
+		}
+		for (; i < length; ++i) {
+			if (buffer[i] == '\n') return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Remembers the line with the given bounds. First line is the request
+	 * line, lines starting with space or tab continue previous header.
+	 *
+	 * @param start
+	 *        start of the line
+	 * @param end
+	 *        end of the line without line terminator
+	 */
+	private void addLine(int start, int end) {
+		if (requestLineEnd < 0) {
+			requestLineStart = start;
+			requestLineEnd = end;
+			return;
+		}
+		byte first = buffer[start];
+		if ((first == ' ' || first == '\t') && headerCount > 0) {
+			valueEnds[headerCount - 1] = end;
+			folded[headerCount - 1] = true;
+			return;
+		}
+		if (headerCount == nameStarts.length) {
+			int size = headerCount * 2;
+			nameStarts = Arrays.copyOf(nameStarts, size);
+			colons = Arrays.copyOf(colons, size);
+			valueEnds = Arrays.copyOf(valueEnds, size);
+			folded = Arrays.copyOf(folded, size);
+		}
+		int colon = start;
+		while (colon < end && buffer[colon] != ':') colon++;
+		nameStarts[headerCount] = start;
+		colons[headerCount] = colon;
+		valueEnds[headerCount] = Math.max(colon, end);
+		folded[headerCount] = false;
+		headerCount++;
+	}
+
+	/**
+	 * Splits request line into method, target and version. Request line is
+	 * valid only if it consists of exactly three parts separated by single
+	 * spaces.
+	 */
+	private void splitRequestLine() {
+		if (requestLineSplit) return;
+		requestLineSplit = true;
+		int first = -1, second = -1;
+		for (int i = requestLineStart; i < requestLineEnd; ++i) {
+			if (buffer[i] != ' ') continue;
+			if (first < 0) {
+				first = i;
+			} else if (second < 0) {
+				second = i;
+			} else {
+				return;
+			}
+		}
+		if (second < 0 || first == requestLineStart || second == first + 1
+				|| second == requestLineEnd - 1) {
+			return;
+		}
+		method = ascii(requestLineStart, first);
+		target = ascii(first + 1, second);
+		version = ascii(second + 1, requestLineEnd);
+	}
+
+	/**
+	 * Returns {@code true} if the name of the header at the given index is
+	 * equal to the given name ignoring case.
+	 *
+	 * @param index
+	 *        index of the header
+	 * @param name
+	 *        name to compare with
+	 * @return {@code true} if names are equal
+	 */
+	private boolean nameEquals(int index, String name) {
+		int start = nameStarts[index];
+		return equalsIgnoreCase(start, trimEnd(start, colons[index]), name);
+	}
+
+	/**
+	 * Compares bytes in the given range with the given ASCII text ignoring case.
+	 *
+	 * @param start
+	 *        start of the range
+	 * @param end
+	 *        end of the range
+	 * @param text
+	 *        text to compare with
+	 * @return {@code true} if the range contains the given text
+	 */
+	private boolean equalsIgnoreCase(int start, int end, String text) {
+		if (end - start != text.length()) return false;
+		for (int i = 0; i < text.length(); ++i) {
+			int a = buffer[start + i] & 0xFF, b = text.charAt(i);
+			if (a == b) continue;
+			if ((a | 0x20) != (b | 0x20) || (a | 0x20) < 'a' || (a | 0x20) > 'z') return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns first index in the range which is not a space or a tab.
+	 *
+	 * @param start
+	 *        start of the range
+	 * @param end
+	 *        end of the range
+	 * @return first index which is not whitespace
+	 */
+	private int trimStart(int start, int end) {
+		while (start < end && (buffer[start] == ' ' || buffer[start] == '\t')) start++;
+		return start;
+	}
+
+	/**
+	 * Returns index after the last byte in the range which is not whitespace.
+	 *
+	 * @param start
+	 *        start of the range
+	 * @param end
+	 *        end of the range
+	 * @return index after the last byte which is not whitespace
+	 */
+	private int trimEnd(int start, int end) {
+		while (end > start && (buffer[end - 1] == ' ' || buffer[end - 1] == '\t'
+				|| buffer[end - 1] == '\r' || buffer[end - 1] == '\n')) end--;
+		return end;
+	}
+
+	/**
+	 * Creates ASCII string from the given range of the buffer.
+	 *
+	 * @param start
+	 *        start of the range
+	 * @param end
+	 *        end of the range
+	 * @return created string
+	 */
+	private String ascii(int start, int end) {
+		return new String(buffer, start, end - start, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Grows the buffer so it can hold at least the given number of bytes.
+	 *
+	 * @param capacity
+	 *        required capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, capacity));
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Represents output which is able to send a region of a file to the client
+ * without copying it through its own buffers. {@link RequestContext} uses
+ * this interface when the output stream it writes to implements it.
+ *
+ * @author Filip Husnjak
+ */
+@FunctionalInterface
+public interface IFileOutput {
+
+	/**
+	 * Sends {@code count} bytes of the given file starting from the given
+	 * position. Everything written to the output before this call is sent
+	 * first. Given channel is closed once the region is sent or the transfer
+	 * fails.
+	 *
+	 * @param file
+	 *        file to be sent
+	 * @param position
+	 *        position of the first byte to be sent
+	 * @param count
+	 *        number of bytes to be sent
+	 * @throws IOException if an I/O error occurs
+	 */
+	void transferFrom(FileChannel file, long position, long count) throws IOException;
+
+}
@@ -0,0 +1,203 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in microseconds with log-linear buckets. Each power
+ * of two is split into {@link #SUB_BUCKETS} buckets of equal width, so every
+ * recorded value is known with relative error below 1/16 while the whole
+ * range from one microsecond to about 38 hours fits into a few hundred
+ * counters. Larger values are counted in the last bucket.
+ * <p>
+ * Like Prometheus buckets, each bucket includes its upper bound and excludes
+ * its lower bound, so zero has its own bucket and every power of two is the
+ * upper bound of a bucket. Number of values up to a power of two is
+ * therefore exact, see {@link #countAtMostPowerOfTwo(int)}.
+ * <p>
+ * Recording only increments atomic counters, it does not allocate and it
+ * does not block, so histograms can be shared by all threads and kept
+ * enabled all the time. Values read while other threads record are not an
+ * exact snapshot, but every recorded value is eventually counted.
+ *
+ * @author Filip Husnjak
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Number of bits used to split each power of two
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/**
+	 * Number of buckets each power of two is split into
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Exponent of the largest power of two that has its own buckets
+	 */
+	private static final int MAX_EXPONENT = 36;
+
+	/**
+	 * Number of buckets, the first one holds zero and the last one holds
+	 * values larger than {@code 2^(MAX_EXPONENT + 1)}
+	 */
+	static final int BUCKETS = 1 + SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + 1;
+
+	/**
+	 * Number of recorded values in each bucket
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Number of recorded values
+	 */
+	private final AtomicLong count = new AtomicLong();
+
+	/**
+	 * Sum of recorded values in microseconds
+	 */
+	private final AtomicLong sum = new AtomicLong();
+
+	/**
+	 * Records the given duration.
+	 *
+	 * @param nanos
+	 *        duration in nanoseconds
+	 */
+	public void recordNanos(long nanos) {
+		record(TimeUnit.NANOSECONDS.toMicros(nanos));
+	}
+
+	/**
+	 * Records the given value.
+	 *
+	 * @param micros
+	 *        value in microseconds, negative values are recorded as zero
+	 */
+	public void record(long micros) {
+		micros = Math.max(micros, 0);
+		counts.incrementAndGet(indexOf(micros));
+		count.incrementAndGet();
+		sum.addAndGet(micros);
+	}
+
+	/**
+	 * Adds all values recorded by the given histogram to this histogram.
+	 *
+	 * @param other
+	 *        histogram whose values are added
+	 * @throws NullPointerException if the given histogram is {@code null}
+	 */
+	public void add(LatencyHistogram other) {
+		Objects.requireNonNull(other, "Given histogram cannot be null!");
+		for (int i = 0; i < BUCKETS; ++i) {
+			long c = other.counts.get(i);
+			if (c != 0) counts.addAndGet(i, c);
+		}
+		count.addAndGet(other.count.get());
+		sum.addAndGet(other.sum.get());
+	}
+
+	/**
+	 * Returns number of recorded values.
+	 *
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns sum of recorded values in microseconds.
+	 *
+	 * @return sum of recorded values
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * Returns number of recorded values smaller than or equal to the given
+	 * power of two. Since every power of two is the upper bound of a bucket,
+	 * returned number is exact.
+	 *
+	 * @param exponent
+	 *        exponent of the power of two in microseconds
+	 * @return number of recorded values smaller than or equal to
+	 *         {@code 2^exponent}
+	 */
+	public long countAtMostPowerOfTwo(int exponent) {
+		int end = exponent < 0 ? 1
+				: exponent > MAX_EXPONENT + 1 ? BUCKETS
+				: indexOf(1L << exponent) + 1;
+		long atMost = 0;
+		for (int i = 0; i < end; ++i) {
+			atMost += counts.get(i);
+		}
+		return atMost;
+	}
+
+	/**
+	 * Returns value below which the given percentage of recorded values lies.
+	 * Returned value is the upper bound of the bucket holding that value,
+	 * values larger than the range of the histogram are reported as its upper
+	 * bound.
+	 *
+	 * @param percentile
+	 *        percentage between {@code 0} and {@code 100}
+	 * @return value at the given percentile in microseconds, {@code 0} if no
+	 *         value is recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; ++i) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS - 1; ++i) {
+			seen += snapshot[i];
+			if (seen >= rank) return upperBound(i);
+		}
+		return upperBound(BUCKETS - 2);
+	}
+
+	/**
+	 * Returns index of the bucket holding the given value.
+	 *
+	 * @param value
+	 *        non-negative value
+	 * @return index of the bucket
+	 */
+	static int indexOf(long value) {
+		if (value <= SUB_BUCKETS) return (int) value;
+		// Bucket holding value is found by the lower bound it exceeds
+		long below = value - 1;
+		int exponent = 63 - Long.numberOfLeadingZeros(below);
+		if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+		int sub = (int) (below >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+		return 1 + SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the largest value held by the bucket with the given index.
+	 *
+	 * @param index
+	 *        index of the bucket, except the last one
+	 * @return the largest value of the bucket
+	 */
+	static long upperBound(int index) {
+		if (index <= SUB_BUCKETS) return index;
+		int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+	}
+
+}
@@ -0,0 +1,44 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when the body of the request cannot be accepted, either
+ * because its framing is not written properly or because it is too large.
+ * Holds the status code which should be sent to the client.
+ *
+ * @author Filip Husnjak
+ */
+public class RequestBodyException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Status code which should be sent to the client
+	 */
+	private final int statusCode;
+
+	/**
+	 * Constructs new {@link RequestBodyException} with specified status code
+	 * and message.
+	 *
+	 * @param statusCode
+	 *        status code which should be sent to the client
+	 * @param message
+	 *        message of the exception
+	 */
+	public RequestBodyException(int statusCode, String message) {
+		super(message);
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * Returns status code which should be sent to the client.
+	 *
+	 * @return status code of the error
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+}
@@ -0,0 +1,312 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * Stream which reads the body of the request from the bytes following its
+ * header. Body is framed either by the Content-Length header or by chunked
+ * transfer encoding, which is decoded while reading. Stream never reads past
+ * the end of the body, so bytes of the next request stay in the source.
+ * Bodies larger than the configured maximum size are rejected with
+ * {@link RequestBodyException} before they are read, and so are chunked
+ * bodies whose framing is larger than the maximum size.
+ * <p>
+ * {@link EOFException} is thrown if the source ends before the body does.
+ * Bytes taken from the source before the exception are not lost, so reading
+ * can continue once more bytes are available. Body which arrives in parts
+ * can therefore be decoded by a single stream as each part is received.
+ *
+ * @author Filip Husnjak
+ */
+public class RequestBodyStream extends InputStream {
+
+	/**
+	 * Maximum length of a chunk size or trailer line
+	 */
+	private static final int MAX_LINE_LENGTH = 4096;
+
+	/**
+	 * Source of the encoded body
+	 */
+	private final InputStream in;
+
+	/**
+	 * Maximum number of decoded bytes
+	 */
+	private final long maxSize;
+
+	/**
+	 * Tells whether body uses chunked transfer encoding
+	 */
+	private final boolean chunked;
+
+	/**
+	 * Number of bytes left in the current chunk, or in the whole body if it is
+	 * not chunked
+	 */
+	private long remaining;
+
+	/**
+	 * Tells whether data of the current chunk was read, but the empty line
+	 * following it was not
+	 */
+	private boolean chunkRead;
+
+	/**
+	 * Tells whether the last chunk was read, so only trailer is left
+	 */
+	private boolean lastChunk;
+
+	/**
+	 * Part of the framing line read so far
+	 */
+	private final StringBuilder line = new StringBuilder();
+
+	/**
+	 * Tells whether the whole body was read
+	 */
+	private boolean finished;
+
+	/**
+	 * Number of decoded bytes so far
+	 */
+	private long size;
+
+	/**
+	 * Number of bytes taken from the source so far
+	 */
+	private long encodedLength;
+
+	/**
+	 * Constructs new {@link RequestBodyStream} which reads body of specified
+	 * length or chunked body from the given source.
+	 *
+	 * @param in
+	 *        source of the encoded body
+	 * @param contentLength
+	 *        length of the body, ignored if the body is chunked
+	 * @param chunked
+	 *        tells whether body uses chunked transfer encoding
+	 * @param maxSize
+	 *        maximum number of decoded bytes
+	 * @throws RequestBodyException if the given length exceeds maximum size
+	 * @throws NullPointerException if the given source is {@code null}
+	 */
+	public RequestBodyStream(InputStream in, long contentLength, boolean chunked, long maxSize)
+			throws RequestBodyException {
+		this.in = Objects.requireNonNull(in, "Given stream cannot be null!");
+		this.maxSize = maxSize;
+		this.chunked = chunked;
+		if (!chunked) {
+			if (contentLength > maxSize) {
+				throw new RequestBodyException(413, "Payload too large");
+			}
+			this.remaining = contentLength;
+			this.finished = contentLength == 0;
+		}
+	}
+
+	/**
+	 * Creates stream which reads body of the given request. Framing of the body
+	 * is taken from its Transfer-Encoding and Content-Length headers, request
+	 * without them has no body.
+	 *
+	 * @param request
+	 *        parser holding the whole request header
+	 * @param in
+	 *        source of the bytes following the header
+	 * @param maxSize
+	 *        maximum number of decoded bytes
+	 * @return stream which reads the body of the request
+	 * @throws RequestBodyException if framing headers are not written properly
+	 *         or the body is too large
+	 */
+	public static RequestBodyStream of(HttpRequestParser request, InputStream in, long maxSize)
+			throws RequestBodyException {
+		String transferEncoding = request.getHeader("Transfer-Encoding");
+		if (transferEncoding != null) {
+			// Chunked has to be the last coding, other codings are not supported
+			if (!transferEncoding.trim().equalsIgnoreCase("chunked")) {
+				throw new RequestBodyException(501, "Transfer encoding not supported");
+			}
+			return new RequestBodyStream(in, 0, true, maxSize);
+		}
+		String contentLength = request.getHeader("Content-Length");
+		long length = 0;
+		if (contentLength != null) {
+			try {
+				length = Long.parseLong(contentLength.trim());
+			} catch (NumberFormatException e) {
+				length = -1;
+			}
+			if (length < 0) {
+				throw new RequestBodyException(400, "Bad request: invalid Content-Length");
+			}
+		}
+		return new RequestBodyStream(in, length, false, maxSize);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureData()) return -1;
+		int b = in.read();
+		if (b == -1) throw new EOFException("Request body is incomplete!");
+		consumed(1);
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		Objects.checkFromIndexSize(off, len, b.length);
+		if (len == 0) return 0;
+		if (!ensureData()) return -1;
+		int r = in.read(b, off, (int) Math.min(len, remaining));
+		if (r == -1) throw new EOFException("Request body is incomplete!");
+		consumed(r);
+		return r;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && ensureData()) {
+			long s = in.skip(Math.min(n - skipped, remaining));
+			if (s <= 0) {
+				// Source cannot skip, reading tells whether it ended
+				if (in.read() == -1) throw new EOFException("Request body is incomplete!");
+				s = 1;
+			}
+			consumed(s);
+			skipped += s;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return finished ? 0 : (int) Math.min(in.available(), remaining);
+	}
+
+	/**
+	 * Reads and discards the rest of the body.
+	 *
+	 * @throws IOException if an I/O error occurs or the body is not valid
+	 */
+	public void skipAll() throws IOException {
+		while (skip(Long.MAX_VALUE) > 0);
+	}
+
+	/**
+	 * Returns number of bytes taken from the source so far, including chunk
+	 * framing.
+	 *
+	 * @return number of encoded bytes read
+	 */
+	public long getEncodedLength() {
+		return encodedLength;
+	}
+
+	/**
+	 * Returns {@code true} if the whole body was read.
+	 *
+	 * @return {@code true} if the whole body was read
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Makes sure there are bytes left in the current chunk by reading the next
+	 * chunk header if necessary.
+	 *
+	 * @return {@code false} if the whole body was read
+	 * @throws IOException if an I/O error occurs or the body is not valid
+	 */
+	private boolean ensureData() throws IOException {
+		if (finished) return false;
+		if (remaining > 0) return true;
+		if (!chunked) {
+			finished = true;
+			return false;
+		}
+		if (chunkRead) {
+			// Data of the previous chunk is followed by an empty line
+			if (!readLine().isEmpty()) {
+				throw new RequestBodyException(400, "Bad request: invalid chunk");
+			}
+			chunkRead = false;
+		}
+		if (!lastChunk) {
+			String sizeLine = readLine();
+			int semicolon = sizeLine.indexOf(';');
+			long chunkSize;
+			try {
+				chunkSize = Long.parseLong(
+						(semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim(), 16);
+			} catch (NumberFormatException e) {
+				chunkSize = -1;
+			}
+			if (chunkSize < 0) {
+				throw new RequestBodyException(400, "Bad request: invalid chunk size");
+			}
+			if (chunkSize > maxSize - size) {
+				throw new RequestBodyException(413, "Payload too large");
+			}
+			if (chunkSize > 0) {
+				remaining = chunkSize;
+				chunkRead = true;
+				return true;
+			}
+			lastChunk = true;
+		}
+		// Trailer fields are ignored
+		while (!readLine().isEmpty());
+		finished = true;
+		return false;
+	}
+
+	/**
+	 * Updates counters after the given number of body bytes was read.
+	 *
+	 * @param n
+	 *        number of read bytes
+	 */
+	private void consumed(long n) {
+		remaining -= n;
+		size += n;
+		encodedLength += n;
+	}
+
+	/**
+	 * Reads single line of chunk framing without the line terminator. If the
+	 * source ends first, bytes read so far are kept and the next call
+	 * continues the same line.
+	 *
+	 * @return read line
+	 * @throws IOException if an I/O error occurs or the line is too long
+	 */
+	private String readLine() throws IOException {
+		while (true) {
+			int b = in.read();
+			if (b == -1) throw new EOFException("Request body is incomplete!");
+			encodedLength++;
+			if (b == '\n') break;
+			if (encodedLength - size > maxSize + MAX_LINE_LENGTH) {
+				throw new RequestBodyException(413, "Payload too large");
+			}
+			if (line.length() >= MAX_LINE_LENGTH) {
+				throw new RequestBodyException(400, "Bad request: chunk line too long");
+			}
+			line.append((char) b);
+		}
+		int end = line.length();
+		if (end > 0 && line.charAt(end - 1) == '\r') end--;
+		String read = line.substring(0, end);
+		line.setLength(0);
+		return read;
+	}
+
+}
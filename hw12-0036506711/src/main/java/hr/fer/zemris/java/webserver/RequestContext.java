@@ -1,15 +1,21 @@
 package hr.fer.zemris.java.webserver;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * Represents context of the single request. This class provides all necessary 
@@ -19,6 +25,26 @@ import java.util.Set;
  */
 public class RequestContext {
 
+	/**
+	 * Default size of the body buffer in bytes
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+	
+	/**
+	 * Charsets mapped by their names, shared by all contexts
+	 */
+	private static final Map<String, Charset> CHARSETS = new ConcurrentHashMap<>();
+	
+	/**
+	 * Line terminator ending each chunk
+	 */
+	private static final byte[] CRLF = {'\r', '\n'};
+	
+	/**
+	 * Last chunk which ends chunked body
+	 */
+	private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+	
 	/**
 	 * Output stream used to send response
 	 */
@@ -89,6 +115,64 @@ public class RequestContext {
 	 */
 	private String sessionID;
 	
+	/**
+	 * Tells whether the connection should stay open after this response
+	 */
+	private boolean keepAlive;
+	
+	/**
+	 * Metrics of the server serving the request, {@code null} if there is none
+	 */
+	private ServerMetrics metrics;
+	
+	/**
+	 * Body of the request, empty if the request has no body
+	 */
+	private InputStream requestBody = InputStream.nullInputStream();
+	
+	/**
+	 * Additional header lines of the response mapped by their names
+	 */
+	private Map<String, String> headers = new LinkedHashMap<>();
+	
+	/**
+	 * Tells whether only the header of the response should be sent, which is
+	 * the case for HEAD requests
+	 */
+	private boolean headOnly;
+	
+	/**
+	 * Encoding accepted by the client, {@code null} if the response should
+	 * not be encoded
+	 */
+	private String acceptedEncoding;
+	
+	/**
+	 * Policy deciding whether the response is compressed
+	 */
+	private CompressionPolicy compression;
+	
+	/**
+	 * Stream compressing the body, {@code null} if body is not compressed
+	 */
+	private DeflaterOutputStream compressor;
+	
+	/**
+	 * Size of the body buffer in bytes
+	 */
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	
+	/**
+	 * Stream buffering the body of the response, created once the header is
+	 * fixed
+	 */
+	private BodyStream body;
+	
+	/**
+	 * Tells whether the body is sent using chunked transfer encoding
+	 */
+	private boolean chunked;
+	
 	/**
 	 * Constructs new {@link RequestContext} with specified parameters.
 	 * 
@@ -281,6 +365,47 @@ public class RequestContext {
 		return sessionID;
 	}
 	
+	/**
+	 * Returns stream which reads the body of the request. Body is read from
+	 * the connection as the stream is read. If the body was already decoded
+	 * into parameters, or the request has no body, returned stream is empty.
+	 * 
+	 * @return stream which reads the body of the request
+	 */
+	public InputStream getRequestBody() {
+		return requestBody;
+	}
+	
+	/**
+	 * Sets stream which reads the body of the request.
+	 * 
+	 * @param requestBody
+	 *        stream which reads the body of the request
+	 * @throws NullPointerException if the given stream is {@code null}
+	 */
+	public void setRequestBody(InputStream requestBody) {
+		this.requestBody = Objects.requireNonNull(requestBody, "Given stream cannot be null!");
+	}
+	
+	/**
+	 * Returns metrics of the server serving the request.
+	 * 
+	 * @return metrics of the server or {@code null} if there are none
+	 */
+	public ServerMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sets metrics of the server serving the request.
+	 * 
+	 * @param metrics
+	 *        metrics of the server
+	 */
+	public void setMetrics(ServerMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
 	/**
 	 * Adds the given cookie to the collection of output cookies.
 	 * 
@@ -307,7 +432,9 @@ public class RequestContext {
 	
 	/**
 	 * Writes given data to the output stream of this {@link RequestContext}.
-	 * Data is written from the specified offset with specified length.
+	 * Data is written from the specified offset with specified length. Data is
+	 * buffered, so it may be sent only when the buffer is full or the response
+	 * is finished.
 	 * 
 	 * @param data
 	 *        data to be written
@@ -321,17 +448,135 @@ public class RequestContext {
 	 */
 	public RequestContext write(byte[] data, int offset, int len) throws IOException {
 		Objects.requireNonNull(data, "Given byte array cannot be null!");
-		// Generate header if its not generated
-		if (!headerGenerated) {
-			if (charset == null) charset = Charset.forName(encoding);
-			String header = generateHeader();
-			outputStream.write(header.getBytes(StandardCharsets.ISO_8859_1));
-			headerGenerated = true;
+		prepareHeader();
+		bodyStream().write(data, offset, len);
+		return this;
+	}
+	
+	/**
+	 * Writes {@code count} bytes of the given file starting from the specified
+	 * position to the output stream of this {@link RequestContext}. If the
+	 * output stream implements {@link IFileOutput}, the response is not
+	 * compressed and its length is known, file is sent without being copied
+	 * through the buffers of this server. Given channel is closed once the
+	 * region is sent.
+	 * 
+	 * @param file
+	 *        file to be written
+	 * @param position
+	 *        position of the first byte to be written
+	 * @param count
+	 *        number of bytes to be written
+	 * @return this instance of {@link RequestContext}
+	 * @throws IOException if an I/O error occurs or the file ends before the
+	 *         whole region is sent
+	 * @throws NullPointerException if the given channel is {@code null}
+	 */
+	public RequestContext write(FileChannel file, long position, long count) throws IOException {
+		Objects.requireNonNull(file, "Given file channel cannot be null!");
+		try {
+			prepareHeader();
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+		boolean lengthKnown = compressor == null && contentLength != null;
+		if (lengthKnown && headOnly) {
+			file.close();
+		} else if (lengthKnown && outputStream instanceof IFileOutput) {
+			body.flush();
+			((IFileOutput) outputStream).transferFrom(file, position, count);
+		} else {
+			try (file) {
+				long end = position + count;
+				while (position < end) {
+					long n = file.transferTo(
+							position, end - position, Channels.newChannel(bodyStream()));
+					if (n == 0 && position >= file.size()) {
+						throw new IOException("File was truncated while being sent!");
+					}
+					position += n;
+				}
+			}
 		}
-		outputStream.write(data, offset, len);
-		outputStream.flush();
 		return this;
 	}
+	
+	/**
+	 * Fixes the header of the response if it is not fixed already. From this
+	 * point header cannot be changed, but it is sent only when the body
+	 * buffer is flushed for the first time.
+	 * 
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void prepareHeader() throws IOException {
+		if (headerGenerated) return;
+		headerGenerated = true;
+		body = new BodyStream();
+		boolean compress = shouldCompress();
+		if (compress) {
+			// Length of the compressed body is not known in advance
+			contentLength = null;
+			headers.put("Content-Encoding", acceptedEncoding);
+			compressor = CompressionPolicy.compressingStream(body, acceptedEncoding);
+		}
+		if (compression != null && compression.isCompressibleType(mimeType)) {
+			headers.put("Vary", "Accept-Encoding");
+		}
+	}
+	
+	/**
+	 * Returns stream the body of the response is written to.
+	 * 
+	 * @return stream the body is written to
+	 */
+	private OutputStream bodyStream() {
+		return compressor != null ? compressor : body;
+	}
+	
+	/**
+	 * Returns {@code true} if the body of this response should be compressed.
+	 * Only successful responses whose type and length are allowed by the
+	 * compression policy are compressed, and only if the client accepts it.
+	 * 
+	 * @return {@code true} if the body should be compressed
+	 */
+	private boolean shouldCompress() {
+		return acceptedEncoding != null && compression != null && statusCode == 200
+				&& !headers.containsKey("Content-Encoding")
+				&& compression.isCompressible(mimeType, contentLength);
+	}
+	
+	/**
+	 * Sends everything written so far to the client. If the length of the
+	 * response is not known, rest of the body is sent in chunks.
+	 * 
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void flush() throws IOException {
+		prepareHeader();
+		if (compressor != null) compressor.flush();
+		body.flush();
+		outputStream.flush();
+	}
+	
+	/**
+	 * Finishes the response. If the body is compressed, rest of the compressed
+	 * data is written. If the whole body fit into the buffer and its length
+	 * was not set, length of the buffered body is used. Response with no body
+	 * written gets an empty body. Has to be called once everything is written.
+	 * 
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void finish() throws IOException {
+		prepareHeader();
+		if (compressor != null) {
+			compressor.finish();
+			compressor = null;
+		}
+		body.close();
+		outputStream.flush();
+	}
 
 	/**
 	 * Writes given text to the output stream of this {@link RequestContext}.
@@ -346,25 +591,64 @@ public class RequestContext {
 	 * @throws NullPointerException if the given {@link String} is {@code null}
 	 */
 	public RequestContext write(String text) throws IOException {
-		// Transform string to bytes using appropriate charset
-		charset = Charset.forName(encoding);
+		// Charset is looked up only once per encoding
+		if (charset == null) charset = CHARSETS.computeIfAbsent(encoding, Charset::forName);
 		byte[] data = text.getBytes(charset);
  		return write(data);
 	}
 	
 	/**
-	 * Generates and returns header for the response.
+	 * Generates and returns header for the response. Connection can only be
+	 * kept alive if the length of the response is known in advance, if the
+	 * body is sent in chunks or if the response has no body, otherwise client
+	 * relies on the connection being closed to detect end of the body.
 	 * 
 	 * @return header for the response
 	 */
 	private String generateHeader() {
+		if (contentLength == null && !chunked && !isBodyless()) keepAlive = false;
 		return "HTTP/1.1 " + statusCode + " " + statusText + "\r\n" +
 			   "Content-Type: " + getMimeType() +
 			   getContentLength() +
+			   (chunked ? "Transfer-Encoding: chunked\r\n" : "") +
+			   getHeaders() +
 			   getCookies() +
+			   "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n" +
 			   "\r\n";
 	}
 
+	/**
+	 * Returns {@code true} if the response cannot have a body, either because
+	 * of its status code or because only the header is requested.
+	 * 
+	 * @return {@code true} if the response cannot have a body
+	 */
+	private boolean isBodyless() {
+		return headOnly || hasNoBodyStatus();
+	}
+	
+	/**
+	 * Returns {@code true} if status code of the response does not allow body.
+	 * 
+	 * @return {@code true} if status code does not allow body
+	 */
+	private boolean hasNoBodyStatus() {
+		return statusCode == 204 || statusCode == 304 || (statusCode >= 100 && statusCode < 200);
+	}
+	
+	/**
+	 * Returns additional header lines added to this response.
+	 * 
+	 * @return additional header lines
+	 */
+	private String getHeaders() {
+		StringBuilder lines = new StringBuilder();
+		for (Map.Entry<String, String> header: headers.entrySet()) {
+			lines.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		}
+		return lines.toString();
+	}
+
 	/**
 	 * Returns cookie header lines generated from outputCookies list.
 	 * 
@@ -425,6 +709,16 @@ public class RequestContext {
 	public void setEncoding(String encoding) {
 		checkHeaderGenerated();
 		this.encoding = Objects.requireNonNull(encoding);
+		this.charset = null;
+	}
+
+	/**
+	 * Returns status code of the response.
+	 * 
+	 * @return status code of the response
+	 */
+	public int getStatusCode() {
+		return statusCode;
 	}
 
 	/**
@@ -478,6 +772,106 @@ public class RequestContext {
 		this.contentLength = contentLength;
 	}
 
+	/**
+	 * Adds header line with the given name and value to the response. If the
+	 * header with the same name was already added its value is replaced.
+	 * 
+	 * @param name
+	 *        name of the header
+	 * @param value
+	 *        value of the header
+	 * @throws NullPointerException if the given name or value is {@code null}
+	 * @throws RuntimeException if the header is already generated
+	 */
+	public void addHeader(String name, String value) {
+		checkHeaderGenerated();
+		headers.put(
+				Objects.requireNonNull(name, "Given header name cannot be null!"),
+				Objects.requireNonNull(value, "Given header value cannot be null!"));
+	}
+	
+	/**
+	 * Sets size of the buffer which holds the body before it is sent. If the
+	 * whole body fits into the buffer its length is set automatically,
+	 * otherwise body is sent in chunks unless its length was set.
+	 * 
+	 * @param bufferSize
+	 *        size of the body buffer in bytes
+	 * @throws IllegalArgumentException if the given size is not positive
+	 * @throws RuntimeException if the header is already generated
+	 */
+	public void setBufferSize(int bufferSize) {
+		checkHeaderGenerated();
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size has to be positive!");
+		}
+		this.bufferSize = bufferSize;
+	}
+	
+	/**
+	 * Sets encoding accepted by the client and policy that decides whether the
+	 * body is compressed with it. Body is compressed while being written, so
+	 * {@link #finish()} has to be called at the end of the response.
+	 * 
+	 * @param acceptedEncoding
+	 *        encoding accepted by the client, {@code null} disables compression
+	 * @param compression
+	 *        policy deciding whether the body is compressed
+	 * @throws RuntimeException if the header is already generated
+	 */
+	public void setCompression(String acceptedEncoding, CompressionPolicy compression) {
+		checkHeaderGenerated();
+		this.acceptedEncoding = acceptedEncoding;
+		this.compression = compression;
+	}
+	
+	/**
+	 * Sets whether only the header of the response should be sent. If set,
+	 * everything written to this {@link RequestContext} after the header is
+	 * discarded.
+	 * 
+	 * @param headOnly
+	 *        {@code true} if the body of the response should be omitted
+	 * @throws RuntimeException if the header is already generated
+	 */
+	public void setHeadOnly(boolean headOnly) {
+		checkHeaderGenerated();
+		this.headOnly = headOnly;
+	}
+	
+	/**
+	 * Sets whether the connection should be kept alive after this response.
+	 * Request is ignored if the response has a body whose length is not known
+	 * by the time header is generated.
+	 * 
+	 * @param keepAlive
+	 *        {@code true} if the connection should be kept alive
+	 * @throws RuntimeException if the header is already generated
+	 */
+	public void setKeepAlive(boolean keepAlive) {
+		checkHeaderGenerated();
+		this.keepAlive = keepAlive;
+	}
+	
+	/**
+	 * Returns {@code true} if the connection can be reused for the next request
+	 * once this response is sent.
+	 * 
+	 * @return {@code true} if the connection can be reused
+	 */
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+	
+	/**
+	 * Returns {@code true} if the header of the response is already generated.
+	 * 
+	 * @return {@code true} if the header of the response is already generated
+	 */
+	public boolean isHeaderGenerated() {
+		return headerGenerated;
+	}
+
 	/**
 	 * Checks whether header is already generate, and if it is throws
 	 * {@link RuntimeException}.
@@ -499,6 +893,135 @@ public class RequestContext {
 		return dispatcher;
 	}
 
+	/**
+	 * Stream that buffers the body of the response. Header is sent together
+	 * with the first flushed part of the body. If the buffer is flushed before
+	 * the body is complete and the length of the body is not known, body is
+	 * sent in chunks.
+	 * 
+	 * @author Filip Husnjak
+	 */
+	private class BodyStream extends OutputStream {
+		
+		/**
+		 * Buffered bytes of the body
+		 */
+		private final byte[] buffer = new byte[bufferSize];
+		
+		/**
+		 * Number of buffered bytes
+		 */
+		private int count;
+		
+		/**
+		 * Tells whether the header is already sent
+		 */
+		private boolean committed;
+		
+		/**
+		 * Tells whether the body is complete
+		 */
+		private boolean closed;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (closed) throw new IOException("Response is already finished!");
+			if (count + len <= buffer.length) {
+				System.arraycopy(b, off, buffer, count, len);
+				count += len;
+				return;
+			}
+			if (!committed) commit(false);
+			writeBuffer();
+			if (len < buffer.length) {
+				System.arraycopy(b, off, buffer, 0, len);
+				count = len;
+			} else {
+				// Large arrays are not copied into the buffer
+				send(b, off, len);
+			}
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			if (closed) return;
+			if (!committed) commit(false);
+			writeBuffer();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if (closed) return;
+			if (!committed) commit(true);
+			writeBuffer();
+			if (chunked && !headOnly) {
+				outputStream.write(LAST_CHUNK);
+			}
+			closed = true;
+		}
+		
+		/**
+		 * Sends the header. If the length of the body is not set it is either
+		 * the length of the buffered body, if the body is complete, or the body
+		 * is sent in chunks.
+		 * 
+		 * @param complete
+		 *        tells whether the whole body is buffered
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void commit(boolean complete) throws IOException {
+			if (contentLength == null && !hasNoBodyStatus()) {
+				if (complete) {
+					contentLength = (long) count;
+				} else {
+					chunked = true;
+				}
+			}
+			outputStream.write(generateHeader().getBytes(StandardCharsets.ISO_8859_1));
+			committed = true;
+		}
+		
+		/**
+		 * Sends buffered bytes and empties the buffer.
+		 * 
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void writeBuffer() throws IOException {
+			send(buffer, 0, count);
+			count = 0;
+		}
+		
+		/**
+		 * Sends the given bytes, as a single chunk if chunked transfer encoding
+		 * is used. Nothing is sent if only the header is requested.
+		 * 
+		 * @param b
+		 *        bytes to be sent
+		 * @param off
+		 *        offset of the first byte
+		 * @param len
+		 *        number of bytes to be sent
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void send(byte[] b, int off, int len) throws IOException {
+			if (len == 0 || headOnly) return;
+			if (chunked) {
+				outputStream.write((Integer.toHexString(len) + "\r\n")
+						.getBytes(StandardCharsets.ISO_8859_1));
+				outputStream.write(b, off, len);
+				outputStream.write(CRLF);
+			} else {
+				outputStream.write(b, off, len);
+			}
+		}
+		
+	}
+
 	/**
 	 * Represents cookie sent to client. Currently cookies are used to determine
 	 * which session is active and which session performed the request.
@@ -0,0 +1,352 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScript;
+import hr.fer.zemris.java.custom.scripting.exec.FunctionRegistry;
+import hr.fer.zemris.java.custom.scripting.lexer.SmartScriptLexer;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Cache of compiled SmartScript documents. Document is parsed and compiled
+ * once and reused by all requests until the modification time or the size of
+ * its file changes, or until a function is registered in
+ * {@link FunctionRegistry}, since compiled scripts keep the functions they
+ * were compiled with. Compiled scripts do not change during execution, so they
+ * can be executed by multiple threads at once. Number of cached scripts is
+ * bounded, when the bound is exceeded least recently used script is removed.
+ * <p>
+ * Scripts larger than the configured maximum size are never cached. They are
+ * parsed incrementally and each top-level node is compiled and executed as
+ * soon as it is parsed, so output is sent before the whole script is read and
+ * memory used does not depend on the size of the script. Top-level nodes are
+ * compiled the same way as cached scripts, so output of a script does not
+ * depend on its size.
+ *
+ * @author Filip Husnjak
+ */
+public class ScriptCache {
+
+	/**
+	 * Extension of SmartScript files
+	 */
+	private static final String EXTENSION = ".smscr";
+
+	/**
+	 * Maximum number of cached documents
+	 */
+	private final int capacity;
+
+	/**
+	 * Tells whether scripts are compiled with local variables
+	 */
+	private final boolean localVariables;
+
+	/**
+	 * Size in bytes of the largest script that is compiled and cached
+	 */
+	private final long maxScriptSize;
+
+	/**
+	 * Cached documents mapped by paths of their files
+	 */
+	private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Counter used to order accesses of entries
+	 */
+	private final AtomicLong clock = new AtomicLong();
+
+	/**
+	 * Number of requests that used cached document
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Number of requests that had to parse the script
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Number of requests that executed script while parsing it
+	 */
+	private final AtomicLong streamed = new AtomicLong();
+
+	/**
+	 * Constructs new {@link ScriptCache} with specified capacity. Scripts are
+	 * compiled with local variables.
+	 *
+	 * @param capacity
+	 *        maximum number of cached documents, {@code 0} disables caching
+	 * @throws IllegalArgumentException if the given capacity is negative
+	 */
+	public ScriptCache(int capacity) {
+		this(capacity, true);
+	}
+
+	/**
+	 * Constructs new {@link ScriptCache} with specified parameters.
+	 *
+	 * @param capacity
+	 *        maximum number of cached documents, {@code 0} disables caching
+	 * @param localVariables
+	 *        tells whether scripts are compiled with local variables, see
+	 *        {@link CompiledScript}
+	 * @throws IllegalArgumentException if the given capacity is negative
+	 */
+	public ScriptCache(int capacity, boolean localVariables) {
+		this(capacity, localVariables, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Constructs new {@link ScriptCache} with specified parameters.
+	 *
+	 * @param capacity
+	 *        maximum number of cached documents, {@code 0} disables caching
+	 * @param localVariables
+	 *        tells whether scripts are compiled with local variables, see
+	 *        {@link CompiledScript}
+	 * @param maxScriptSize
+	 *        size in bytes of the largest script that is compiled and cached,
+	 *        larger scripts are executed while they are parsed
+	 * @throws IllegalArgumentException if the given capacity or maximum size
+	 *         is negative
+	 */
+	public ScriptCache(int capacity, boolean localVariables, long maxScriptSize) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative!");
+		}
+		if (maxScriptSize < 0) {
+			throw new IllegalArgumentException("Maximum script size cannot be negative!");
+		}
+		this.capacity = capacity;
+		this.localVariables = localVariables;
+		this.maxScriptSize = maxScriptSize;
+	}
+
+	/**
+	 * Executes script with the given path. Scripts which are not larger than
+	 * the maximum size are executed using {@link #get(Path)}, top-level nodes
+	 * of larger scripts are compiled and executed while they are being parsed.
+	 * Variables of a loop exist only inside of it, so executing top-level
+	 * nodes one by one is the same as executing the whole document. Since the
+	 * part of the script that was already executed is not kept,
+	 * syntax error near the end of a large script is reported after its
+	 * beginning was already written to the context.
+	 *
+	 * @param path
+	 *        path of the script
+	 * @param context
+	 *        context the script is executed with
+	 * @throws IOException if the script cannot be read
+	 * @throws NullPointerException if the given path or context is {@code null}
+	 */
+	public void execute(Path path, RequestContext context) throws IOException {
+		Objects.requireNonNull(path, "Given path cannot be null!");
+		Objects.requireNonNull(context, "Given context cannot be null!");
+		if (Files.size(path) <= maxScriptSize) {
+			get(path).execute(context);
+			return;
+		}
+		streamed.incrementAndGet();
+		try (Reader reader = new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8)) {
+			SmartScriptParser parser = new SmartScriptParser(reader, SmartScriptLexer.DEFAULT_BUFFER_SIZE);
+			for (Node node = parser.nextNode(); node != null; node = parser.nextNode()) {
+				DocumentNode document = new DocumentNode();
+				document.addChildNode(node);
+				new CompiledScript(document, localVariables).execute(context);
+			}
+		}
+	}
+
+	/**
+	 * Returns compiled script with the given path. Script is read, parsed and
+	 * compiled only if it is not cached, if it changed since it was cached or
+	 * if functions were registered since it was compiled.
+	 *
+	 * @param path
+	 *        path of the script
+	 * @return compiled script
+	 * @throws IOException if the script cannot be read
+	 * @throws NullPointerException if the given path is {@code null}
+	 */
+	public CompiledScript get(Path path) throws IOException {
+		path = Objects.requireNonNull(path, "Given path cannot be null!")
+				.toAbsolutePath().normalize();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		// Version is read before compiling, so registration during compilation is not missed
+		long version = FunctionRegistry.getVersion();
+		Entry entry = entries.get(path);
+		if (entry != null && entry.lastModified == lastModified && entry.size == attributes.size()
+				&& entry.version == version) {
+			entry.lastAccess = clock.incrementAndGet();
+			hits.incrementAndGet();
+			return entry.script;
+		}
+		misses.incrementAndGet();
+		CompiledScript script = new CompiledScript(
+				new SmartScriptParser(Files.readString(path)).getDocumentNode(), localVariables);
+		if (capacity > 0) {
+			entries.put(path, new Entry(script, lastModified, attributes.size(), version,
+					clock.incrementAndGet()));
+			while (entries.size() > capacity) {
+				evictLeastRecentlyUsed();
+			}
+		}
+		return script;
+	}
+
+	/**
+	 * Compiles and caches all scripts below the given directory, until the
+	 * capacity is reached. Scripts that cannot be parsed and scripts larger
+	 * than the maximum size are skipped.
+	 *
+	 * @param directory
+	 *        directory whose scripts are to be cached
+	 * @return number of cached scripts
+	 * @throws IOException if the directory cannot be walked
+	 */
+	public int preload(Path directory) throws IOException {
+		int loaded = 0;
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file: (Iterable<Path>) files::iterator) {
+				if (loaded >= capacity) break;
+				if (!Files.isRegularFile(file) || !file.toString().endsWith(EXTENSION)) continue;
+				if (Files.size(file) > maxScriptSize) continue;
+				try {
+					get(file);
+					loaded++;
+				} catch (RuntimeException | IOException e) {
+					System.err.println("Script " + file + " could not be preloaded: " + e.getMessage());
+				}
+			}
+		}
+		// Preloading is not a request
+		misses.set(0);
+		return loaded;
+	}
+
+	/**
+	 * Removes the entry which was not used for the longest time.
+	 */
+	private void evictLeastRecentlyUsed() {
+		Path oldest = null;
+		long oldestAccess = Long.MAX_VALUE;
+		for (Map.Entry<Path, Entry> e: entries.entrySet()) {
+			if (e.getValue().lastAccess < oldestAccess) {
+				oldestAccess = e.getValue().lastAccess;
+				oldest = e.getKey();
+			}
+		}
+		if (oldest != null) entries.remove(oldest);
+	}
+
+	/**
+	 * Returns number of requests that used cached document.
+	 *
+	 * @return number of cache hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns number of requests that had to parse the script.
+	 *
+	 * @return number of cache misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns number of requests that executed script while parsing it,
+	 * because the script was larger than the maximum size.
+	 *
+	 * @return number of streamed executions
+	 */
+	public long getStreamed() {
+		return streamed.get();
+	}
+
+	/**
+	 * Returns number of cached documents.
+	 *
+	 * @return number of cached documents
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Compiled script together with the attributes of its file and the version
+	 * of the function registry at the time it was parsed.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Entry {
+
+		/**
+		 * Compiled script
+		 */
+		private final CompiledScript script;
+
+		/**
+		 * Modification time of the file in milliseconds
+		 */
+		private final long lastModified;
+
+		/**
+		 * Size of the file in bytes
+		 */
+		private final long size;
+
+		/**
+		 * Version of the function registry the script was compiled with
+		 */
+		private final long version;
+
+		/**
+		 * Value of the access clock when entry was last used
+		 */
+		private volatile long lastAccess;
+
+		/**
+		 * Constructs new {@link Entry} with specified script and attributes.
+		 *
+		 * @param script
+		 *        compiled script
+		 * @param lastModified
+		 *        modification time of the file
+		 * @param size
+		 *        size of the file
+		 * @param version
+		 *        version of the function registry
+		 * @param lastAccess
+		 *        value of the access clock
+		 */
+		public Entry(CompiledScript script, long lastModified, long size, long version, long lastAccess) {
+			this.script = script;
+			this.lastModified = lastModified;
+			this.size = size;
+			this.version = version;
+			this.lastAccess = lastAccess;
+		}
+
+	}
+
+}
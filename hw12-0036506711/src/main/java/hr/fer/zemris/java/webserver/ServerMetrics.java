@@ -0,0 +1,330 @@
+package hr.fer.zemris.java.webserver;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects metrics of {@link SmartHttpServer}. Each request is counted by its
+ * route and status class and its latency is recorded in the
+ * {@link LatencyHistogram} of its route. Recording does not allocate, so
+ * metrics are always enabled. Values owned by other parts of the server, like
+ * cache counters or session count, are registered as suppliers and read only
+ * when metrics are exported.
+ * <p>
+ * Metrics are exported in the Prometheus text format, latencies are exported
+ * in seconds with bucket bounds at powers of two microseconds.
+ *
+ * @author Filip Husnjak
+ */
+public class ServerMetrics {
+
+	/**
+	 * Exponents of the smallest and the largest exported bucket bound, from
+	 * 32 microseconds to about 33 seconds
+	 */
+	private static final int MIN_EXPONENT = 5, MAX_EXPONENT = 25;
+
+	/**
+	 * Number of tracked status classes, from 1xx to 5xx
+	 */
+	private static final int STATUS_CLASSES = 5;
+
+	/**
+	 * Latencies of requests, one histogram per route
+	 */
+	private final LatencyHistogram[] latencies = new LatencyHistogram[Route.values().length];
+
+	/**
+	 * Number of requests per route and status class
+	 */
+	private final AtomicLongArray requests =
+			new AtomicLongArray(Route.values().length * STATUS_CLASSES);
+
+	/**
+	 * Number of open connections
+	 */
+	private final AtomicLong connections = new AtomicLong();
+
+	/**
+	 * Number of accepted connections
+	 */
+	private final AtomicLong acceptedConnections = new AtomicLong();
+
+	/**
+	 * Values read from other parts of the server when metrics are exported
+	 */
+	private final List<Supplied> supplied = new ArrayList<>();
+
+	/**
+	 * Constructs new {@link ServerMetrics} without any recorded values.
+	 */
+	public ServerMetrics() {
+		for (int i = 0; i < latencies.length; ++i) {
+			latencies[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Records request served by the given route.
+	 *
+	 * @param route
+	 *        route which served the request
+	 * @param statusCode
+	 *        status code of the response
+	 * @param nanos
+	 *        time spent serving the request in nanoseconds
+	 */
+	public void record(Route route, int statusCode, long nanos) {
+		int statusClass = Math.min(Math.max(statusCode / 100, 1), STATUS_CLASSES) - 1;
+		requests.incrementAndGet(route.ordinal() * STATUS_CLASSES + statusClass);
+		latencies[route.ordinal()].recordNanos(nanos);
+	}
+
+	/**
+	 * Records that a connection was accepted.
+	 */
+	public void connectionOpened() {
+		connections.incrementAndGet();
+		acceptedConnections.incrementAndGet();
+	}
+
+	/**
+	 * Records that a connection was closed.
+	 */
+	public void connectionClosed() {
+		connections.decrementAndGet();
+	}
+
+	/**
+	 * Returns histogram of latencies of the given route.
+	 *
+	 * @param route
+	 *        route of the requests
+	 * @return histogram of latencies of the route
+	 */
+	public LatencyHistogram getLatencies(Route route) {
+		return latencies[route.ordinal()];
+	}
+
+	/**
+	 * Returns number of open connections.
+	 *
+	 * @return number of open connections
+	 */
+	public long getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * Registers value which can only go up, like number of cache hits.
+	 *
+	 * @param name
+	 *        name of the metric
+	 * @param help
+	 *        description of the metric
+	 * @param value
+	 *        supplier of the current value
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 */
+	public void addCounter(String name, String help, LongSupplier value) {
+		add(new Supplied(name, help, "counter", value));
+	}
+
+	/**
+	 * Registers value which can go up and down, like number of sessions.
+	 *
+	 * @param name
+	 *        name of the metric
+	 * @param help
+	 *        description of the metric
+	 * @param value
+	 *        supplier of the current value
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 */
+	public void addGauge(String name, String help, LongSupplier value) {
+		add(new Supplied(name, help, "gauge", value));
+	}
+
+	/**
+	 * Adds the given supplied value.
+	 *
+	 * @param metric
+	 *        value to be added
+	 */
+	private void add(Supplied metric) {
+		synchronized (supplied) {
+			supplied.add(metric);
+		}
+	}
+
+	/**
+	 * Returns all metrics in the Prometheus text format.
+	 *
+	 * @return all metrics in the Prometheus text format
+	 */
+	public String export() {
+		StringBuilder sb = new StringBuilder(8 * 1024);
+		header(sb, "smarthttp_requests_total", "Number of served requests.", "counter");
+		for (Route route: Route.values()) {
+			for (int i = 0; i < STATUS_CLASSES; ++i) {
+				long n = requests.get(route.ordinal() * STATUS_CLASSES + i);
+				if (n == 0) continue;
+				sb.append("smarthttp_requests_total{route=\"").append(route.label)
+					.append("\",code=\"").append(i + 1).append("xx\"} ").append(n).append('\n');
+			}
+		}
+		header(sb, "smarthttp_request_duration_seconds", "Time spent serving requests.", "histogram");
+		for (Route route: Route.values()) {
+			LatencyHistogram histogram = latencies[route.ordinal()];
+			for (int e = MIN_EXPONENT; e <= MAX_EXPONENT; ++e) {
+				sb.append("smarthttp_request_duration_seconds_bucket{route=\"").append(route.label)
+					.append("\",le=\"").append(seconds(1L << e)).append("\"} ")
+					.append(histogram.countAtMostPowerOfTwo(e)).append('\n');
+			}
+			long count = histogram.getCount();
+			sb.append("smarthttp_request_duration_seconds_bucket{route=\"").append(route.label)
+				.append("\",le=\"+Inf\"} ").append(count).append('\n');
+			sb.append("smarthttp_request_duration_seconds_sum{route=\"").append(route.label)
+				.append("\"} ").append(seconds(histogram.getSum())).append('\n');
+			sb.append("smarthttp_request_duration_seconds_count{route=\"").append(route.label)
+				.append("\"} ").append(count).append('\n');
+		}
+		header(sb, "smarthttp_connections", "Number of open connections.", "gauge");
+		sb.append("smarthttp_connections ").append(connections.get()).append('\n');
+		header(sb, "smarthttp_connections_accepted_total", "Number of accepted connections.", "counter");
+		sb.append("smarthttp_connections_accepted_total ").append(acceptedConnections.get()).append('\n');
+		synchronized (supplied) {
+			for (Supplied metric: supplied) {
+				header(sb, metric.name, metric.help, metric.type);
+				sb.append(metric.name).append(' ').append(metric.value.getAsLong()).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Appends help and type lines of a metric.
+	 *
+	 * @param sb
+	 *        builder the lines are appended to
+	 * @param name
+	 *        name of the metric
+	 * @param help
+	 *        description of the metric
+	 * @param type
+	 *        type of the metric
+	 */
+	private static void header(StringBuilder sb, String name, String help, String type) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	/**
+	 * Formats the given number of microseconds as seconds.
+	 *
+	 * @param micros
+	 *        number of microseconds
+	 * @return number of seconds in plain notation
+	 */
+	private static String seconds(long micros) {
+		return BigDecimal.valueOf(micros, 6).stripTrailingZeros().toPlainString();
+	}
+
+	/**
+	 * Kinds of resources requests are served by.
+	 *
+	 * @author Filip Husnjak
+	 */
+	public enum Route {
+
+		/**
+		 * Static files from the document root
+		 */
+		STATIC("static"),
+
+		/**
+		 * SmartScript scripts
+		 */
+		SCRIPT("script"),
+
+		/**
+		 * Web workers
+		 */
+		WORKER("worker"),
+
+		/**
+		 * Requests rejected before they reached any resource
+		 */
+		OTHER("other");
+
+		/**
+		 * Label of the route in exported metrics
+		 */
+		private final String label;
+
+		/**
+		 * Constructs new {@link Route} with specified label.
+		 *
+		 * @param label
+		 *        label of the route in exported metrics
+		 */
+		Route(String label) {
+			this.label = label;
+		}
+
+	}
+
+	/**
+	 * Metric whose value is read from a supplier.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Supplied {
+
+		/**
+		 * Name of the metric
+		 */
+		private final String name;
+
+		/**
+		 * Description of the metric
+		 */
+		private final String help;
+
+		/**
+		 * Prometheus type of the metric
+		 */
+		private final String type;
+
+		/**
+		 * Supplier of the current value
+		 */
+		private final LongSupplier value;
+
+		/**
+		 * Constructs new {@link Supplied} metric.
+		 *
+		 * @param name
+		 *        name of the metric
+		 * @param help
+		 *        description of the metric
+		 * @param type
+		 *        Prometheus type of the metric
+		 * @param value
+		 *        supplier of the current value
+		 */
+		public Supplied(String name, String help, String type, LongSupplier value) {
+			this.name = Objects.requireNonNull(name, "Given name cannot be null!");
+			this.help = Objects.requireNonNull(help, "Given help cannot be null!");
+			this.type = type;
+			this.value = Objects.requireNonNull(value, "Given supplier cannot be null!");
+		}
+
+	}
+
+}
@@ -0,0 +1,288 @@
+package hr.fer.zemris.java.webserver;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Store of user sessions which can be used by multiple threads without a
+ * global lock. Sessions expire lazily: expired session is removed when it is
+ * accessed, and every created session also sweeps a few other sessions so
+ * sessions which are never accessed again are removed as well. Sweep
+ * continues where the previous one stopped, so the whole store is visited
+ * without ever scanning it at once.
+ * <p>
+ * Session IDs are 128 random bits taken from {@link SecureRandom} generators.
+ * Generators are striped by thread so threads creating sessions at the same
+ * time rarely wait on each other.
+ *
+ * @author Filip Husnjak
+ */
+public class SessionStore {
+
+	/**
+	 * Number of sessions checked for expiration each time a session is created
+	 */
+	private static final int SWEEP_BATCH = 8;
+
+	/**
+	 * Number of random bytes in session ID
+	 */
+	private static final int SID_BYTES = 16;
+
+	/**
+	 * Encoder of session IDs, its alphabet is safe in cookies
+	 */
+	private static final Base64.Encoder SID_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	/**
+	 * How long session lasts after its last access in milliseconds
+	 */
+	private final long timeout;
+
+	/**
+	 * Sessions mapped by their IDs
+	 */
+	private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * Generators of session IDs, each thread uses one of them
+	 */
+	private final SecureRandom[] generators;
+
+	/**
+	 * Lock held by the thread that sweeps the store
+	 */
+	private final ReentrantLock sweepLock = new ReentrantLock();
+
+	/**
+	 * Position of the sweep, guarded by {@link #sweepLock}
+	 */
+	private Iterator<Session> sweepPosition;
+
+	/**
+	 * Number of created sessions
+	 */
+	private final AtomicLong created = new AtomicLong();
+
+	/**
+	 * Number of sessions removed because they expired
+	 */
+	private final AtomicLong expired = new AtomicLong();
+
+	/**
+	 * Constructs new {@link SessionStore} with specified session timeout.
+	 *
+	 * @param timeout
+	 *        how long session lasts after its last access in seconds
+	 * @throws IllegalArgumentException if the given timeout is not positive
+	 */
+	public SessionStore(long timeout) {
+		if (timeout <= 0) {
+			throw new IllegalArgumentException("Session timeout has to be positive!");
+		}
+		this.timeout = timeout * 1000;
+		int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+		this.generators = new SecureRandom[stripes];
+		for (int i = 0; i < stripes; ++i) {
+			generators[i] = new SecureRandom();
+		}
+	}
+
+	/**
+	 * Returns session with the given ID if it exists, belongs to the given host
+	 * and did not expire. Returned session is valid for another timeout period.
+	 * Expired session is removed.
+	 *
+	 * @param sid
+	 *        ID of the session, can be {@code null}
+	 * @param host
+	 *        host of the request
+	 * @return session with the given ID or {@code null} if there is no valid
+	 *         session
+	 */
+	public Session get(String sid, String host) {
+		if (sid == null) return null;
+		Session session = sessions.get(sid);
+		if (session == null) return null;
+		long now = System.currentTimeMillis();
+		if (session.validUntil <= now) {
+			expire(session);
+			return null;
+		}
+		if (!Objects.equals(session.host, host)) return null;
+		session.validUntil = now + timeout;
+		return session;
+	}
+
+	/**
+	 * Creates new session for the given host with new random ID.
+	 *
+	 * @param host
+	 *        host of the request
+	 * @return created session
+	 */
+	public Session create(String host) {
+		sweep();
+		Session session;
+		do {
+			session = new Session(generateSID(), host, System.currentTimeMillis() + timeout);
+		} while (sessions.putIfAbsent(session.sid, session) != null);
+		created.incrementAndGet();
+		return session;
+	}
+
+	/**
+	 * Checks next {@link #SWEEP_BATCH} sessions and removes expired ones. If
+	 * another thread is already sweeping this method returns immediately.
+	 */
+	private void sweep() {
+		if (!sweepLock.tryLock()) return;
+		try {
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < SWEEP_BATCH; ++i) {
+				if (sweepPosition == null || !sweepPosition.hasNext()) {
+					sweepPosition = sessions.values().iterator();
+					if (!sweepPosition.hasNext()) return;
+				}
+				Session session = sweepPosition.next();
+				if (session.validUntil <= now) expire(session);
+			}
+		} finally {
+			sweepLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the given expired session, unless another thread removed it
+	 * already.
+	 *
+	 * @param session
+	 *        expired session
+	 */
+	private void expire(Session session) {
+		if (sessions.remove(session.sid, session)) {
+			expired.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Generates new random session ID.
+	 *
+	 * @return new session ID
+	 */
+	private String generateSID() {
+		byte[] bytes = new byte[SID_BYTES];
+		SecureRandom generator = generators[(int) Thread.currentThread().getId() & (generators.length - 1)];
+		// SecureRandom is thread-safe, striping only reduces contention
+		generator.nextBytes(bytes);
+		return SID_ENCODER.encodeToString(bytes);
+	}
+
+	/**
+	 * Returns number of sessions in the store, including expired sessions
+	 * which were not removed yet.
+	 *
+	 * @return number of sessions in the store
+	 */
+	public int getActiveSessions() {
+		return sessions.size();
+	}
+
+	/**
+	 * Returns number of created sessions.
+	 *
+	 * @return number of created sessions
+	 */
+	public long getCreated() {
+		return created.get();
+	}
+
+	/**
+	 * Returns number of sessions removed because they expired.
+	 *
+	 * @return number of expired sessions
+	 */
+	public long getExpired() {
+		return expired.get();
+	}
+
+	/**
+	 * Represents user session with its ID, host, expiration time and map
+	 * which contains parameters for this session.
+	 *
+	 * @author Filip Husnjak
+	 */
+	public static class Session {
+
+		/**
+		 * ID of this session
+		 */
+		private final String sid;
+
+		/**
+		 * Host of this session
+		 */
+		private final String host;
+
+		/**
+		 * Expiration time of this session in milliseconds
+		 */
+		private volatile long validUntil;
+
+		/**
+		 * Map which holds session specific parameters
+		 */
+		private final Map<String, String> parameters = new ConcurrentHashMap<>();
+
+		/**
+		 * Constructs new {@link Session} with given ID, host and expiration time.
+		 *
+		 * @param sid
+		 *        ID of the new session
+		 * @param host
+		 *        host of the new session
+		 * @param validUntil
+		 *        expiration time of the new session
+		 */
+		private Session(String sid, String host, long validUntil) {
+			this.sid = sid;
+			this.host = host;
+			this.validUntil = validUntil;
+		}
+
+		/**
+		 * Returns ID of this session.
+		 *
+		 * @return ID of this session
+		 */
+		public String getId() {
+			return sid;
+		}
+
+		/**
+		 * Returns host of this session.
+		 *
+		 * @return host of this session
+		 */
+		public String getHost() {
+			return host;
+		}
+
+		/**
+		 * Returns map which holds session specific parameters.
+		 *
+		 * @return parameters of this session
+		 */
+		public Map<String, String> getParameters() {
+			return parameters;
+		}
+
+	}
+
+}
@@ -3,37 +3,67 @@ package hr.fer.zemris.java.webserver;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PushbackInputStream;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
-import java.util.UUID;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 
-import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScript;
 import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
 import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+import hr.fer.zemris.java.webserver.ServerMetrics.Route;
 
 /**
  * Represents web server that provides some basic functionalities.
  * Dynamic websites are accomplished using SmartScript language that is parsed
- * with {@link SmartScriptParser} and executed by {@link SmartScriptEngine}.
+ * with {@link SmartScriptParser}, compiled into {@link CompiledScript} and executed.
+ * Scripts too large to be cached are executed while they are parsed.
  * 
  * @author Filip Husnjak
  */
@@ -43,6 +73,72 @@ public class SmartHttpServer {
 	 * Default mime type, when mime type could not be recognized
 	 */
 	private static final String DEFAULT_MIME = "application/octet-stream";
+	
+	/**
+	 * MIME types compressed when compression types are not configured
+	 */
+	private static final String DEFAULT_COMPRESSED_TYPES =
+			"text/*,application/javascript,application/json,image/svg+xml";
+	
+	/**
+	 * Maximum size of the request header in bytes accepted by {@link EventLoop}
+	 */
+	private static final int MAX_HEADER_SIZE = 16 * 1024;
+	
+	/**
+	 * Size of the buffer each {@link EventLoop} uses to read from sockets
+	 */
+	private static final int READ_BUFFER_SIZE = 8 * 1024;
+	
+	/**
+	 * How long {@link EventLoop} waits for socket events before it checks for
+	 * idle connections, in milliseconds
+	 */
+	private static final long SELECT_TIMEOUT = 1000;
+	
+	/**
+	 * How often {@link #watchdog} checks for blocked writes, in milliseconds
+	 */
+	private static final long WATCHDOG_PERIOD = 500;
+	
+	/**
+	 * Maximum number of bytes of a file transferred to a blocking socket at
+	 * once, so {@link #watchdog} sees the progress of large transfers
+	 */
+	private static final long TRANSFER_CHUNK = 256 * 1024;
+	
+	/**
+	 * Interim response telling the client to send the request body
+	 */
+	private static final byte[] CONTINUE_RESPONSE =
+			"HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+	
+	/**
+	 * Media type of the request body holding form parameters
+	 */
+	private static final String FORM_TYPE = "application/x-www-form-urlencoded";
+	
+	/**
+	 * Package of workers called through {@code /ext/} paths
+	 */
+	private static final String WORKERS_PACKAGE = "hr.fer.zemris.java.webserver.workers.";
+	
+	/**
+	 * Maximum number of remembered {@code /ext/} workers, including unknown names
+	 */
+	static final int MAX_EXT_WORKERS = 1024;
+	
+	/**
+	 * Marks names of {@code /ext/} workers which do not exist
+	 */
+	private static final IWebWorker MISSING_WORKER = context -> {};
+	
+	/**
+	 * Format of dates used by HTTP headers
+	 */
+	private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter
+			.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+			.withZone(ZoneOffset.UTC);
 
 	/**
 	 * Server address
@@ -69,6 +165,42 @@ public class SmartHttpServer {
 	 */
 	private int sessionTimeout;
 	
+	/**
+	 * Front-end used to accept connections, either {@code blocking} or {@code nio}
+	 */
+	private String frontend;
+	
+	/**
+	 * Number of selector event loops used by the {@code nio} front-end
+	 */
+	private int eventLoops;
+	
+	/**
+	 * How long idle keep-alive connection stays open, in milliseconds
+	 */
+	private long keepAliveTimeout;
+	
+	/**
+	 * Executor mode used to run client workers, either {@code fixed} or
+	 * {@code virtual}
+	 */
+	private String executor;
+	
+	/**
+	 * Whether client workers run on virtual threads
+	 */
+	private boolean virtualThreads;
+	
+	/**
+	 * How long reading from the client may block, in milliseconds
+	 */
+	private int readTimeout;
+	
+	/**
+	 * How long writing to the client may block, in milliseconds
+	 */
+	private long writeTimeout;
+	
 	/**
 	 * Map which holds mime types this server can recognize
 	 */
@@ -77,13 +209,25 @@ public class SmartHttpServer {
 	/**
 	 * Main server thread
 	 */
-	private ServerThread serverThread = new ServerThread();
+	private Thread serverThread;
+	
+	/**
+	 * Socket the server thread accepts connections on, closed when server stops
+	 */
+	private volatile Closeable serverSocket;
 	
 	/**
 	 * Thread pool which executes workers
 	 */
 	private ExecutorService threadPool;
-	
+
+	/**
+	 * Request parsers of worker threads, each thread reuses its own parser and
+	 * buffer for all requests it reads
+	 */
+	private final ThreadLocal<HttpRequestParser> parsers = ThreadLocal.withInitial(
+			() -> new HttpRequestParser(READ_BUFFER_SIZE, MAX_HEADER_SIZE));
+
 	/**
 	 * Root which should be used to load files, any file that is below this root
 	 * cannot be accessed via web.
@@ -94,6 +238,47 @@ public class SmartHttpServer {
 	 * Map that holds workers mapped to their paths
 	 */
 	private Map<String, IWebWorker> workersMap = new HashMap<>();
+	
+	/**
+	 * Workers called by convention through {@code /ext/} paths mapped by their
+	 * simple class names, unknown names are mapped to {@link #MISSING_WORKER}
+	 */
+	final Map<String, IWebWorker> extWorkers = new ConcurrentHashMap<>();
+	
+	/**
+	 * Cache of small static files
+	 */
+	private StaticFileCache staticCache;
+	
+	/**
+	 * Cache of compiled scripts
+	 */
+	private ScriptCache scriptCache;
+	
+	/**
+	 * Tells whether all scripts should be parsed when the server starts
+	 */
+	private boolean preloadScripts;
+	
+	/**
+	 * Size of the buffer each response is written to before it is sent, in bytes
+	 */
+	private int responseBufferSize;
+	
+	/**
+	 * Policy deciding which responses are compressed
+	 */
+	private CompressionPolicy compression;
+	
+	/**
+	 * Maximum size of the request body in bytes
+	 */
+	private long maxRequestBody;
+	
+	/**
+	 * Metrics of requests and connections served by this server
+	 */
+	private final ServerMetrics metrics = new ServerMetrics();
 
 	/**
 	 * Flag used to signal server thread to stop.
@@ -101,29 +286,27 @@ public class SmartHttpServer {
 	private volatile boolean running;
 	
 	/**
-	 * Map that maps session ID with its {@link SessionMapEntry}
+	 * Store of user sessions
+	 */
+	private SessionStore sessions;
+	
+	/**
+	 * Output streams of the blocking front-end that are currently writing.
 	 */
-	private Map<String, SessionMapEntry> sessions = new HashMap<>();
+	private Set<DeadlineOutputStream> activeWrites = ConcurrentHashMap.newKeySet();
 	
 	/**
-	 * Thread that cleans {@link #sessions} map each 5 minutes.
+	 * Thread that closes sockets whose writes are blocked longer than
+	 * {@link #writeTimeout}.
 	 */
-	private Thread cleaner = new Thread(() -> {
+	private Thread watchdog = new Thread(() -> {
 		while (running) {
 			try {
-				// Sleep 5 minutes
-				Thread.sleep(300_000);
+				Thread.sleep(WATCHDOG_PERIOD);
 			} catch (InterruptedException ignorable) {}
-			long currentTime = System.currentTimeMillis() / 1000;
-			// Since we iterate over sessions map which is used by multiple threads
-			// we have to synchronize it.
-			synchronized (sessions) {
-				Iterator<SessionMapEntry> it = sessions.values().iterator();
-				while (it.hasNext()) {
-					if (it.next().validUntil < currentTime) {
-						it.remove();
-					}
-				}
+			long currentTime = System.currentTimeMillis();
+			for (DeadlineOutputStream stream: activeWrites) {
+				stream.closeIfExpired(currentTime);
 			}
 		}
 	});
@@ -139,6 +322,7 @@ public class SmartHttpServer {
 		try {
 			Path configPath = Paths.get(configFileName);
 			loadServerProperties(configPath);
+			registerMetrics();
 		} catch (IOException e) {
 			throw new IllegalArgumentException("Cannot open file properties!");
 		} catch (ClassNotFoundException e) {
@@ -172,6 +356,31 @@ public class SmartHttpServer {
 		workerThreads = Integer.parseInt(prop.getProperty("server.workerThreads"));
 		documentRoot = Paths.get(prop.getProperty("server.documentRoot"));
 		sessionTimeout = Integer.parseInt(prop.getProperty("session.timeout"));
+		sessions = new SessionStore(sessionTimeout);
+		frontend = prop.getProperty("server.frontend", "blocking").trim();
+		eventLoops = Integer.parseInt(prop.getProperty("server.eventLoops", "1").trim());
+		keepAliveTimeout = Long.parseLong(prop.getProperty("server.keepAliveTimeout", "15").trim()) * 1000;
+		executor = prop.getProperty("server.executor", "fixed").trim();
+		virtualThreads = executor.equals("virtual") && supportsVirtualThreads();
+		readTimeout = Integer.parseInt(prop.getProperty("server.readTimeout", "30").trim()) * 1000;
+		writeTimeout = Long.parseLong(prop.getProperty("server.writeTimeout", "30").trim()) * 1000;
+		staticCache = new StaticFileCache(
+				Long.parseLong(prop.getProperty("server.staticCache.maxSize", "32768").trim()) * 1024,
+				Long.parseLong(prop.getProperty("server.staticCache.maxFileSize", "1024").trim()) * 1024);
+		scriptCache = new ScriptCache(
+				Integer.parseInt(prop.getProperty("server.scriptCache.capacity", "256").trim()),
+				Boolean.parseBoolean(prop.getProperty("server.scriptCache.localVariables", "true").trim()),
+				Long.parseLong(prop.getProperty("server.scriptCache.maxScriptSize", "1024").trim()) * 1024);
+		preloadScripts = Boolean.parseBoolean(prop.getProperty("server.scriptCache.preload", "true").trim());
+		responseBufferSize = Integer.parseInt(prop.getProperty("server.responseBuffer", "16").trim()) * 1024;
+		maxRequestBody = Long.parseLong(prop.getProperty("server.maxRequestBody", "1024").trim()) * 1024;
+		Set<String> compressedTypes = new HashSet<>();
+		for (String type: prop.getProperty("server.compression.mimeTypes", DEFAULT_COMPRESSED_TYPES).split(",")) {
+			if (!type.isBlank()) compressedTypes.add(type.trim());
+		}
+		compression = new CompressionPolicy(
+				Long.parseLong(prop.getProperty("server.compression.minSize", "1024").trim()),
+				compressedTypes);
 		
 		// Load worker objects
 		Path workerConfigPath = Paths.get(prop.getProperty("server.workers"));
@@ -200,72 +409,1115 @@ public class SmartHttpServer {
 	}
 	
 	/**
-	 * Loads worker objects defined in workers configuration file whose path
-	 * if given as an argument. This method fills {@link #workersMap} with
-	 * appropriate worker objects.
+	 * Loads worker objects defined in workers configuration file whose path
+	 * if given as an argument. This method fills {@link #workersMap} with
+	 * appropriate worker objects.
+	 * 
+	 * @param workersPath
+	 *        path of the workers configuration file
+	 * @throws Exception if error occurs reading the file
+	 */
+	private void loadServerWorkers(Path workersPath) throws Exception {
+		// Read worker lines
+		List<String> lines = Files.readAllLines(workersPath);
+		for (String line: lines) {
+			if (line.isBlank()) continue;
+			String[] lineParts = line.split("=");
+			Class<?> referenceToClass = 
+					this.getClass().getClassLoader().loadClass(lineParts[1].trim());
+			IWebWorker iww = createWorker(referenceToClass);
+			workersMap.put(lineParts[0].trim(), iww);
+		}
+	}
+	
+	/**
+	 * Creates worker of the given class. Instances are created and shared as
+	 * requested by the {@link WorkerScope} annotation of the class, workers
+	 * without the annotation are created once. When workers run on virtual
+	 * threads every request has a new thread, so {@code PER_THREAD} workers
+	 * are pooled like {@code POOLED} workers instead.
+	 * 
+	 * @param workerClass
+	 *        class of the worker
+	 * @return worker which should be used for all requests
+	 * @throws ReflectiveOperationException if the worker cannot be instantiated
+	 * @throws ClassCastException if the given class is not a worker
+	 */
+	private IWebWorker createWorker(Class<?> workerClass) throws ReflectiveOperationException {
+		Class<? extends IWebWorker> type = workerClass.asSubclass(IWebWorker.class);
+		Constructor<? extends IWebWorker> constructor = type.getConstructor();
+		WorkerScope scope = type.getAnnotation(WorkerScope.class);
+		if (scope == null || scope.value() == WorkerScope.Scope.SINGLETON) {
+			return constructor.newInstance();
+		}
+		if (scope.value() == WorkerScope.Scope.PER_THREAD && !virtualThreads) {
+			return new ThreadLocalWorker(constructor);
+		}
+		int size = scope.poolSize() > 0 ? scope.poolSize() : Runtime.getRuntime().availableProcessors();
+		return new PooledWorker(constructor, size);
+	}
+	
+	/**
+	 * Returns worker with the given simple class name from the workers package.
+	 * Workers are created on the first request and reused afterwards. Names
+	 * which do not belong to a worker are remembered as well, so repeated
+	 * requests for them do not reach the class loader.
+	 * 
+	 * @param name
+	 *        simple class name of the worker
+	 * @return worker with the given name or {@code null} if it does not exist
+	 */
+	IWebWorker getExtWorker(String name) {
+		IWebWorker worker = extWorkers.get(name);
+		if (worker == null) {
+			if (!isWorkerName(name)) return null;
+			worker = loadExtWorker(name);
+			// Number of unknown names is bounded so they cannot fill the memory
+			if (worker != MISSING_WORKER || extWorkers.size() < MAX_EXT_WORKERS) {
+				IWebWorker existing = extWorkers.putIfAbsent(name, worker);
+				if (existing != null) worker = existing;
+			}
+		}
+		return worker == MISSING_WORKER ? null : worker;
+	}
+	
+	/**
+	 * Loads and creates worker with the given simple class name.
+	 * 
+	 * @param name
+	 *        simple class name of the worker
+	 * @return created worker or {@link #MISSING_WORKER} if it does not exist
+	 */
+	private IWebWorker loadExtWorker(String name) {
+		try {
+			return createWorker(getClass().getClassLoader().loadClass(WORKERS_PACKAGE + name));
+		} catch (ClassNotFoundException | ClassCastException e) {
+			return MISSING_WORKER;
+		} catch (ReflectiveOperationException e) {
+			System.err.println("Worker " + name + " could not be created: " + e);
+			return MISSING_WORKER;
+		}
+	}
+	
+	/**
+	 * Returns {@code true} if the given name is a valid simple class name.
+	 * 
+	 * @param name
+	 *        name to be checked
+	 * @return {@code true} if the given name is a valid simple class name
+	 */
+	private static boolean isWorkerName(String name) {
+		if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) return false;
+		for (int i = 1; i < name.length(); ++i) {
+			if (!Character.isJavaIdentifierPart(name.charAt(i))) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns cache of static files used by this server, whose counters tell
+	 * how well the cache is sized.
+	 * 
+	 * @return cache of static files
+	 */
+	public StaticFileCache getStaticCache() {
+		return staticCache;
+	}
+
+	/**
+	 * Returns cache of parsed scripts used by this server.
+	 * 
+	 * @return cache of parsed scripts
+	 */
+	public ScriptCache getScriptCache() {
+		return scriptCache;
+	}
+
+	/**
+	 * Returns store of user sessions.
+	 * 
+	 * @return store of user sessions
+	 */
+	public SessionStore getSessionStore() {
+		return sessions;
+	}
+	
+	/**
+	 * Returns metrics of requests and connections served by this server.
+	 * 
+	 * @return metrics of this server
+	 */
+	public ServerMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Registers values of the thread pool, sessions and caches in the server
+	 * metrics, so they are exported together with request metrics.
+	 */
+	private void registerMetrics() {
+		metrics.addGauge("smarthttp_executor_queue_depth", "Number of requests waiting for a worker thread.",
+				() -> threadPool instanceof ThreadPoolExecutor
+						? ((ThreadPoolExecutor) threadPool).getQueue().size() : 0);
+		metrics.addGauge("smarthttp_executor_active_threads", "Number of threads serving requests.",
+				() -> threadPool instanceof ThreadPoolExecutor
+						? ((ThreadPoolExecutor) threadPool).getActiveCount() : 0);
+		metrics.addGauge("smarthttp_sessions", "Number of stored sessions.", sessions::getActiveSessions);
+		metrics.addCounter("smarthttp_sessions_created_total", "Number of created sessions.", sessions::getCreated);
+		metrics.addCounter("smarthttp_sessions_expired_total", "Number of expired sessions.", sessions::getExpired);
+		metrics.addCounter("smarthttp_static_cache_hits_total", "Static files served from memory.", staticCache::getHits);
+		metrics.addCounter("smarthttp_static_cache_misses_total", "Static files read from disk.", staticCache::getMisses);
+		metrics.addCounter("smarthttp_static_cache_evictions_total", "Static files evicted from memory.",
+				staticCache::getEvictions);
+		metrics.addGauge("smarthttp_static_cache_bytes", "Size of static files kept in memory.", staticCache::getSize);
+		metrics.addCounter("smarthttp_script_cache_hits_total", "Scripts executed without parsing.", scriptCache::getHits);
+		metrics.addCounter("smarthttp_script_cache_misses_total", "Scripts parsed on request.", scriptCache::getMisses);
+		metrics.addCounter("smarthttp_scripts_streamed_total", "Scripts too large to be cached, executed while parsed.", scriptCache::getStreamed);
+		metrics.addGauge("smarthttp_script_cache_scripts", "Number of parsed scripts kept in memory.", scriptCache::size);
+	}
+
+	/**
+	 * Starts the server thread. Initializes thread pool and also starts
+	 * the write watchdog thread. Server thread is chosen based on the
+	 * configured front-end.
+	 */
+	protected synchronized void start() {
+		if (!running) {
+			running = true;
+			watchdog.setDaemon(true);
+			threadPool = createThreadPool();
+			if (preloadScripts) {
+				try {
+					scriptCache.preload(documentRoot);
+				} catch (IOException e) {
+					System.err.println("Scripts could not be preloaded!");
+				}
+			}
+			serverThread = frontend.equals("nio") ? new SelectorServerThread() : new ServerThread();
+			serverThread.start();
+			watchdog.start();
+		}
+	}
+	
+	/**
+	 * Creates executor which runs client workers. In {@code virtual} mode every
+	 * worker gets its own virtual thread so slow clients cannot starve other
+	 * requests. If virtual threads are not supported by the running JVM, a
+	 * warning is printed and fixed thread pool is used, since a platform thread
+	 * for every connection would not be bounded. Otherwise fixed thread pool
+	 * with {@link #workerThreads} threads is used.
+	 * 
+	 * @return executor which runs client workers
+	 */
+	private ExecutorService createThreadPool() {
+		if (virtualThreads) {
+			try {
+				return (ExecutorService) Executors.class
+						.getMethod("newVirtualThreadPerTaskExecutor")
+						.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Virtual threads could not be created!", e);
+			}
+		}
+		if (executor.equals("virtual")) {
+			System.err.println("Warning: virtual threads are not supported, using fixed thread pool with "
+					+ workerThreads + " threads!");
+		}
+		return Executors.newFixedThreadPool(workerThreads);
+	}
+	
+	/**
+	 * Returns {@code true} if the running JVM supports virtual threads.
+	 * 
+	 * @return {@code true} if virtual threads are supported
+	 */
+	static boolean supportsVirtualThreads() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Stops all threads used by this server, including the main server thread.
+	 */
+	protected synchronized void stop() {
+		running = false;
+		threadPool.shutdown();
+		try {
+			if (serverSocket != null) serverSocket.close();
+		} catch (IOException ignorable) {}
+	}
+
+	/**
+	 * Main server thread that waits for request and delegates the job to
+	 * thread pool.
+	 * 
+	 * @author Filip Husnjak
+	 */
+	protected class ServerThread extends Thread {
+		@Override
+		public void run() {
+			// Sockets are backed by channels so files can be transferred directly
+			try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+				serverSocket = serverChannel;
+				// Create TCP socket and bind it to appropriate address and port
+				serverChannel.bind(new InetSocketAddress(address, port));
+				while (running) {
+					// Get client request socket
+					Socket toClient = serverChannel.accept().socket();
+					toClient.setSoTimeout(readTimeout);
+					metrics.connectionOpened();
+					ClientWorker cw = new ClientWorker(toClient);
+					threadPool.submit(cw);
+				}
+			} catch (IOException e) {
+				if (running) e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Server thread that accepts connections and hands them over to a small
+	 * number of {@link EventLoop}s. Event loops read requests without blocking,
+	 * give complete requests to the thread pool and keep connections open
+	 * between requests until they are idle for too long.
+	 * 
+	 * @author Filip Husnjak
+	 */
+	protected class SelectorServerThread extends Thread {
+		@Override
+		public void run() {
+			EventLoop[] loops = new EventLoop[Math.max(1, eventLoops)];
+			try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+				serverSocket = serverChannel;
+				serverChannel.bind(new InetSocketAddress(address, port));
+				for (int i = 0; i < loops.length; ++i) {
+					loops[i] = new EventLoop();
+					loops[i].start();
+				}
+				int next = 0;
+				while (running) {
+					// Distribute accepted connections between event loops
+					SocketChannel channel = serverChannel.accept();
+					loops[next].register(channel);
+					next = (next + 1) % loops.length;
+				}
+			} catch (IOException e) {
+				if (running) e.printStackTrace();
+			} finally {
+				for (EventLoop loop: loops) {
+					if (loop != null) loop.wakeup();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Thread that serves many connections using a single {@link Selector}.
+	 * Other threads communicate with the event loop only through tasks given to
+	 * {@link #execute(Runnable)} so connection state is never shared.
+	 * 
+	 * @author Filip Husnjak
+	 */
+	private class EventLoop extends Thread {
+		
+		/**
+		 * Selector used to wait for socket events
+		 */
+		private final Selector selector;
+		
+		/**
+		 * Tasks other threads want this event loop to execute
+		 */
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		
+		/**
+		 * Buffer shared by all connections of this event loop for reading
+		 */
+		private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		
+		/**
+		 * Time of the last check for idle connections
+		 */
+		private long lastSweep = System.currentTimeMillis();
+		
+		/**
+		 * Constructs new {@link EventLoop} with its own {@link Selector}.
+		 * 
+		 * @throws IOException if the selector could not be opened
+		 */
+		public EventLoop() throws IOException {
+			selector = Selector.open();
+			setDaemon(true);
+		}
+		
+		/**
+		 * Registers the given channel with this event loop.
+		 * 
+		 * @param channel
+		 *        channel of the newly accepted connection
+		 */
+		public void register(SocketChannel channel) {
+			execute(() -> {
+				try {
+					channel.configureBlocking(false);
+					Connection connection = new Connection(channel, this);
+					connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+					metrics.connectionOpened();
+				} catch (IOException e) {
+					closeQuietly(channel);
+				}
+			});
+		}
+		
+		/**
+		 * Schedules the given task to be executed by this event loop.
+		 * 
+		 * @param task
+		 *        task to be executed
+		 */
+		public void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+		
+		/**
+		 * Wakes up this event loop so it can notice that server was stopped.
+		 */
+		public void wakeup() {
+			selector.wakeup();
+		}
+		
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					selector.select(SELECT_TIMEOUT);
+					for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+						task.run();
+					}
+					Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+					while (it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						Connection connection = (Connection) key.attachment();
+						if (key.isValid() && key.isWritable()) connection.write();
+						if (key.isValid() && key.isReadable()) connection.read();
+					}
+					closeIdleConnections();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				for (SelectionKey key: selector.keys()) {
+					((Connection) key.attachment()).close();
+				}
+				try {
+					selector.close();
+				} catch (IOException ignorable) {}
+			}
+		}
+		
+		/**
+		 * Closes connections that made no progress for too long. Idle connections
+		 * are closed after {@link #keepAliveTimeout} and connections whose
+		 * response is not accepted by the client after {@link #writeTimeout}.
+		 * Connections in the middle of reading a request are answered with
+		 * {@code 408} and closed after {@link #readTimeout}, like in the
+		 * blocking front-end. Check is performed at most once every
+		 * {@link #SELECT_TIMEOUT} milliseconds.
+		 */
+		private void closeIdleConnections() {
+			long now = System.currentTimeMillis();
+			if (now - lastSweep < SELECT_TIMEOUT) return;
+			lastSweep = now;
+			for (SelectionKey key: selector.keys()) {
+				Connection connection = (Connection) key.attachment();
+				if (connection.busy) continue;
+				boolean writing = !connection.output.isEmpty();
+				boolean reading = !writing && connection.parser.hasRemaining();
+				long timeout = writing ? writeTimeout : reading ? readTimeout : keepAliveTimeout;
+				if (now - connection.lastActivity <= timeout) continue;
+				if (reading) {
+					connection.timeOut();
+				} else {
+					connection.close();
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * State of a single connection served by {@link EventLoop}. It holds bytes
+	 * read so far and responses that are waiting to be written. All methods
+	 * have to be called from the event loop thread.
+	 * 
+	 * @author Filip Husnjak
+	 */
+	private class Connection {
+		
+		/**
+		 * Channel of this connection
+		 */
+		private final SocketChannel channel;
+		
+		/**
+		 * Event loop which serves this connection
+		 */
+		private final EventLoop loop;
+		
+		/**
+		 * Selection key of this connection
+		 */
+		private SelectionKey key;
+		
+		/**
+		 * Parser holding bytes read from the client that are not processed yet
+		 */
+		private final HttpRequestParser parser =
+				new HttpRequestParser(READ_BUFFER_SIZE, MAX_HEADER_SIZE);
+		
+		/**
+		 * Buffers waiting to be written to the client
+		 */
+		private final Deque<OutputChunk> output = new ArrayDeque<>();
+		
+		/**
+		 * Tells whether request of this connection is currently being processed
+		 */
+		private boolean busy;
+		
+		/**
+		 * Tells whether connection should be closed once output is written
+		 */
+		private boolean closeAfterWrite;
+		
+		/**
+		 * Tells whether client was told to send the body of the current request
+		 */
+		private boolean continueSent;
+		
+		/**
+		 * Decoder of the body of the current request, kept between reads so
+		 * bytes of the body are decoded only once, {@code null} if decoding
+		 * did not start yet
+		 */
+		private RequestBodyStream body;
+		
+		/**
+		 * Time of the last activity on this connection
+		 */
+		private long lastActivity = System.currentTimeMillis();
+
+		/**
+		 * Constructs new {@link Connection} with specified channel and event loop.
+		 * 
+		 * @param channel
+		 *        channel of this connection
+		 * @param loop
+		 *        event loop which serves this connection
+		 */
+		public Connection(SocketChannel channel, EventLoop loop) {
+			this.channel = channel;
+			this.loop = loop;
+		}
+		
+		/**
+		 * Returns {@code true} if no request is being processed or written.
+		 * 
+		 * @return {@code true} if no request is being processed or written
+		 */
+		public boolean isIdle() {
+			return !busy && output.isEmpty();
+		}
+		
+		/**
+		 * Reads available bytes and dispatches the request once its whole
+		 * header is read.
+		 */
+		public void read() {
+			// Parser belongs to the worker while request is being processed
+			if (busy) return;
+			ByteBuffer buffer = loop.readBuffer;
+			buffer.clear();
+			int r;
+			try {
+				r = channel.read(buffer);
+			} catch (IOException e) {
+				r = -1;
+			}
+			if (r == -1) {
+				close();
+				return;
+			}
+			buffer.flip();
+			parser.append(buffer);
+			lastActivity = System.currentTimeMillis();
+			dispatch();
+		}
+		
+		/**
+		 * Gives the next request to the thread pool if its header is completely
+		 * read and no other request of this connection is being processed.
+		 */
+		private void dispatch() {
+			if (busy) return;
+			if (!parser.parse()) {
+				if (parser.isTooLarge()) {
+					output.add(new BufferChunk(errorResponse(400, "Bad request")));
+					closeAfterWrite = true;
+					write();
+				}
+				return;
+			}
+			if (!isBodyReceived()) return;
+			busy = true;
+			key.interestOps(0);
+			try {
+				threadPool.execute(this::process);
+			} catch (RejectedExecutionException e) {
+				close();
+			}
+		}
+		
+		/**
+		 * Checks whether the whole body of the parsed request is read, so workers
+		 * never wait for the client. If the client expects it, it is told to send
+		 * the body. Requests whose body is too large or not written properly are
+		 * answered with an error and the connection is closed. Decoding continues
+		 * from the point where the bytes received so far ended.
+		 * 
+		 * @return {@code true} if the whole body is read
+		 */
+		private boolean isBodyReceived() {
+			try {
+				if (body == null) {
+					body = RequestBodyStream.of(parser, parser.bodyStream(null), maxRequestBody);
+				}
+				body.skipAll();
+				parser.consumeBody(body.getEncodedLength());
+				body = null;
+				return true;
+			} catch (EOFException e) {
+				if (!continueSent && parser.headerEquals("Expect", "100-continue")) {
+					continueSent = true;
+					output.add(new BufferChunk(CONTINUE_RESPONSE));
+					write();
+				}
+				return false;
+			} catch (RequestBodyException e) {
+				output.add(new BufferChunk(errorResponse(e.getStatusCode(), e.getMessage())));
+			} catch (IOException e) {
+				output.add(new BufferChunk(errorResponse(400, "Bad request")));
+			}
+			body = null;
+			closeAfterWrite = true;
+			write();
+			return false;
+		}
+		
+		/**
+		 * Processes the given request. This method is executed by thread pool,
+		 * response is given back to the event loop once it is generated.
+		 */
+		private void process() {
+			ResponseBuffer buffer = new ResponseBuffer();
+			boolean keepAlive = false;
+			try {
+				keepAlive = new ClientWorker(buffer).serve(parser);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			List<OutputChunk> response = buffer.getChunks();
+			boolean reuse = keepAlive;
+			loop.execute(() -> complete(response, reuse));
+		}
+		
+		/**
+		 * Queues the generated response for writing.
+		 * 
+		 * @param response
+		 *        parts of the response to be written
+		 * @param keepAlive
+		 *        tells whether the connection can be reused after the response
+		 */
+		private void complete(List<OutputChunk> response, boolean keepAlive) {
+			if (!channel.isOpen()) {
+				response.forEach(OutputChunk::release);
+				return;
+			}
+			busy = false;
+			continueSent = false;
+			// Keep bytes of pipelined requests for later
+			parser.next();
+			output.addAll(response);
+			closeAfterWrite = !keepAlive;
+			write();
+		}
+		
+		/**
+		 * Writes as much of the pending output as the socket accepts. Once
+		 * everything is written connection is either closed or ready for the
+		 * next request.
+		 */
+		public void write() {
+			// Socket becomes writable again only after the client accepted some output
+			lastActivity = System.currentTimeMillis();
+			try {
+				while (!output.isEmpty()) {
+					if (!output.peek().writeTo(channel)) {
+						key.interestOps(SelectionKey.OP_WRITE);
+						return;
+					}
+					output.poll().release();
+				}
+			} catch (IOException e) {
+				close();
+				return;
+			}
+			if (closeAfterWrite) {
+				close();
+				return;
+			}
+			key.interestOps(SelectionKey.OP_READ);
+			dispatch();
+		}
+		
+		/**
+		 * Tells the client that its request was not received in time and
+		 * closes this connection once that is written.
+		 */
+		public void timeOut() {
+			output.add(new BufferChunk(errorResponse(408, "Request timeout")));
+			closeAfterWrite = true;
+			write();
+		}
+		
+		/**
+		 * Closes this connection.
+		 */
+		public void close() {
+			if (key != null) key.cancel();
+			if (channel.isOpen()) metrics.connectionClosed();
+			closeQuietly(channel);
+			while (!output.isEmpty()) {
+				output.poll().release();
+			}
+		}
+		
+	}
+	
+	/**
+	 * Part of the response waiting to be written by {@link EventLoop}.
+	 * 
+	 * @author Filip Husnjak
+	 */
+	private interface OutputChunk {
+		
+		/**
+		 * Writes as much of this chunk as the given channel accepts.
+		 * 
+		 * @param channel
+		 *        channel to write to
+		 * @return {@code true} if the whole chunk is written
+		 * @throws IOException if an I/O error occurs
+		 */
+		boolean writeTo(SocketChannel channel) throws IOException;
+		
+		/**
+		 * Releases resources held by this chunk. Called once the chunk is
+		 * written or the connection is closed.
+		 */
+		void release();
+		
+	}
+	
+	/**
+	 * {@link OutputChunk} holding bytes in memory.
+	 * 
+	 * @author Filip Husnjak
+	 */
+	private static class BufferChunk implements OutputChunk {
+		
+		/**
+		 * Bytes to be written
+		 */
+		private final ByteBuffer buffer;
+
+		/**
+		 * Constructs new {@link BufferChunk} holding the given bytes.
+		 * 
+		 * @param data
+		 *        bytes to be written
+		 */
+		public BufferChunk(byte[] data) {
+			this.buffer = ByteBuffer.wrap(data);
+		}
+
+		@Override
+		public boolean writeTo(SocketChannel channel) throws IOException {
+			channel.write(buffer);
+			return !buffer.hasRemaining();
+		}
+
+		@Override
+		public void release() {}
+		
+	}
+	
+	/**
+	 * {@link OutputChunk} representing a region of a file which is transferred
+	 * to the socket without being copied to user space.
+	 * 
+	 * @author Filip Husnjak
+	 */
+	private static class FileRegion implements OutputChunk {
+		
+		/**
+		 * File to be transferred
+		 */
+		private final FileChannel file;
+		
+		/**
+		 * Position of the next byte to be transferred
+		 */
+		private long position;
+		
+		/**
+		 * Position right after the last byte to be transferred
+		 */
+		private final long end;
+
+		/**
+		 * Constructs new {@link FileRegion} with specified file and region.
+		 * 
+		 * @param file
+		 *        file to be transferred
+		 * @param position
+		 *        position of the first byte to be transferred
+		 * @param count
+		 *        number of bytes to be transferred
+		 */
+		public FileRegion(FileChannel file, long position, long count) {
+			this.file = file;
+			this.position = position;
+			this.end = position + count;
+		}
+
+		@Override
+		public boolean writeTo(SocketChannel channel) throws IOException {
+			while (position < end) {
+				long n = file.transferTo(position, end - position, channel);
+				if (n == 0) {
+					if (position >= file.size()) {
+						throw new IOException("File was truncated while being sent!");
+					}
+					return false;
+				}
+				position += n;
+			}
+			return true;
+		}
+
+		@Override
+		public void release() {
+			try {
+				file.close();
+			} catch (IOException ignorable) {}
+		}
+		
+	}
+	
+	/**
+	 * Output stream used by the thread pool to generate responses for
+	 * {@link EventLoop}s. Written bytes are kept in memory while file regions
+	 * are only remembered, so they can be transferred directly by the event
+	 * loop.
+	 * 
+	 * @author Filip Husnjak
+	 */
+	private static class ResponseBuffer extends ByteArrayOutputStream implements IFileOutput {
+		
+		/**
+		 * Chunks of the response generated so far
+		 */
+		private final List<OutputChunk> chunks = new ArrayList<>();
+
+		@Override
+		public void transferFrom(FileChannel file, long position, long count) {
+			addWrittenBytes();
+			chunks.add(new FileRegion(file, position, count));
+		}
+		
+		/**
+		 * Returns all chunks of the generated response.
+		 * 
+		 * @return chunks of the generated response
+		 */
+		public List<OutputChunk> getChunks() {
+			addWrittenBytes();
+			return chunks;
+		}
+		
+		/**
+		 * Moves bytes written so far into a new chunk.
+		 */
+		private void addWrittenBytes() {
+			if (size() == 0) return;
+			chunks.add(new BufferChunk(toByteArray()));
+			reset();
+		}
+		
+	}
+	
+	/**
+	 * Returns error response with defined status code and status text.
+	 * 
+	 * @param statusCode
+	 *        status code of the error
+	 * @param statusText
+	 *        status text of the error
+	 * @return bytes of the error response
+	 */
+	private static byte[] errorResponse(int statusCode, String statusText) {
+		return ("HTTP/1.1 " + statusCode + " " + statusText + "\r\n" +
+				"Server: simple java server\r\n" +
+				"Content-Type: text/plain;charset=UTF-8\r\n" +
+				"Content-Length: 0\r\n" +
+				"Connection: close\r\n" +
+				"\r\n").getBytes(StandardCharsets.US_ASCII);
+	}
+	
+	/**
+	 * Returns entity tag of the file variant compressed with the given encoding.
+	 * 
+	 * @param eTag
+	 *        entity tag of the uncompressed file
+	 * @param encoding
+	 *        encoding of the variant
+	 * @return entity tag of the compressed variant
+	 */
+	private static String encodedETag(String eTag, String encoding) {
+		return eTag.substring(0, eTag.length() - 1) + "-" + encoding + "\"";
+	}
+	
+	/**
+	 * Formats the given time as a date used by HTTP headers.
+	 * 
+	 * @param time
+	 *        time in milliseconds
+	 * @return formatted date
+	 */
+	private static String formatHttpDate(long time) {
+		return HTTP_DATE.format(Instant.ofEpochMilli(time));
+	}
+	
+	/**
+	 * Parses the given date used by HTTP headers.
+	 * 
+	 * @param date
+	 *        date to be parsed, can be {@code null}
+	 * @return parsed time in milliseconds or {@code -1} if the date is not
+	 *         written properly
+	 */
+	private static long parseHttpDate(String date) {
+		if (date == null) return -1;
+		try {
+			return ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME)
+					.toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Output stream of the blocking front-end which registers itself with
+	 * {@link #watchdog} while writing. If a single write or flush blocks longer
+	 * than {@link #writeTimeout} the socket is closed, which unblocks the
+	 * writing thread.
+	 * 
+	 * @author Filip Husnjak
+	 */
+	private class DeadlineOutputStream extends FilterOutputStream {
+		
+		/**
+		 * Socket closed when write takes too long
+		 */
+		private final Socket socket;
+		
+		/**
+		 * Time until current write has to finish
+		 */
+		private volatile long deadline;
+
+		/**
+		 * Constructs new {@link DeadlineOutputStream} which writes to the
+		 * output stream of the given socket.
+		 * 
+		 * @param socket
+		 *        socket to write to
+		 * @throws IOException if output stream of the socket cannot be obtained
+		 */
+		public DeadlineOutputStream(Socket socket) throws IOException {
+			super(socket.getOutputStream());
+			this.socket = socket;
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			begin();
+			try {
+				out.write(b);
+			} finally {
+				end();
+			}
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			begin();
+			try {
+				out.write(b, off, len);
+			} finally {
+				end();
+			}
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			begin();
+			try {
+				out.flush();
+			} finally {
+				end();
+			}
+		}
+		
+		/**
+		 * Transfers the given region of the file directly to the socket channel.
+		 * Deadline is renewed after every transferred part, so only a transfer
+		 * which makes no progress for too long is interrupted. Given channel is
+		 * closed afterwards.
+		 * 
+		 * @param file
+		 *        file to be transferred
+		 * @param position
+		 *        position of the first byte to be transferred
+		 * @param count
+		 *        number of bytes to be transferred
+		 * @throws IOException if an I/O error occurs or the file ends before
+		 *         the whole region is transferred
+		 */
+		public void transferFrom(FileChannel file, long position, long count)
+				throws IOException {
+			try (file) {
+				WritableByteChannel target = socket.getChannel() != null ?
+						socket.getChannel() : Channels.newChannel(out);
+				long end = position + count;
+				while (position < end) {
+					begin();
+					long n;
+					try {
+						n = file.transferTo(position, Math.min(end - position, TRANSFER_CHUNK), target);
+					} finally {
+						end();
+					}
+					if (n == 0 && position >= file.size()) {
+						throw new IOException("File was truncated while being sent!");
+					}
+					position += n;
+				}
+			}
+		}
+		
+		/**
+		 * Registers this stream with the watchdog.
+		 */
+		private void begin() {
+			deadline = System.currentTimeMillis() + writeTimeout;
+			activeWrites.add(this);
+		}
+		
+		/**
+		 * Unregisters this stream from the watchdog.
+		 */
+		private void end() {
+			activeWrites.remove(this);
+		}
+		
+		/**
+		 * Closes the socket if the current write missed its deadline. Output is
+		 * shut down first, since closing the socket does not wake a thread
+		 * blocked while transferring a file to it.
+		 * 
+		 * @param currentTime
+		 *        current time in milliseconds
+		 */
+		public void closeIfExpired(long currentTime) {
+			if (currentTime <= deadline) return;
+			try {
+				socket.shutdownOutput();
+			} catch (IOException ignorable) {}
+			try {
+				socket.close();
+			} catch (IOException ignorable) {}
+		}
+		
+	}
+	
+	/**
+	 * Buffered output stream of the blocking front-end. Written bytes are
+	 * buffered while file regions are transferred directly to the socket once
+	 * the buffer is flushed.
 	 * 
-	 * @param workersPath
-	 *        path of the workers configuration file
-	 * @throws Exception if error occurs reading the file
+	 * @author Filip Husnjak
 	 */
-	private void loadServerWorkers(Path workersPath) throws Exception {
-		// Read worker lines
-		List<String> lines = Files.readAllLines(workersPath);
-		for (String line: lines) {
-			if (line.isBlank()) continue;
-			String[] lineParts = line.split("=");
-			Class<?> referenceToClass = 
-					this.getClass().getClassLoader().loadClass(lineParts[1].trim());
-			Object newObject = referenceToClass.getConstructor().newInstance();
-			IWebWorker iww = (IWebWorker)newObject;
-			workersMap.put(lineParts[0].trim(), iww);
-		}
-	}
+	private static class SocketOutputStream extends BufferedOutputStream implements IFileOutput {
+		
+		/**
+		 * Stream of the socket that performs transfers
+		 */
+		private final DeadlineOutputStream socketStream;
 
-	/**
-	 * Starts the server thread. Initializes thread pool and also starts
-	 * the appropriate cleaner thread.
-	 */
-	protected synchronized void start() {
-		if (!running) {
-			running = true;
-			cleaner.setDaemon(true);
-			threadPool = Executors.newFixedThreadPool(workerThreads);
-			serverThread.start();
-			cleaner.start();
+		/**
+		 * Constructs new {@link SocketOutputStream} which writes to the given
+		 * socket stream.
+		 * 
+		 * @param socketStream
+		 *        stream of the socket
+		 */
+		public SocketOutputStream(DeadlineOutputStream socketStream) {
+			super(socketStream);
+			this.socketStream = socketStream;
 		}
-	}
-
-	/**
-	 * Stops all threads used by this server, including the main server thread.
-	 */
-	protected synchronized void stop() {
-		running = false;
-		threadPool.shutdown();
-	}
 
-	/**
-	 * Main server thread that waits for request and delegates the job to
-	 * thread pool.
-	 * 
-	 * @author Filip Husnjak
-	 */
-	protected class ServerThread extends Thread {
 		@Override
-		public void run() {
-			try (ServerSocket serverSocket = new ServerSocket()) {
-				// Create TCP socket and bind it to appropriate address and port
-				serverSocket.bind(new InetSocketAddress(address, port));
-				while (running) {
-					// Get client request socket
-					Socket toClient = serverSocket.accept();
-					ClientWorker cw = new ClientWorker(toClient);
-					threadPool.submit(cw);
-				}
+		public void transferFrom(FileChannel file, long position, long count) throws IOException {
+			try {
+				flush();
 			} catch (IOException e) {
-				e.printStackTrace();
+				file.close();
+				throw e;
 			}
+			socketStream.transferFrom(file, position, count);
 		}
+		
+	}
+	
+	/**
+	 * Closes the given channel ignoring any errors.
+	 * 
+	 * @param channel
+	 *        channel to be closed
+	 */
+	private static void closeQuietly(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException ignorable) {}
 	}
 
 	/**
@@ -282,14 +1534,15 @@ public class SmartHttpServer {
 		private Socket csocket;
 		
 		/**
-		 * Input stream used to fetch data from the client
+		 * Output stream used to send response to the client
 		 */
-		private PushbackInputStream istream;
+		private OutputStream ostream;
 		
 		/**
-		 * Output stream used to send response to the client
+		 * Input stream of the client socket, {@code null} if the whole request is
+		 * read by an {@link EventLoop}
 		 */
-		private OutputStream ostream;
+		private InputStream istream;
 		
 		/**
 		 * HTTP protocol version used
@@ -306,6 +1559,23 @@ public class SmartHttpServer {
 		 */
 		private String host;
 		
+		/**
+		 * Value of the range header of the request, {@code null} if the whole
+		 * file is requested
+		 */
+		private String range;
+		
+		/**
+		 * Values of the conditional request headers, {@code null} if not present
+		 */
+		private String ifNoneMatch, ifModifiedSince, ifRange;
+		
+		/**
+		 * Encoding of the response accepted by the client, {@code null} if the
+		 * response should not be encoded
+		 */
+		private String acceptedEncoding;
+		
 		/**
 		 * Map which holds parameters given through request
 		 */
@@ -337,6 +1607,17 @@ public class SmartHttpServer {
 		 * Request context
 		 */
 		private RequestContext context;
+		
+		/**
+		 * Status code of the error response that was sent, {@code 0} if no error
+		 * was sent
+		 */
+		private int errorStatus;
+		
+		/**
+		 * Route which serves the request
+		 */
+		private Route route = Route.OTHER;
 
 		/**
 		 * Constructs new {@link ClientWorker} with specified socket which will
@@ -349,6 +1630,18 @@ public class SmartHttpServer {
 			this.csocket = csocket;
 		}
 		
+		/**
+		 * Constructs new {@link ClientWorker} which writes response to the given
+		 * output stream. Used by {@link EventLoop}s which read requests on their
+		 * own.
+		 * 
+		 * @param ostream
+		 *        output stream the response is written to
+		 */
+		public ClientWorker(OutputStream ostream) {
+			this.ostream = ostream;
+		}
+		
 		/**
 		 * Sends error with defined status code and status text to the client.
 		 * 
@@ -359,80 +1652,41 @@ public class SmartHttpServer {
 		 * @throws IOException if the error could not be sent for some reason
 		 */
 		private void sendError(int statusCode, String statusText) throws IOException {
-            ostream.write(
-                    ("HTTP/1.1 " + statusCode + " " + statusText + "\r\n" +
-                    "Server: simple java server\r\n" +
-                    "Content-Type: text/plain;charset=UTF-8\r\n" +
-                    "Content-Length: 0\r\n" +
-                    "Connection: close\r\n" +
-                    "\r\n").getBytes(StandardCharsets.US_ASCII)
-            );
-        }
+			ostream.write(errorResponse(statusCode, statusText));
+			errorStatus = statusCode;
+		}
 
 		@Override
 		public void run() {
 			try {
 				// Get input and output streams for receiving request and sending response.
-				istream = new PushbackInputStream(csocket.getInputStream());
-				ostream = new BufferedOutputStream(csocket.getOutputStream());
-				
-				// Request in bytes
-				byte[] request = readRequest(istream);
-				if(request==null) {
-					sendError(400, "Bad request");
-					return;
-				}
-				String requestStr = new String(
-					request, 
-					StandardCharsets.US_ASCII
-				);
-				
-				// List of header lines
-				List<String> headers = extractHeaders(requestStr);
-				
-				// First line splitted into parts
-				String[] firstLine = headers.isEmpty() ? null : headers.get(0).split(" ");
-				if(firstLine==null || firstLine.length != 3) {
-					sendError(400, "Bad request");
-					return;
-				}
-				
-				method = firstLine[0].toUpperCase();
-				version = firstLine[2].toUpperCase();
-				// If method or version are not odd, send error back to client
-				if(!method.equals("GET") || !version.equals("HTTP/1.1")) {
-					sendError(400, "Bad request");
-					return;
-				}
+				istream = new BufferedInputStream(csocket.getInputStream());
+				ostream = new SocketOutputStream(new DeadlineOutputStream(csocket));
 				
-				// Find host if it exists
-				for (int i = 1; i < headers.size(); ++i) {
-					if (headers.get(i).startsWith("Host: ")) {
-						if (!parseHost(headers.get(i))) {
-							sendError(400, "Bad request: Host header not defined properly!");
+				// Parser is reused by all requests of this thread
+				HttpRequestParser request = parsers.get();
+				request.reset();
+				try {
+					while (!request.parse()) {
+						if (request.isTooLarge() || !request.read(istream)) {
+							sendError(400, "Bad request");
+							ostream.flush();
 							return;
 						}
-						break;
 					}
+				} catch (SocketTimeoutException e) {
+					sendError(408, "Request timeout");
+					ostream.flush();
+					return;
 				}
-				
-				// Checks current session and updates SID accordingly
-				checkSession(headers);
-				
-				// Requested path that contains parameter and file path
-				String requestedPath = firstLine[1];
-				String[] pathParts = requestedPath.split("\\?");
-				// Parse parameters and fill parameters map
-				String paramString = pathParts.length < 2 ? null : pathParts[1];
-				parseParameters(paramString);
-				
-				// Process request and deliver response
-				internalDispatchRequest(pathParts[0], true);
+				serve(request);
+				ostream.flush();
 			} catch (IOException e) {
 				e.printStackTrace();
 			} catch (Exception e) {
 				e.printStackTrace();
 			} finally {
+				metrics.connectionClosed();
 				try {
 					csocket.close();
 				} catch (IOException e) {
@@ -440,83 +1694,150 @@ public class SmartHttpServer {
 				}
 			}
 		}
-
+		
 		/**
-		 * Checks if the current session given through cookies exists and if its
-		 * valid. If the session is valid this method updates its session timeout,
-		 * otherwise this method creates new session id and removes old one.
-		 * 
-		 * @param headers
-		 *        list of request header lines
-		 */
-		private void checkSession(List<String> headers) {
-			// Since this method manipulates with sessions map which is shared
-			// between threads we have to synchronize it.
-			synchronized (sessions) {
-				String sidCandidate = null;
-				for (String header: headers) {
-					// We are looking for cookies
-					if (!header.startsWith("Cookie:")) continue;
-					// Remove prefix 'Cookie='
-					String cookies = header.substring(7);
-					for (String cookie: cookies.split(";")) {
-						// We are looking for session id
-						if (!cookie.trim().startsWith("sid")) continue;
-						String tmpSid = cookie.split("=")[1].trim();
-						tmpSid = tmpSid.substring(1, tmpSid.length() - 1);
-						// Check if retrieved session id is valid
-						if (!checkSID(tmpSid)) continue;
-						sidCandidate = tmpSid;
-					}
-				}
-				long currentTime = System.currentTimeMillis() / 1000;
-				SessionMapEntry entry = sessions.get(sidCandidate);
-				if (entry == null) {
-					entry = addNewEntry();
-				} else {
-					SID = sidCandidate;
-					entry.validUntil = currentTime + sessionTimeout;
-				}
-				permPrams = entry.map;
-				outputCookies.add(new RCCookie(
-						"sid",
-						SID,
-						null,
-						host == null ? domainName : host,
-						"/"));
+		 * Processes the given request header and writes response to the output
+		 * stream. Connection can be kept alive only if this worker is not bound
+		 * to a socket, client did not ask for it to be closed and the length of
+		 * the response was known in advance. Request is recorded in the server
+		 * metrics.
+		 * 
+		 * @param request
+		 *        parser holding the whole request header
+		 * @return {@code true} if the connection can be reused for the next request
+		 * @throws Exception if an error occurs
+		 */
+		public boolean serve(HttpRequestParser request) throws Exception {
+			long start = System.nanoTime();
+			int statusCode = 500;
+			try {
+				boolean keepAlive = handle(request);
+				statusCode = errorStatus != 0 ? errorStatus : context.getStatusCode();
+				return keepAlive;
+			} finally {
+				metrics.record(route, statusCode, System.nanoTime() - start);
 			}
 		}
 		
 		/**
-		 * Checks if SID is valid. It is valid if it exists in map {@link #sessions}
-		 * and if its host is equal to current host and if its expiration time is
-		 * greater than current time.
+		 * Processes the given request header and writes response to the output
+		 * stream.
 		 * 
-		 * @param sidCandidate
-		 *        SID to be checked
-		 * @return {@code true} if the SID is valid
+		 * @param request
+		 *        parser holding the whole request header
+		 * @return {@code true} if the connection can be reused for the next request
+		 * @throws Exception if an error occurs
 		 */
-		private boolean checkSID(String sidCandidate) {
-			long currentTime = System.currentTimeMillis() / 1000;
-			SessionMapEntry entry = sessions.get(sidCandidate);
-			return entry != null && entry.host.equals(host) && entry.validUntil > currentTime;
+		private boolean handle(HttpRequestParser request) throws Exception {
+			// Request line has to consist of method, path and version
+			if(request.getMethod() == null) {
+				sendError(400, "Bad request");
+				return false;
+			}
+			
+			method = request.getMethod().toUpperCase();
+			version = request.getVersion().toUpperCase();
+			// If method or version are not odd, send error back to client
+			if(!isSupported(method) || !version.equals("HTTP/1.1")) {
+				sendError(400, "Bad request");
+				return false;
+			}
+			
+			// Find host if it exists
+			String hostValue = request.getHeader("Host");
+			if (hostValue != null && !parseHost(hostValue)) {
+				sendError(400, "Bad request: Host header not defined properly!");
+				return false;
+			}
+			
+			// Checks current session and updates SID accordingly
+			checkSession(request);
+			range = request.getHeader("Range");
+			ifNoneMatch = request.getHeader("If-None-Match");
+			ifModifiedSince = request.getHeader("If-Modified-Since");
+			ifRange = request.getHeader("If-Range");
+			acceptedEncoding = CompressionPolicy.negotiate(request.getHeader("Accept-Encoding"));
+			
+			// Requested path that contains parameter and file path
+			String requestedPath = request.getTarget();
+			String[] pathParts = requestedPath.split("\\?");
+			// Parse parameters and fill parameters map
+			String paramString = pathParts.length < 2 ? null : pathParts[1];
+			parseParameters(paramString);
+			
+			// Body follows the header, form parameters are decoded right away
+			RequestBodyStream body;
+			try {
+				body = RequestBodyStream.of(request, request.bodyStream(istream), maxRequestBody);
+				if (!body.isFinished() && istream != null
+						&& request.headerEquals("Expect", "100-continue")) {
+					ostream.write(CONTINUE_RESPONSE);
+					ostream.flush();
+				}
+				if (isForm(request.getHeader("Content-Type"))) {
+					new FormDecoder(params, StandardCharsets.UTF_8).decode(body);
+				}
+			} catch (RequestBodyException e) {
+				sendError(e.getStatusCode(), e.getMessage());
+				return false;
+			} catch (EOFException e) {
+				sendError(400, "Bad request: incomplete body");
+				return false;
+			}
+			
+			// Only event loops reuse connections
+			createContext();
+			context.setRequestBody(body);
+			context.setKeepAlive(csocket == null && !request.headerEquals("Connection", "close"));
+			context.setHeadOnly(method.equals("HEAD"));
+			context.setCompression(acceptedEncoding, compression);
+			context.setBufferSize(responseBufferSize);
+			context.setMetrics(metrics);
+			
+			// Process request and deliver response
+			internalDispatchRequest(pathParts[0], true);
+			if (errorStatus != 0) return false;
+			// Sends rest of the response, or an empty one if nothing was written
+			context.finish();
+			return context.isKeepAlive();
 		}
-
+		
 		/**
-		 * Generates new SID and creates new {@link SessionMapEntry} with appropriate
-		 * values. New entry is added to sessions map.
+		 * Checks if the current session given through cookies exists and if its
+		 * valid. If the session is valid this method updates its session timeout,
+		 * otherwise this method creates new session.
 		 * 
-		 * @return newly generated {@link SessionMapEntry}
+		 * @param request
+		 *        parser holding the request header
 		 */
-		private SessionMapEntry addNewEntry() {
-			long currentTime = System.currentTimeMillis() / 1000;
-			SID = UUID.randomUUID().toString();
-			SessionMapEntry newEntry = new SessionMapEntry(
+		private void checkSession(HttpRequestParser request) {
+			SessionStore.Session session = null;
+			// We are looking for cookies
+			for (int i = request.indexOf("Cookie", 0); i >= 0;
+					i = request.indexOf("Cookie", i + 1)) {
+				String cookies = request.getValue(i);
+				for (String cookie: cookies.split(";")) {
+					// We are looking for session id
+					if (!cookie.trim().startsWith("sid")) continue;
+					String tmpSid = cookie.split("=")[1].trim();
+					tmpSid = tmpSid.substring(1, tmpSid.length() - 1);
+					// Session is valid only if it exists for current host and did not expire
+					SessionStore.Session candidate = sessions.get(tmpSid, host);
+					if (candidate == null) continue;
+					session = candidate;
+				}
+			}
+			if (session == null) {
+				session = sessions.create(host);
+			}
+			SID = session.getId();
+			permPrams = session.getParameters();
+			outputCookies.add(new RCCookie(
+					"sid",
 					SID,
-					host, 
-					currentTime + sessionTimeout);
-			sessions.put(SID, newEntry);
-			return newEntry;
+					null,
+					host == null ? domainName : host,
+					"/"));
 		}
 
 		/**
@@ -552,6 +1873,33 @@ public class SmartHttpServer {
 					parent.normalize().toAbsolutePath());
 		}
 
+		/**
+		 * Returns {@code true} if requests with the given method are supported.
+		 * 
+		 * @param method
+		 *        method of the request
+		 * @return {@code true} if the method is supported
+		 */
+		private boolean isSupported(String method) {
+			return method.equals("GET") || method.equals("HEAD")
+					|| method.equals("POST") || method.equals("PUT");
+		}
+		
+		/**
+		 * Returns {@code true} if the given content type denotes URL encoded
+		 * form parameters.
+		 * 
+		 * @param contentType
+		 *        value of the Content-Type header, can be {@code null}
+		 * @return {@code true} if the body holds form parameters
+		 */
+		private boolean isForm(String contentType) {
+			if (contentType == null) return false;
+			int semicolon = contentType.indexOf(';');
+			String type = semicolon < 0 ? contentType : contentType.substring(0, semicolon);
+			return type.trim().equalsIgnoreCase(FORM_TYPE);
+		}
+		
 		/**
 		 * Parses parameters given though String argument.
 		 * This method fills {@link #params} map with appropriate key value pairs.
@@ -567,94 +1915,24 @@ public class SmartHttpServer {
 		}
 
 		/**
-		 * Parses the given String that represents host header line.
+		 * Parses the given String that represents value of the host header.
 		 * Port is ignored and only address/domainName are used.
 		 * If this method returns {@code true} it means that the host variable
 		 * is updated, otherwise host line was not written properly.
 		 * 
 		 * @param possibleHost
-		 *        host line to be parsed
+		 *        value of the host header to be parsed
 		 * @return {@code true} if the host variable is updated
 		 */
 		private boolean parseHost(String possibleHost) {
-			String[] hostLine = possibleHost.split(" ");
-			if (hostLine.length != 2) {
+			if (possibleHost.isEmpty() || possibleHost.contains(" ")) {
 				return false;
 			}
 			// Remove port from hostname
-			host = hostLine[1].split(":")[0];
+			host = possibleHost.split(":")[0];
 			return true;
 		}
 
-		/**
-		 * Extracts header lines from String and returns them as list of 
-		 * {@link String} objects. If line starts with space it means it still
-		 * belongs to the previous header line.
-		 * 
-		 * @param requestStr
-		 *        string to be parsed
-		 * @return list of header lines
-		 */
-		private List<String> extractHeaders(String requestStr) {
-			List<String> headers = new ArrayList<String>();
-			String currentLine = null;
-			for (String s : requestStr.split("\n")) {
-				if (s.isEmpty()) break;
-				char c = s.charAt(0);
-				// If line starts with space add it to the previous line
-				if (c == 9 || c == 32) {
-					currentLine += s;
-				} else {
-					if (currentLine != null) {
-						headers.add(currentLine);
-					}
-					currentLine = s;
-				}
-			}
-			if (!currentLine.isEmpty()) {
-				headers.add(currentLine);
-			}
-			return headers;
-		}
-
-		/**
-		 * Reads bytes from the given input stream until the end of header is
-		 * reached. End of header is represented with two CR-LF character sequences
-		 * in a row, or LF-LF sequence.
-		 * 
-		 * @param cis
-		 *        input stream used for fetching bytes
-		 * @return byte array representing a header
-		 * @throws IOException if an I/O error occurs
-		 */
-		private byte[] readRequest(InputStream cis) throws IOException {
-			ByteArrayOutputStream bos = new ByteArrayOutputStream();
-			int state = 0;
-			// Deterministic finite state machine that parses header of HTML request
-	l:		while (true) {
-				int b = cis.read();
-				if (b == -1) return null;
-				if(b != 13) {
-					bos.write(b);
-				}
-				switch (state) {
-				case 0: 
-					if (b == 13) { state = 1; } else if (b == 10) state = 3;
-					break;
-				case 1:
-					if (b == 10) { state = 2; } else state = 0;
-					break;
-				case 2: 
-					if (b == 13) { state = 3; } else state = 0;
-					break;
-				case 3: 
-					if (b == 10) { break l; } else state = 0;
-					break;
-				}
-			}
-			return bos.toByteArray();
-		}
-		
 		/**
 		 * Dispatches the request with the given URL. URL defines parameters,
 		 * which file should be opened or which script should be executed.
@@ -675,17 +1953,24 @@ public class SmartHttpServer {
 				sendError(404, "Page not found!");
 				return;
 			}
+			// If its the call for statically loaded workers, execute it
+			IWebWorker mapped = workersMap.get(urlPath);
+			if (mapped != null) {
+				if (directCall) route = Route.WORKER;
+				mapped.processRequest(context);
+				return;
+			}
 			// If worker should be loaded dynamically, load it and execute
 			if (urlPath.startsWith("/ext/")) {
-				String classPath = "hr.fer.zemris.java.webserver.workers.";
-				getWorker(classPath + urlPath.substring(5)).processRequest(context);
+				IWebWorker worker = getExtWorker(urlPath.substring(5));
+				if (worker == null) {
+					sendError(404, "Worker not found");
+					return;
+				}
+				if (directCall) route = Route.WORKER;
+				worker.processRequest(context);
 				return;
 			}
-			// If its the call for statically loaded workers, execute it
-			if (workersMap.containsKey(urlPath)) {
-                workersMap.get(urlPath).processRequest(context);
-                return;
-            }
 			// Create requested path based on documentRoot and URL
 			Path reqPath = documentRoot.resolve(Paths.get(urlPath.substring(1)));
 			// If its not sub path of document root, send error
@@ -702,33 +1987,20 @@ public class SmartHttpServer {
 			String extension = getExtension(reqPath.getFileName().toString()).trim();
 			if (extension.equals("smscr")) {
 				// If extension is 'smscr' execute the script
+				if (directCall) route = Route.SCRIPT;
 				executeFile(reqPath);
 			} else {
+				// Static files cannot be created or changed by requests
+				if (!method.equals("GET") && !method.equals("HEAD")) {
+					sendError(405, "Method not allowed");
+					return;
+				}
 				// Find appropriate mime type for extension
-				context.setMimeType(mimeTypes.getOrDefault(extension, DEFAULT_MIME));
-				// Set content length based on Files.size method. Since we already
-				// checked if the file is regular we can rely on this method
-				context.setContentLength(Files.size(reqPath));
-				// Read the file to output stream
-				readFile(reqPath);
+				if (directCall) route = Route.STATIC;
+				sendFile(reqPath, mimeTypes.getOrDefault(extension, DEFAULT_MIME));
 			}
 		}
 		
-		/**
-		 * Returns new instance of a worker class with specified class path.
-		 * 
-		 * @param classPath
-		 *        path of the class whose instance is to be returned
-		 * @return new instance of a worker class with specified class path
-		 * @throws Exception if an error occurs
-		 */
-		private IWebWorker getWorker(String classPath) throws Exception {
-			Class<?> referenceToClass = 
-					this.getClass().getClassLoader().loadClass(classPath.trim());
-			Object newObject = referenceToClass.getConstructor().newInstance();
-			return (IWebWorker)newObject;
-		}
-
 		/**
 		 * Creates context if its not created already.
 		 */
@@ -746,34 +2018,170 @@ public class SmartHttpServer {
 		}
 
 		/**
-		 * Executes script with the given path using {@link SmartScriptEngine}.
+		 * Executes script with the given path using its {@link CompiledScript},
+		 * or while it is parsed if it is too large to be cached.
 		 * 
 		 * @param reqPath
 		 *        file to be executed
 		 * @throws IOException if an I/O error occurs
 		 */
 		private void executeFile(Path reqPath) throws IOException {
-			String docBody = Files.readString(reqPath);
-			new SmartScriptEngine(
-					new SmartScriptParser(docBody).getDocumentNode(),
-					context).execute();
+			scriptCache.execute(reqPath, context);
 		}
 
 		/**
-		 * Reads the given file and writes it to context object.
+		 * Sends the given file, or only its part if the request contains a
+		 * satisfiable single byte range. Multiple ranges or ranges that are not
+		 * written properly are ignored and the whole file is sent. If the client
+		 * already has the current version of the file only the header is sent.
+		 * Small files are served from {@link #staticCache}, larger ones are
+		 * transferred directly from the disk. Compressed variants of cached
+		 * files are created once and reused, other files are compressed while
+		 * being sent. Ranges are always served from the uncompressed file.
 		 * 
 		 * @param reqPath
-		 *        file to be read
+		 *        file to be sent
+		 * @param mimeType
+		 *        MIME type of the file
 		 * @throws IOException if an I/O error occurs
 		 */
-		private void readFile(Path reqPath) throws IOException {
-			// Read file and write response
-			InputStream fis = new BufferedInputStream(Files.newInputStream(reqPath));
-			byte[] buff = new byte[1024];
-			while (true) {
-				int r = fis.read(buff);
-				if (r < 1) break;
-				context.write(buff, 0, r);
+		private void sendFile(Path reqPath, String mimeType) throws IOException {
+			BasicFileAttributes attributes = Files.readAttributes(reqPath, BasicFileAttributes.class);
+			long size = attributes.size();
+			long lastModified = attributes.lastModifiedTime().toMillis();
+			String eTag = StaticFileCache.eTag(lastModified, size);
+			boolean compress = acceptedEncoding != null && range == null
+					&& compression.isCompressible(mimeType, size);
+			context.setMimeType(mimeType);
+			// Compressed variant is a different representation with its own tag
+			String variantETag = compress ? encodedETag(eTag, acceptedEncoding) : eTag;
+			context.addHeader("ETag", variantETag);
+			context.addHeader("Last-Modified", formatHttpDate(lastModified));
+			if (isNotModified(variantETag, lastModified)) {
+				context.setStatusCode(304);
+				context.setStatusText("Not Modified");
+				context.write(new byte[0]);
+				return;
+			}
+			StaticFileCache.Entry entry = staticCache.get(reqPath, attributes, mimeType);
+			if (compress) {
+				if (entry != null) {
+					byte[] body = entry.getCompressed(acceptedEncoding);
+					context.addHeader("Content-Encoding", acceptedEncoding);
+					context.setContentLength((long) body.length);
+					context.write(body);
+				} else {
+					context.write(FileChannel.open(reqPath, StandardOpenOption.READ), 0, size);
+				}
+				return;
+			}
+			context.setCompression(null, compression);
+			// Range is ignored if the client asked for a different version of the file
+			long[] bounds = range == null || !rangeApplies(eTag, lastModified) ?
+					null : parseRange(range, size);
+			context.addHeader("Accept-Ranges", "bytes");
+			if (bounds == null) {
+				bounds = new long[] {0, size - 1};
+			} else if (bounds[0] > bounds[1]) {
+				context.setStatusCode(416);
+				context.setStatusText("Range Not Satisfiable");
+				context.addHeader("Content-Range", "bytes */" + size);
+				context.setContentLength(0L);
+				context.write(new byte[0]);
+				return;
+			} else {
+				context.setStatusCode(206);
+				context.setStatusText("Partial Content");
+				context.addHeader("Content-Range",
+						"bytes " + bounds[0] + "-" + bounds[1] + "/" + size);
+			}
+			long count = bounds[1] - bounds[0] + 1;
+			context.setContentLength(count);
+			if (entry != null) {
+				context.write(entry.getData(), (int) bounds[0], (int) count);
+			} else {
+				context.write(FileChannel.open(reqPath, StandardOpenOption.READ), bounds[0], count);
+			}
+		}
+		
+		/**
+		 * Returns {@code true} if the client already has the variant of the file
+		 * which would be sent, identified by the given entity tag, or the file
+		 * with the given modification time. Tags of other variants do not match,
+		 * since the client could not use them, for example a compressed variant
+		 * if the client does not accept its encoding anymore. If-None-Match
+		 * header is checked first, If-Modified-Since is used only if the former
+		 * is not present.
+		 * 
+		 * @param eTag
+		 *        entity tag of the variant which would be sent
+		 * @param lastModified
+		 *        current modification time of the file in milliseconds
+		 * @return {@code true} if the file was not modified
+		 */
+		private boolean isNotModified(String eTag, long lastModified) {
+			if (ifNoneMatch != null) {
+				for (String candidate: ifNoneMatch.split(",")) {
+					candidate = candidate.trim();
+					if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+					if (candidate.equals("*") || candidate.equals(eTag)) return true;
+				}
+				return false;
+			}
+			long since = parseHttpDate(ifModifiedSince);
+			return since >= 0 && lastModified / 1000 <= since / 1000;
+		}
+		
+		/**
+		 * Returns {@code true} if the range header should be used. It is used
+		 * unless If-Range header names a different version of the file.
+		 * 
+		 * @param eTag
+		 *        current entity tag of the file
+		 * @param lastModified
+		 *        current modification time of the file in milliseconds
+		 * @return {@code true} if the range header should be used
+		 */
+		private boolean rangeApplies(String eTag, long lastModified) {
+			if (ifRange == null) return true;
+			if (ifRange.startsWith("\"")) return ifRange.equals(eTag);
+			return parseHttpDate(ifRange) / 1000 == lastModified / 1000;
+		}
+		
+		/**
+		 * Parses the given value of the range header. Returns first and last
+		 * requested byte, or {@code null} if the header should be ignored. If the
+		 * range cannot be satisfied returned first byte is greater than the last.
+		 * 
+		 * @param range
+		 *        value of the range header
+		 * @param size
+		 *        size of the requested file
+		 * @return first and last requested byte or {@code null}
+		 */
+		private long[] parseRange(String range, long size) {
+			if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) return null;
+			String spec = range.substring(6).trim();
+			int dash = spec.indexOf('-');
+			if (dash < 0) return null;
+			try {
+				String first = spec.substring(0, dash).trim();
+				String last = spec.substring(dash + 1).trim();
+				long start, end;
+				if (first.isEmpty()) {
+					// Suffix range requests last bytes of the file
+					long suffix = Long.parseLong(last);
+					start = Math.max(0, size - suffix);
+					end = suffix == 0 ? -1 : size - 1;
+				} else {
+					start = Long.parseLong(first);
+					end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+					if (!last.isEmpty() && Long.parseLong(last) < start) return null;
+				}
+				if (start < 0) return null;
+				return start >= size ? new long[] {size, size - 1} : new long[] {start, end};
+			} catch (NumberFormatException e) {
+				return null;
 			}
 		}
 
@@ -785,49 +2193,87 @@ public class SmartHttpServer {
 	}
 	
 	/**
-	 * Represents user session with its ID, host, expiration time and map
-	 * which contains parameters for this session.
+	 * Worker which gives each thread its own instance of the worker. It is not
+	 * used with virtual threads, which would create an instance per request.
 	 * 
 	 * @author Filip Husnjak
 	 */
-	private static class SessionMapEntry {
+	private static class ThreadLocalWorker implements IWebWorker {
 		
 		/**
-		 * ID of this session
+		 * Instances of the worker used by threads
 		 */
-		@SuppressWarnings("unused")
-		String sid;
-		
+		private final ThreadLocal<IWebWorker> instances;
+
 		/**
-		 * Host of this session
+		 * Constructs new {@link ThreadLocalWorker} which creates instances using
+		 * the given constructor.
+		 * 
+		 * @param constructor
+		 *        constructor of the worker
+		 * @throws ReflectiveOperationException if the first instance cannot be
+		 *         created
 		 */
-		String host;
+		public ThreadLocalWorker(Constructor<? extends IWebWorker> constructor)
+				throws ReflectiveOperationException {
+			// First instance is created eagerly so broken workers fail early
+			IWebWorker first = constructor.newInstance();
+			Thread owner = Thread.currentThread();
+			this.instances = ThreadLocal.withInitial(() -> {
+				try {
+					return Thread.currentThread() == owner ? first : constructor.newInstance();
+				} catch (ReflectiveOperationException e) {
+					throw new IllegalStateException("Worker could not be created!", e);
+				}
+			});
+		}
+
+		@Override
+		public void processRequest(RequestContext context) throws Exception {
+			instances.get().processRequest(context);
+		}
 		
-		/**
-		 * Expiration time of this session
-		 */
-		long validUntil;
+	}
+	
+	/**
+	 * Worker which lends instances of the worker from a pool of fixed size.
+	 * Requests wait while all instances are in use.
+	 * 
+	 * @author Filip Husnjak
+	 */
+	private static class PooledWorker implements IWebWorker {
 		
 		/**
-		 * Map which holds session specific parameters
+		 * Instances which are not in use
 		 */
-		Map<String, String> map = new ConcurrentHashMap<>();
+		private final BlockingQueue<IWebWorker> pool;
 
 		/**
-		 * Constructs new {@link SessionMapEntry} with given ID, host and 
-		 * expiration time.
+		 * Constructs new {@link PooledWorker} with specified number of instances
+		 * created using the given constructor.
 		 * 
-		 * @param sid
-		 *        ID of the new session
-		 * @param host
-		 *        host of the new session
-		 * @param validUntil
-		 *        expiration time of the new session
+		 * @param constructor
+		 *        constructor of the worker
+		 * @param size
+		 *        number of instances
+		 * @throws ReflectiveOperationException if an instance cannot be created
 		 */
-		public SessionMapEntry(String sid, String host, long validUntil) {
-			this.sid = sid;
-			this.host = host;
-			this.validUntil = validUntil;
+		public PooledWorker(Constructor<? extends IWebWorker> constructor, int size)
+				throws ReflectiveOperationException {
+			this.pool = new ArrayBlockingQueue<>(size);
+			for (int i = 0; i < size; ++i) {
+				pool.add(constructor.newInstance());
+			}
+		}
+
+		@Override
+		public void processRequest(RequestContext context) throws Exception {
+			IWebWorker worker = pool.take();
+			try {
+				worker.processRequest(context);
+			} finally {
+				pool.add(worker);
+			}
 		}
 		
 	}
@@ -0,0 +1,374 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of static files kept in memory. Total size of cached files, together
+ * with their compressed variants, is bounded, when the bound is exceeded
+ * least recently used files are evicted. Entry is
+ * valid as long as the modification time and the size of its file do not
+ * change, otherwise the file is read again. Files larger than the configured
+ * maximum file size are never cached.
+ * <p>
+ * Cache counts hits, misses and evictions so its size can be chosen based on
+ * real traffic.
+ *
+ * @author Filip Husnjak
+ */
+public class StaticFileCache {
+
+	/**
+	 * Maximum total size of cached files in bytes
+	 */
+	private final long maxSize;
+
+	/**
+	 * Maximum size of a single cached file in bytes
+	 */
+	private final long maxFileSize;
+
+	/**
+	 * Cached entries in access order, least recently used entry is first
+	 */
+	private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Total size of cached files and their compressed variants in bytes
+	 */
+	private long size;
+
+	/**
+	 * Number of requests answered from the cache
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Number of requests that had to read the file
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Number of entries removed to free space
+	 */
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Number of entries removed because their file changed
+	 */
+	private final AtomicLong invalidations = new AtomicLong();
+
+	/**
+	 * Constructs new {@link StaticFileCache} with specified bounds.
+	 *
+	 * @param maxSize
+	 *        maximum total size of cached files in bytes, {@code 0} disables
+	 *        caching
+	 * @param maxFileSize
+	 *        maximum size of a single cached file in bytes
+	 * @throws IllegalArgumentException if any of the given sizes is negative
+	 */
+	public StaticFileCache(long maxSize, long maxFileSize) {
+		if (maxSize < 0 || maxFileSize < 0) {
+			throw new IllegalArgumentException("Cache sizes cannot be negative!");
+		}
+		this.maxSize = maxSize;
+		this.maxFileSize = Math.min(maxFileSize, maxSize);
+	}
+
+	/**
+	 * Returns entry of the file with the given path and attributes. If the file
+	 * is not cached or it changed since it was cached, it is read and cached.
+	 * Returns {@code null} if the file is too large to be cached.
+	 *
+	 * @param path
+	 *        path of the file
+	 * @param attributes
+	 *        current attributes of the file
+	 * @param mimeType
+	 *        MIME type of the file
+	 * @return entry of the file or {@code null} if the file cannot be cached
+	 * @throws IOException if the file cannot be read
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 */
+	public Entry get(Path path, BasicFileAttributes attributes, String mimeType) throws IOException {
+		Objects.requireNonNull(path, "Given path cannot be null!");
+		Objects.requireNonNull(attributes, "Given attributes cannot be null!");
+		Objects.requireNonNull(mimeType, "Given mime type cannot be null!");
+		if (maxSize == 0 || attributes.size() > maxFileSize) return null;
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		synchronized (entries) {
+			Entry entry = entries.get(path);
+			if (entry != null) {
+				if (entry.lastModified == lastModified && entry.data.length == attributes.size()) {
+					hits.incrementAndGet();
+					return entry;
+				}
+				remove(path);
+				invalidations.incrementAndGet();
+			}
+		}
+		misses.incrementAndGet();
+		// File is read without holding the lock so other requests are not blocked
+		byte[] data = Files.readAllBytes(path);
+		// File changed while it was read, attributes do not describe these bytes
+		if (data.length != attributes.size()) return null;
+		Entry entry = new Entry(this, path, data, mimeType, lastModified);
+		synchronized (entries) {
+			if (entries.containsKey(path)) remove(path);
+			entries.put(path, entry);
+			size += entry.size;
+			evict();
+		}
+		return entry;
+	}
+
+	/**
+	 * Counts the given number of bytes of a compressed variant in the size of
+	 * the given entry and evicts entries if the total size is exceeded.
+	 * Variants of entries which are no longer cached are not counted.
+	 *
+	 * @param entry
+	 *        entry whose variant was created
+	 * @param bytes
+	 *        size of the variant in bytes
+	 */
+	private void variantAdded(Entry entry, long bytes) {
+		synchronized (entries) {
+			if (entries.get(entry.path) != entry) return;
+			entry.size += bytes;
+			size += bytes;
+			evict();
+		}
+	}
+
+	/**
+	 * Removes entries of the least recently used files until the total size
+	 * is within bounds.
+	 */
+	private void evict() {
+		Iterator<Entry> it = entries.values().iterator();
+		while (size > maxSize && it.hasNext()) {
+			size -= it.next().size;
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes entry with the given path.
+	 *
+	 * @param path
+	 *        path of the entry
+	 */
+	private void remove(Path path) {
+		Entry old = entries.remove(path);
+		if (old != null) size -= old.size;
+	}
+
+	/**
+	 * Returns strong entity tag of the file with the given modification time
+	 * and size.
+	 *
+	 * @param lastModified
+	 *        modification time of the file in milliseconds
+	 * @param size
+	 *        size of the file in bytes
+	 * @return entity tag of the file
+	 */
+	public static String eTag(long lastModified, long size) {
+		return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"";
+	}
+
+	/**
+	 * Returns number of requests answered from the cache.
+	 *
+	 * @return number of cache hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns number of requests that had to read the file.
+	 *
+	 * @return number of cache misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns number of entries removed to free space.
+	 *
+	 * @return number of evictions
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Returns number of entries removed because their file changed.
+	 *
+	 * @return number of invalidations
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	/**
+	 * Returns total size of the cached files and their compressed variants in
+	 * bytes.
+	 *
+	 * @return total size of the cached files
+	 */
+	public long getSize() {
+		synchronized (entries) {
+			return size;
+		}
+	}
+
+	/**
+	 * Cached file with its content, MIME type, entity tag and modification time.
+	 *
+	 * @author Filip Husnjak
+	 */
+	public static class Entry {
+
+		/**
+		 * Cache which holds this entry
+		 */
+		private final StaticFileCache cache;
+
+		/**
+		 * Path of the file
+		 */
+		private final Path path;
+
+		/**
+		 * Content of the file
+		 */
+		private final byte[] data;
+
+		/**
+		 * MIME type of the file
+		 */
+		private final String mimeType;
+
+		/**
+		 * Strong entity tag of the file
+		 */
+		private final String eTag;
+
+		/**
+		 * Modification time of the file in milliseconds
+		 */
+		private final long lastModified;
+
+		/**
+		 * Compressed variants of the content mapped by their encodings, created
+		 * when first requested
+		 */
+		private final Map<String, byte[]> compressed = new ConcurrentHashMap<>();
+
+		/**
+		 * Number of bytes of the content and its compressed variants counted in
+		 * the size of the cache, guarded by the lock of the cache
+		 */
+		private long size;
+
+		/**
+		 * Constructs new {@link Entry} with specified parameters.
+		 *
+		 * @param cache
+		 *        cache which holds this entry
+		 * @param path
+		 *        path of the file
+		 * @param data
+		 *        content of the file
+		 * @param mimeType
+		 *        MIME type of the file
+		 * @param lastModified
+		 *        modification time of the file
+		 */
+		private Entry(StaticFileCache cache, Path path, byte[] data, String mimeType, long lastModified) {
+			this.cache = cache;
+			this.path = path;
+			this.data = data;
+			this.size = data.length;
+			this.mimeType = mimeType;
+			this.lastModified = lastModified;
+			this.eTag = eTag(lastModified, data.length);
+		}
+
+		/**
+		 * Returns content of the file. Returned array is shared and must not be
+		 * modified.
+		 *
+		 * @return content of the file
+		 */
+		public byte[] getData() {
+			return data;
+		}
+
+		/**
+		 * Returns content of the file compressed with the given encoding. Each
+		 * variant is compressed only once, when it is requested for the first
+		 * time, and its size is added to the size of the cache, which can
+		 * evict this or other entries. Returned array is shared and must not be
+		 * modified.
+		 *
+		 * @param encoding
+		 *        either {@code gzip} or {@code deflate}
+		 * @return compressed content of the file
+		 * @throws IllegalArgumentException if the given encoding is not supported
+		 */
+		public byte[] getCompressed(String encoding) {
+			byte[] variant = compressed.get(encoding);
+			if (variant != null) return variant;
+			// Compressed without holding any lock, only the first variant is kept
+			variant = CompressionPolicy.compress(data, encoding);
+			byte[] previous = compressed.putIfAbsent(encoding, variant);
+			if (previous != null) return previous;
+			cache.variantAdded(this, variant.length);
+			return variant;
+		}
+
+		/**
+		 * Returns MIME type of the file.
+		 *
+		 * @return MIME type of the file
+		 */
+		public String getMimeType() {
+			return mimeType;
+		}
+
+		/**
+		 * Returns strong entity tag of the file.
+		 *
+		 * @return entity tag of the file
+		 */
+		public String getETag() {
+			return eTag;
+		}
+
+		/**
+		 * Returns modification time of the file in milliseconds.
+		 *
+		 * @return modification time of the file
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+package hr.fer.zemris.java.webserver;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Tells {@link SmartHttpServer} how many instances of the annotated
+ * {@link IWebWorker} it should create. Workers without this annotation are
+ * created once and shared by all requests, so they have to be thread-safe.
+ * Workers that are not thread-safe can ask for an instance per thread or for
+ * a pool of instances, each used by one request at a time.
+ *
+ * @author Filip Husnjak
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface WorkerScope {
+
+	/**
+	 * Returns how instances of the worker are shared.
+	 *
+	 * @return how instances of the worker are shared
+	 */
+	Scope value();
+
+	/**
+	 * Returns number of instances in the pool, used only by pooled workers.
+	 * Non-positive value means one instance per available processor.
+	 *
+	 * @return number of instances in the pool
+	 */
+	int poolSize() default 0;
+
+	/**
+	 * Ways in which worker instances can be shared between requests.
+	 *
+	 * @author Filip Husnjak
+	 */
+	enum Scope {
+
+		/**
+		 * Single instance is shared by all requests
+		 */
+		SINGLETON,
+
+		/**
+		 * Each thread uses its own instance. When the server runs workers on
+		 * virtual threads, which are never reused, these workers are pooled
+		 * like {@link #POOLED} workers instead
+		 */
+		PER_THREAD,
+
+		/**
+		 * Requests borrow instances from a pool of fixed size
+		 */
+		POOLED
+
+	}
+
+}
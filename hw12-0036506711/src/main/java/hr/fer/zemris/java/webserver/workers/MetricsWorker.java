@@ -0,0 +1,28 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.ServerMetrics;
+
+/**
+ * Web worker which outputs metrics of the server in the Prometheus text
+ * format.
+ * 
+ * @author Filip Husnjak
+ */
+public class MetricsWorker implements IWebWorker {
+
+	@Override
+	public void processRequest(RequestContext context) throws Exception {
+		ServerMetrics metrics = context.getMetrics();
+		if (metrics == null) {
+			context.setStatusCode(404);
+			context.setStatusText("Not Found");
+			return;
+		}
+		context.setMimeType("text/plain");
+		context.addHeader("Cache-Control", "no-store");
+		context.write(metrics.export());
+	}
+
+}
@@ -0,0 +1,123 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+public class CompiledScriptTest {
+
+	private static final String SHARED_COUNTER =
+			"{$ FOR i 1 3 1 $}{$ FOR j i 5 1 $}{$= j $}{$END$};{$= i $}|{$END$}";
+
+	@Test
+	public void testSharedCounterVisitor() {
+		DocumentNode document = parse(SHARED_COUNTER);
+		assertEquals("12345;6|", execute(context -> new SmartScriptEngine(document, context).execute()));
+	}
+
+	@Test
+	public void testSharedCounterMultistack() {
+		CompiledScript script = new CompiledScript(parse(SHARED_COUNTER), false);
+		assertEquals("12345;6|", execute(script::execute));
+	}
+
+	@Test
+	public void testSharedCounterLocalVariables() {
+		CompiledScript script = new CompiledScript(parse(SHARED_COUNTER), true);
+		assertEquals("12345;6|", execute(script::execute));
+	}
+
+	@Test
+	public void testOwnVariableAsStepLocalVariables() {
+		String text = "{$ FOR i 1 20 i $}{$= i $},{$END$}";
+		DocumentNode document = parse(text);
+		String expected = execute(context -> new SmartScriptEngine(document, context).execute());
+		assertEquals("1,2,4,8,16,", expected);
+		assertEquals(expected, execute(new CompiledScript(document, true)::execute));
+	}
+
+	@Test
+	public void testIndependentLoopsBothModes() {
+		String text = "{$ FOR i 1 3 1 $}{$ FOR j 1 i 1 $}{$= j $}{$END$}|{$END$}";
+		DocumentNode document = parse(text);
+		String expected = execute(context -> new SmartScriptEngine(document, context).execute());
+		assertEquals("1|12|123|", expected);
+		assertEquals(expected, execute(new CompiledScript(document, false)::execute));
+		assertEquals(expected, execute(new CompiledScript(document, true)::execute));
+	}
+
+	@ParameterizedTest
+	@MethodSource("scripts")
+	public void testWebrootScripts(Path script) throws IOException {
+		DocumentNode document = parse(Files.readString(script));
+		String expected = executeWithParameters(context -> new SmartScriptEngine(document, context).execute());
+		assertEquals(expected, executeWithParameters(new CompiledScript(document)::execute));
+		assertEquals(expected, executeWithParameters(new CompiledScript(document, true)::execute));
+	}
+
+	public static Stream<Path> scripts() throws IOException {
+		try (Stream<Path> files = Files.list(Paths.get("webroot/scripts"))) {
+			return files.sorted().collect(Collectors.toList()).stream();
+		}
+	}
+
+	private static DocumentNode parse(String text) {
+		return new SmartScriptParser(text).getDocumentNode();
+	}
+
+	private static String execute(Consumer<RequestContext> executor) {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext context = new RequestContext(os, new HashMap<>(), new HashMap<>(), new ArrayList<>(),
+				new HashMap<>(), path -> {}, "sid");
+		executor.accept(context);
+		try {
+			context.finish();
+		} catch (IOException e) {
+			fail(e);
+		}
+		String output = new String(os.toByteArray(), StandardCharsets.UTF_8);
+		return output.substring(output.indexOf("\r\n\r\n") + 4);
+	}
+
+	private static String executeWithParameters(Consumer<RequestContext> executor) {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		Map<String, String> params = new HashMap<>();
+		params.put("a", "3");
+		params.put("b", "4");
+		Map<String, String> persistent = new HashMap<>();
+		RequestContext context = new RequestContext(os, params, persistent, new ArrayList<>(),
+				new HashMap<>(), path -> {}, "sid");
+		executor.accept(context);
+		try {
+			context.finish();
+		} catch (IOException e) {
+			fail(e);
+		}
+		StringBuilder sb = new StringBuilder(new String(os.toByteArray(), StandardCharsets.UTF_8));
+		sb.append(persistent);
+		for (String name: context.getTemporaryParameterNames()) {
+			sb.append(name).append('=').append(context.getTemporaryParameter(name));
+		}
+		return sb.toString();
+	}
+
+}
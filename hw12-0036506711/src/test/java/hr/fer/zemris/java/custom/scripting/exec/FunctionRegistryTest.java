@@ -0,0 +1,243 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.*;
+
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+public class FunctionRegistryTest {
+
+	private static final String[] PATTERNS = {"0.00", "#,##0.###", "0.0E0", "00.#", "#%"};
+
+	@Test
+	public void testBuiltinFunctions() {
+		int index = FunctionRegistry.indexOf("swap");
+		FunctionRegistry.Entry entry = FunctionRegistry.get(index);
+		assertEquals("swap", entry.getName());
+		assertEquals(2, entry.getArguments());
+		assertEquals(2, entry.getResults());
+		assertTrue(entry.isPure());
+		assertFalse(FunctionRegistry.get(FunctionRegistry.indexOf("paramGet")).isPure());
+		assertEquals(-1, FunctionRegistry.indexOf("doesNotExist"));
+	}
+
+	@Test
+	public void testRegisterInvalid() {
+		ScriptFunction function = (context, s, b) -> {};
+		assertThrows(NullPointerException.class, () -> FunctionRegistry.register(null, 0, 0, true, function));
+		assertThrows(NullPointerException.class, () -> FunctionRegistry.register("testNull", 0, 0, true, null));
+		assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.register("", 0, 0, true, function));
+		assertThrows(IllegalArgumentException.class,
+				() -> FunctionRegistry.register("testNegative", -1, 0, true, function));
+		assertThrows(IllegalArgumentException.class,
+				() -> FunctionRegistry.register("testNegative", 0, -1, true, function));
+		assertEquals(-1, FunctionRegistry.indexOf("testNegative"));
+	}
+
+	@Test
+	public void testRegisterUserFunction() {
+		long version = FunctionRegistry.getVersion();
+		int index = FunctionRegistry.register("testTriple", 1, 1, true,
+				(context, s, b) -> s[b] = new ValueWrapper((int) s[b].doubleValue() * 3));
+		assertEquals(index, FunctionRegistry.indexOf("testTriple"));
+		assertEquals("testTriple", FunctionRegistry.get(index).getName());
+		assertTrue(FunctionRegistry.getVersion() > version);
+		assertEquals("12|3|6|9|", execute("{$= 4 @testTriple $}|{$ FOR i 1 3 1 $}{$= i @testTriple $}|{$END$}"));
+	}
+
+	@Test
+	public void testRegisterMultipleResults() {
+		FunctionRegistry.register("testNext", 1, 2, true,
+				(context, s, b) -> s[b + 1] = new ValueWrapper((int) s[b].doubleValue() + 1));
+		FunctionRegistry.register("testNothing", 1, 0, true, (context, s, b) -> {});
+		assertEquals("34", execute("{$= 3 @testNext $}"));
+		assertEquals("ac", execute("{$= \"a\" \"b\" @testNothing \"c\" $}"));
+	}
+
+	@Test
+	public void testReplaceKeepsIndex() {
+		int index = FunctionRegistry.register("testReplaced", 0, 1, true,
+				(context, s, b) -> s[b] = new ValueWrapper("old"));
+		long version = FunctionRegistry.getVersion();
+		assertEquals(index, FunctionRegistry.register("testReplaced", 1, 1, true,
+				(context, s, b) -> s[b] = new ValueWrapper("new" + s[b])));
+		assertTrue(FunctionRegistry.getVersion() > version);
+		FunctionRegistry.Entry entry = FunctionRegistry.get(index);
+		assertEquals(1, entry.getArguments());
+		assertEquals("new1", execute("{$= 1 @testReplaced $}"));
+	}
+
+	@Test
+	public void testResolve() {
+		int index = FunctionRegistry.indexOf("sin");
+		assertSame(FunctionRegistry.get(index), FunctionRegistry.resolve(new ElementFunction("sin", index)));
+		// Name is looked up if the function was not registered while parsing
+		assertSame(FunctionRegistry.get(index), FunctionRegistry.resolve(new ElementFunction("sin")));
+		assertNull(FunctionRegistry.resolve(new ElementFunction("doesNotExist")));
+	}
+
+	@Test
+	public void testRegisteredAfterParsing() {
+		DocumentNode document = new SmartScriptParser("{$= 5 @testLate $}").getDocumentNode();
+		FunctionRegistry.register("testLate", 1, 1, true,
+				(context, s, b) -> s[b] = new ValueWrapper((int) s[b].doubleValue() * 2));
+		assertEquals("10", execute(new CompiledScript(document)::execute));
+		assertEquals("10", execute(context -> new SmartScriptEngine(document, context).execute()));
+	}
+
+	@Test
+	public void testCompiledScriptKeepsReplacedFunction() {
+		FunctionRegistry.register("testCompiled", 0, 1, false, (context, s, b) -> s[b] = new ValueWrapper("old"));
+		CompiledScript script = new CompiledScript(new SmartScriptParser("{$= @testCompiled $}").getDocumentNode());
+		FunctionRegistry.register("testCompiled", 0, 1, false, (context, s, b) -> s[b] = new ValueWrapper("new"));
+		assertEquals("old", execute(script::execute));
+	}
+
+	@Test
+	public void testNotEnoughArguments() {
+		FunctionRegistry.register("testPair", 2, 1, true, (context, s, b) -> s[b] = s[b + 1]);
+		DocumentNode document = new SmartScriptParser("{$= 1 @testPair $}").getDocumentNode();
+		SmartScriptEngineException expected = assertThrows(SmartScriptEngineException.class,
+				() -> execute(context -> new SmartScriptEngine(document, context).execute()));
+		for (boolean localVariables: new boolean[] {false, true}) {
+			CompiledScript script = new CompiledScript(document, localVariables);
+			SmartScriptEngineException actual = assertThrows(SmartScriptEngineException.class,
+					() -> execute(script::execute));
+			assertEquals(expected.getMessage(), actual.getMessage());
+		}
+	}
+
+	@Test
+	public void testPureFunctionAppliedAheadOfTime() {
+		AtomicInteger calls = new AtomicInteger();
+		FunctionRegistry.register("testCountedPure", 1, 1, true, (context, s, b) -> {
+			calls.incrementAndGet();
+			s[b] = new ValueWrapper((int) s[b].doubleValue() + 1);
+		});
+		CompiledScript constant = new CompiledScript(
+				new SmartScriptParser("{$= 2 @testCountedPure $}").getDocumentNode());
+		assertEquals(1, calls.get());
+		for (int i = 0; i < 3; ++i) {
+			assertEquals("3", execute(constant::execute));
+		}
+		assertEquals(1, calls.get());
+		// Variable argument is known only during execution
+		CompiledScript variable = new CompiledScript(
+				new SmartScriptParser("{$ FOR i 1 3 1 $}{$= i @testCountedPure $}{$END$}").getDocumentNode());
+		assertEquals(1, calls.get());
+		assertEquals("234", execute(variable::execute));
+		assertEquals(4, calls.get());
+	}
+
+	@Test
+	public void testImpureFunctionNotAppliedAheadOfTime() {
+		AtomicInteger calls = new AtomicInteger();
+		FunctionRegistry.register("testCountedImpure", 1, 1, false, (context, s, b) -> {
+			calls.incrementAndGet();
+			s[b] = new ValueWrapper((int) s[b].doubleValue() + 1);
+		});
+		CompiledScript script = new CompiledScript(
+				new SmartScriptParser("{$= 2 @testCountedImpure $}").getDocumentNode());
+		assertEquals(0, calls.get());
+		for (int i = 0; i < 3; ++i) {
+			assertEquals("3", execute(script::execute));
+		}
+		assertEquals(3, calls.get());
+	}
+
+	@Test
+	public void testFormat() {
+		assertEquals("3.14", FunctionRegistry.format("0.00", 3.14159));
+		assertEquals("3.14", FunctionRegistry.format("0.00", 3.14159));
+		assertEquals("1,234.5", FunctionRegistry.format("#,##0.###", 1234.5));
+	}
+
+	@Test
+	public void testFormatInvalidPattern() {
+		assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.format("0.0.0", 1));
+		// Invalid pattern is not cached
+		assertThrows(IllegalArgumentException.class, () -> FunctionRegistry.format("0.0.0", 1));
+	}
+
+	@Test
+	public void testFormatManyPatterns() {
+		// More patterns than are cached
+		for (int round = 0; round < 2; ++round) {
+			for (int i = 1; i <= 100; ++i) {
+				String pattern = "0." + "0".repeat(i % 10) + "#".repeat(i / 10);
+				assertEquals(new DecimalFormat(pattern).format(i / 7.0), FunctionRegistry.format(pattern, i / 7.0));
+			}
+		}
+	}
+
+	@Test
+	public void testFormatFromManyThreads() throws InterruptedException {
+		Queue<String> errors = new ConcurrentLinkedQueue<>();
+		List<Thread> threads = new ArrayList<>();
+		// Every format is used by many short-lived threads, as with virtual threads
+		for (int t = 0; t < 64; ++t) {
+			int seed = t;
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 500; ++i) {
+					String pattern = PATTERNS[(seed + i) % PATTERNS.length];
+					double number = (seed * 500 + i) / 3.0;
+					String expected = new DecimalFormat(pattern).format(number);
+					String actual = FunctionRegistry.format(pattern, number);
+					if (!expected.equals(actual)) {
+						errors.add(pattern + " " + number + ": " + expected + " != " + actual);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		assertTrue(errors.isEmpty(), () -> errors.toString());
+	}
+
+	@Test
+	public void testDecfmtScript() {
+		assertEquals("0.50|1.00|1.50|", execute("{$ FOR i 1 3 1 $}{$= i 0.5 * \"0.00\" @decfmt $}|{$END$}"));
+	}
+
+	private static String execute(String text) {
+		DocumentNode document = new SmartScriptParser(text).getDocumentNode();
+		String expected = execute(context -> new SmartScriptEngine(document, context).execute());
+		assertEquals(expected, execute(new CompiledScript(document, false)::execute));
+		assertEquals(expected, execute(new CompiledScript(document, true)::execute));
+		return expected;
+	}
+
+	private static String execute(Consumer<RequestContext> executor) {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext context = new RequestContext(os, new HashMap<>(), new HashMap<>(), new ArrayList<>(),
+				new HashMap<>(), path -> {}, "sid");
+		executor.accept(context);
+		try {
+			context.finish();
+		} catch (IOException e) {
+			fail(e);
+		}
+		String output = new String(os.toByteArray(), StandardCharsets.UTF_8);
+		return output.substring(output.indexOf("\r\n\r\n") + 4);
+	}
+
+}
@@ -0,0 +1,231 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compares latency of {@link SmartHttpServer} in {@code fixed} and
+ * {@code virtual} executor modes while slow clients occupy connections.
+ * Slow clients send their request header one byte at a time, fast clients
+ * repeatedly request a static file and record how long each request took.
+ * Program has to be started from the project directory and accepts optional
+ * arguments: number of slow clients, number of fast clients, requests per
+ * fast client and number of worker threads.
+ * 
+ * @author Filip Husnjak
+ */
+public class ExecutorModeBenchmark {
+
+	/**
+	 * First port used by benchmarked servers
+	 */
+	private static final int PORT = 5821;
+	
+	/**
+	 * Delay between two bytes sent by a slow client, in milliseconds
+	 */
+	private static final long SLOW_CLIENT_DELAY = 100;
+	
+	/**
+	 * Path requested by clients
+	 */
+	private static final String PATH = "/index.html";
+
+	/**
+	 * Program starts here.
+	 * 
+	 * @param args
+	 *        optional benchmark parameters
+	 * @throws Exception if an error occurs
+	 */
+	public static void main(String[] args) throws Exception {
+		int slowClients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int fastClients = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int requests = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+		int workerThreads = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+		
+		String[] modes = {"fixed", "virtual"};
+		for (int i = 0; i < modes.length; ++i) {
+			int port = PORT + i;
+			Path config = writeConfig(modes[i], port, workerThreads);
+			SmartHttpServer server = new SmartHttpServer(config.toString());
+			server.start();
+			Thread.sleep(500);
+			try {
+				long[] latencies = run(port, slowClients, fastClients, requests);
+				report(modes[i], latencies);
+			} finally {
+				server.stop();
+				Files.deleteIfExists(config);
+			}
+		}
+		System.exit(0);
+	}
+	
+	/**
+	 * Writes server configuration based on the shipped one with the given
+	 * executor mode, port and number of worker threads.
+	 * 
+	 * @param mode
+	 *        executor mode
+	 * @param port
+	 *        port server listens to
+	 * @param workerThreads
+	 *        number of worker threads
+	 * @return path of the written configuration
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static Path writeConfig(String mode, int port, int workerThreads) throws IOException {
+		Properties prop = new Properties();
+		try (InputStream is = Files.newInputStream(Paths.get("config/server.properties"))) {
+			prop.load(is);
+		}
+		prop.setProperty("server.port", String.valueOf(port));
+		prop.setProperty("server.workerThreads", String.valueOf(workerThreads));
+		prop.setProperty("server.executor", mode);
+		prop.setProperty("server.documentRoot", Paths.get("webroot").toAbsolutePath().toString());
+		prop.setProperty("server.mimeConfig", Paths.get("config/mime.properties").toAbsolutePath().toString());
+		prop.setProperty("server.workers", Paths.get("config/workers.properties").toAbsolutePath().toString());
+		Path config = Files.createTempFile("server", ".properties");
+		try (OutputStream os = Files.newOutputStream(config)) {
+			prop.store(os, null);
+		}
+		return config;
+	}
+	
+	/**
+	 * Starts slow clients, runs fast clients and returns latencies of all
+	 * requests made by fast clients.
+	 * 
+	 * @param port
+	 *        port of the server
+	 * @param slowClients
+	 *        number of slow clients
+	 * @param fastClients
+	 *        number of fast clients
+	 * @param requests
+	 *        number of requests per fast client
+	 * @return latencies in nanoseconds
+	 * @throws InterruptedException if interrupted while waiting for clients
+	 */
+	private static long[] run(int port, int slowClients, int fastClients, int requests)
+			throws InterruptedException {
+		AtomicBoolean stop = new AtomicBoolean();
+		List<Thread> slow = new ArrayList<>();
+		for (int i = 0; i < slowClients; ++i) {
+			Thread t = new Thread(() -> {
+				while (!stop.get()) {
+					try {
+						request(port, SLOW_CLIENT_DELAY);
+					} catch (IOException ignorable) {}
+				}
+			});
+			t.setDaemon(true);
+			t.start();
+			slow.add(t);
+		}
+		Thread.sleep(500);
+		
+		long[] latencies = new long[fastClients * requests];
+		List<Thread> fast = new ArrayList<>();
+		for (int i = 0; i < fastClients; ++i) {
+			int offset = i * requests;
+			Thread t = new Thread(() -> {
+				for (int j = 0; j < requests; ++j) {
+					long start = System.nanoTime();
+					try {
+						request(port, 0);
+						latencies[offset + j] = System.nanoTime() - start;
+					} catch (IOException e) {
+						latencies[offset + j] = Long.MAX_VALUE;
+					}
+				}
+			});
+			t.start();
+			fast.add(t);
+		}
+		for (Thread t: fast) {
+			t.join();
+		}
+		stop.set(true);
+		return latencies;
+	}
+	
+	/**
+	 * Sends a single request and reads the whole response.
+	 * 
+	 * @param port
+	 *        port of the server
+	 * @param delay
+	 *        delay between bytes of the request, {@code 0} sends it at once
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void request(int port, long delay) throws IOException {
+		byte[] request = ("GET " + PATH + " HTTP/1.1\r\n" +
+				"Host: localhost\r\n" +
+				"\r\n").getBytes(StandardCharsets.US_ASCII);
+		try (Socket socket = new Socket("127.0.0.1", port)) {
+			OutputStream os = socket.getOutputStream();
+			if (delay == 0) {
+				os.write(request);
+			} else {
+				for (byte b: request) {
+					os.write(b);
+					os.flush();
+					try {
+						Thread.sleep(delay);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+			os.flush();
+			InputStream is = socket.getInputStream();
+			byte[] buff = new byte[4096];
+			while (is.read(buff) != -1);
+		}
+	}
+	
+	/**
+	 * Prints percentiles of the given latencies.
+	 * 
+	 * @param mode
+	 *        executor mode
+	 * @param latencies
+	 *        latencies in nanoseconds
+	 */
+	private static void report(String mode, long[] latencies) {
+		long[] sorted = latencies.clone();
+		Arrays.sort(sorted);
+		long failed = Arrays.stream(sorted).filter(l -> l == Long.MAX_VALUE).count();
+		System.out.printf("mode=%s requests=%d failed=%d p50=%.2fms p99=%.2fms max=%.2fms%n",
+				mode, sorted.length, failed,
+				percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1.0));
+	}
+	
+	/**
+	 * Returns percentile of the sorted latencies in milliseconds.
+	 * 
+	 * @param sorted
+	 *        sorted latencies in nanoseconds
+	 * @param p
+	 *        percentile between 0 and 1
+	 * @return percentile in milliseconds
+	 */
+	private static double percentile(long[] sorted, double p) {
+		int index = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+	
+}
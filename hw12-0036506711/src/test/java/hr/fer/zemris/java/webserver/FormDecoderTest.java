@@ -0,0 +1,75 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.*;
+
+public class FormDecoderTest {
+
+	@Test
+	public void testSimpleFields() throws IOException {
+		Map<String, String> params = decode("name=Ivo&age=20");
+		assertEquals(2, params.size());
+		assertEquals("Ivo", params.get("name"));
+		assertEquals("20", params.get("age"));
+	}
+
+	@Test
+	public void testPlusAsSpace() throws IOException {
+		assertEquals("Ivo Ivić", decode("name=Ivo+Ivi%C4%87").get("name"));
+	}
+
+	@Test
+	public void testPercentEncoded() throws IOException {
+		Map<String, String> params = decode("a%3Db=1%262%3D3&%C5%BEelja=%e2%82%ac");
+		assertEquals("1&2=3", params.get("a=b"));
+		assertEquals("€", params.get("želja"));
+	}
+
+	@Test
+	public void testFieldWithoutEquals() throws IOException {
+		Map<String, String> params = decode("flag&&name=&x==y");
+		assertEquals(3, params.size());
+		assertEquals("", params.get("flag"));
+		assertEquals("", params.get("name"));
+		assertEquals("=y", params.get("x"));
+	}
+
+	@Test
+	public void testMalformedPercentKept() throws IOException {
+		Map<String, String> params = decode("a=%zz&b=%4z&c=100%");
+		assertEquals("%zz", params.get("a"));
+		assertEquals("%4z", params.get("b"));
+		assertEquals("100%", params.get("c"));
+	}
+
+	@Test
+	public void testDecodedAcrossReads() throws IOException {
+		byte[] encoded = "text=%C4%8Dokolada+i+%C5%A1e%C4%87er".getBytes(StandardCharsets.ISO_8859_1);
+		// Stream returns one byte at a time, so every sequence is split
+		InputStream in = new ByteArrayInputStream(encoded) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 1));
+			}
+		};
+		Map<String, String> params = new HashMap<>();
+		new FormDecoder(params, StandardCharsets.UTF_8).decode(in);
+		assertEquals("čokolada i šećer", params.get("text"));
+	}
+
+	private static Map<String, String> decode(String content) throws IOException {
+		Map<String, String> params = new HashMap<>();
+		new FormDecoder(params, StandardCharsets.UTF_8)
+				.decode(new ByteArrayInputStream(content.getBytes(StandardCharsets.ISO_8859_1)));
+		return params;
+	}
+
+}
@@ -0,0 +1,157 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.*;
+
+public class HttpRequestParserTest {
+
+	private static final String REQUEST = "GET /index.html?a=1 HTTP/1.1\r\n"
+			+ "Host: www.example.com\r\n"
+			+ "Accept-Encoding: gzip, deflate\r\n"
+			+ "Cookie: sid=\"abc\"\r\n"
+			+ "Cookie: theme=dark\r\n"
+			+ "\r\n";
+
+	@Test
+	public void testParseWholeRequest() {
+		HttpRequestParser parser = new HttpRequestParser();
+		append(parser, REQUEST);
+		assertTrue(parser.parse());
+		assertEquals("GET", parser.getMethod());
+		assertEquals("/index.html?a=1", parser.getTarget());
+		assertEquals("HTTP/1.1", parser.getVersion());
+		assertEquals(4, parser.getHeaderCount());
+		assertEquals("Host", parser.getName(0));
+		assertEquals("www.example.com", parser.getHeader("host"));
+		assertEquals("gzip, deflate", parser.getHeader("ACCEPT-ENCODING"));
+		assertNull(parser.getHeader("Range"));
+	}
+
+	@Test
+	public void testParseSplitAtEveryByte() {
+		HttpRequestParser parser = new HttpRequestParser(4, 1024);
+		for (int i = 0; i < REQUEST.length(); ++i) {
+			assertFalse(parser.parse());
+			append(parser, REQUEST.substring(i, i + 1));
+		}
+		assertTrue(parser.parse());
+		assertEquals("/index.html?a=1", parser.getTarget());
+		assertEquals("www.example.com", parser.getHeader("Host"));
+		assertEquals(4, parser.getHeaderCount());
+	}
+
+	@Test
+	public void testRepeatedHeaders() {
+		HttpRequestParser parser = new HttpRequestParser();
+		append(parser, REQUEST);
+		assertTrue(parser.parse());
+		int first = parser.indexOf("Cookie", 0);
+		int second = parser.indexOf("Cookie", first + 1);
+		assertEquals("sid=\"abc\"", parser.getValue(first));
+		assertEquals("theme=dark", parser.getValue(second));
+		assertEquals(-1, parser.indexOf("Cookie", second + 1));
+	}
+
+	@Test
+	public void testContinuationLines() {
+		HttpRequestParser parser = new HttpRequestParser();
+		append(parser, "GET / HTTP/1.1\r\nX-Long: first\r\n  second\r\n\tthird\r\nHost: a\r\n\r\n");
+		assertTrue(parser.parse());
+		assertEquals(2, parser.getHeaderCount());
+		assertEquals("first  second\tthird", parser.getHeader("X-Long"));
+		assertEquals("a", parser.getHeader("Host"));
+	}
+
+	@Test
+	public void testBareLineFeeds() {
+		HttpRequestParser parser = new HttpRequestParser();
+		append(parser, "GET / HTTP/1.1\nHost: a\n\n");
+		assertTrue(parser.parse());
+		assertEquals("a", parser.getHeader("Host"));
+	}
+
+	@Test
+	public void testHeaderEquals() {
+		HttpRequestParser parser = new HttpRequestParser();
+		append(parser, "POST / HTTP/1.1\r\nExpect:  100-Continue \r\n\r\n");
+		assertTrue(parser.parse());
+		assertTrue(parser.headerEquals("expect", "100-continue"));
+		assertFalse(parser.headerEquals("expect", "100"));
+		assertFalse(parser.headerEquals("Connection", "close"));
+	}
+
+	@Test
+	public void testInvalidRequestLine() {
+		HttpRequestParser parser = new HttpRequestParser();
+		append(parser, "GET  / HTTP/1.1\r\n\r\n");
+		assertTrue(parser.parse());
+		assertNull(parser.getMethod());
+		assertNull(parser.getTarget());
+		assertNull(parser.getVersion());
+	}
+
+	@Test
+	public void testTooLargeHeader() {
+		HttpRequestParser parser = new HttpRequestParser(64, 256);
+		append(parser, "GET / HTTP/1.1\r\n");
+		while (!parser.isTooLarge()) {
+			assertFalse(parser.parse());
+			append(parser, "X-Filler: 0123456789\r\n");
+		}
+		assertFalse(parser.parse());
+		parser.reset();
+		append(parser, REQUEST);
+		assertTrue(parser.parse());
+		assertFalse(parser.isTooLarge());
+	}
+
+	@Test
+	public void testPipelinedRequests() {
+		HttpRequestParser parser = new HttpRequestParser();
+		append(parser, REQUEST + "GET /second HTTP/1.1\r\n\r\n");
+		assertTrue(parser.parse());
+		assertTrue(parser.hasRemaining());
+		parser.next();
+		assertTrue(parser.parse());
+		assertEquals("/second", parser.getTarget());
+		assertEquals(0, parser.getHeaderCount());
+		parser.next();
+		assertFalse(parser.hasRemaining());
+	}
+
+	@Test
+	public void testBufferShrinksAfterLargeBody() {
+		HttpRequestParser parser = new HttpRequestParser(64, 1024);
+		append(parser, "POST /upload HTTP/1.1\r\nContent-Length: 1000\r\n\r\n");
+		assertTrue(parser.parse());
+		append(parser, "x".repeat(1000) + "GET / HTTP/1.1\r\n");
+		assertTrue(parser.getBufferSize() > 1000);
+		parser.consumeBody(1000);
+		parser.next();
+		assertEquals(64, parser.getBufferSize());
+		append(parser, "\r\n");
+		assertTrue(parser.parse());
+		assertEquals("GET", parser.getMethod());
+		assertEquals("/", parser.getTarget());
+	}
+
+	@Test
+	public void testBufferKeptWhileRemainingBytesDoNotFit() {
+		HttpRequestParser parser = new HttpRequestParser(64, 1024);
+		append(parser, "GET / HTTP/1.1\r\n\r\n" + "x".repeat(100));
+		assertTrue(parser.parse());
+		parser.next();
+		assertTrue(parser.getBufferSize() >= 100);
+		parser.reset();
+		assertEquals(64, parser.getBufferSize());
+	}
+
+	private static void append(HttpRequestParser parser, String text) {
+		parser.append(ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1)));
+	}
+
+}
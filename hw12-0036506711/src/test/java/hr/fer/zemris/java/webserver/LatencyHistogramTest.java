@@ -0,0 +1,125 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.*;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBucketBoundaries() {
+		assertEquals(0, LatencyHistogram.indexOf(0));
+		assertEquals(0, LatencyHistogram.upperBound(0));
+		for (int i = 1; i < LatencyHistogram.BUCKETS - 1; ++i) {
+			long upper = LatencyHistogram.upperBound(i);
+			assertTrue(upper > LatencyHistogram.upperBound(i - 1));
+			assertEquals(i, LatencyHistogram.indexOf(upper));
+			assertEquals(i, LatencyHistogram.indexOf(LatencyHistogram.upperBound(i - 1) + 1));
+			assertEquals(i + 1, LatencyHistogram.indexOf(upper + 1));
+		}
+		assertEquals(1L << 37, LatencyHistogram.upperBound(LatencyHistogram.BUCKETS - 2));
+		assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testPowersOfTwoAreUpperBounds() {
+		for (int e = 0; e <= 37; ++e) {
+			int index = LatencyHistogram.indexOf(1L << e);
+			assertEquals(1L << e, LatencyHistogram.upperBound(index));
+		}
+	}
+
+	@Test
+	public void testSmallValuesExact() {
+		for (int value = 0; value <= 16; ++value) {
+			assertEquals(value, LatencyHistogram.upperBound(LatencyHistogram.indexOf(value)));
+		}
+	}
+
+	@Test
+	public void testRelativeError() {
+		Random random = new Random(0);
+		for (int i = 0; i < 100_000; ++i) {
+			long value = random.nextLong() >>> (27 + random.nextInt(37));
+			long upper = LatencyHistogram.upperBound(LatencyHistogram.indexOf(value));
+			assertTrue(upper >= value && upper - value <= value / 16, () -> value + " " + upper);
+		}
+	}
+
+	@Test
+	public void testCountAtMostPowerOfTwo() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		long[] values = new long[40 * 3 + 1];
+		for (int e = 0; e < 40; ++e) {
+			values[3 * e] = (1L << e) - 1;
+			values[3 * e + 1] = 1L << e;
+			values[3 * e + 2] = (1L << e) + 1;
+		}
+		values[values.length - 1] = Long.MAX_VALUE;
+		for (long value: values) {
+			histogram.record(value);
+		}
+		for (int e = -2; e < 64; ++e) {
+			long bound = e < 0 ? 0 : 1L << e;
+			// Values above the range are known to be larger than the upper bound only
+			long expected = e > 37 ? values.length
+					: Arrays.stream(values).filter(value -> value <= bound).count();
+			assertEquals(expected, histogram.countAtMostPowerOfTwo(e), "exponent " + e);
+		}
+	}
+
+	@Test
+	public void testValueAtPercentile() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		histogram.record(5);
+		assertEquals(5, histogram.getValueAtPercentile(0));
+		assertEquals(5, histogram.getValueAtPercentile(100));
+		for (int value = 1; value <= 99; ++value) {
+			histogram.record(value);
+		}
+		assertEquals(1, histogram.getValueAtPercentile(1));
+		assertEquals(5, histogram.getValueAtPercentile(6));
+		assertEquals(50, histogram.getValueAtPercentile(50));
+		assertEquals(100, histogram.getValueAtPercentile(100));
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(1L << 37, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testValueAtPercentileOfRandomValues() {
+		Random random = new Random(1);
+		LatencyHistogram histogram = new LatencyHistogram();
+		long[] values = new long[10_000];
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = (long) Math.exp(random.nextDouble() * 25);
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+		for (double percentile: new double[] {0.1, 1, 25, 50, 90, 99, 99.9, 100}) {
+			long value = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+			assertEquals(LatencyHistogram.upperBound(LatencyHistogram.indexOf(value)),
+					histogram.getValueAtPercentile(percentile), "percentile " + percentile);
+		}
+	}
+
+	@Test
+	public void testRecordAndAdd() {
+		LatencyHistogram first = new LatencyHistogram();
+		first.recordNanos(1_999);
+		first.record(-5);
+		LatencyHistogram second = new LatencyHistogram();
+		second.record(100);
+		second.add(first);
+		assertEquals(2, first.getCount());
+		assertEquals(1, first.getSum());
+		assertEquals(3, second.getCount());
+		assertEquals(101, second.getSum());
+		assertEquals(2, second.countAtMostPowerOfTwo(0));
+		assertThrows(NullPointerException.class, () -> second.add(null));
+	}
+
+}
@@ -0,0 +1,528 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for {@link SmartHttpServer}. It starts the server with the
+ * shipped configuration and web root, opens the given number of keep-alive
+ * connections and sends requests from each of them as fast as the server
+ * answers. Requested paths are chosen randomly from a weighted mix of static
+ * files, scripts and workers. After a warm-up period requests are measured
+ * for the given duration and throughput and latency percentiles are printed
+ * as a single JSON object, overall and for each path.
+ * <p>
+ * Program has to be started from the project directory. It accepts optional
+ * arguments in {@code name=value} form:
+ * <ul>
+ * <li>{@code connections} - number of concurrent connections, default 16</li>
+ * <li>{@code duration} - measured seconds, default 10</li>
+ * <li>{@code warmup} - seconds before measuring starts, default 3</li>
+ * <li>{@code frontend} - {@code nio} or {@code blocking}, default {@code nio}</li>
+ * <li>{@code executor} - {@code fixed} or {@code virtual}, default {@code fixed}</li>
+ * <li>{@code workerThreads} - number of worker threads, default 8</li>
+ * <li>{@code port} - port of the server, default 5831</li>
+ * <li>{@code mix} - comma separated {@code path:weight} pairs</li>
+ * </ul>
+ *
+ * @author Filip Husnjak
+ */
+public class LoadGenerator {
+
+	/**
+	 * Requested paths and their weights used when no mix is given
+	 */
+	private static final String DEFAULT_MIX = "/images/evenSum.png:4,/index.html:2,"
+			+ "/scripts/osnovni.smscr:2,/scripts/brojPoziva.smscr:1,"
+			+ "/ext/HelloWorker?name=load:1,/hello:1";
+
+	/**
+	 * Tells whether requests are currently measured
+	 */
+	private static volatile boolean measuring;
+
+	/**
+	 * Tells whether clients should stop
+	 */
+	private static volatile boolean stopped;
+
+	/**
+	 * Program starts here.
+	 *
+	 * @param args
+	 *        optional arguments in {@code name=value} form
+	 * @throws Exception if an error occurs
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new LinkedHashMap<>();
+		for (String arg: args) {
+			int eq = arg.indexOf('=');
+			if (eq < 1) {
+				System.err.println("Arguments have to be written as name=value, got: " + arg);
+				System.exit(1);
+			}
+			options.put(arg.substring(0, eq), arg.substring(eq + 1));
+		}
+		int connections = Integer.parseInt(options.getOrDefault("connections", "16"));
+		int duration = Integer.parseInt(options.getOrDefault("duration", "10"));
+		int warmup = Integer.parseInt(options.getOrDefault("warmup", "3"));
+		int port = Integer.parseInt(options.getOrDefault("port", "5831"));
+		List<Target> mix = parseMix(options.getOrDefault("mix", DEFAULT_MIX));
+
+		Path config = writeConfig(port,
+				options.getOrDefault("frontend", "nio"),
+				options.getOrDefault("executor", "fixed"),
+				Integer.parseInt(options.getOrDefault("workerThreads", "8")));
+		SmartHttpServer server = new SmartHttpServer(config.toString());
+		server.start();
+		Thread.sleep(500);
+		try {
+			List<Thread> clients = new ArrayList<>();
+			for (int i = 0; i < connections; ++i) {
+				Thread t = new Thread(new Client(port, mix), "load-client-" + i);
+				t.setDaemon(true);
+				t.start();
+				clients.add(t);
+			}
+			Thread.sleep(warmup * 1000L);
+			measuring = true;
+			long start = System.nanoTime();
+			Thread.sleep(duration * 1000L);
+			measuring = false;
+			long elapsed = System.nanoTime() - start;
+			stopped = true;
+			for (Thread t: clients) {
+				t.join(1000);
+			}
+			System.out.println(report(connections, options, elapsed, mix));
+		} finally {
+			server.stop();
+			Files.deleteIfExists(config);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Parses the given mix of requested paths.
+	 *
+	 * @param mix
+	 *        comma separated {@code path:weight} pairs
+	 * @return targets of the mix
+	 */
+	private static List<Target> parseMix(String mix) {
+		List<Target> targets = new ArrayList<>();
+		int total = 0;
+		for (String part: mix.split(",")) {
+			int colon = part.lastIndexOf(':');
+			String path = colon < 0 ? part.trim() : part.substring(0, colon).trim();
+			int weight = colon < 0 ? 1 : Integer.parseInt(part.substring(colon + 1).trim());
+			if (path.isEmpty() || weight <= 0) continue;
+			total += weight;
+			targets.add(new Target(path, total));
+		}
+		if (targets.isEmpty()) {
+			throw new IllegalArgumentException("Mix has to contain at least one path!");
+		}
+		return targets;
+	}
+
+	/**
+	 * Writes server configuration based on the shipped one with the given
+	 * port, front-end, executor mode and number of worker threads.
+	 *
+	 * @param port
+	 *        port server listens to
+	 * @param frontend
+	 *        front-end of the server
+	 * @param executor
+	 *        executor mode
+	 * @param workerThreads
+	 *        number of worker threads
+	 * @return path of the written configuration
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static Path writeConfig(int port, String frontend, String executor, int workerThreads)
+			throws IOException {
+		Properties prop = new Properties();
+		try (InputStream is = Files.newInputStream(Paths.get("config/server.properties"))) {
+			prop.load(is);
+		}
+		prop.setProperty("server.address", "127.0.0.1");
+		prop.setProperty("server.port", String.valueOf(port));
+		prop.setProperty("server.frontend", frontend);
+		prop.setProperty("server.executor", executor);
+		prop.setProperty("server.workerThreads", String.valueOf(workerThreads));
+		prop.setProperty("server.documentRoot", Paths.get("webroot").toAbsolutePath().toString());
+		prop.setProperty("server.mimeConfig", Paths.get("config/mime.properties").toAbsolutePath().toString());
+		prop.setProperty("server.workers", Paths.get("config/workers.properties").toAbsolutePath().toString());
+		Path config = Files.createTempFile("server", ".properties");
+		try (OutputStream os = Files.newOutputStream(config)) {
+			prop.store(os, null);
+		}
+		return config;
+	}
+
+	/**
+	 * Creates JSON report of the measured requests.
+	 *
+	 * @param connections
+	 *        number of connections
+	 * @param options
+	 *        given options
+	 * @param elapsed
+	 *        measured time in nanoseconds
+	 * @param mix
+	 *        requested targets
+	 * @return JSON report
+	 */
+	private static String report(int connections, Map<String, String> options, long elapsed,
+			List<Target> mix) {
+		LatencyHistogram total = new LatencyHistogram();
+		long errors = 0;
+		for (Target target: mix) {
+			total.add(target.latencies);
+			errors += target.errors.get();
+		}
+		double seconds = elapsed / 1e9;
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"connections\":").append(connections);
+		sb.append(",\"frontend\":\"").append(options.getOrDefault("frontend", "nio")).append('"');
+		sb.append(",\"executor\":\"").append(options.getOrDefault("executor", "fixed")).append('"');
+		sb.append(",\"durationSeconds\":").append(format(seconds));
+		appendStats(sb, total, errors, seconds);
+		sb.append(",\"paths\":{");
+		for (int i = 0; i < mix.size(); ++i) {
+			Target target = mix.get(i);
+			if (i > 0) sb.append(',');
+			sb.append('"').append(target.path.replace("\\", "\\\\").replace("\"", "\\\"")).append("\":{");
+			StringBuilder stats = new StringBuilder();
+			appendStats(stats, target.latencies, target.errors.get(), seconds);
+			// Members of the object are not preceded by a comma
+			sb.append(stats, 1, stats.length()).append('}');
+		}
+		sb.append("}}");
+		return sb.toString();
+	}
+
+	/**
+	 * Appends number of requests, throughput and latency percentiles as JSON
+	 * members, each preceded by a comma.
+	 *
+	 * @param sb
+	 *        builder members are appended to
+	 * @param latencies
+	 *        latencies of successful requests
+	 * @param errors
+	 *        number of failed requests
+	 * @param seconds
+	 *        measured time in seconds
+	 */
+	private static void appendStats(StringBuilder sb, LatencyHistogram latencies, long errors,
+			double seconds) {
+		long count = latencies.getCount();
+		sb.append(",\"requests\":").append(count);
+		sb.append(",\"errors\":").append(errors);
+		sb.append(",\"throughput\":").append(format(count / seconds));
+		sb.append(",\"latencyMicros\":{");
+		sb.append("\"mean\":").append(format(count == 0 ? 0 : latencies.getSum() / (double) count));
+		sb.append(",\"p50\":").append(latencies.getValueAtPercentile(50));
+		sb.append(",\"p90\":").append(latencies.getValueAtPercentile(90));
+		sb.append(",\"p99\":").append(latencies.getValueAtPercentile(99));
+		sb.append(",\"p999\":").append(latencies.getValueAtPercentile(99.9));
+		sb.append(",\"max\":").append(latencies.getValueAtPercentile(100));
+		sb.append('}');
+	}
+
+	/**
+	 * Formats the given number with two decimals.
+	 *
+	 * @param value
+	 *        number to be formatted
+	 * @return formatted number
+	 */
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+
+	/**
+	 * Path requested by clients with its cumulative weight and measurements.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Target {
+
+		/**
+		 * Requested path
+		 */
+		private final String path;
+
+		/**
+		 * Sum of weights of this and all previous targets
+		 */
+		private final int cumulativeWeight;
+
+		/**
+		 * Latencies of successful requests
+		 */
+		private final LatencyHistogram latencies = new LatencyHistogram();
+
+		/**
+		 * Number of failed requests
+		 */
+		private final AtomicLong errors = new AtomicLong();
+
+		/**
+		 * Constructs new {@link Target} with specified path and cumulative weight.
+		 *
+		 * @param path
+		 *        requested path
+		 * @param cumulativeWeight
+		 *        sum of weights of this and all previous targets
+		 */
+		public Target(String path, int cumulativeWeight) {
+			this.path = path;
+			this.cumulativeWeight = cumulativeWeight;
+		}
+
+	}
+
+	/**
+	 * Client which sends requests over a single keep-alive connection until
+	 * the generator stops. Connection is opened again if the server closes it.
+	 * Session cookie received from the server is sent back like a browser
+	 * would.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class Client implements Runnable {
+
+		/**
+		 * Port of the server
+		 */
+		private final int port;
+
+		/**
+		 * Requested targets
+		 */
+		private final List<Target> mix;
+
+		/**
+		 * Current connection, {@code null} if it has to be opened
+		 */
+		private Socket socket;
+
+		/**
+		 * Input stream of the current connection
+		 */
+		private InputStream in;
+
+		/**
+		 * Session cookie sent with requests, {@code null} before it is received
+		 */
+		private String cookie;
+
+		/**
+		 * Tells whether server closes the connection after the current response
+		 */
+		private boolean closing;
+
+		/**
+		 * Length of the current response body, {@code -1} if it is chunked or
+		 * delimited by closing the connection
+		 */
+		private long contentLength;
+
+		/**
+		 * Tells whether the current response body is chunked
+		 */
+		private boolean chunked;
+
+		/**
+		 * Constructs new {@link Client} with specified port and targets.
+		 *
+		 * @param port
+		 *        port of the server
+		 * @param mix
+		 *        requested targets
+		 */
+		public Client(int port, List<Target> mix) {
+			this.port = port;
+			this.mix = mix;
+		}
+
+		@Override
+		public void run() {
+			int totalWeight = mix.get(mix.size() - 1).cumulativeWeight;
+			while (!stopped) {
+				int r = ThreadLocalRandom.current().nextInt(totalWeight);
+				Target target = mix.get(0);
+				for (int i = 0; r >= target.cumulativeWeight; ) {
+					target = mix.get(++i);
+				}
+				boolean measured = measuring;
+				long start = System.nanoTime();
+				boolean ok;
+				try {
+					ok = request(target.path);
+				} catch (IOException e) {
+					ok = false;
+					disconnect();
+				}
+				long time = System.nanoTime() - start;
+				if (!measured || !measuring) continue;
+				if (ok) {
+					target.latencies.recordNanos(time);
+				} else {
+					target.errors.incrementAndGet();
+				}
+			}
+			disconnect();
+		}
+
+		/**
+		 * Sends request for the given path and reads the whole response.
+		 *
+		 * @param path
+		 *        requested path
+		 * @return {@code true} if the response status is successful
+		 * @throws IOException if an I/O error occurs
+		 */
+		private boolean request(String path) throws IOException {
+			if (socket == null) {
+				socket = new Socket("127.0.0.1", port);
+				socket.setTcpNoDelay(true);
+				in = new BufferedInputStream(socket.getInputStream());
+			}
+			String request = "GET " + path + " HTTP/1.1\r\n"
+					+ "Host: localhost\r\n"
+					+ (cookie == null ? "" : "Cookie: " + cookie + "\r\n")
+					+ "\r\n";
+			socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+			int status = readHeader();
+			if (chunked) {
+				for (long size = readChunkSize(); size > 0; size = readChunkSize()) {
+					skip(size);
+					readLine();
+				}
+				while (!readLine().isEmpty());
+			} else if (contentLength >= 0) {
+				skip(contentLength);
+			} else {
+				while (in.read() != -1);
+				closing = true;
+			}
+			if (closing) disconnect();
+			return status >= 200 && status < 400;
+		}
+
+		/**
+		 * Reads header of the response and remembers how its body is framed.
+		 *
+		 * @return status code of the response
+		 * @throws IOException if an I/O error occurs
+		 */
+		private int readHeader() throws IOException {
+			String statusLine = readLine();
+			String[] parts = statusLine.split(" ");
+			if (parts.length < 2) throw new IOException("Invalid status line: " + statusLine);
+			int status = Integer.parseInt(parts[1]);
+			contentLength = -1;
+			chunked = false;
+			closing = false;
+			for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+				int colon = line.indexOf(':');
+				if (colon < 0) continue;
+				String name = line.substring(0, colon).trim();
+				String value = line.substring(colon + 1).trim();
+				if (name.equalsIgnoreCase("Content-Length")) {
+					contentLength = Long.parseLong(value);
+				} else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+					chunked = value.equalsIgnoreCase("chunked");
+				} else if (name.equalsIgnoreCase("Connection")) {
+					closing = value.equalsIgnoreCase("close");
+				} else if (name.equalsIgnoreCase("Set-Cookie") && value.startsWith("sid=")) {
+					int semicolon = value.indexOf(';');
+					cookie = semicolon < 0 ? value : value.substring(0, semicolon);
+				}
+			}
+			// Responses without body
+			if (status == 204 || status == 304) contentLength = 0;
+			return status;
+		}
+
+		/**
+		 * Reads size of the next chunk.
+		 *
+		 * @return size of the next chunk
+		 * @throws IOException if an I/O error occurs
+		 */
+		private long readChunkSize() throws IOException {
+			String line = readLine();
+			int semicolon = line.indexOf(';');
+			return Long.parseLong(semicolon < 0 ? line.trim() : line.substring(0, semicolon).trim(), 16);
+		}
+
+		/**
+		 * Reads single line of the response without its terminator.
+		 *
+		 * @return read line
+		 * @throws IOException if an I/O error occurs
+		 */
+		private String readLine() throws IOException {
+			StringBuilder sb = new StringBuilder();
+			for (int b = in.read(); b != '\n'; b = in.read()) {
+				if (b == -1) throw new EOFException("Connection closed by server!");
+				if (b != '\r') sb.append((char) b);
+			}
+			return sb.toString();
+		}
+
+		/**
+		 * Reads and discards the given number of bytes.
+		 *
+		 * @param n
+		 *        number of bytes to be discarded
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void skip(long n) throws IOException {
+			while (n > 0) {
+				long s = in.skip(n);
+				if (s <= 0) {
+					if (in.read() == -1) throw new EOFException("Connection closed by server!");
+					s = 1;
+				}
+				n -= s;
+			}
+		}
+
+		/**
+		 * Closes the current connection.
+		 */
+		private void disconnect() {
+			if (socket == null) return;
+			try {
+				socket.close();
+			} catch (IOException ignorable) {}
+			socket = null;
+			in = null;
+		}
+
+	}
+
+}
@@ -0,0 +1,129 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.*;
+
+public class RequestBodyStreamTest {
+
+	private static final String CHUNKED = "4\r\nWiki\r\n5;name=value\r\npedia\r\nE\r\n in\r\n\r\nchunks.\r\n"
+			+ "0\r\nExpires: never\r\n\r\n";
+
+	private static final String DECODED = "Wikipedia in\r\n\r\nchunks.";
+
+	@Test
+	public void testContentLength() throws IOException {
+		InputStream in = new ByteArrayInputStream(bytes("hello worldGET"));
+		RequestBodyStream body = new RequestBodyStream(in, 11, false, 100);
+		assertEquals("hello world", new String(body.readAllBytes(), StandardCharsets.ISO_8859_1));
+		assertTrue(body.isFinished());
+		assertEquals(11, body.getEncodedLength());
+		assertEquals('G', in.read());
+	}
+
+	@Test
+	public void testContentLengthTooLarge() {
+		RequestBodyException e = assertThrows(RequestBodyException.class,
+				() -> new RequestBodyStream(new ByteArrayInputStream(new byte[0]), 101, false, 100));
+		assertEquals(413, e.getStatusCode());
+	}
+
+	@Test
+	public void testChunked() throws IOException {
+		InputStream in = new ByteArrayInputStream(bytes(CHUNKED + "GET"));
+		RequestBodyStream body = new RequestBodyStream(in, 0, true, 100);
+		assertEquals(DECODED, new String(body.readAllBytes(), StandardCharsets.ISO_8859_1));
+		assertTrue(body.isFinished());
+		assertEquals(CHUNKED.length(), body.getEncodedLength());
+		assertEquals('G', in.read());
+	}
+
+	@Test
+	public void testChunkedTooLarge() {
+		RequestBodyStream body = assertDoesNotThrow(
+				() -> new RequestBodyStream(new ByteArrayInputStream(bytes(CHUNKED)), 0, true, 10));
+		RequestBodyException e = assertThrows(RequestBodyException.class, body::skipAll);
+		assertEquals(413, e.getStatusCode());
+	}
+
+	@Test
+	public void testChunkedInvalidSize() throws IOException {
+		RequestBodyStream body = new RequestBodyStream(new ByteArrayInputStream(bytes("x\r\n")), 0, true, 100);
+		RequestBodyException e = assertThrows(RequestBodyException.class, body::skipAll);
+		assertEquals(400, e.getStatusCode());
+	}
+
+	@Test
+	public void testChunkedMissingLineAfterData() throws IOException {
+		RequestBodyStream body = new RequestBodyStream(
+				new ByteArrayInputStream(bytes("2\r\nabc\r\n0\r\n\r\n")), 0, true, 100);
+		RequestBodyException e = assertThrows(RequestBodyException.class, body::skipAll);
+		assertEquals(400, e.getStatusCode());
+	}
+
+	@Test
+	public void testChunkedIncomplete() throws IOException {
+		RequestBodyStream body = new RequestBodyStream(
+				new ByteArrayInputStream(bytes("4\r\nWiki\r\n")), 0, true, 100);
+		assertThrows(EOFException.class, body::skipAll);
+	}
+
+	@Test
+	public void testChunkedDecodedByteByByte() throws IOException {
+		HttpRequestParser parser = new HttpRequestParser();
+		parser.append(ByteBuffer.wrap(bytes("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n")));
+		assertTrue(parser.parse());
+		RequestBodyStream body = RequestBodyStream.of(parser, parser.bodyStream(null), 100);
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		byte[] encoded = bytes(CHUNKED);
+		for (int i = 0; i < encoded.length; ++i) {
+			assertFalse(body.isFinished());
+			parser.append(ByteBuffer.wrap(encoded, i, 1));
+			try {
+				for (int b = body.read(); b != -1; b = body.read()) {
+					decoded.write(b);
+				}
+			} catch (EOFException e) {
+				assertTrue(i < encoded.length - 1);
+				continue;
+			}
+			assertEquals(encoded.length - 1, i);
+		}
+		assertTrue(body.isFinished());
+		assertEquals(DECODED, new String(decoded.toByteArray(), StandardCharsets.ISO_8859_1));
+		assertEquals(encoded.length, body.getEncodedLength());
+	}
+
+	@Test
+	public void testOfInvalidContentLength() {
+		HttpRequestParser parser = new HttpRequestParser();
+		parser.append(ByteBuffer.wrap(bytes("POST / HTTP/1.1\r\nContent-Length: -5\r\n\r\n")));
+		assertTrue(parser.parse());
+		RequestBodyException e = assertThrows(RequestBodyException.class,
+				() -> RequestBodyStream.of(parser, parser.bodyStream(null), 100));
+		assertEquals(400, e.getStatusCode());
+	}
+
+	@Test
+	public void testOfUnsupportedTransferEncoding() {
+		HttpRequestParser parser = new HttpRequestParser();
+		parser.append(ByteBuffer.wrap(bytes("POST / HTTP/1.1\r\nTransfer-Encoding: gzip\r\n\r\n")));
+		assertTrue(parser.parse());
+		RequestBodyException e = assertThrows(RequestBodyException.class,
+				() -> RequestBodyStream.of(parser, parser.bodyStream(null), 100));
+		assertEquals(501, e.getStatusCode());
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+}
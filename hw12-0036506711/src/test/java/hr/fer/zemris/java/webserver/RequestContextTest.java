@@ -0,0 +1,97 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.*;
+
+public class RequestContextTest {
+
+	private Path file;
+
+	@BeforeEach
+	public void createFile() throws IOException {
+		file = Files.createTempFile("region", ".txt");
+		Files.writeString(file, "0123456789");
+	}
+
+	@AfterEach
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void testBufferedBodyLength() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext context = new RequestContext(os, null, new HashMap<>(), new ArrayList<>());
+		context.setKeepAlive(true);
+		context.setBufferSize(16);
+		context.write("hello ").write("world");
+		context.finish();
+		String output = new String(os.toByteArray(), StandardCharsets.ISO_8859_1);
+		assertTrue(output.contains("Content-Length: 11\r\n"));
+		assertFalse(output.contains("Transfer-Encoding"));
+		assertTrue(output.contains("Connection: keep-alive\r\n"));
+		assertTrue(output.endsWith("\r\n\r\nhello world"));
+	}
+
+	@Test
+	public void testChunkedBodyLargerThanBuffer() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext context = new RequestContext(os, null, new HashMap<>(), new ArrayList<>());
+		context.setKeepAlive(true);
+		context.setBufferSize(16);
+		context.write("0123456789").write("abcdefghij");
+		context.finish();
+		String output = new String(os.toByteArray(), StandardCharsets.ISO_8859_1);
+		assertFalse(output.contains("Content-Length"));
+		assertTrue(output.contains("Transfer-Encoding: chunked\r\n"));
+		assertTrue(output.contains("Connection: keep-alive\r\n"));
+		assertTrue(output.endsWith("\r\n\r\na\r\n0123456789\r\na\r\nabcdefghij\r\n0\r\n\r\n"));
+	}
+
+	@Test
+	public void testSetContentLengthNotChunked() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext context = new RequestContext(os, null, new HashMap<>(), new ArrayList<>());
+		context.setBufferSize(16);
+		context.setContentLength(20L);
+		context.write("0123456789").write("abcdefghij");
+		context.finish();
+		String output = new String(os.toByteArray(), StandardCharsets.ISO_8859_1);
+		assertTrue(output.contains("Content-Length: 20\r\n"));
+		assertFalse(output.contains("Transfer-Encoding"));
+		assertTrue(output.endsWith("\r\n\r\n0123456789abcdefghij"));
+	}
+
+	@Test
+	public void testWriteFileRegion() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext context = new RequestContext(os, null, new HashMap<>(), new ArrayList<>());
+		context.setContentLength(4L);
+		context.write(FileChannel.open(file), 3, 4);
+		context.finish();
+		String output = new String(os.toByteArray(), StandardCharsets.ISO_8859_1);
+		assertTrue(output.contains("Content-Length: 4\r\n"));
+		assertTrue(output.endsWith("\r\n\r\n3456"));
+	}
+
+	@Test
+	public void testWriteTruncatedFileRegion() {
+		RequestContext context = new RequestContext(new ByteArrayOutputStream(), null, new HashMap<>(),
+				new ArrayList<>());
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+			assertThrows(IOException.class, () -> context.write(FileChannel.open(file), 6, 10));
+		});
+	}
+
+}
@@ -0,0 +1,120 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Compares how many bytes reach the socket per write call when a SmartScript
+ * is executed with and without response buffering. Without buffering every
+ * write of the script is flushed, which is how {@link RequestContext} used
+ * to behave. Socket is simulated with a stream that counts write calls below
+ * the same buffered stream the blocking front-end uses. Program has to be
+ * started from the project directory and accepts optional arguments: path of
+ * the script, number of executions and size of the response buffer in bytes.
+ *
+ * @author Filip Husnjak
+ */
+public class ResponseBufferingBenchmark {
+
+	/**
+	 * Program starts here.
+	 *
+	 * @param args
+	 *        optional benchmark parameters
+	 * @throws Exception if an error occurs
+	 */
+	public static void main(String[] args) throws Exception {
+		String script = args.length > 0 ? args[0] : "webroot/scripts/fibonaccih.smscr";
+		int executions = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+		int bufferSize = args.length > 2 ? Integer.parseInt(args[2]) : RequestContext.DEFAULT_BUFFER_SIZE;
+
+		DocumentNode document = new SmartScriptParser(
+				Files.readString(Paths.get(script))).getDocumentNode();
+		// Warm up both variants before measuring
+		run(document, executions / 10, bufferSize, true);
+		run(document, executions / 10, bufferSize, false);
+		run(document, executions, bufferSize, true);
+		run(document, executions, bufferSize, false);
+	}
+
+	/**
+	 * Executes the given script specified number of times and prints number of
+	 * write calls that reached the socket and bytes written per call.
+	 *
+	 * @param document
+	 *        parsed script
+	 * @param executions
+	 *        number of executions
+	 * @param bufferSize
+	 *        size of the response buffer
+	 * @param flushEveryWrite
+	 *        tells whether every write should be flushed
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void run(DocumentNode document, int executions, int bufferSize,
+			boolean flushEveryWrite) throws IOException {
+		CountingOutputStream socket = new CountingOutputStream();
+		long start = System.nanoTime();
+		for (int i = 0; i < executions; ++i) {
+			OutputStream os = new BufferedOutputStream(socket);
+			RequestContext context = new RequestContext(
+					os, new HashMap<>(), new HashMap<>(), new ArrayList<>()) {
+				@Override
+				public RequestContext write(byte[] data, int offset, int len) throws IOException {
+					super.write(data, offset, len);
+					if (flushEveryWrite) flush();
+					return this;
+				}
+			};
+			context.setBufferSize(bufferSize);
+			new SmartScriptEngine(document, context).execute();
+			context.finish();
+		}
+		long time = System.nanoTime() - start;
+		System.out.printf("%-10s executions=%d writes=%d bytes=%d bytes/write=%.1f time=%dms%n",
+				flushEveryWrite ? "flushing" : "buffered",
+				executions, socket.writes, socket.bytes,
+				socket.bytes / (double) socket.writes, time / 1_000_000);
+	}
+
+	/**
+	 * Output stream that discards written bytes and counts write calls.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class CountingOutputStream extends OutputStream {
+
+		/**
+		 * Number of write calls
+		 */
+		private long writes;
+
+		/**
+		 * Number of written bytes
+		 */
+		private long bytes;
+
+		@Override
+		public void write(int b) {
+			writes++;
+			bytes++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			writes++;
+			bytes += len;
+		}
+
+	}
+
+}
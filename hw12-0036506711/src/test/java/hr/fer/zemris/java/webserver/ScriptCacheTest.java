@@ -0,0 +1,91 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.*;
+
+import hr.fer.zemris.java.custom.scripting.exec.FunctionRegistry;
+import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
+
+public class ScriptCacheTest {
+
+	private static final String SCRIPT = "Start\r\n"
+			+ "{$ FOR i 1 3 1 $}{$ FOR j i 5 1 $}{$= j $}{$END$};{$= i $}|{$END$}\r\n"
+			+ "{$ FOR i 1 3 1 $}{$ FOR j 1 i 1 $}{$= j $}{$END$}|{$END$}\r\n"
+			+ "{$= \"a\" \"b\" @swap $}";
+
+	private static final String OUTPUT = "Start\r\n12345;6|\r\n1|12|123|\r\nba";
+
+	private Path script;
+
+	@BeforeEach
+	public void createScript() throws IOException {
+		script = Files.createTempFile("script", ".smscr");
+		Files.writeString(script, SCRIPT);
+	}
+
+	@AfterEach
+	public void deleteScript() throws IOException {
+		Files.deleteIfExists(script);
+	}
+
+	@Test
+	public void testCachedLocalVariables() throws IOException {
+		assertEquals(OUTPUT, execute(new ScriptCache(1, true, Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void testStreamedLocalVariables() throws IOException {
+		ScriptCache cache = new ScriptCache(1, true, 0);
+		assertEquals(OUTPUT, execute(cache));
+		assertEquals(1, cache.getStreamed());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testCachedAndStreamedMultistack() throws IOException {
+		assertEquals(OUTPUT, execute(new ScriptCache(1, false, Long.MAX_VALUE)));
+		assertEquals(OUTPUT, execute(new ScriptCache(1, false, 0)));
+	}
+
+	@Test
+	public void testHitAfterMiss() throws IOException {
+		ScriptCache cache = new ScriptCache(1);
+		assertSame(cache.get(script), cache.get(script));
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void testCompiledAgainAfterRegistration() throws IOException {
+		FunctionRegistry.register("testCached", 0, 1, true, (context, s, b) -> s[b] = new ValueWrapper("old"));
+		Files.writeString(script, "{$= @testCached $}");
+		ScriptCache cache = new ScriptCache(1);
+		assertEquals("old", execute(cache));
+		assertEquals("old", execute(cache));
+		assertEquals(1, cache.getHits());
+		FunctionRegistry.register("testCached", 0, 1, true, (context, s, b) -> s[b] = new ValueWrapper("new"));
+		assertEquals("new", execute(cache));
+		assertEquals(2, cache.getMisses());
+		assertEquals(1, cache.size());
+	}
+
+	private String execute(ScriptCache cache) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext context = new RequestContext(os, new HashMap<>(), new HashMap<>(), new ArrayList<>(),
+				new HashMap<>(), path -> {}, "sid");
+		cache.execute(script, context);
+		context.finish();
+		String output = new String(os.toByteArray(), StandardCharsets.UTF_8);
+		return output.substring(output.indexOf("\r\n\r\n") + 4);
+	}
+
+}
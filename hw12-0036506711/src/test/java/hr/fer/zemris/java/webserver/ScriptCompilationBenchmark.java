@@ -0,0 +1,166 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScript;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Compares execution of SmartScript documents by {@link SmartScriptEngine},
+ * which visits the parsed document, with execution of the same documents
+ * compiled into {@link CompiledScript}, with variables kept in a multistack
+ * and with local variables. Before measuring, program checks that all of them
+ * produce the same output and the same parameters. Besides time, number of
+ * bytes allocated per execution is printed. Program has to be started from
+ * the project directory and accepts optional arguments: number of executions
+ * followed by paths of the scripts, all scripts from {@code webroot/scripts}
+ * are used if no path is given.
+ *
+ * @author Filip Husnjak
+ */
+public class ScriptCompilationBenchmark {
+
+	/**
+	 * Number of measured rounds, the first one is used as a warm up
+	 */
+	private static final int ROUNDS = 5;
+
+	/**
+	 * Names of the measured executors
+	 */
+	private static final String[] NAMES = {"visitor", "compiled", "locals"};
+
+	/**
+	 * Program starts here.
+	 *
+	 * @param args
+	 *        optional benchmark parameters
+	 * @throws Exception if an error occurs
+	 */
+	public static void main(String[] args) throws Exception {
+		int executions = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+		List<Path> scripts = new ArrayList<>();
+		if (args.length > 1) {
+			Arrays.stream(args, 1, args.length).map(Paths::get).forEach(scripts::add);
+		} else {
+			try (Stream<Path> files = Files.list(Paths.get("webroot/scripts"))) {
+				scripts.addAll(files.sorted().collect(Collectors.toList()));
+			}
+		}
+
+		for (Path script: scripts) {
+			DocumentNode document = new SmartScriptParser(Files.readString(script)).getDocumentNode();
+			CompiledScript compiled = new CompiledScript(document);
+			CompiledScript locals = new CompiledScript(document, true);
+			List<Consumer<RequestContext>> executors = List.of(
+					context -> new SmartScriptEngine(document, context).execute(),
+					compiled::execute,
+					locals::execute);
+			String expected = execute(executors.get(0));
+			for (int i = 1; i < executors.size(); ++i) {
+				String output = execute(executors.get(i));
+				if (!expected.equals(output)) {
+					throw new IllegalStateException("Outputs of " + script + " differ:\n"
+							+ expected + "\n---\n" + output);
+				}
+			}
+			long[] times = new long[executors.size()];
+			long[] allocated = new long[executors.size()];
+			for (int round = 0; round < ROUNDS; ++round) {
+				for (int i = 0; i < executors.size(); ++i) {
+					long bytes = allocatedBytes();
+					long time = measure(executors.get(i), executions);
+					bytes = allocatedBytes() - bytes;
+					if (round == 0) continue;
+					times[i] += time;
+					allocated[i] += bytes;
+				}
+			}
+			int measured = (ROUNDS - 1) * executions;
+			StringBuilder sb = new StringBuilder(String.format("%-20s", script.getFileName()));
+			for (int i = 0; i < executors.size(); ++i) {
+				sb.append(String.format(" %s=%6.0fns/%6dB", NAMES[i],
+						times[i] / (double) measured, allocated[i] / measured));
+			}
+			System.out.println(sb);
+		}
+	}
+
+	/**
+	 * Executes script by the given executor specified number of times.
+	 *
+	 * @param executor
+	 *        executes the script with the given context
+	 * @param executions
+	 *        number of executions
+	 * @return time spent in nanoseconds
+	 */
+	private static long measure(Consumer<RequestContext> executor, int executions) {
+		long start = System.nanoTime();
+		for (int i = 0; i < executions; ++i) {
+			execute(executor);
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Returns number of bytes allocated by the current thread so far, or
+	 * {@code 0} if the virtual machine does not track allocations.
+	 *
+	 * @return number of allocated bytes
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Executes script once with parameters {@code a=3} and {@code b=4}.
+	 *
+	 * @param executor
+	 *        executes the script with the given context
+	 * @return output of the script followed by the persistent and temporary
+	 *         parameters
+	 */
+	private static String execute(Consumer<RequestContext> executor) {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		Map<String, String> params = new HashMap<>();
+		params.put("a", "3");
+		params.put("b", "4");
+		Map<String, String> persistent = new HashMap<>();
+		RequestContext context = new RequestContext(os, params, persistent, new ArrayList<>(),
+				new HashMap<>(), path -> {}, "sid");
+		try {
+			executor.accept(context);
+			context.finish();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		StringBuilder sb = new StringBuilder(os.toString());
+		sb.append(persistent);
+		for (String name: context.getTemporaryParameterNames()) {
+			sb.append(name).append('=').append(context.getTemporaryParameter(name));
+		}
+		return sb.toString();
+	}
+
+}
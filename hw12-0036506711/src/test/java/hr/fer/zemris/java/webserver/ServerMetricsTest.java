@@ -0,0 +1,119 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.*;
+
+import hr.fer.zemris.java.webserver.ServerMetrics.Route;
+
+public class ServerMetricsTest {
+
+	private static final String[] BOUNDS = {"0.000032", "0.000064", "0.000128", "0.000256", "0.000512",
+			"0.001024", "0.002048", "0.004096", "0.008192", "0.016384", "0.032768", "0.065536", "0.131072",
+			"0.262144", "0.524288", "1.048576", "2.097152", "4.194304", "8.388608", "16.777216", "33.554432"};
+
+	@Test
+	public void testExport() {
+		ServerMetrics metrics = new ServerMetrics();
+		long[] micros = {0, 32, 33, 1000, 1L << 25, (1L << 25) + 1, 100_000_000};
+		int[] statusCodes = {200, 200, 304, 200, 200, 500, 200};
+		for (int i = 0; i < micros.length; ++i) {
+			metrics.record(Route.STATIC, statusCodes[i], micros[i] * 1000);
+		}
+		metrics.record(Route.WORKER, 404, 1_500);
+		metrics.connectionOpened();
+		metrics.connectionOpened();
+		metrics.connectionClosed();
+		metrics.addCounter("smarthttp_cache_hits_total", "Number of cache hits.", () -> 42);
+		metrics.addGauge("smarthttp_sessions", "Number of sessions.", () -> 3);
+		String expected = "# HELP smarthttp_requests_total Number of served requests.\n"
+				+ "# TYPE smarthttp_requests_total counter\n"
+				+ "smarthttp_requests_total{route=\"static\",code=\"2xx\"} 5\n"
+				+ "smarthttp_requests_total{route=\"static\",code=\"3xx\"} 1\n"
+				+ "smarthttp_requests_total{route=\"static\",code=\"5xx\"} 1\n"
+				+ "smarthttp_requests_total{route=\"worker\",code=\"4xx\"} 1\n"
+				+ "# HELP smarthttp_request_duration_seconds Time spent serving requests.\n"
+				+ "# TYPE smarthttp_request_duration_seconds histogram\n"
+				+ histogram("static", new long[] {2, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 5},
+						7, "167.10993")
+				+ histogram("script", new long[21], 0, "0")
+				+ histogram("worker", new long[] {1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1},
+						1, "0.000001")
+				+ histogram("other", new long[21], 0, "0")
+				+ "# HELP smarthttp_connections Number of open connections.\n"
+				+ "# TYPE smarthttp_connections gauge\n"
+				+ "smarthttp_connections 1\n"
+				+ "# HELP smarthttp_connections_accepted_total Number of accepted connections.\n"
+				+ "# TYPE smarthttp_connections_accepted_total counter\n"
+				+ "smarthttp_connections_accepted_total 2\n"
+				+ "# HELP smarthttp_cache_hits_total Number of cache hits.\n"
+				+ "# TYPE smarthttp_cache_hits_total counter\n"
+				+ "smarthttp_cache_hits_total 42\n"
+				+ "# HELP smarthttp_sessions Number of sessions.\n"
+				+ "# TYPE smarthttp_sessions gauge\n"
+				+ "smarthttp_sessions 3\n";
+		assertEquals(expected, metrics.export());
+	}
+
+	@Test
+	public void testBucketsCumulative() {
+		Random random = new Random(0);
+		ServerMetrics metrics = new ServerMetrics();
+		for (int i = 0; i < 10_000; ++i) {
+			Route route = Route.values()[random.nextInt(Route.values().length)];
+			// Many latencies are exactly at bucket bounds
+			long micros = random.nextBoolean() ? 1L << random.nextInt(30) : (long) Math.exp(random.nextDouble() * 20);
+			metrics.record(route, 200, micros * 1000);
+		}
+		String export = metrics.export();
+		for (Route route: Route.values()) {
+			Matcher matcher = Pattern.compile("smarthttp_request_duration_seconds_bucket\\{route=\""
+					+ route.name().toLowerCase() + "\",le=\"([^\"]+)\"} (\\d+)\n").matcher(export);
+			long previous = 0;
+			int buckets = 0;
+			String last = null;
+			while (matcher.find()) {
+				long value = Long.parseLong(matcher.group(2));
+				assertTrue(value >= previous, () -> matcher.group());
+				previous = value;
+				last = matcher.group(1);
+				buckets++;
+			}
+			assertEquals(BOUNDS.length + 1, buckets);
+			assertEquals("+Inf", last);
+			long count = metrics.getLatencies(route).getCount();
+			assertEquals(count, previous);
+			assertTrue(export.contains("smarthttp_request_duration_seconds_count{route=\""
+					+ route.name().toLowerCase() + "\"} " + count + "\n"));
+		}
+	}
+
+	@Test
+	public void testBucketIncludesBound() {
+		ServerMetrics metrics = new ServerMetrics();
+		metrics.record(Route.SCRIPT, 200, 64_000);
+		String export = metrics.export();
+		assertTrue(export.contains("smarthttp_request_duration_seconds_bucket{route=\"script\",le=\"0.000032\"} 0\n"));
+		assertTrue(export.contains("smarthttp_request_duration_seconds_bucket{route=\"script\",le=\"0.000064\"} 1\n"));
+	}
+
+	private static String histogram(String route, long[] buckets, long count, String sum) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < BOUNDS.length; ++i) {
+			sb.append("smarthttp_request_duration_seconds_bucket{route=\"").append(route).append("\",le=\"")
+				.append(BOUNDS[i]).append("\"} ").append(buckets[i]).append('\n');
+		}
+		sb.append("smarthttp_request_duration_seconds_bucket{route=\"").append(route).append("\",le=\"+Inf\"} ")
+			.append(count).append('\n');
+		sb.append("smarthttp_request_duration_seconds_sum{route=\"").append(route).append("\"} ").append(sum)
+			.append('\n');
+		sb.append("smarthttp_request_duration_seconds_count{route=\"").append(route).append("\"} ").append(count)
+			.append('\n');
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,71 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.*;
+
+public class SessionStoreTest {
+
+	@Test
+	public void testCreateAndGet() {
+		SessionStore store = new SessionStore(60);
+		SessionStore.Session session = store.create("localhost");
+		assertEquals("localhost", session.getHost());
+		assertSame(session, store.get(session.getId(), "localhost"));
+		assertEquals(1, store.getCreated());
+		assertEquals(1, store.getActiveSessions());
+	}
+
+	@Test
+	public void testGetWrongHost() {
+		SessionStore store = new SessionStore(60);
+		SessionStore.Session session = store.create("localhost");
+		assertNull(store.get(session.getId(), "www.example.com"));
+		// Session stays in the store for its own host
+		assertSame(session, store.get(session.getId(), "localhost"));
+	}
+
+	@Test
+	public void testGetUnknownSession() {
+		SessionStore store = new SessionStore(60);
+		assertNull(store.get(null, "localhost"));
+		assertNull(store.get("unknown", "localhost"));
+	}
+
+	@Test
+	public void testUniqueIds() {
+		SessionStore store = new SessionStore(60);
+		Set<String> ids = new HashSet<>();
+		for (int i = 0; i < 1000; ++i) {
+			String id = store.create("localhost").getId();
+			assertTrue(id.matches("[A-Za-z0-9_-]{22}"));
+			assertTrue(ids.add(id));
+		}
+		assertEquals(1000, store.getCreated());
+		assertEquals(1000, store.getActiveSessions());
+	}
+
+	@Test
+	public void testExpiration() throws InterruptedException {
+		SessionStore store = new SessionStore(1);
+		SessionStore.Session first = store.create("localhost");
+		store.create("localhost");
+		Thread.sleep(1100);
+		assertNull(store.get(first.getId(), "localhost"));
+		assertEquals(1, store.getExpired());
+		// Creating a session sweeps the one which is never accessed again
+		store.create("localhost");
+		assertEquals(2, store.getExpired());
+		assertEquals(1, store.getActiveSessions());
+		assertEquals(3, store.getCreated());
+	}
+
+	@Test
+	public void testInvalidTimeout() {
+		assertThrows(IllegalArgumentException.class, () -> new SessionStore(0));
+	}
+
+}
@@ -0,0 +1,635 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import hr.fer.zemris.java.webserver.workers.PerThreadTestWorker;
+import hr.fer.zemris.java.webserver.workers.PooledTestWorker;
+import hr.fer.zemris.java.webserver.workers.ScopedTestWorker;
+import hr.fer.zemris.java.webserver.workers.SingletonTestWorker;
+
+public class SmartHttpServerTest {
+
+	private static final String SAMPLE = "0123456789abcdef";
+
+	// Larger than the maximum size of cached files, so it is sent from the disk
+	private static final String LARGE = SAMPLE.repeat(256);
+
+	private static Path root;
+
+	private static final Map<String, SmartHttpServer> servers = new HashMap<>();
+
+	private static final Map<String, Integer> ports = new HashMap<>();
+
+	@BeforeAll
+	public static void startServers() throws Exception {
+		root = Files.createTempDirectory("webroot");
+		Files.writeString(root.resolve("sample.txt"), SAMPLE);
+		Files.writeString(root.resolve("large.txt"), LARGE);
+		for (String frontend: new String[] {"blocking", "nio"}) {
+			int port = freePort();
+			servers.put(frontend, startServer(frontend, port));
+			ports.put(frontend, port);
+		}
+	}
+
+	@AfterAll
+	public static void stopServers() throws IOException {
+		servers.values().forEach(SmartHttpServer::stop);
+		try (Stream<Path> files = Files.walk(root)) {
+			for (Path file: (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void testKeepAliveNio() throws IOException {
+		try (Socket socket = connect("nio")) {
+			for (int i = 0; i < 3; ++i) {
+				send(socket, get("/sample.txt"));
+				Response response = Response.read(socket.getInputStream(), false);
+				assertEquals(200, response.status);
+				assertEquals(SAMPLE, response.text());
+			}
+		}
+	}
+
+	@Test
+	public void testPipelinedRequestsNio() throws IOException {
+		try (Socket socket = connect("nio")) {
+			send(socket, get("/sample.txt") + get("/sample.txt"));
+			InputStream in = socket.getInputStream();
+			assertEquals(SAMPLE, Response.read(in, false).text());
+			assertEquals(SAMPLE, Response.read(in, false).text());
+		}
+	}
+
+	@Test
+	public void testConnectionCloseNio() throws IOException {
+		try (Socket socket = connect("nio")) {
+			send(socket, "GET /sample.txt HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+			InputStream in = socket.getInputStream();
+			assertEquals(SAMPLE, Response.read(in, false).text());
+			assertEquals(-1, in.read());
+		}
+	}
+
+	@Test
+	public void testConnectionClosedBlocking() throws IOException {
+		try (Socket socket = connect("blocking")) {
+			send(socket, get("/sample.txt"));
+			InputStream in = socket.getInputStream();
+			assertEquals(SAMPLE, Response.read(in, false).text());
+			assertEquals(-1, in.read());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testNotFound(String frontend) throws IOException {
+		try (Socket socket = connect(frontend)) {
+			send(socket, get("/missing.txt"));
+			assertEquals(404, Response.read(socket.getInputStream(), false).status);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testHeaderSplitAcrossWrites(String frontend) throws Exception {
+		try (Socket socket = connect(frontend)) {
+			String request = "GET /sample.txt HTTP/1.1\r\nHost: localhost\r\nX-Folded: a\r\n b\r\n\r\n";
+			for (int i = 0; i < request.length(); i += 7) {
+				send(socket, request.substring(i, Math.min(i + 7, request.length())));
+				Thread.sleep(5);
+			}
+			Response response = Response.read(socket.getInputStream(), false);
+			assertEquals(200, response.status);
+			assertEquals(SAMPLE, response.text());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testTooLargeHeader(String frontend) throws IOException {
+		try (Socket socket = connect(frontend)) {
+			// Exactly the maximum size, so server reads all bytes before it answers
+			String start = "GET /sample.txt HTTP/1.1\r\nX-Large: ";
+			send(socket, start + "x".repeat(16 * 1024 - start.length()));
+			assertEquals(400, Response.read(socket.getInputStream(), false).status);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testRange(String frontend) throws IOException {
+		Response response = request(frontend, get("/sample.txt", "Range: bytes=2-5"));
+		assertEquals(206, response.status);
+		assertEquals("bytes 2-5/16", response.headers.get("Content-Range"));
+		assertEquals("2345", response.text());
+		response = request(frontend, get("/sample.txt", "Range: bytes=-3"));
+		assertEquals(206, response.status);
+		assertEquals("bytes 13-15/16", response.headers.get("Content-Range"));
+		assertEquals("def", response.text());
+		response = request(frontend, get("/large.txt", "Range: bytes=4090-"));
+		assertEquals(206, response.status);
+		assertEquals("bytes 4090-4095/4096", response.headers.get("Content-Range"));
+		assertEquals("abcdef", response.text());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testRangeNotSatisfiable(String frontend) throws IOException {
+		Response response = request(frontend, get("/sample.txt", "Range: bytes=16-20"));
+		assertEquals(416, response.status);
+		assertEquals("bytes */16", response.headers.get("Content-Range"));
+		assertEquals(0, response.body.length);
+		response = request(frontend, get("/large.txt", "Range: bytes=5000-"));
+		assertEquals(416, response.status);
+		assertEquals("bytes */4096", response.headers.get("Content-Range"));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testRangeIgnoredForOtherVersion(String frontend) throws IOException {
+		Response response = request(frontend, get("/sample.txt", "Range: bytes=2-5", "If-Range: \"other\""));
+		assertEquals(200, response.status);
+		assertNull(response.headers.get("Content-Range"));
+		assertEquals(SAMPLE, response.text());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testIfNoneMatch(String frontend) throws IOException {
+		for (String path: new String[] {"/sample.txt", "/large.txt"}) {
+			String eTag = request(frontend, get(path)).headers.get("ETag");
+			Response response = request(frontend, get(path, "If-None-Match: " + eTag));
+			assertEquals(304, response.status);
+			assertEquals(eTag, response.headers.get("ETag"));
+			assertEquals(200, request(frontend, get(path, "If-None-Match: \"other\"")).status);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testIfNoneMatchCompressed(String frontend) throws IOException {
+		Response compressed = request(frontend, get("/large.txt", "Accept-Encoding: gzip"));
+		assertEquals("gzip", compressed.headers.get("Content-Encoding"));
+		String gzipTag = compressed.headers.get("ETag");
+		String plainTag = request(frontend, get("/large.txt")).headers.get("ETag");
+		assertNotEquals(plainTag, gzipTag);
+		assertEquals(304, request(frontend, get("/large.txt", "Accept-Encoding: gzip",
+				"If-None-Match: " + gzipTag)).status);
+		assertEquals(304, request(frontend, get("/large.txt", "Accept-Encoding: gzip",
+				"If-None-Match: \"other\", W/" + gzipTag)).status);
+		assertEquals(304, request(frontend, get("/large.txt", "If-None-Match: *")).status);
+		// Client which does not accept gzip anymore cannot use its compressed copy
+		Response response = request(frontend, get("/large.txt", "If-None-Match: " + gzipTag));
+		assertEquals(200, response.status);
+		assertNull(response.headers.get("Content-Encoding"));
+		assertEquals(plainTag, response.headers.get("ETag"));
+		assertEquals(LARGE, response.text());
+		response = request(frontend, get("/large.txt", "Accept-Encoding: deflate", "If-None-Match: " + gzipTag));
+		assertEquals(200, response.status);
+		assertEquals("deflate", response.headers.get("Content-Encoding"));
+		// Nor can a client which accepts gzip use the uncompressed copy
+		response = request(frontend, get("/large.txt", "Accept-Encoding: gzip", "If-None-Match: " + plainTag));
+		assertEquals(200, response.status);
+		assertEquals(gzipTag, response.headers.get("ETag"));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testIfModifiedSince(String frontend) throws IOException {
+		String lastModified = request(frontend, get("/sample.txt")).headers.get("Last-Modified");
+		assertEquals(304, request(frontend, get("/sample.txt", "If-Modified-Since: " + lastModified)).status);
+		Response response = request(frontend,
+				get("/sample.txt", "If-Modified-Since: Thu, 01 Jan 1970 00:00:00 GMT"));
+		assertEquals(200, response.status);
+		assertEquals(SAMPLE, response.text());
+	}
+
+	@Test
+	public void testNotModifiedKeepAliveNio() throws IOException {
+		String eTag = request("nio", get("/sample.txt")).headers.get("ETag");
+		try (Socket socket = connect("nio")) {
+			InputStream in = socket.getInputStream();
+			send(socket, get("/sample.txt", "If-None-Match: " + eTag));
+			assertEquals(304, Response.read(in, false).status);
+			// Next response starts right after the header if no body was sent
+			send(socket, get("/sample.txt"));
+			Response response = Response.read(in, false);
+			assertEquals(200, response.status);
+			assertEquals(SAMPLE, response.text());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testChunkedFormBody(String frontend) throws Exception {
+		try (Socket socket = connect(frontend)) {
+			send(socket, "POST /ext/EchoParams HTTP/1.1\r\nHost: localhost\r\n"
+					+ "Content-Type: application/x-www-form-urlencoded\r\n"
+					+ "Transfer-Encoding: chunked\r\n\r\n");
+			// Chunk sizes, data and escape sequences are all split between writes
+			String[] pieces = {"f\r\nname=I", "vo+Iv", "i%C4", "\r\n", "7\r\n%87&x=", "1\r", "\n0\r\n", "\r\n"};
+			for (String piece: pieces) {
+				send(socket, piece);
+				Thread.sleep(20);
+			}
+			Response response = Response.read(socket.getInputStream(), false);
+			assertEquals(200, response.status);
+			assertTrue(response.text().contains("name\t\t\t\t</td>"));
+			assertTrue(response.text().contains("Ivo Ivić\t\t\t\t</td>"));
+			assertTrue(response.text().contains("1\t\t\t\t</td>"));
+		}
+	}
+
+	@Test
+	public void testExtWorkerSingleInstance() throws Exception {
+		ScopedTestWorker.instances.clear();
+		SmartHttpServer server = new SmartHttpServer(writeConfig("blocking", 0).toString());
+		List<IWebWorker> workers = runConcurrently(16, 1, () -> server.getExtWorker("SingletonTestWorker"));
+		assertNotNull(workers.get(0));
+		for (IWebWorker worker: workers) {
+			assertSame(workers.get(0), worker);
+		}
+		assertSame(workers.get(0), server.getExtWorker("SingletonTestWorker"));
+		assertTrue(ScopedTestWorker.instances.get(SingletonTestWorker.class).contains(workers.get(0)));
+	}
+
+	@Test
+	public void testExtWorkerMissing() throws Exception {
+		SmartHttpServer server = new SmartHttpServer(writeConfig("blocking", 0).toString());
+		for (String name: new String[] {"DoesNotExist", "ScopedTestWorker", "IWebWorker"}) {
+			assertNull(server.getExtWorker(name));
+			assertTrue(server.extWorkers.containsKey(name), name);
+			assertNull(server.getExtWorker(name));
+		}
+		// Names which cannot be classes are not remembered
+		for (String name: new String[] {"", "..", "Sum.Worker", "1Worker", "a/b"}) {
+			assertNull(server.getExtWorker(name));
+			assertFalse(server.extWorkers.containsKey(name), name);
+		}
+	}
+
+	@Test
+	public void testExtWorkersBounded() throws Exception {
+		SmartHttpServer server = new SmartHttpServer(writeConfig("blocking", 0).toString());
+		for (int i = 0; i < SmartHttpServer.MAX_EXT_WORKERS + 100; ++i) {
+			assertNull(server.getExtWorker("Missing" + i));
+		}
+		assertEquals(SmartHttpServer.MAX_EXT_WORKERS, server.extWorkers.size());
+		assertFalse(server.extWorkers.containsKey("Missing" + SmartHttpServer.MAX_EXT_WORKERS));
+		// Existing workers are remembered even when the bound is reached
+		IWebWorker worker = server.getExtWorker("SumWorker");
+		assertNotNull(worker);
+		assertSame(worker, server.getExtWorker("SumWorker"));
+		assertEquals(SmartHttpServer.MAX_EXT_WORKERS + 1, server.extWorkers.size());
+	}
+
+	@Test
+	public void testPooledWorker() throws Exception {
+		ScopedTestWorker.instances.clear();
+		SmartHttpServer server = new SmartHttpServer(writeConfig("blocking", 0).toString());
+		IWebWorker worker = server.getExtWorker("PooledTestWorker");
+		runConcurrently(16, 20, () -> {
+			worker.processRequest(null);
+			return worker;
+		});
+		Set<ScopedTestWorker> instances = ScopedTestWorker.instances.get(PooledTestWorker.class);
+		assertEquals(2, instances.size());
+		for (ScopedTestWorker instance: instances) {
+			assertFalse(instance.overlapped);
+		}
+	}
+
+	@Test
+	public void testPerThreadWorker() throws Exception {
+		ScopedTestWorker.instances.clear();
+		SmartHttpServer server = new SmartHttpServer(writeConfig("blocking", 0).toString());
+		IWebWorker worker = server.getExtWorker("PerThreadTestWorker");
+		runConcurrently(16, 20, () -> {
+			worker.processRequest(null);
+			return worker;
+		});
+		Set<ScopedTestWorker> instances = ScopedTestWorker.instances.get(PerThreadTestWorker.class);
+		// First instance is created by the thread which loaded the worker
+		assertEquals(17, instances.size());
+		for (ScopedTestWorker instance: instances) {
+			assertFalse(instance.overlapped);
+			assertTrue(instance.threads.size() <= 1);
+		}
+	}
+
+	@Test
+	public void testPerThreadWorkerOnVirtualThreads() throws Exception {
+		ScopedTestWorker.instances.clear();
+		SmartHttpServer server = new SmartHttpServer(writeConfig("blocking", 0, "server.executor", "virtual")
+				.toString());
+		IWebWorker worker = server.getExtWorker("PerThreadTestWorker");
+		runConcurrently(16, 20, () -> {
+			worker.processRequest(null);
+			return worker;
+		});
+		Set<ScopedTestWorker> instances = ScopedTestWorker.instances.get(PerThreadTestWorker.class);
+		if (SmartHttpServer.supportsVirtualThreads()) {
+			// Worker is pooled, since every request would get a new instance
+			assertEquals(Runtime.getRuntime().availableProcessors(), instances.size());
+		} else {
+			// Server falls back to the fixed thread pool
+			assertEquals(17, instances.size());
+		}
+		for (ScopedTestWorker instance: instances) {
+			assertFalse(instance.overlapped);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testReadTimeout(String frontend) throws Exception {
+		int port = freePort();
+		SmartHttpServer server = startServer(frontend, port, "server.readTimeout", "1");
+		try (Socket socket = new Socket("127.0.0.1", port)) {
+			socket.setSoTimeout(5000);
+			long start = System.nanoTime();
+			send(socket, "GET /sample.txt HTTP/1.1\r\nHost: loc");
+			InputStream in = socket.getInputStream();
+			Response response = Response.read(in, false);
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			assertEquals(408, response.status);
+			assertEquals(-1, in.read());
+			// Event loop checks timeouts once a second
+			assertTrue(elapsed >= 900 && elapsed < 3000, "elapsed " + elapsed + " ms");
+		} finally {
+			server.stop();
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testWriteTimeout(String frontend) throws Exception {
+		// Much larger than socket buffers, so the server blocks once the client stops reading
+		Path huge = root.resolve("huge.bin");
+		if (!Files.exists(huge)) {
+			Files.write(huge, new byte[64 * 1024 * 1024]);
+		}
+		int port = freePort();
+		SmartHttpServer server = startServer(frontend, port, "server.writeTimeout", "1");
+		try (Socket socket = new Socket()) {
+			socket.setReceiveBufferSize(4096);
+			socket.connect(new InetSocketAddress("127.0.0.1", port));
+			socket.setSoTimeout(5000);
+			send(socket, get("/huge.bin"));
+			// Server gives up while the client is still not reading
+			Thread.sleep(1500);
+			for (int i = 0; i < 30 && server.getMetrics().getConnections() > 0; ++i) {
+				Thread.sleep(100);
+			}
+			assertEquals(0, server.getMetrics().getConnections());
+			// Client reads only what was sent before the server gave up
+			long received = 0;
+			InputStream in = socket.getInputStream();
+			byte[] buffer = new byte[64 * 1024];
+			try {
+				for (int r; (r = in.read(buffer)) != -1; ) {
+					received += r;
+				}
+			} catch (SocketException e) {
+				// Connection can be reset as well
+			}
+			assertTrue(received < Files.size(huge), "received " + received);
+		} finally {
+			server.stop();
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"blocking", "nio"})
+	public void testSlowReaderNotTimedOut(String frontend) throws Exception {
+		Path file = root.resolve("slow.bin");
+		if (!Files.exists(file)) {
+			Files.write(file, new byte[8 * 1024 * 1024]);
+		}
+		int port = freePort();
+		SmartHttpServer server = startServer(frontend, port, "server.writeTimeout", "1");
+		try (Socket socket = new Socket()) {
+			socket.setReceiveBufferSize(64 * 1024);
+			socket.connect(new InetSocketAddress("127.0.0.1", port));
+			socket.setSoTimeout(5000);
+			send(socket, get("/slow.bin"));
+			// Whole transfer takes longer than the write timeout, but it never stops for long
+			InputStream in = new FilterInputStream(socket.getInputStream()) {
+				private long received;
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					int r = super.read(b, off, len);
+					if (r > 0 && (received + r) / (256 * 1024) != received / (256 * 1024)) {
+						try {
+							Thread.sleep(100);
+						} catch (InterruptedException e) {
+							throw new IOException(e);
+						}
+					}
+					received += Math.max(r, 0);
+					return r;
+				}
+			};
+			long start = System.nanoTime();
+			Response response = Response.read(in, false);
+			assertEquals(200, response.status);
+			assertEquals(Files.size(file), response.body.length);
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) > 1500);
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static <T> List<T> runConcurrently(int threads, int repeat, Callable<T> task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<T>> futures = new ArrayList<>();
+			for (int i = 0; i < threads * repeat; ++i) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					return task.call();
+				}));
+			}
+			start.countDown();
+			List<T> results = new ArrayList<>();
+			for (Future<T> future: futures) {
+				results.add(future.get(10, TimeUnit.SECONDS));
+			}
+			return results;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static Response request(String frontend, String request) throws IOException {
+		try (Socket socket = connect(frontend)) {
+			send(socket, request);
+			return Response.read(socket.getInputStream(), false);
+		}
+	}
+
+	private static String get(String path, String... headers) {
+		StringBuilder sb = new StringBuilder("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n");
+		for (String header: headers) {
+			sb.append(header).append("\r\n");
+		}
+		return sb.append("\r\n").toString();
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static SmartHttpServer startServer(String frontend, int port, String... properties) throws Exception {
+		SmartHttpServer server = new SmartHttpServer(writeConfig(frontend, port, properties).toString());
+		server.start();
+		awaitStart(port);
+		return server;
+	}
+
+	private static Socket connect(String frontend) throws IOException {
+		Socket socket = new Socket("127.0.0.1", ports.get(frontend));
+		socket.setSoTimeout(5000);
+		return socket;
+	}
+
+	private static void send(Socket socket, String request) throws IOException {
+		OutputStream os = socket.getOutputStream();
+		os.write(request.getBytes(StandardCharsets.ISO_8859_1));
+		os.flush();
+	}
+
+	private static void awaitStart(int port) throws InterruptedException {
+		for (int i = 0; i < 100; ++i) {
+			try (Socket socket = new Socket("127.0.0.1", port)) {
+				return;
+			} catch (IOException e) {
+				Thread.sleep(50);
+			}
+		}
+		fail("Server did not start on port " + port);
+	}
+
+	private static Path writeConfig(String frontend, int port, String... properties) throws IOException {
+		Properties prop = new Properties();
+		try (InputStream is = Files.newInputStream(Paths.get("config/server.properties"))) {
+			prop.load(is);
+		}
+		prop.setProperty("server.address", "127.0.0.1");
+		prop.setProperty("server.port", String.valueOf(port));
+		prop.setProperty("server.frontend", frontend);
+		prop.setProperty("server.workerThreads", "4");
+		prop.setProperty("server.scriptCache.preload", "false");
+		prop.setProperty("server.documentRoot", root.toAbsolutePath().toString());
+		prop.setProperty("server.mimeConfig", Paths.get("config/mime.properties").toAbsolutePath().toString());
+		prop.setProperty("server.workers", Paths.get("config/workers.properties").toAbsolutePath().toString());
+		for (int i = 0; i < properties.length; i += 2) {
+			prop.setProperty(properties[i], properties[i + 1]);
+		}
+		Path config = root.resolve(frontend + port + ".properties");
+		try (OutputStream os = Files.newOutputStream(config)) {
+			prop.store(os, null);
+		}
+		return config;
+	}
+
+	private static class Response {
+
+		private int status;
+
+		private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+		private byte[] body;
+
+		public static Response read(InputStream in, boolean headOnly) throws IOException {
+			Response response = new Response();
+			String statusLine = readLine(in);
+			response.status = Integer.parseInt(statusLine.split(" ")[1]);
+			for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+				int colon = line.indexOf(':');
+				response.headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+			}
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			String length = response.headers.get("Content-Length");
+			if (headOnly || response.status == 304 || response.status / 100 == 1) {
+				// There is no body
+			} else if ("chunked".equalsIgnoreCase(response.headers.get("Transfer-Encoding"))) {
+				for (int size = Integer.parseInt(readLine(in), 16); size > 0;
+						size = Integer.parseInt(readLine(in), 16)) {
+					body.write(readExactly(in, size));
+					assertEquals("", readLine(in));
+				}
+				while (!readLine(in).isEmpty());
+			} else if (length != null) {
+				body.write(readExactly(in, Integer.parseInt(length)));
+			} else {
+				in.transferTo(body);
+			}
+			response.body = body.toByteArray();
+			return response;
+		}
+
+		public String text() {
+			return new String(body, StandardCharsets.UTF_8);
+		}
+
+		private static String readLine(InputStream in) throws IOException {
+			StringBuilder sb = new StringBuilder();
+			for (int b = in.read(); b != '\n'; b = in.read()) {
+				if (b == -1) throw new EOFException();
+				if (b != '\r') sb.append((char) b);
+			}
+			return sb.toString();
+		}
+
+		private static byte[] readExactly(InputStream in, int n) throws IOException {
+			byte[] data = in.readNBytes(n);
+			if (data.length != n) throw new EOFException();
+			return data;
+		}
+
+	}
+
+}
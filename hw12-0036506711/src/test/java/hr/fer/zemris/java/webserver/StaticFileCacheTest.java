@@ -0,0 +1,89 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.*;
+
+public class StaticFileCacheTest {
+
+	private Path first;
+
+	private Path second;
+
+	@BeforeEach
+	public void createFiles() throws IOException {
+		first = Files.createTempFile("first", ".txt");
+		second = Files.createTempFile("second", ".txt");
+		Files.writeString(first, "a".repeat(1000));
+		Files.writeString(second, "b".repeat(1000));
+	}
+
+	@AfterEach
+	public void deleteFiles() throws IOException {
+		Files.deleteIfExists(first);
+		Files.deleteIfExists(second);
+	}
+
+	@Test
+	public void testHitAndMiss() throws IOException {
+		StaticFileCache cache = new StaticFileCache(4096, 4096);
+		StaticFileCache.Entry entry = get(cache, first);
+		assertSame(entry, get(cache, first));
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals(1000, cache.getSize());
+		assertEquals(1000, entry.getData().length);
+	}
+
+	@Test
+	public void testTooLargeFile() throws IOException {
+		StaticFileCache cache = new StaticFileCache(4096, 999);
+		assertNull(get(cache, first));
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testInvalidation() throws IOException {
+		StaticFileCache cache = new StaticFileCache(4096, 4096);
+		StaticFileCache.Entry entry = get(cache, first);
+		Files.setLastModifiedTime(first, FileTime.fromMillis(entry.getLastModified() + 10_000));
+		assertNotSame(entry, get(cache, first));
+		assertEquals(1, cache.getInvalidations());
+		assertEquals(1000, cache.getSize());
+	}
+
+	@Test
+	public void testCompressedVariantCounted() throws IOException {
+		StaticFileCache cache = new StaticFileCache(4096, 4096);
+		StaticFileCache.Entry entry = get(cache, first);
+		byte[] gzip = entry.getCompressed("gzip");
+		assertSame(gzip, entry.getCompressed("gzip"));
+		assertEquals(1000 + gzip.length, cache.getSize());
+		byte[] deflate = entry.getCompressed("deflate");
+		assertEquals(1000 + gzip.length + deflate.length, cache.getSize());
+	}
+
+	@Test
+	public void testCompressedVariantEvicts() throws IOException {
+		StaticFileCache cache = new StaticFileCache(2010, 2010);
+		StaticFileCache.Entry entry = get(cache, first);
+		get(cache, second);
+		assertEquals(2000, cache.getSize());
+		// Variant makes the second file the most recently used
+		get(cache, second).getCompressed("gzip");
+		assertEquals(1, cache.getEvictions());
+		assertTrue(cache.getSize() <= 2010);
+		assertNotSame(entry, get(cache, first));
+	}
+
+	private static StaticFileCache.Entry get(StaticFileCache cache, Path file) throws IOException {
+		return cache.get(file, Files.readAttributes(file, BasicFileAttributes.class), "text/plain");
+	}
+
+}
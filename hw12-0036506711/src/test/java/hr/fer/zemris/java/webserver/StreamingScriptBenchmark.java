@@ -0,0 +1,202 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Measures time to first byte of a response produced by a multi-megabyte
+ * SmartScript document. The document is executed by {@link ScriptCache} once
+ * with the size limit that makes it compile the whole document before
+ * executing it and once with the limit that makes it execute the document
+ * while it is parsed. Before measuring, program checks that both produce the
+ * same body, chunks the body is sent in differ because the document is
+ * written in parts of different sizes. Besides time to first byte and total time, number of bytes
+ * allocated per execution is printed. Program accepts optional arguments:
+ * size of the generated document in megabytes and number of executions.
+ *
+ * @author Filip Husnjak
+ */
+public class StreamingScriptBenchmark {
+
+	/**
+	 * Part of the document which is repeated until the document is large enough
+	 */
+	private static final String CHUNK = "Row {$= \"1.5\" 2 * $}: {$ FOR j 1 3 1 $}"
+			+ "{$= j @sin \"0.00\" @decfmt $} {$END$}\r\n";
+
+	/**
+	 * Number of measured rounds, the first one is used as a warm up
+	 */
+	private static final int ROUNDS = 4;
+
+	/**
+	 * Program starts here.
+	 *
+	 * @param args
+	 *        optional benchmark parameters
+	 * @throws IOException if the document cannot be written or read
+	 */
+	public static void main(String[] args) throws IOException {
+		int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int executions = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		Path script = Files.createTempFile("streaming", ".smscr");
+		try {
+			try (Writer writer = Files.newBufferedWriter(script, StandardCharsets.UTF_8)) {
+				for (long written = 0; written < megabytes * 1024L * 1024; written += CHUNK.length()) {
+					writer.write(CHUNK);
+				}
+			}
+			ScriptCache compiled = new ScriptCache(0, false, Long.MAX_VALUE);
+			ScriptCache streamed = new ScriptCache(0, false, 0);
+			byte[] expected = body(execute(compiled, script, new ByteArrayOutputStream()));
+			byte[] actual = body(execute(streamed, script, new ByteArrayOutputStream()));
+			if (!Arrays.equals(expected, actual)) {
+				throw new IllegalStateException("Outputs differ!");
+			}
+			System.out.printf("document=%dMB output=%dMB%n", Files.size(script) >> 20, expected.length >> 20);
+
+			for (int round = 0; round < ROUNDS; ++round) {
+				measure("compiled", compiled, script, executions, round > 0);
+				measure("streamed", streamed, script, executions, round > 0);
+			}
+		} finally {
+			Files.delete(script);
+		}
+	}
+
+	/**
+	 * Executes the document specified number of times and prints average
+	 * times and allocated bytes if the round is not a warm up.
+	 *
+	 * @param name
+	 *        name of the measured execution
+	 * @param cache
+	 *        cache which executes the document
+	 * @param script
+	 *        path of the document
+	 * @param executions
+	 *        number of executions
+	 * @param print
+	 *        tells whether results are printed
+	 * @throws IOException if the document cannot be read
+	 */
+	private static void measure(String name, ScriptCache cache, Path script, int executions,
+			boolean print) throws IOException {
+		long firstByte = 0;
+		long total = 0;
+		long allocated = allocatedBytes();
+		for (int i = 0; i < executions; ++i) {
+			long start = System.nanoTime();
+			ResponseStream os = execute(cache, script, new ResponseStream());
+			total += System.nanoTime() - start;
+			firstByte += os.firstWrite - start;
+		}
+		allocated = allocatedBytes() - allocated;
+		if (!print) return;
+		System.out.printf("%-8s ttfb=%8.2fms total=%7.1fms allocated=%6dMB%n", name,
+				firstByte / 1e6 / executions, total / 1e6 / executions, (allocated / executions) >> 20);
+	}
+
+	/**
+	 * Executes the document once.
+	 *
+	 * @param <T>
+	 *        type of the stream
+	 * @param cache
+	 *        cache which executes the document
+	 * @param script
+	 *        path of the document
+	 * @param os
+	 *        stream the response is written to
+	 * @return the given stream
+	 * @throws IOException if the document cannot be read
+	 */
+	private static <T extends OutputStream> T execute(ScriptCache cache, Path script, T os)
+			throws IOException {
+		RequestContext context = new RequestContext(os, new HashMap<>(), new HashMap<>(),
+				new ArrayList<>(), new HashMap<>(), path -> {}, "sid");
+		cache.execute(script, context);
+		context.finish();
+		return os;
+	}
+
+	/**
+	 * Returns body of the given response sent using chunked transfer encoding.
+	 *
+	 * @param os
+	 *        stream holding the response
+	 * @return decoded body of the response
+	 */
+	private static byte[] body(ByteArrayOutputStream os) {
+		byte[] response = os.toByteArray();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		int i = new String(response, StandardCharsets.ISO_8859_1).indexOf("\r\n\r\n") + 4;
+		while (true) {
+			int end = i;
+			while (response[end] != '\r') end++;
+			int length = Integer.parseInt(new String(response, i, end - i, StandardCharsets.ISO_8859_1), 16);
+			if (length == 0) return body.toByteArray();
+			body.write(response, end + 2, length);
+			i = end + 2 + length + 2;
+		}
+	}
+
+	/**
+	 * Returns number of bytes allocated by the current thread so far, or
+	 * {@code 0} if the virtual machine does not track allocations.
+	 *
+	 * @return number of allocated bytes
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Stream which discards the response, remembering only when it was first
+	 * written to.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class ResponseStream extends OutputStream {
+
+		/**
+		 * Value of {@link System#nanoTime()} when the first byte was written
+		 */
+		private long firstWrite;
+
+		/**
+		 * Tells whether anything was written
+		 */
+		private boolean written;
+
+		@Override
+		public void write(int b) {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if (written) return;
+			firstWrite = System.nanoTime();
+			written = true;
+		}
+
+	}
+
+}
@@ -0,0 +1,233 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.BiFunction;
+
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScript;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Measures arithmetic of {@link ValueWrapper}. The first part runs the loop a
+ * FOR tag performs, comparing the counter with a String literal and adding a
+ * String literal to it, once with {@link ValueWrapper} and once with a copy of
+ * the previous implementation that kept values boxed and parsed String
+ * operands on every operation. The second part executes a script with a tight
+ * FOR loop and arithmetic echo tags by both {@link SmartScriptEngine} and
+ * {@link CompiledScript}, writing the output to a stream that discards it.
+ * Program accepts optional arguments: number of loop iterations and number
+ * of script executions.
+ *
+ * @author Filip Husnjak
+ */
+public class ValueWrapperBenchmark {
+
+	/**
+	 * Script used in the second part of the benchmark
+	 */
+	private static final String SCRIPT = "{$ FOR i 1 1000 1 $}"
+			+ "{$= i i * 3 + \" \" i 2.5 / i \"1\" - * $}\n"
+			+ "{$END$}";
+
+	/**
+	 * Number of measured rounds, the first one is used as a warm up
+	 */
+	private static final int ROUNDS = 5;
+
+	/**
+	 * Program starts here.
+	 *
+	 * @param args
+	 *        optional benchmark parameters
+	 */
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+		int executions = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+		for (int round = 0; round < ROUNDS; ++round) {
+			long start = System.nanoTime();
+			long boxed = boxedLoop(iterations);
+			long boxedTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			long unboxed = loop(iterations);
+			long time = System.nanoTime() - start;
+			if (boxed != unboxed) {
+				throw new IllegalStateException("Results differ: " + boxed + " " + unboxed);
+			}
+			if (round == 0) continue;
+			System.out.printf("loop   boxed=%5.2fns/it unboxed=%5.2fns/it speedup=%.2fx%n",
+					boxedTime / (double) iterations, time / (double) iterations,
+					boxedTime / (double) time);
+		}
+
+		DocumentNode document = new SmartScriptParser(SCRIPT).getDocumentNode();
+		CompiledScript compiled = new CompiledScript(document);
+		for (int round = 0; round < ROUNDS; ++round) {
+			long start = System.nanoTime();
+			for (int i = 0; i < executions; ++i) {
+				new SmartScriptEngine(document, context()).execute();
+			}
+			long visitor = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < executions; ++i) {
+				compiled.execute(context());
+			}
+			long closures = System.nanoTime() - start;
+			if (round == 0) continue;
+			System.out.printf("script visitor=%6.1fus compiled=%6.1fus%n",
+					visitor / 1000.0 / executions, closures / 1000.0 / executions);
+		}
+	}
+
+	/**
+	 * Runs the loop of a FOR tag with {@link ValueWrapper}.
+	 *
+	 * @param iterations
+	 *        number of iterations
+	 * @return sum of counter values
+	 */
+	private static long loop(int iterations) {
+		ValueWrapper counter = new ValueWrapper("0");
+		ValueWrapper end = new ValueWrapper(Integer.toString(iterations - 1));
+		ValueWrapper step = new ValueWrapper("1");
+		long sum = 0;
+		while (counter.numCompare(end) <= 0) {
+			ValueWrapper value = counter.copy();
+			value.multiply(step);
+			sum += (Integer) value.getValue();
+			counter.add(step);
+		}
+		return sum;
+	}
+
+	/**
+	 * Runs the loop of a FOR tag the way it was run before values were kept
+	 * unboxed.
+	 *
+	 * @param iterations
+	 *        number of iterations
+	 * @return sum of counter values
+	 */
+	private static long boxedLoop(int iterations) {
+		BoxedValueWrapper counter = new BoxedValueWrapper("0");
+		BoxedValueWrapper end = new BoxedValueWrapper(Integer.toString(iterations - 1));
+		BoxedValueWrapper step = new BoxedValueWrapper("1");
+		long sum = 0;
+		while (counter.numCompare(end.value) <= 0) {
+			BoxedValueWrapper value = new BoxedValueWrapper(counter.value);
+			value.multiply(step.value);
+			sum += (Integer) value.value;
+			counter.add(step.value);
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns context whose output is discarded.
+	 *
+	 * @return new request context
+	 */
+	private static RequestContext context() {
+		return new RequestContext(OutputStream.nullOutputStream(), new HashMap<>(),
+				new HashMap<>(), new ArrayList<>());
+	}
+
+	/**
+	 * Arithmetic of {@link ValueWrapper} as it was implemented before values
+	 * were kept unboxed.
+	 *
+	 * @author Filip Husnjak
+	 */
+	private static class BoxedValueWrapper {
+
+		/**
+		 * Wrapped value
+		 */
+		private Object value;
+
+		/**
+		 * Constructs new {@link BoxedValueWrapper} with specified value.
+		 *
+		 * @param value
+		 *        wrapped value
+		 */
+		public BoxedValueWrapper(Object value) {
+			this.value = value;
+		}
+
+		/**
+		 * Adds the given value to the wrapped value.
+		 *
+		 * @param incValue
+		 *        value to be added
+		 */
+		public void add(Object incValue) {
+			value = execute(incValue, Double::sum, Integer::sum);
+		}
+
+		/**
+		 * Multiplies the wrapped value with the given value.
+		 *
+		 * @param mulValue
+		 *        value to multiply with
+		 */
+		public void multiply(Object mulValue) {
+			value = execute(mulValue, (d1, d2) -> d1 * d2, (i1, i2) -> i1 * i2);
+		}
+
+		/**
+		 * Compares the wrapped value with the given value.
+		 *
+		 * @param withValue
+		 *        value to compare with
+		 * @return result of the comparison
+		 */
+		public int numCompare(Object withValue) {
+			return execute(withValue, Double::compare, Integer::compare);
+		}
+
+		/**
+		 * Converts both values to numbers and applies the proper function.
+		 *
+		 * @param givenValue
+		 *        given value
+		 * @param doubles
+		 *        function used for Double values
+		 * @param integers
+		 *        function used for Integer values
+		 * @return result of the function
+		 */
+		private <T extends Number> T execute(Object givenValue, BiFunction<Double, Double, T> doubles,
+				BiFunction<Integer, Integer, T> integers) {
+			value = getValue(value);
+			givenValue = getValue(givenValue);
+			if (value instanceof Double || givenValue instanceof Double) {
+				return doubles.apply(((Number) value).doubleValue(), ((Number) givenValue).doubleValue());
+			}
+			return integers.apply((Integer) value, (Integer) givenValue);
+		}
+
+		/**
+		 * Converts the given value to Integer or Double.
+		 *
+		 * @param value
+		 *        value to be converted
+		 * @return converted value
+		 */
+		private Object getValue(Object value) {
+			if (value == null) value = 0;
+			if (value instanceof String) {
+				String number = (String) value;
+				value = number.contains(".") || number.contains("E")
+						? (Object) Double.parseDouble(number) : (Object) Integer.parseInt(number);
+			}
+			return value;
+		}
+
+	}
+
+}
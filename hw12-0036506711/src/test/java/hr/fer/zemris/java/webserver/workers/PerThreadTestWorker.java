@@ -0,0 +1,8 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import hr.fer.zemris.java.webserver.WorkerScope;
+import hr.fer.zemris.java.webserver.WorkerScope.Scope;
+
+@WorkerScope(Scope.PER_THREAD)
+public class PerThreadTestWorker extends ScopedTestWorker {
+}
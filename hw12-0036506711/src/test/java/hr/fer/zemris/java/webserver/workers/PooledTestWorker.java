@@ -0,0 +1,8 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import hr.fer.zemris.java.webserver.WorkerScope;
+import hr.fer.zemris.java.webserver.WorkerScope.Scope;
+
+@WorkerScope(value = Scope.POOLED, poolSize = 2)
+public class PooledTestWorker extends ScopedTestWorker {
+}
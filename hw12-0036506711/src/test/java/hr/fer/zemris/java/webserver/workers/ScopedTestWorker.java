@@ -0,0 +1,33 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+public abstract class ScopedTestWorker implements IWebWorker {
+
+	public static final Map<Class<?>, Set<ScopedTestWorker>> instances = new ConcurrentHashMap<>();
+
+	public final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+	public volatile boolean overlapped;
+
+	private final AtomicInteger users = new AtomicInteger();
+
+	public ScopedTestWorker() {
+		instances.computeIfAbsent(getClass(), c -> ConcurrentHashMap.newKeySet()).add(this);
+	}
+
+	@Override
+	public void processRequest(RequestContext context) throws Exception {
+		threads.add(Thread.currentThread());
+		if (users.incrementAndGet() > 1) overlapped = true;
+		Thread.sleep(1);
+		users.decrementAndGet();
+	}
+
+}
@@ -0,0 +1,4 @@
+package hr.fer.zemris.java.webserver.workers;
+
+public class SingletonTestWorker extends ScopedTestWorker {
+}